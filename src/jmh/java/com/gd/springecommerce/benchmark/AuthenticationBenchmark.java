@@ -0,0 +1,66 @@
+package com.gd.springecommerce.benchmark;
+
+import com.gd.springecommerce.cache.CredentialCache;
+import com.gd.springecommerce.config.CredentialCacheProperties;
+import com.gd.springecommerce.config.TokenProperties;
+import com.gd.springecommerce.security.CachingAuthenticationProvider;
+import com.gd.springecommerce.security.TokenService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.provisioning.InMemoryUserDetailsManager;
+
+import java.util.Base64;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+// Per-request authentication cost: Basic with a BCrypt match on every request, Basic with the
+// verified credential cache, and a locally verified bearer token. The user store is in memory,
+// so the Basic numbers exclude the user lookup query and are a lower bound.
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AuthenticationBenchmark {
+    static String USERNAME = "bench@example.com";
+    static String PASSWORD = "Aa@1Aa@1Aa@1";
+
+    DaoAuthenticationProvider basicProvider;
+    CachingAuthenticationProvider cachingProvider;
+    TokenService tokenService;
+    String token;
+
+    @Setup
+    public void setUp() {
+        BCryptPasswordEncoder passwordEncoder = new BCryptPasswordEncoder();
+        basicProvider = new DaoAuthenticationProvider();
+        basicProvider.setUserDetailsService(new InMemoryUserDetailsManager(User.withUsername(USERNAME).password(passwordEncoder.encode(PASSWORD)).build()));
+        basicProvider.setPasswordEncoder(passwordEncoder);
+        cachingProvider = new CachingAuthenticationProvider(basicProvider, new CredentialCache(new CredentialCacheProperties()));
+        TokenProperties tokenProperties = new TokenProperties();
+        tokenProperties.setEnabled(true);
+        tokenProperties.setSecret(Base64.getEncoder().encodeToString("0123456789abcdef0123456789abcdef".getBytes()));
+        tokenService = new TokenService(tokenProperties);
+        token = tokenService.issue(USERNAME);
+    }
+
+    @Benchmark
+    public Authentication basic() {
+        return basicProvider.authenticate(UsernamePasswordAuthenticationToken.unauthenticated(USERNAME, PASSWORD));
+    }
+
+    @Benchmark
+    public Authentication basicWithCredentialCache() {
+        return cachingProvider.authenticate(UsernamePasswordAuthenticationToken.unauthenticated(USERNAME, PASSWORD));
+    }
+
+    @Benchmark
+    public Optional<String> token() {
+        return tokenService.verify(token);
+    }
+}
@@ -0,0 +1,90 @@
+package com.gd.springecommerce.benchmark;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.gd.springecommerce.dto.CartProductDTO;
+import com.gd.springecommerce.model.EcommerceResponse;
+import com.gd.springecommerce.model.Product;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+
+/**
+ * Encodes and decodes the all-products catalog and a cart in its response envelope as JSON, CBOR and Smile.
+ * The payload sizes are printed once per trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BinaryFormatBenchmark {
+
+    @Param({"json", "cbor", "smile"})
+    String format;
+
+    @Param({"1000"})
+    int products;
+
+    ObjectMapper objectMapper;
+    ObjectReader catalogReader;
+    ObjectReader cartReader;
+    List<Product> catalog;
+    EcommerceResponse<List<CartProductDTO>> cart;
+    byte[] encodedCatalog;
+    byte[] encodedCart;
+
+    @Setup
+    public void setUp() throws IOException {
+        Jackson2ObjectMapperBuilder builder = Jackson2ObjectMapperBuilder.json();
+        switch (format) {
+            case "cbor" -> builder.factory(new CBORFactory());
+            case "smile" -> builder.factory(new SmileFactory());
+            default -> { }
+        }
+        objectMapper = builder.build();
+        catalog = LongStream.rangeClosed(1, products)
+                .mapToObj(id -> Product.builder().id(id).sku("SKU-" + id).title("product " + id).available(100).price(new BigDecimal("19.99")).build())
+                .toList();
+        cart = new EcommerceResponse<>(catalog.subList(0, Math.min(products, 50)).stream()
+                .map(product -> CartProductDTO.builder().id(product.getId()).title(product.getTitle()).quantity(2).subTotal(product.getPrice().multiply(BigDecimal.valueOf(2))).build())
+                .toList());
+        catalogReader = objectMapper.readerFor(objectMapper.getTypeFactory().constructCollectionType(List.class, Product.class));
+        JavaType cartType = objectMapper.getTypeFactory().constructParametricType(EcommerceResponse.class,
+                objectMapper.getTypeFactory().constructCollectionType(List.class, CartProductDTO.class));
+        cartReader = objectMapper.readerFor(cartType);
+        encodedCatalog = objectMapper.writeValueAsBytes(catalog);
+        encodedCart = objectMapper.writeValueAsBytes(cart);
+        System.out.printf("%n%s payload: catalog of %d products %d bytes, cart of %d lines %d bytes%n",
+                format, products, encodedCatalog.length, cart.getSuccessResponse().size(), encodedCart.length);
+    }
+
+    @Benchmark
+    public byte[] encodeCatalog() throws IOException {
+        return objectMapper.writeValueAsBytes(catalog);
+    }
+
+    @Benchmark
+    public List<Product> decodeCatalog() throws IOException {
+        return catalogReader.readValue(encodedCatalog);
+    }
+
+    @Benchmark
+    public byte[] encodeCart() throws IOException {
+        return objectMapper.writeValueAsBytes(cart);
+    }
+
+    @Benchmark
+    public EcommerceResponse<List<CartProductDTO>> decodeCart() throws IOException {
+        return cartReader.readValue(encodedCart);
+    }
+}
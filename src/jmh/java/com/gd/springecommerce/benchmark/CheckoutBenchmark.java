@@ -0,0 +1,86 @@
+package com.gd.springecommerce.benchmark;
+
+import com.gd.springecommerce.SpringEcommerceApplication;
+import com.gd.springecommerce.dto.CartProductDTO;
+import com.gd.springecommerce.model.Order;
+import com.gd.springecommerce.model.Product;
+import com.gd.springecommerce.repository.ProductRepository;
+import com.gd.springecommerce.service.CheckoutService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Checkout against the embedded H2 database that the test classpath configures, with each way of taking the stock.
+ * The contended variant runs 8 threads over a catalog small enough for their carts to share products,
+ * optimistic conflicts are retried by the checkout service.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class CheckoutBenchmark {
+
+    @Param({"1", "5", "20"})
+    int cartLines;
+
+    @Param({"conditional", "optimistic", "pessimistic"})
+    String stockLocking;
+
+    @Param({"1000", "10"})
+    int catalogSize;
+
+    ConfigurableApplicationContext context;
+    CheckoutService checkoutService;
+    List<Product> products;
+
+    @Setup(Level.Trial)
+    public void startApplication() {
+        context = new SpringApplicationBuilder(SpringEcommerceApplication.class)
+                .properties("server.port=0", "logging.level.root=WARN", "ecommerce.checkout.stock-locking=" + stockLocking,
+                        "ecommerce.checkout.max-attempts=1000")
+                .run();
+        checkoutService = context.getBean(CheckoutService.class);
+        products = context.getBean(ProductRepository.class).saveAll(IntStream.range(0, catalogSize)
+                .mapToObj(i -> Product.builder().title("product " + i).available(Integer.MAX_VALUE / 2).price(BigDecimal.TEN).build())
+                .toList());
+    }
+
+    @TearDown(Level.Trial)
+    public void stopApplication() {
+        context.close();
+    }
+
+    @Benchmark
+    public Order checkOutProductsInTheCart() {
+        return checkOut();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Order checkOutUnderContention() {
+        return checkOut();
+    }
+
+    private Order checkOut() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        List<CartProductDTO> cart = IntStream.range(0, cartLines)
+                .mapToObj(i -> products.get(random.nextInt(products.size())))
+                .map(product -> CartProductDTO.builder()
+                        .id(product.getId())
+                        .title(product.getTitle())
+                        .quantity(1)
+                        .subTotal(product.getPrice())
+                        .build())
+                .toList();
+        return checkoutService.checkOut("bench@example.com", cart);
+    }
+}
@@ -0,0 +1,35 @@
+package com.gd.springecommerce.benchmark;
+
+import com.gd.springecommerce.validator.PasswordValidator;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.validation.Errors;
+import org.springframework.validation.MapBindingResult;
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PasswordValidatorBenchmark {
+
+    @Param({"Aa@1Aa@1Aa@1", "aa@1aa@1aa@1", "aA@1G"})
+    String password;
+
+    PasswordValidator passwordValidator;
+
+    @Setup
+    public void setUp() {
+        passwordValidator = new PasswordValidator();
+    }
+
+    @Benchmark
+    public Errors validate() {
+        Errors errors = new MapBindingResult(new HashMap<>(), "password");
+        passwordValidator.validate(password, errors);
+        return errors;
+    }
+}
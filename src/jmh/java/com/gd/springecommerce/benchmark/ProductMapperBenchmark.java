@@ -0,0 +1,33 @@
+package com.gd.springecommerce.benchmark;
+
+import com.gd.springecommerce.dto.CartProductDTO;
+import com.gd.springecommerce.dto.ProductDTO;
+import com.gd.springecommerce.mapper.ProductMapper;
+import com.gd.springecommerce.model.Product;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProductMapperBenchmark {
+
+    Product product;
+    ProductDTO productDTO;
+
+    @Setup
+    public void setUp() {
+        product = Product.builder().id(1L).title("product 1").available(100).price(new BigDecimal("19.99")).build();
+        productDTO = ProductDTO.builder().id(1L).quantity(3).build();
+    }
+
+    @Benchmark
+    public CartProductDTO toCartProductDTO() {
+        return ProductMapper.INSTANCE.toCartProductDTO(product, productDTO);
+    }
+}
@@ -0,0 +1,83 @@
+package com.gd.springecommerce.benchmark;
+
+import com.gd.springecommerce.SpringEcommerceApplication;
+import com.gd.springecommerce.model.Product;
+import com.gd.springecommerce.repository.ProductRepository;
+import com.gd.springecommerce.search.ProductSearchIndex;
+import com.gd.springecommerce.search.SearchHits;
+import com.gd.springecommerce.service.ProductService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+
+/**
+ * First page of a title search answered by the in-memory index and by a SQL LIKE query on the embedded H2 database.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class SearchBenchmark {
+
+    private static final String[] COLOURS = {"red", "blue", "green", "black", "white", "grey", "yellow", "orange", "purple", "pink"};
+    private static final String[] MATERIALS = {"cotton", "leather", "steel", "wooden", "plastic", "glass", "ceramic", "wool", "silk", "bamboo"};
+    private static final String[] ITEMS = {"shoe", "shirt", "shelf", "chair", "table", "lamp", "mug", "bag", "wallet", "watch",
+            "charger", "cable", "speaker", "headphones", "keyboard", "mouse", "pen", "pencil", "notebook", "bottle"};
+
+    @Param({"100000", "1000000"})
+    int products;
+
+    // a broad prefix, a word plus prefix and two whole words
+    @Param({"sh", "red sh", "leather wallet"})
+    String query;
+
+    ConfigurableApplicationContext context;
+    ProductRepository productRepository;
+    ProductSearchIndex index;
+    PageRequest firstPage = PageRequest.of(0, 20);
+
+    @Setup(Level.Trial)
+    public void startApplication() {
+        context = new SpringApplicationBuilder(SpringEcommerceApplication.class)
+                .properties("server.port=0", "logging.level.root=WARN", "ecommerce.search.index-enabled=false")
+                .run();
+        productRepository = context.getBean(ProductRepository.class);
+        List<Object[]> rows = LongStream.rangeClosed(1, products)
+                .mapToObj(id -> new Object[]{id, title(id), 10, BigDecimal.TEN})
+                .toList();
+        context.getBean(JdbcTemplate.class).batchUpdate("INSERT INTO product (id, title, available, price) VALUES (?, ?, ?, ?)", rows);
+        index = new ProductSearchIndex();
+        context.getBean(ProductService.class).streamAllProducts(index::put);
+    }
+
+    @TearDown(Level.Trial)
+    public void stopApplication() {
+        context.close();
+    }
+
+    @Benchmark
+    public SearchHits index() {
+        return index.search(query, 0, firstPage.getPageSize());
+    }
+
+    @Benchmark
+    public Slice<Product> sqlLike() {
+        return productRepository.findByTitleContainingIgnoreCaseOrderByIdAsc(query, firstPage);
+    }
+
+    private static String title(long id) {
+        int seed = (int) ((id * 2654435761L >>> 7) & Integer.MAX_VALUE);
+        return COLOURS[seed % COLOURS.length] + " " + MATERIALS[(seed / 10) % MATERIALS.length] + " "
+                + ITEMS[(seed / 100) % ITEMS.length] + " m" + (id % 10_000);
+    }
+}
@@ -0,0 +1,84 @@
+package com.gd.springecommerce.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gd.springecommerce.cache.JsonFragmentCache;
+import com.gd.springecommerce.config.JacksonConfig;
+import com.gd.springecommerce.config.JsonCacheProperties;
+import com.gd.springecommerce.dto.CartProductDTO;
+import com.gd.springecommerce.model.EcommerceResponse;
+import com.gd.springecommerce.model.Product;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializationBenchmark {
+
+    @Param({"10", "1000"})
+    int products;
+
+    ObjectMapper objectMapper;
+    // serializes products and cart lines from the fragment cache, warmed up in setUp
+    ObjectMapper fragmentObjectMapper;
+    List<Product> productList;
+    EcommerceResponse<CartProductDTO> response;
+    List<CartProductDTO> cart;
+
+    @Setup
+    public void setUp() {
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        productList = LongStream.rangeClosed(1, products)
+                .mapToObj(id -> Product.builder().id(id).title("product " + id).available(100).price(new BigDecimal("19.99")).build())
+                .toList();
+        response = new EcommerceResponse<>(CartProductDTO.builder().id(1L).title("product 1").quantity(3).subTotal(new BigDecimal("59.97")).build());
+        cart = new ArrayList<>();
+        for (Product product : productList.subList(0, Math.min(products, 50))) {
+            cart.add(CartProductDTO.builder().id(product.getId()).title(product.getTitle()).quantity(2).subTotal(product.getPrice().multiply(BigDecimal.valueOf(2))).build());
+        }
+        fragmentObjectMapper = Jackson2ObjectMapperBuilder.json()
+                .modulesToInstall(new JacksonConfig().jsonFragmentModule(new JsonFragmentCache(new JsonCacheProperties())))
+                .build();
+        try {
+            fragmentObjectMapper.writeValueAsBytes(productList);
+            fragmentObjectMapper.writeValueAsBytes(cart);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Benchmark
+    public byte[] writeProductList() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(productList);
+    }
+
+    @Benchmark
+    public byte[] writeProductListFromFragments() throws JsonProcessingException {
+        return fragmentObjectMapper.writeValueAsBytes(productList);
+    }
+
+    @Benchmark
+    public byte[] writeCart() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(cart);
+    }
+
+    @Benchmark
+    public byte[] writeCartFromFragments() throws JsonProcessingException {
+        return fragmentObjectMapper.writeValueAsBytes(cart);
+    }
+
+    @Benchmark
+    public byte[] writeEcommerceResponse() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(response);
+    }
+}
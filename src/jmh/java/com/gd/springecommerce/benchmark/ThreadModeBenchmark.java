@@ -0,0 +1,85 @@
+package com.gd.springecommerce.benchmark;
+
+import com.gd.springecommerce.SpringEcommerceApplication;
+import com.gd.springecommerce.model.Product;
+import com.gd.springecommerce.model.User;
+import com.gd.springecommerce.repository.ProductRepository;
+import com.gd.springecommerce.repository.UserRepository;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * One operation fires {@code concurrency} authenticated catalog requests at once and waits for all of them,
+ * served either by Tomcat's platform thread pool or by virtual threads. The virtual mode needs a JDK 21 runtime.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ThreadModeBenchmark {
+    static String USERNAME = "bench@example.com";
+    static String PASSWORD = "Aa@1Aa@1Aa@1";
+
+    @Param({"platform", "virtual"})
+    String threads;
+
+    @Param({"200", "2000"})
+    int concurrency;
+
+    ConfigurableApplicationContext context;
+    HttpClient httpClient;
+    HttpRequest request;
+
+    @Setup(Level.Trial)
+    public void startApplication() {
+        boolean virtual = threads.equals("virtual");
+        if (virtual && Runtime.version().feature() < 21) {
+            throw new IllegalStateException("Virtual thread mode needs a JDK 21 runtime, running on " + Runtime.version());
+        }
+        context = new SpringApplicationBuilder(SpringEcommerceApplication.class)
+                .properties("server.port=0", "logging.level.root=WARN", "spring.threads.virtual.enabled=" + virtual)
+                .run();
+        context.getBean(UserRepository.class).save(User.builder()
+                .email(USERNAME)
+                .password(context.getBean(PasswordEncoder.class).encode(PASSWORD))
+                .build());
+        context.getBean(ProductRepository.class).saveAll(IntStream.range(0, 1_000)
+                .mapToObj(i -> Product.builder().title("product " + i).available(100).price(BigDecimal.TEN).build())
+                .toList());
+        int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+        httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/ecommerce/v1/products/catalog?size=20"))
+                .header("Authorization", "Basic " + Base64.getEncoder().encodeToString((USERNAME + ":" + PASSWORD).getBytes(StandardCharsets.UTF_8)))
+                .build();
+    }
+
+    @TearDown(Level.Trial)
+    public void stopApplication() {
+        context.close();
+    }
+
+    @Benchmark
+    public int concurrentCatalogRequests() {
+        CompletableFuture<?>[] responses = IntStream.range(0, concurrency)
+                .mapToObj(i -> httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding()))
+                .toArray(CompletableFuture[]::new);
+        CompletableFuture.allOf(responses).join();
+        return responses.length;
+    }
+}
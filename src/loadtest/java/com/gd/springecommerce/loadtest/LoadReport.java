@@ -0,0 +1,72 @@
+package com.gd.springecommerce.loadtest;
+
+import com.gd.springecommerce.metrics.Histogram;
+
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latencies and outcomes per operation. A 409 is counted as rejected rather than failed: an out of stock
+ * product is an expected answer under contention, anything else outside 2xx and 304 is an error.
+ */
+class LoadReport {
+
+    private final ConcurrentMap<String, Operation> operations = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LongAdder> errorsByStatus = new ConcurrentHashMap<>();
+
+    void record(String operation, int status, long latencyNanos) {
+        Operation measured = operations.computeIfAbsent(operation, key -> new Operation());
+        measured.latencies.record(latencyNanos);
+        if (status == 409) {
+            measured.rejected.increment();
+        } else if (status >= 300 && status != 304) {
+            measured.errors.increment();
+            errorsByStatus.computeIfAbsent(operation + " " + status, key -> new LongAdder()).increment();
+        }
+    }
+
+    // the request never got an answer, its latency would only measure the timeout
+    void recordFailure(String operation) {
+        operations.computeIfAbsent(operation, key -> new Operation()).failures.increment();
+        errorsByStatus.computeIfAbsent(operation + " no response", key -> new LongAdder()).increment();
+    }
+
+    long completed(String operation) {
+        Operation measured = operations.get(operation);
+        return measured == null ? 0 : measured.latencies.snapshot().count() - measured.rejected.sum() - measured.errors.sum();
+    }
+
+    void print(PrintStream out, double seconds) {
+        out.printf("%-16s %9s %9s %9s %9s %9s %9s %9s%n", "operation", "requests", "req/s", "p50 ms", "p99 ms", "max ms", "rejected", "errors");
+        long requests = 0;
+        long errors = 0;
+        for (Map.Entry<String, Operation> entry : new TreeMap<>(operations).entrySet()) {
+            Operation operation = entry.getValue();
+            Histogram.Snapshot snapshot = operation.latencies.snapshot();
+            long failed = operation.errors.sum() + operation.failures.sum();
+            out.printf("%-16s %9d %9.1f %9.2f %9.2f %9.2f %9d %9d%n", entry.getKey(), snapshot.count(), snapshot.count() / seconds,
+                    millis(snapshot.valueAtQuantile(0.5)), millis(snapshot.valueAtQuantile(0.99)), millis(snapshot.valueAtQuantile(1)),
+                    operation.rejected.sum(), failed);
+            requests += snapshot.count() + operation.failures.sum();
+            errors += failed;
+        }
+        out.printf("%-16s %9d %9.1f %39s %9.2f%%%n", "total", requests, requests / seconds, "error rate", requests == 0 ? 0 : 100.0 * errors / requests);
+        new TreeMap<>(errorsByStatus).forEach((error, count) -> out.printf("%-16s %9d %s%n", "error", count.sum(), error));
+    }
+
+    private static double millis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    private static class Operation {
+        final Histogram latencies = new Histogram();
+        final LongAdder rejected = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final LongAdder failures = new LongAdder();
+    }
+}
@@ -0,0 +1,171 @@
+package com.gd.springecommerce.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gd.springecommerce.SpringEcommerceApplication;
+import com.gd.springecommerce.enums.OrderStatus;
+import com.gd.springecommerce.model.Product;
+import com.gd.springecommerce.order.OrderShard;
+import com.gd.springecommerce.order.ShardedOrderStore;
+import com.gd.springecommerce.repository.ProductRepository;
+import com.gd.springecommerce.service.OrderService;
+import com.gd.springecommerce.service.ProductSearchService;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import javax.sql.DataSource;
+
+import java.math.BigDecimal;
+import java.net.http.HttpClient;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Boots the application on an in-memory H2 database in place of MySQL, seeds a catalog and drives
+ * register, login, browse, search, add-to-cart and checkout traffic over HTTP from concurrent clients.
+ * Reports throughput and latency per operation, the error rate and whether any product was oversold.
+ *
+ * <pre>
+ * mvn -Ploadtest test-compile exec:exec -Dloadtest.args="--clients=64 --duration=60s --stock=10"
+ * </pre>
+ */
+public class LoadTest {
+    private static final int SEED_BATCH_SIZE = 1_000;
+
+    public static void main(String[] args) throws Exception {
+        LoadTestOptions options = LoadTestOptions.parse(args);
+        // arguments given later win, so the application properties passed on the command line override these
+        List<String> applicationArgs = new ArrayList<>(List.of(
+                "--server.port=0",
+                "--logging.level.root=WARN",
+                "--spring.datasource.url=jdbc:h2:mem:load-test;MODE=MySQL;DB_CLOSE_DELAY=-1;NON_KEYWORDS=USER",
+                "--spring.datasource.username=sa",
+                "--spring.datasource.password=",
+                "--spring.jpa.hibernate.ddl-auto=create-drop",
+                "--spring.jpa.open-in-view=false",
+                "--ecommerce.auth.token.enabled=" + options.tokenAuth(),
+                "--ecommerce.auth.token.secret=" + randomSecret()));
+        applicationArgs.addAll(List.of(args));
+
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(SpringEcommerceApplication.class)
+                .run(applicationArgs.toArray(String[]::new));
+        try {
+            long[] productIds = seedCatalog(context, options);
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            System.out.printf("Load test on port %d: %s%n", port, options);
+
+            LoadReport report = run(options, context.getBean(ObjectMapper.class), "http://localhost:" + port, productIds);
+            double seconds = options.duration().toNanos() / (double) TimeUnit.SECONDS.toNanos(1);
+            report.print(System.out, seconds);
+            System.out.printf("%-16s %9.1f orders/s%n", "checkouts", report.completed("checkout") / seconds);
+
+            awaitPendingOrders(context.getBean(OrderService.class));
+            printStockAudit(context.getBean(JdbcTemplate.class), orderDataSources(context), options);
+        } finally {
+            context.close();
+        }
+    }
+
+    // a single node, so a key made up for this run is enough
+    private static String randomSecret() {
+        byte[] secret = new byte[32];
+        new SecureRandom().nextBytes(secret);
+        return Base64.getEncoder().encodeToString(secret);
+    }
+
+    private static long[] seedCatalog(ConfigurableApplicationContext context, LoadTestOptions options) {
+        ProductRepository productRepository = context.getBean(ProductRepository.class);
+        long[] productIds = new long[options.catalogSize()];
+        for (int from = 0; from < options.catalogSize(); from += SEED_BATCH_SIZE) {
+            List<Product> saved = productRepository.saveAll(IntStream.range(from, Math.min(from + SEED_BATCH_SIZE, options.catalogSize()))
+                    .mapToObj(i -> Product.builder()
+                            .sku("LT-" + i)
+                            .title("product " + i + " model " + (i % 100))
+                            .available(options.initialStock())
+                            .price(BigDecimal.valueOf(1 + i % 50))
+                            .build())
+                    .toList());
+            for (int i = 0; i < saved.size(); i++) {
+                productIds[from + i] = saved.get(i).getId();
+            }
+        }
+        // the index was built at startup from the empty catalog
+        context.getBean(ProductSearchService.class).rebuildIndex();
+        return productIds;
+    }
+
+    private static LoadReport run(LoadTestOptions options, ObjectMapper objectMapper, String baseUri, long[] productIds) throws InterruptedException {
+        HttpClient httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+        LoadReport report = new LoadReport();
+        long measureFrom = System.nanoTime() + options.warmup().toNanos();
+        long deadline = measureFrom + options.duration().toNanos();
+        ExecutorService clients = Executors.newFixedThreadPool(options.clients());
+        for (int id = 0; id < options.clients(); id++) {
+            clients.execute(new VirtualClient(id, options, httpClient, objectMapper, baseUri, productIds, report, measureFrom, deadline));
+        }
+        clients.shutdown();
+        if (!clients.awaitTermination(options.warmup().plus(options.duration()).toSeconds() + 60, TimeUnit.SECONDS)) {
+            clients.shutdownNow();
+        }
+        return report;
+    }
+
+    // in async checkout mode accepted orders are allocated after the response, they are counted once settled
+    private static void awaitPendingOrders(OrderService orderService) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (!orderService.findPendingOrderIds().isEmpty() && System.nanoTime() < deadline) {
+            Thread.sleep(100);
+        }
+    }
+
+    // with --ecommerce.orders.store=sharded the orders are spread over the shard databases
+    private static List<DataSource> orderDataSources(ConfigurableApplicationContext context) {
+        ShardedOrderStore shardedOrderStore = context.getBeanProvider(ShardedOrderStore.class).getIfAvailable();
+        if (shardedOrderStore == null) {
+            return List.of(context.getBean(DataSource.class));
+        }
+        return shardedOrderStore.getShards().stream().map(OrderShard::getDataSource).toList();
+    }
+
+    // every product started with the same stock, so what left the shelf has to match what confirmed orders hold
+    private static void printStockAudit(JdbcTemplate jdbcTemplate, List<DataSource> orderDataSources, LoadTestOptions options) {
+        Map<Long, Long> soldByProduct = new HashMap<>();
+        for (DataSource orderDataSource : orderDataSources) {
+            new JdbcTemplate(orderDataSource).query("""
+                            select l.product_id, sum(l.quantity) from order_line l join orders o on o.id = l.order_id
+                            where o.order_status in (?, ?, ?) group by l.product_id""",
+                    (RowCallbackHandler) resultSet -> soldByProduct.merge(resultSet.getLong(1), resultSet.getLong(2), Long::sum),
+                    OrderStatus.CONFIRMED.ordinal(), OrderStatus.SHIPPED.ordinal(), OrderStatus.DELIVERED.ordinal());
+        }
+        List<long[]> stock = jdbcTemplate.query("select id, available from product",
+                (resultSet, row) -> new long[]{resultSet.getLong(2), soldByProduct.getOrDefault(resultSet.getLong(1), 0L)});
+        long sold = 0;
+        long oversoldUnits = 0;
+        long negativeStock = 0;
+        long mismatched = 0;
+        for (long[] product : stock) {
+            long available = product[0];
+            long productSold = product[1];
+            sold += productSold;
+            oversoldUnits += Math.max(0, productSold - options.initialStock());
+            negativeStock += available < 0 ? 1 : 0;
+            mismatched += options.initialStock() - available != productSold ? 1 : 0;
+        }
+        System.out.printf("%-16s %d units sold, %d units oversold, %d products below zero, %d products whose stock does not match their orders%n",
+                "stock audit", sold, oversoldUnits, negativeStock, mismatched);
+    }
+}
@@ -0,0 +1,93 @@
+package com.gd.springecommerce.loadtest;
+
+import lombok.Builder;
+import org.springframework.boot.convert.DurationStyle;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Options given as {@code --name=value}. Arguments with a dot in their name, such as
+ * {@code --ecommerce.checkout.mode=async}, are left to the application.
+ */
+@Builder(toBuilder = true)
+record LoadTestOptions(int catalogSize, int initialStock, int clients, Duration duration, Duration warmup,
+                       int maxCartLines, boolean tokenAuth, long seed, Map<Scenario, Integer> mix) {
+
+    static LoadTestOptions defaults() {
+        return LoadTestOptions.builder()
+                .catalogSize(1_000)
+                .initialStock(20)
+                .clients(32)
+                .duration(Duration.ofSeconds(30))
+                .warmup(Duration.ofSeconds(5))
+                .maxCartLines(5)
+                .seed(42)
+                .mix(parseMix("browse:50,search:10,cart:20,checkout:15,register:5"))
+                .build();
+    }
+
+    static LoadTestOptions parse(String... args) {
+        LoadTestOptions options = defaults();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Options are given as --name=value, not " + arg);
+            }
+            String name = arg.substring(2, arg.indexOf('='));
+            String value = arg.substring(arg.indexOf('=') + 1);
+            if (name.contains(".")) {
+                continue;
+            }
+            LoadTestOptionsBuilder builder = options.toBuilder();
+            options = switch (name) {
+                case "catalog" -> builder.catalogSize(Integer.parseInt(value)).build();
+                case "stock" -> builder.initialStock(Integer.parseInt(value)).build();
+                case "clients" -> builder.clients(Integer.parseInt(value)).build();
+                case "duration" -> builder.duration(DurationStyle.detectAndParse(value)).build();
+                case "warmup" -> builder.warmup(DurationStyle.detectAndParse(value)).build();
+                case "cart-lines" -> builder.maxCartLines(Integer.parseInt(value)).build();
+                case "auth" -> builder.tokenAuth(parseAuth(value)).build();
+                case "seed" -> builder.seed(Long.parseLong(value)).build();
+                case "mix" -> builder.mix(parseMix(value)).build();
+                default -> throw new IllegalArgumentException("Unknown option --" + name);
+            };
+        }
+        if (options.catalogSize < 1 || options.clients < 1 || options.maxCartLines < 1 || options.initialStock < 0) {
+            throw new IllegalArgumentException("catalog, clients and cart-lines must be positive and stock must not be negative");
+        }
+        return options;
+    }
+
+    private static boolean parseAuth(String value) {
+        return switch (value) {
+            case "basic" -> false;
+            case "token" -> true;
+            default -> throw new IllegalArgumentException("--auth is basic or token, not " + value);
+        };
+    }
+
+    // weights per scenario, as in browse:50,checkout:10, a scenario left out is never picked
+    private static Map<Scenario, Integer> parseMix(String value) {
+        Map<Scenario, Integer> mix = new EnumMap<>(Scenario.class);
+        for (String entry : value.split(",")) {
+            String[] parts = entry.split(":");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("--mix takes scenario:weight pairs, not " + entry);
+            }
+            mix.put(Scenario.valueOf(parts[0].trim().toUpperCase(Locale.ROOT)), Integer.parseInt(parts[1].trim()));
+        }
+        if (mix.values().stream().mapToInt(Integer::intValue).sum() <= 0) {
+            throw new IllegalArgumentException("--mix needs a positive weight");
+        }
+        return mix;
+    }
+
+    @Override
+    public String toString() {
+        return "catalog=" + catalogSize + " stock=" + initialStock + " clients=" + clients + " duration=" + duration.toSeconds() + "s"
+                + " warmup=" + warmup.toSeconds() + "s cart-lines=" + maxCartLines + " auth=" + (tokenAuth ? "token" : "basic")
+                + " seed=" + seed + " mix=" + mix;
+    }
+}
@@ -0,0 +1,15 @@
+package com.gd.springecommerce.loadtest;
+
+// What a client does on one iteration, picked at random by the weights of the mix
+enum Scenario {
+    // reads a page of the catalog at a random cursor
+    BROWSE,
+    // searches the titles for a random word
+    SEARCH,
+    // adds a random product to the cart
+    CART,
+    // fills the cart when it is empty, then checks out
+    CHECKOUT,
+    // registers a new user and logs in as them, with an empty cart
+    REGISTER
+}
@@ -0,0 +1,184 @@
+package com.gd.springecommerce.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.UUID;
+
+/**
+ * One shopper sending a request at a time, as a browser tab would. It starts as a newly registered user and
+ * picks a scenario per iteration until the deadline. Only requests started after the warmup are reported.
+ */
+class VirtualClient implements Runnable {
+    static final String PASSWORD = "AaBbCc@&123";
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+
+    private final int id;
+    private final LoadTestOptions options;
+    private final HttpClient httpClient;
+    private final ObjectMapper objectMapper;
+    private final String baseUri;
+    private final long[] productIds;
+    private final LoadReport report;
+    private final long measureFrom;
+    private final long deadline;
+    private final SplittableRandom random;
+    private final Set<Long> cart = new LinkedHashSet<>();
+    private int users;
+    private String authorization;
+    // in basic mode the cart is kept in the session the login opened
+    private String sessionCookie;
+
+    VirtualClient(int id, LoadTestOptions options, HttpClient httpClient, ObjectMapper objectMapper, String baseUri,
+                  long[] productIds, LoadReport report, long measureFrom, long deadline) {
+        this.id = id;
+        this.options = options;
+        this.httpClient = httpClient;
+        this.objectMapper = objectMapper;
+        this.baseUri = baseUri;
+        this.productIds = productIds;
+        this.report = report;
+        this.measureFrom = measureFrom;
+        this.deadline = deadline;
+        this.random = new SplittableRandom(options.seed() + id);
+    }
+
+    @Override
+    public void run() {
+        while (System.nanoTime() < deadline) {
+            try {
+                if (authorization == null) {
+                    signUp();
+                    continue;
+                }
+                switch (pickScenario()) {
+                    case BROWSE -> send("catalog", get("/ecommerce/v1/products/catalog?size=20&cursor=" + random.nextInt(productIds.length)));
+                    case SEARCH -> send("search", get("/ecommerce/v1/products/search?q=product+" + random.nextInt(100)));
+                    case CART -> addToCart();
+                    case CHECKOUT -> checkOut();
+                    case REGISTER -> signUp();
+                }
+            } catch (IOException e) {
+                // the failure is already reported, the next iteration starts over
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void signUp() throws IOException, InterruptedException {
+        authorization = null;
+        sessionCookie = null;
+        cart.clear();
+        String email = "c" + id + "u" + users++ + "@loadtest.com";
+        String credentials = objectMapper.writeValueAsString(Map.of("email", email, "password", PASSWORD));
+        if (send("register", post("/ecommerce/v1/users/register-user", credentials)).statusCode() != 201) {
+            return;
+        }
+        HttpResponse<String> login = send("login", post("/ecommerce/v1/users/login", credentials));
+        if (login.statusCode() != 200) {
+            return;
+        }
+        if (options.tokenAuth()) {
+            authorization = "Bearer " + objectMapper.readTree(login.body()).path("token").asText();
+        } else {
+            authorization = "Basic " + Base64.getEncoder().encodeToString((email + ":" + PASSWORD).getBytes(StandardCharsets.UTF_8));
+            sessionCookie = login.headers().firstValue("Set-Cookie").map(cookie -> cookie.split(";", 2)[0]).orElse(null);
+        }
+    }
+
+    private void addToCart() throws IOException, InterruptedException {
+        long productId = productIds[random.nextInt(productIds.length)];
+        String line = objectMapper.writeValueAsString(Map.of("id", productId, "quantity", 1 + random.nextInt(3)));
+        if (send("add-to-cart", post("/ecommerce/v1/products/cart", line)).statusCode() == 200) {
+            cart.add(productId);
+        }
+    }
+
+    private void checkOut() throws IOException, InterruptedException {
+        int lines = 1 + random.nextInt(options.maxCartLines());
+        for (int i = 0; i < lines && cart.size() < options.maxCartLines(); i++) {
+            addToCart();
+        }
+        if (cart.isEmpty()) {
+            return;
+        }
+        // a fresh key per checkout, as a client that retries a lost response would resend the same one
+        HttpRequest checkout = request("/ecommerce/v1/products/cart/checkout")
+                .header("Idempotency-Key", UUID.randomUUID().toString())
+                .POST(HttpRequest.BodyPublishers.noBody())
+                .build();
+        int status = send("checkout", checkout).statusCode();
+        if (status == 200 || status == 202) {
+            cart.clear();
+        } else if (status == 409) {
+            // a line ran out of stock since it was added, the cart is emptied so the next checkout can succeed
+            for (Long productId : cart) {
+                send("remove-from-cart", request("/ecommerce/v1/products/" + productId).DELETE().build());
+            }
+            cart.clear();
+        }
+    }
+
+    private Scenario pickScenario() {
+        int total = options.mix().values().stream().mapToInt(Integer::intValue).sum();
+        int pick = random.nextInt(total);
+        for (Map.Entry<Scenario, Integer> entry : options.mix().entrySet()) {
+            pick -= entry.getValue();
+            if (pick < 0) {
+                return entry.getKey();
+            }
+        }
+        throw new IllegalStateException("No scenario picked");
+    }
+
+    private HttpResponse<String> send(String operation, HttpRequest request) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        try {
+            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+            if (start >= measureFrom) {
+                report.record(operation, response.statusCode(), System.nanoTime() - start);
+            }
+            return response;
+        } catch (IOException e) {
+            if (start >= measureFrom) {
+                report.recordFailure(operation);
+            }
+            throw e;
+        }
+    }
+
+    private HttpRequest get(String path) {
+        return request(path).GET().build();
+    }
+
+    private HttpRequest post(String path, String json) {
+        return request(path)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .build();
+    }
+
+    private HttpRequest.Builder request(String path) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(baseUri + path)).timeout(REQUEST_TIMEOUT);
+        if (authorization != null) {
+            builder.header("Authorization", authorization);
+        }
+        if (sessionCookie != null) {
+            builder.header("Cookie", sessionCookie);
+        }
+        return builder;
+    }
+}
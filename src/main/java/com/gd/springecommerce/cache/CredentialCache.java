@@ -0,0 +1,101 @@
+package com.gd.springecommerce.cache;
+
+import com.gd.springecommerce.config.CredentialCacheProperties;
+import com.gd.springecommerce.dto.CacheStatistics;
+import com.gd.springecommerce.event.UserCredentialsChangedEvent;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+@Component
+@FieldDefaults(makeFinal = true, level = AccessLevel.PRIVATE)
+public class CredentialCache {
+    static String ALGORITHM = "HmacSHA256";
+    // credential changes are counted per stripe of usernames, so a change only discards the verifications in its stripe
+    static int STRIPES = 1024;
+
+    Cache<String, UserDetails> cache;
+    ThreadLocal<Mac> macs;
+    AtomicLongArray stripeInvalidations = new AtomicLongArray(STRIPES);
+
+    public CredentialCache(CredentialCacheProperties properties) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(properties.getMaximumSize())
+                .expireAfterWrite(properties.getExpireAfterWrite())
+                .recordStats()
+                .build();
+        // the key never leaves the process, so a digest taken from a heap dump cannot be brute forced offline
+        byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        SecretKeySpec secretKey = new SecretKeySpec(key, ALGORITHM);
+        this.macs = ThreadLocal.withInitial(() -> newMac(secretKey));
+    }
+
+    public UserDetails get(String username, String password) {
+        return cache.getIfPresent(digest(username, password));
+    }
+
+    // read before the credentials are loaded and handed back to putIfCurrent
+    public long generation(String username) {
+        return stripeInvalidations.get(stripe(username));
+    }
+
+    // a verification that raced with a credential change may have checked the old password, it is not cached;
+    // checked again after the put, an invalidation that lands between the first check and the put removes it
+    public void putIfCurrent(String username, String password, UserDetails userDetails, long generation) {
+        String digest = digest(username, password);
+        if (generation == generation(username)
+                && cache.asMap().putIfAbsent(digest, userDetails) == null
+                && generation != generation(username)) {
+            cache.asMap().remove(digest, userDetails);
+        }
+    }
+
+    public void invalidate(String username) {
+        stripeInvalidations.incrementAndGet(stripe(username));
+        cache.asMap().values().removeIf(userDetails -> userDetails.getUsername().equals(username));
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUserCredentialsChanged(UserCredentialsChangedEvent event) {
+        invalidate(event.email());
+    }
+
+    public CacheStatistics statistics() {
+        cache.cleanUp();
+        return CacheStatistics.of(cache.stats(), cache.estimatedSize());
+    }
+
+    private String digest(String username, String password) {
+        Mac mac = macs.get();
+        mac.update(username.getBytes(StandardCharsets.UTF_8));
+        mac.update((byte) 0);
+        return Base64.getEncoder().encodeToString(mac.doFinal(password.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static int stripe(String username) {
+        return username.hashCode() & (STRIPES - 1);
+    }
+
+    private static Mac newMac(SecretKeySpec secretKey) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(secretKey);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
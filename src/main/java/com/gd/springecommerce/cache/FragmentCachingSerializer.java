@@ -0,0 +1,92 @@
+package com.gd.springecommerce.cache;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.ObjectCodec;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.core.json.JsonGeneratorImpl;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.BeanProperty;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.ContextualSerializer;
+import com.fasterxml.jackson.databind.ser.ResolvableSerializer;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+// Writes a value as the raw bytes of its cached fragment, the bean serializer only runs on a miss
+public class FragmentCachingSerializer<T> extends StdSerializer<T> implements ResolvableSerializer, ContextualSerializer {
+
+    private static final JsonFactory FRAGMENT_FACTORY = new JsonFactory();
+
+    private final JsonSerializer<T> delegate;
+    private final JsonFragmentCache cache;
+    private final Function<T, Object> keyFunction;
+    private final UnaryOperator<T> copyFunction;
+
+    @SuppressWarnings("unchecked")
+    public FragmentCachingSerializer(JsonSerializer<?> delegate, JsonFragmentCache cache, Function<T, Object> keyFunction, UnaryOperator<T> copyFunction) {
+        super((Class<T>) delegate.handledType());
+        this.delegate = (JsonSerializer<T>) delegate;
+        this.cache = cache;
+        this.keyFunction = keyFunction;
+        this.copyFunction = copyFunction;
+    }
+
+    @Override
+    public void resolve(SerializerProvider provider) throws JsonMappingException {
+        if (delegate instanceof ResolvableSerializer resolvable) {
+            resolvable.resolve(provider);
+        }
+    }
+
+    // a property that changes how the value is written, @JsonFormat or @JsonIgnoreProperties say, gets the bean
+    // serializer made for it; fragments are keyed by the value alone and would be shared with every other property
+    @Override
+    public JsonSerializer<?> createContextual(SerializerProvider provider, BeanProperty property) throws JsonMappingException {
+        JsonSerializer<?> contextual = provider.handlePrimaryContextualization(delegate, property);
+        return contextual == delegate ? this : contextual;
+    }
+
+    @Override
+    public void serialize(T value, JsonGenerator generator, SerializerProvider provider) throws IOException {
+        Object key = keyFunction.apply(value);
+        // fragments are JSON text, binary formats and token buffers get the bean serializer
+        if (key == null || !(generator instanceof JsonGeneratorImpl)) {
+            delegate.serialize(value, generator, provider);
+            return;
+        }
+        SerializableString json = cache.get(key, value);
+        if (json == null) {
+            json = render(value, generator, provider);
+            cache.put(key, copyFunction.apply(value), json);
+        }
+        generator.writeRawValue(json);
+    }
+
+    // the fragment is written the way the enclosing generator writes, from the mapper's factory and with its features
+    private SerializableString render(T value, JsonGenerator generator, SerializerProvider provider) throws IOException {
+        ObjectCodec codec = generator.getCodec();
+        JsonFactory factory = codec == null ? FRAGMENT_FACTORY : codec.getFactory();
+        ByteArrayBuilder buffer = new ByteArrayBuilder();
+        try (JsonGenerator fragment = factory.createGenerator(buffer, JsonEncoding.UTF8)) {
+            fragment.setCodec(codec);
+            fragment.overrideStdFeatures(generator.getFeatureMask(), -1);
+            if (generator.getCharacterEscapes() != null) {
+                fragment.setCharacterEscapes(generator.getCharacterEscapes());
+            }
+            delegate.serialize(value, fragment, provider);
+        }
+        SerializedString json = new SerializedString(new String(buffer.toByteArray(), StandardCharsets.UTF_8));
+        // encode once up front, every later write copies these bytes
+        json.asUnquotedUTF8();
+        return json;
+    }
+}
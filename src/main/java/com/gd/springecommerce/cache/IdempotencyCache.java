@@ -0,0 +1,64 @@
+package com.gd.springecommerce.cache;
+
+import com.gd.springecommerce.config.IdempotencyCacheProperties;
+import com.gd.springecommerce.dto.CacheStatistics;
+import com.gd.springecommerce.model.Order;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+@Component
+@FieldDefaults(makeFinal = true, level = AccessLevel.PRIVATE)
+public class IdempotencyCache {
+    AsyncCache<Key, ResponseEntity<Order>> cache;
+
+    public IdempotencyCache(IdempotencyCacheProperties properties) {
+        // an entry is only sized and aged once its checkout completed, a failed one is dropped so the key can be retried
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(properties.getMaximumSize())
+                .expireAfterWrite(properties.getExpireAfterWrite())
+                .recordStats()
+                .buildAsync();
+    }
+
+    // runs the checkout once per key of the cart, a request repeating the key while it runs waits for that run
+    // and one arriving later gets its response back without running anything
+    public Execution execute(String cartId, String idempotencyKey, Supplier<ResponseEntity<Order>> checkout) {
+        CompletableFuture<ResponseEntity<Order>> created = new CompletableFuture<>();
+        CompletableFuture<ResponseEntity<Order>> response = cache.get(new Key(cartId, idempotencyKey), (key, executor) -> created);
+        if (response != created) {
+            try {
+                return new Execution(response.join(), true);
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException cause ? cause : e;
+            }
+        }
+        try {
+            ResponseEntity<Order> executed = checkout.get();
+            created.complete(executed);
+            return new Execution(executed, false);
+        } catch (RuntimeException | Error e) {
+            created.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    public CacheStatistics statistics() {
+        cache.synchronous().cleanUp();
+        return CacheStatistics.of(cache.synchronous().stats(), cache.synchronous().estimatedSize());
+    }
+
+    public record Execution(ResponseEntity<Order> response, boolean replayed) {
+    }
+
+    // scoped to the cart, a key chosen by one shopper never returns the order of another
+    private record Key(String cartId, String idempotencyKey) {
+    }
+}
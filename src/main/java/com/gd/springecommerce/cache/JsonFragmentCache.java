@@ -0,0 +1,51 @@
+package com.gd.springecommerce.cache;
+
+import com.fasterxml.jackson.core.SerializableString;
+import com.gd.springecommerce.config.JsonCacheProperties;
+import com.gd.springecommerce.dto.CacheStatistics;
+import com.gd.springecommerce.event.ProductsChangedEvent;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+// Serialized JSON of response values, kept with a copy of the value it was written from. A fragment is only
+// served for an equal value, so a changed product can never be answered with its old JSON even before the
+// change event evicts it.
+@Component
+@FieldDefaults(makeFinal = true, level = AccessLevel.PRIVATE)
+public class JsonFragmentCache {
+    Cache<Object, Fragment> cache;
+
+    public JsonFragmentCache(JsonCacheProperties properties) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(properties.getMaximumSize())
+                .recordStats()
+                .build();
+    }
+
+    public SerializableString get(Object key, Object value) {
+        Fragment fragment = cache.getIfPresent(key);
+        return fragment != null && fragment.source().equals(value) ? fragment.json() : null;
+    }
+
+    // the source must be a private copy, a later change to the caller's object would otherwise go unnoticed
+    public void put(Object key, Object source, SerializableString json) {
+        cache.put(key, new Fragment(source, json));
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductsChanged(ProductsChangedEvent event) {
+        cache.invalidateAll(event.productIds());
+    }
+
+    public CacheStatistics statistics() {
+        cache.cleanUp();
+        return CacheStatistics.of(cache.stats(), cache.estimatedSize());
+    }
+
+    private record Fragment(Object source, SerializableString json) {
+    }
+}
@@ -0,0 +1,126 @@
+package com.gd.springecommerce.cache;
+
+import com.gd.springecommerce.config.ProductCacheProperties;
+import com.gd.springecommerce.dto.CacheStatistics;
+import com.gd.springecommerce.event.ProductsChangedEvent;
+import com.gd.springecommerce.model.Product;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+
+@Component
+@FieldDefaults(makeFinal = true, level = AccessLevel.PRIVATE)
+public class ProductCache {
+    // invalidations are counted per stripe of ids, so a change only discards the loads of products in its stripes
+    static int STRIPES = 1024;
+
+    Cache<Long, Product> cache;
+    AtomicLong invalidations = new AtomicLong();
+    AtomicLongArray stripeInvalidations = new AtomicLongArray(STRIPES);
+
+    @Autowired
+    public ProductCache(ProductCacheProperties properties) {
+        this(Caffeine.newBuilder()
+                .maximumSize(properties.getMaximumSize())
+                .expireAfterWrite(properties.getExpireAfterWrite())
+                .recordStats()
+                .build());
+    }
+
+    ProductCache(Cache<Long, Product> cache) {
+        this.cache = cache;
+    }
+
+    public Product get(Long id, Function<Long, Product> loader) {
+        if (id == null) {
+            return loader.apply(null);
+        }
+        Product cached = cache.getIfPresent(id);
+        if (cached != null) {
+            return cached;
+        }
+        // loaded outside the cache's bin lock, a JDBC wait inside compute would pin a virtual thread to its carrier;
+        // a load that raced with an invalidation is returned but not cached
+        long generation = invalidations.get();
+        long stripeGeneration = stripeInvalidations.get(stripe(id));
+        Product loaded = loader.apply(id);
+        if (loaded != null) {
+            cacheIfCurrent(id, loaded, generation, stripeGeneration);
+        }
+        return loaded;
+    }
+
+    // the misses are handed to the loader together, so a batch costs at most one query
+    public Map<Long, Product> getAll(Collection<Long> ids, Function<List<Long>, List<Product>> loader) {
+        Map<Long, Product> products = new HashMap<>(cache.getAllPresent(ids));
+        List<Long> missing = new ArrayList<>();
+        for (Long id : ids) {
+            if (!products.containsKey(id)) {
+                missing.add(id);
+            }
+        }
+        if (missing.isEmpty()) {
+            return products;
+        }
+        long generation = invalidations.get();
+        Map<Long, Long> stripeGenerations = new HashMap<>();
+        missing.forEach(id -> stripeGenerations.put(id, stripeInvalidations.get(stripe(id))));
+        List<Product> loaded = loader.apply(missing);
+        for (Product product : loaded) {
+            products.put(product.getId(), product);
+            Long stripeGeneration = stripeGenerations.get(product.getId());
+            if (stripeGeneration != null) {
+                cacheIfCurrent(product.getId(), product, generation, stripeGeneration);
+            }
+        }
+        return products;
+    }
+
+    // runs after the stock change is committed, a load that started before it is then dropped by cacheIfCurrent
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductsChanged(ProductsChangedEvent event) {
+        event.productIds().forEach(id -> stripeInvalidations.incrementAndGet(stripe(id)));
+        cache.invalidateAll(event.productIds());
+    }
+
+    public void invalidateAll() {
+        invalidations.incrementAndGet();
+        cache.invalidateAll();
+    }
+
+    // checked again after the put, an invalidation that lands between the first check and the put
+    // finds nothing to remove yet, so the put undoes itself
+    private void cacheIfCurrent(Long id, Product product, long generation, long stripeGeneration) {
+        if (isCurrent(id, generation, stripeGeneration)
+                && cache.asMap().putIfAbsent(id, product) == null
+                && !isCurrent(id, generation, stripeGeneration)) {
+            cache.asMap().remove(id, product);
+        }
+    }
+
+    private boolean isCurrent(Long id, long generation, long stripeGeneration) {
+        return generation == invalidations.get() && stripeGeneration == stripeInvalidations.get(stripe(id));
+    }
+
+    private static int stripe(Long id) {
+        return Long.hashCode(id) & (STRIPES - 1);
+    }
+
+    public CacheStatistics statistics() {
+        cache.cleanUp();
+        return CacheStatistics.of(cache.stats(), cache.estimatedSize());
+    }
+}
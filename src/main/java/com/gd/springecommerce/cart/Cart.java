@@ -0,0 +1,129 @@
+package com.gd.springecommerce.cart;
+
+import com.gd.springecommerce.dto.CartProductDTO;
+import com.gd.springecommerce.util.LongObjectHashMap;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+// a lock rather than synchronized, the merges run JDBC while holding it and a virtual thread blocked inside a
+// monitor stays pinned to its carrier
+public class Cart implements Serializable {
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LongObjectHashMap<CartProductDTO> lines = new LongObjectHashMap<>();
+    private BigDecimal total = BigDecimal.ZERO;
+    private volatile boolean removed;
+
+    public CartProductDTO getLine(long productId) {
+        lock.lock();
+        try {
+            return lines.get(productId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public CartProductDTO putLine(CartProductDTO line) {
+        lock.lock();
+        try {
+            CartProductDTO previous = lines.put(line.getId(), line);
+            total = total.add(subTotalOf(line)).subtract(subTotalOf(previous));
+            return previous;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // the line is read and replaced under the cart's lock, so concurrent adds to one cart apply one after the other
+    public CartProductDTO mergeLine(long productId, UnaryOperator<CartProductDTO> merge) {
+        lock.lock();
+        try {
+            CartProductDTO merged = merge.apply(lines.get(productId));
+            putLine(merged);
+            return merged;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // as mergeLine for several products, merge gets their lines (null where there is none) and returns the lines to put
+    public List<CartProductDTO> mergeLines(Collection<Long> productIds, Function<Map<Long, CartProductDTO>, List<CartProductDTO>> merge) {
+        lock.lock();
+        try {
+            Map<Long, CartProductDTO> current = new HashMap<>();
+            productIds.forEach(productId -> current.put(productId, lines.get(productId)));
+            List<CartProductDTO> merged = merge.apply(current);
+            merged.forEach(this::putLine);
+            return merged;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public CartProductDTO removeLine(long productId) {
+        lock.lock();
+        try {
+            CartProductDTO previous = lines.remove(productId);
+            total = total.subtract(subTotalOf(previous));
+            return previous;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public List<CartProductDTO> getLines() {
+        lock.lock();
+        try {
+            return lines.values();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public BigDecimal getTotal() {
+        lock.lock();
+        try {
+            return total;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return lines.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isEmpty() {
+        lock.lock();
+        try {
+            return lines.isEmpty();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // set by the store when it drops the cart, so a late save cannot bring it back
+    void markRemoved() {
+        removed = true;
+    }
+
+    boolean isRemoved() {
+        return removed;
+    }
+
+    private static BigDecimal subTotalOf(CartProductDTO line) {
+        return line == null || line.getSubTotal() == null ? BigDecimal.ZERO : line.getSubTotal();
+    }
+}
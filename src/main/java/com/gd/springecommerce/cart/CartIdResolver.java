@@ -0,0 +1,29 @@
+package com.gd.springecommerce.cart;
+
+import com.gd.springecommerce.config.TokenProperties;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import org.springframework.stereotype.Component;
+
+import java.security.Principal;
+
+@Component
+@RequiredArgsConstructor
+@FieldDefaults(makeFinal = true, level = AccessLevel.PRIVATE)
+public class CartIdResolver {
+
+    TokenProperties tokenProperties;
+
+    // stateless nodes share no sessions, so the cart follows the token subject instead
+    public String resolve(HttpServletRequest request) {
+        if (tokenProperties.isEnabled()) {
+            Principal principal = request.getUserPrincipal();
+            if (principal != null) {
+                return principal.getName();
+            }
+        }
+        return request.getSession().getId();
+    }
+}
@@ -0,0 +1,11 @@
+package com.gd.springecommerce.cart;
+
+import java.util.Optional;
+
+public interface CartStore {
+    Optional<Cart> findCart(String cartId);
+    Cart getOrCreateCart(String cartId);
+    // false when a checkout removed the cart while it was being changed, the changes are then dropped
+    boolean saveCart(String cartId, Cart cart);
+    void removeCart(String cartId);
+}
@@ -0,0 +1,74 @@
+package com.gd.springecommerce.cart;
+
+import com.gd.springecommerce.config.CartProperties;
+import com.gd.springecommerce.service.InventoryReservationService;
+import com.gd.springecommerce.util.SessionTimeouts;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.Scheduler;
+import com.github.benmanes.caffeine.cache.Ticker;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.web.ServerProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.Optional;
+
+@Component
+@FieldDefaults(makeFinal = true, level = AccessLevel.PRIVATE)
+@ConditionalOnProperty(prefix = "ecommerce.cart", name = "store", havingValue = "in-memory", matchIfMissing = true)
+public class InMemoryCartStore implements CartStore {
+    Cache<String, Cart> carts;
+
+    @Autowired
+    public InMemoryCartStore(CartProperties cartProperties, ServerProperties serverProperties, InventoryReservationService inventoryReservationService) {
+        this(cartProperties, serverProperties, inventoryReservationService, Ticker.systemTicker(), Scheduler.systemScheduler());
+    }
+
+    InMemoryCartStore(CartProperties cartProperties, ServerProperties serverProperties, InventoryReservationService inventoryReservationService,
+                      Ticker ticker, Scheduler scheduler) {
+        // weighed by line count so the store is bounded by the total number of lines it holds; a cart evicted or
+        // expired gives its reservations back, one removed at checkout or replaced by saveCart keeps them
+        this.carts = Caffeine.newBuilder()
+                .maximumWeight(cartProperties.getMaximumLines())
+                .<String, Cart>weigher((cartId, cart) -> 1 + cart.size())
+                .expireAfterAccess(SessionTimeouts.of(serverProperties))
+                .ticker(ticker)
+                .scheduler(scheduler)
+                .executor(Runnable::run)
+                .removalListener((String cartId, Cart cart, RemovalCause cause) -> {
+                    if (cause.wasEvicted()) {
+                        inventoryReservationService.releaseAll(cartId);
+                    }
+                })
+                .build();
+    }
+
+    @Override
+    public Optional<Cart> findCart(String cartId) {
+        return Optional.ofNullable(carts.getIfPresent(cartId));
+    }
+
+    @Override
+    public Cart getOrCreateCart(String cartId) {
+        return carts.get(cartId, key -> new Cart());
+    }
+
+    @Override
+    public boolean saveCart(String cartId, Cart cart) {
+        // re-inserting lets the cache weigh the cart with its current size; a cart removed by a checkout that ran
+        // while it was being changed stays removed, both happen under the entry's lock
+        return carts.asMap().compute(cartId, (id, current) -> cart.isRemoved() ? current : cart) == cart;
+    }
+
+    @Override
+    public void removeCart(String cartId) {
+        carts.asMap().computeIfPresent(cartId, (id, cart) -> {
+            cart.markRemoved();
+            return null;
+        });
+    }
+}
@@ -0,0 +1,61 @@
+package com.gd.springecommerce.catalog;
+
+import com.gd.springecommerce.config.CatalogProperties;
+import com.gd.springecommerce.event.ProductsChangedEvent;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+
+// Catalog version bumped on every committed product change, with the ids changed by the most recent versions.
+// Versions start at the startup time in microseconds, so versions handed out by an earlier run are always lower
+// and are answered as expired instead of being mistaken for current ones.
+@Component
+@FieldDefaults(makeFinal = true, level = AccessLevel.PRIVATE)
+public class CatalogVersion {
+    CatalogProperties catalogProperties;
+    NavigableMap<Long, Collection<Long>> changes = new ConcurrentSkipListMap<>();
+    @NonFinal
+    volatile long version;
+    // every change after this version is still in the log
+    @NonFinal
+    volatile long oldestComplete;
+
+    public CatalogVersion(CatalogProperties catalogProperties) {
+        this.catalogProperties = catalogProperties;
+        this.version = TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis());
+        this.oldestComplete = version;
+    }
+
+    public long current() {
+        return version;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onProductsChanged(ProductsChangedEvent event) {
+        changes.put(version + 1, event.productIds());
+        version++;
+        while (changes.size() > catalogProperties.getChangeLogSize()) {
+            oldestComplete = changes.pollFirstEntry().getKey();
+        }
+    }
+
+    // empty when the given version is no longer covered by the log
+    public Optional<Set<Long>> changedSince(long since) {
+        if (since < oldestComplete || since > version) {
+            return Optional.empty();
+        }
+        Set<Long> changed = new HashSet<>();
+        changes.tailMap(since, false).values().forEach(changed::addAll);
+        return Optional.of(changed);
+    }
+}
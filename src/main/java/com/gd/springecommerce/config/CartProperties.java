@@ -0,0 +1,17 @@
+package com.gd.springecommerce.config;
+
+import lombok.AccessLevel;
+import lombok.Data;
+import lombok.experimental.FieldDefaults;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Data
+@Component
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@ConfigurationProperties(prefix = "ecommerce.cart")
+public class CartProperties {
+    String store = "in-memory";
+    long maximumLines = 1_000_000;
+    int maximumBatchLines = 100;
+}
@@ -0,0 +1,19 @@
+package com.gd.springecommerce.config;
+
+import lombok.AccessLevel;
+import lombok.Data;
+import lombok.experimental.FieldDefaults;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Data
+@Component
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@ConfigurationProperties(prefix = "ecommerce.catalog")
+public class CatalogProperties {
+    int defaultPageSize = 50;
+    int maxPageSize = 500;
+    int importBatchSize = 1000;
+    // catalog versions kept for delta responses, older clients have to fetch the full catalog
+    int changeLogSize = 1000;
+}
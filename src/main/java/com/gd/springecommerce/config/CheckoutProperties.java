@@ -0,0 +1,33 @@
+package com.gd.springecommerce.config;
+
+import com.gd.springecommerce.enums.StockLocking;
+import lombok.AccessLevel;
+import lombok.Data;
+import lombok.experimental.FieldDefaults;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Data
+@Component
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@ConfigurationProperties(prefix = "ecommerce.checkout")
+public class CheckoutProperties {
+    // sync: one transaction per checkout, async: orders are queued and group committed
+    String mode = "sync";
+    int queueCapacity = 10_000;
+    int maxBatchSize = 256;
+    Duration enqueueTimeout = Duration.ofMillis(100);
+    // how long a request waits for its queued order to be saved before it gives up and asks for a retry
+    Duration acceptTimeout = Duration.ofSeconds(5);
+    // the pause before the async writer retries after a failure of its own, the database being down say
+    Duration writerRetryBackoff = Duration.ofSeconds(1);
+    // an async order that fails to allocate on its own this many times is rejected
+    int maxAllocationAttempts = 3;
+    StockLocking stockLocking = StockLocking.CONDITIONAL;
+    // optimistic conflicts are retried after a random pause of up to retryBackoff, doubled per attempt up to maxRetryBackoff
+    int maxAttempts = 5;
+    Duration retryBackoff = Duration.ofMillis(2);
+    Duration maxRetryBackoff = Duration.ofMillis(50);
+}
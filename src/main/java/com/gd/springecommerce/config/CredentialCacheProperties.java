@@ -0,0 +1,18 @@
+package com.gd.springecommerce.config;
+
+import lombok.AccessLevel;
+import lombok.Data;
+import lombok.experimental.FieldDefaults;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Data
+@Component
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@ConfigurationProperties(prefix = "ecommerce.cache.credentials")
+public class CredentialCacheProperties {
+    long maximumSize = 10_000;
+    Duration expireAfterWrite = Duration.ofMinutes(5);
+}
@@ -0,0 +1,18 @@
+package com.gd.springecommerce.config;
+
+import lombok.AccessLevel;
+import lombok.Data;
+import lombok.experimental.FieldDefaults;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Data
+@Component
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@ConfigurationProperties(prefix = "ecommerce.cache.idempotency")
+public class IdempotencyCacheProperties {
+    long maximumSize = 100_000;
+    Duration expireAfterWrite = Duration.ofHours(24);
+}
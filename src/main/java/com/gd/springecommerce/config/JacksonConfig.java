@@ -0,0 +1,67 @@
+package com.gd.springecommerce.config;
+
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.databind.SerializationConfig;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.BeanSerializerModifier;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.gd.springecommerce.cache.FragmentCachingSerializer;
+import com.gd.springecommerce.cache.JsonFragmentCache;
+import com.gd.springecommerce.dto.CartProductDTO;
+import com.gd.springecommerce.model.Product;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+
+@Configuration
+public class JacksonConfig {
+    public static final String APPLICATION_SMILE_VALUE = "application/x-jackson-smile";
+    public static final MediaType APPLICATION_SMILE = MediaType.parseMediaType(APPLICATION_SMILE_VALUE);
+
+    // Products and cart lines are written from cached fragments, so list and cart responses are mostly byte copies
+    @Bean
+    public Module jsonFragmentModule(JsonFragmentCache jsonFragmentCache) {
+        SimpleModule module = new SimpleModule("json-fragments");
+        module.setSerializerModifier(new BeanSerializerModifier() {
+            @Override
+            public JsonSerializer<?> modifySerializer(SerializationConfig config, BeanDescription beanDescription, JsonSerializer<?> serializer) {
+                Class<?> type = beanDescription.getBeanClass();
+                if (type == Product.class) {
+                    return new FragmentCachingSerializer<Product>(serializer, jsonFragmentCache, Product::getId,
+                            product -> new Product(product.getId(), product.getSku(), product.getTitle(), product.getAvailable(), product.getPrice(), product.getVersion()));
+                }
+                if (type == CartProductDTO.class) {
+                    return new FragmentCachingSerializer<CartProductDTO>(serializer, jsonFragmentCache, CartLineKey::of,
+                            line -> CartProductDTO.builder().id(line.getId()).title(line.getTitle()).quantity(line.getQuantity()).subTotal(line.getSubTotal()).build());
+                }
+                return serializer;
+            }
+        });
+        return module;
+    }
+
+    // the binary converters replace the framework defaults so they share the modules and settings of the JSON mapper
+    @Bean
+    public MappingJackson2CborHttpMessageConverter cborHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        return new MappingJackson2CborHttpMessageConverter(builder.factory(new CBORFactory()).build());
+    }
+
+    @Bean
+    public MappingJackson2SmileHttpMessageConverter smileHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        return new MappingJackson2SmileHttpMessageConverter(builder.factory(new SmileFactory()).build());
+    }
+
+    // product ids key the product fragments, so cart lines get a key of their own
+    private record CartLineKey(Long productId, Integer quantity) {
+
+        static CartLineKey of(CartProductDTO line) {
+            return line.getId() == null ? null : new CartLineKey(line.getId(), line.getQuantity());
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.gd.springecommerce.config;
+
+import com.gd.springecommerce.jdbc.ConcurrencyLimitingDataSource;
+import com.gd.springecommerce.jdbc.ReplicaRoutingDataSource;
+import com.gd.springecommerce.metrics.MetricsRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+
+@Configuration
+public class JdbcConcurrencyConfig {
+
+    // static so the post processor is registered before the DataSource is created
+    @Bean
+    public static BeanPostProcessor concurrencyLimitingDataSourcePostProcessor(ObjectProvider<JdbcConcurrencyProperties> jdbcConcurrencyProperties,
+                                                                               ObjectProvider<MetricsRegistry> metricsRegistry) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                // the routing data source limits its primary and every replica pool on its own
+                if (bean instanceof DataSource dataSource && !(bean instanceof ReplicaRoutingDataSource)) {
+                    return limit(dataSource, jdbcConcurrencyProperties.getObject(), metricsRegistry.getObject());
+                }
+                return bean;
+            }
+        };
+    }
+
+    public static DataSource limit(DataSource dataSource, JdbcConcurrencyProperties properties, MetricsRegistry metricsRegistry) {
+        if (dataSource instanceof ConcurrencyLimitingDataSource || properties.getMaxConcurrency() <= 0) {
+            return dataSource;
+        }
+        return new ConcurrencyLimitingDataSource(dataSource, properties.getMaxConcurrency(), properties.getAcquireTimeout(),
+                metricsRegistry.counter("jdbc_permit_timeouts_total"));
+    }
+}
@@ -0,0 +1,20 @@
+package com.gd.springecommerce.config;
+
+import lombok.AccessLevel;
+import lombok.Data;
+import lombok.experimental.FieldDefaults;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Data
+@Component
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@ConfigurationProperties(prefix = "ecommerce.jdbc")
+public class JdbcConcurrencyProperties {
+    // below the pool size by the connections a transaction opens next to its own, one per entity sequence while
+    // Hibernate fetches a block of a table-backed sequence; zero or less disables the limiter
+    int maxConcurrency = 10;
+    Duration acquireTimeout = Duration.ofSeconds(5);
+}
@@ -0,0 +1,35 @@
+package com.gd.springecommerce.config;
+
+import lombok.AccessLevel;
+import lombok.Data;
+import lombok.experimental.FieldDefaults;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@Component
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@ConfigurationProperties(prefix = "ecommerce.orders")
+public class OrderStoreProperties {
+    // jpa: orders are kept with the products in spring.datasource, sharded: they are spread over the shard urls
+    String store = "jpa";
+    // the index of a shard is encoded in the ids of its orders, so shards are only ever appended
+    List<String> shardUrls = new ArrayList<>();
+    // the credentials of spring.datasource when not set
+    String username;
+    String password;
+    int maximumPoolSize = 10;
+    Duration connectionTimeout = Duration.ofSeconds(1);
+    // order and line ids are reserved from a shard this many at a time
+    int idBlockSize = 50;
+    // a sharded order still pending this long after its checkout is confirmed or rejected by the reconciler,
+    // so it has to be longer than any checkout transaction
+    Duration pendingTimeout = Duration.ofMinutes(1);
+    Duration reconcileInterval = Duration.ofSeconds(30);
+    int defaultListSize = 50;
+    int maxListSize = 500;
+}
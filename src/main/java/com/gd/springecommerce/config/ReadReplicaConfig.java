@@ -0,0 +1,64 @@
+package com.gd.springecommerce.config;
+
+import com.gd.springecommerce.jdbc.ReadReplica;
+import com.gd.springecommerce.jdbc.ReplicaRoutingDataSource;
+import com.gd.springecommerce.metrics.MetricsRegistry;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+@Configuration
+public class ReadReplicaConfig {
+
+    // static so the post processor is registered before the DataSource is created; the primary is limited here
+    // whether or not the concurrency post processor ran first, and every replica pool gets a limiter of its own
+    @Bean
+    public static BeanPostProcessor replicaRoutingDataSourcePostProcessor(ObjectProvider<ReadReplicaProperties> readReplicaProperties,
+                                                                          ObjectProvider<DataSourceProperties> dataSourceProperties,
+                                                                          ObjectProvider<JdbcConcurrencyProperties> jdbcConcurrencyProperties,
+                                                                          ObjectProvider<MetricsRegistry> metricsRegistry) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof DataSource primary && !(bean instanceof ReplicaRoutingDataSource)) {
+                    ReadReplicaProperties properties = readReplicaProperties.getObject();
+                    if (!properties.getUrls().isEmpty()) {
+                        return routing(primary, properties, dataSourceProperties.getObject(), jdbcConcurrencyProperties.getObject(), metricsRegistry.getObject());
+                    }
+                }
+                return bean;
+            }
+        };
+    }
+
+    private static ReplicaRoutingDataSource routing(DataSource primary, ReadReplicaProperties properties, DataSourceProperties dataSourceProperties,
+                                                    JdbcConcurrencyProperties jdbcConcurrencyProperties, MetricsRegistry metricsRegistry) {
+        List<ReadReplica> replicas = new ArrayList<>();
+        for (int i = 0; i < properties.getUrls().size(); i++) {
+            String name = "replica-" + i;
+            HikariConfig config = new HikariConfig();
+            config.setPoolName(name);
+            config.setJdbcUrl(properties.getUrls().get(i));
+            config.setUsername(properties.getUsername() == null ? dataSourceProperties.determineUsername() : properties.getUsername());
+            config.setPassword(properties.getPassword() == null ? dataSourceProperties.determinePassword() : properties.getPassword());
+            config.setMaximumPoolSize(properties.getMaximumPoolSize());
+            config.setConnectionTimeout(properties.getConnectionTimeout().toMillis());
+            config.setReadOnly(true);
+            // a replica that is down at startup is left out of rotation by the health check instead of failing the start
+            config.setInitializationFailTimeout(-1);
+            replicas.add(new ReadReplica(name, JdbcConcurrencyConfig.limit(new HikariDataSource(config), jdbcConcurrencyProperties, metricsRegistry),
+                    metricsRegistry.counter("jdbc_replica_connections_total", "replica", name),
+                    metricsRegistry.counter("jdbc_replica_unhealthy_checks_total", "replica", name)));
+        }
+        return new ReplicaRoutingDataSource(JdbcConcurrencyConfig.limit(primary, jdbcConcurrencyProperties, metricsRegistry), replicas,
+                properties.getMaxLag(), metricsRegistry.counter("jdbc_replica_fallbacks_total"));
+    }
+}
@@ -0,0 +1,28 @@
+package com.gd.springecommerce.config;
+
+import lombok.AccessLevel;
+import lombok.Data;
+import lombok.experimental.FieldDefaults;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@Component
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@ConfigurationProperties(prefix = "ecommerce.jdbc.replica")
+public class ReadReplicaProperties {
+    // no urls keeps every connection on spring.datasource
+    List<String> urls = new ArrayList<>();
+    // the credentials of spring.datasource when not set
+    String username;
+    String password;
+    int maximumPoolSize = 10;
+    Duration connectionTimeout = Duration.ofSeconds(1);
+    Duration checkInterval = Duration.ofMillis(500);
+    // the heartbeat is written every check interval, so the lag measured includes up to one interval
+    Duration maxLag = Duration.ofSeconds(2);
+}
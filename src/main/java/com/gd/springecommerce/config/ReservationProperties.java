@@ -0,0 +1,19 @@
+package com.gd.springecommerce.config;
+
+import lombok.AccessLevel;
+import lombok.Data;
+import lombok.experimental.FieldDefaults;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Data
+@Component
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@ConfigurationProperties(prefix = "ecommerce.inventory.reservation")
+public class ReservationProperties {
+    Duration sweepInterval = Duration.ofSeconds(10);
+    Duration reconcileInterval = Duration.ofSeconds(30);
+    int reconcileBatchSize = 500;
+}
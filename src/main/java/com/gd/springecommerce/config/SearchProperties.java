@@ -0,0 +1,22 @@
+package com.gd.springecommerce.config;
+
+import lombok.AccessLevel;
+import lombok.Data;
+import lombok.experimental.FieldDefaults;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Data
+@Component
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@ConfigurationProperties(prefix = "ecommerce.search")
+public class SearchProperties {
+    // when disabled every search runs as a SQL LIKE query
+    boolean indexEnabled = true;
+    Duration refreshInterval = Duration.ofSeconds(1);
+    int refreshBatchSize = 500;
+    int defaultPageSize = 20;
+    int maxPageSize = 100;
+}
@@ -1,17 +1,26 @@
 package com.gd.springecommerce.config;
 
+import com.gd.springecommerce.cache.CredentialCache;
+import com.gd.springecommerce.metrics.MetricsRegistry;
+import com.gd.springecommerce.security.CachingAuthenticationProvider;
+import com.gd.springecommerce.security.MeasuredPasswordEncoder;
+import com.gd.springecommerce.security.TokenAuthenticationFilter;
+import com.gd.springecommerce.security.TokenService;
 import com.gd.springecommerce.service.UserDetailsServiceImpl;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
 import org.springframework.security.config.annotation.authentication.builders.AuthenticationManagerBuilder;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configurers.AbstractHttpConfigurer;
+import org.springframework.security.config.http.SessionCreationPolicy;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.web.authentication.www.BasicAuthenticationFilter;
 
 import static org.springframework.security.config.Customizer.withDefaults;
 
@@ -22,13 +31,23 @@ public class SecurityConfig {
     private UserDetailsServiceImpl userDetailsService;
 
     @Bean
-    public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+    public PasswordEncoder passwordEncoder(MetricsRegistry metricsRegistry) {
+        return new MeasuredPasswordEncoder(new BCryptPasswordEncoder(), metricsRegistry);
     }
 
     @Bean
-    public SecurityFilterChain filterChain(HttpSecurity http) throws Exception {
+    public CachingAuthenticationProvider cachingAuthenticationProvider(CredentialCache credentialCache, PasswordEncoder passwordEncoder) {
+        DaoAuthenticationProvider daoAuthenticationProvider = new DaoAuthenticationProvider();
+        daoAuthenticationProvider.setUserDetailsService(userDetailsService);
+        daoAuthenticationProvider.setPasswordEncoder(passwordEncoder);
+        return new CachingAuthenticationProvider(daoAuthenticationProvider, credentialCache);
+    }
+
+    @Bean
+    public SecurityFilterChain filterChain(HttpSecurity http, CachingAuthenticationProvider cachingAuthenticationProvider,
+                                           TokenProperties tokenProperties, TokenService tokenService) throws Exception {
         http
+                .authenticationProvider(cachingAuthenticationProvider)
                 .csrf(AbstractHttpConfigurer::disable) // Disable CSRF if appropriate
                 .authorizeHttpRequests(authorize -> authorize
                         // Permit all access to Swagger UI and API docs
@@ -48,14 +67,21 @@ public class SecurityConfig {
                 )
                 .httpBasic(withDefaults()); // Enable HTTP Basic auth if needed
 
+        if (tokenProperties.isEnabled()) {
+            // Stateless mode: bearer tokens are verified locally, no session is created or looked up
+            http
+                    .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
+                    .addFilterBefore(new TokenAuthenticationFilter(tokenService), BasicAuthenticationFilter.class);
+        }
+
         return http.build();
     }
 
 
     @Bean
-    public AuthenticationManager authenticationManager(HttpSecurity http) throws Exception {
+    public AuthenticationManager authenticationManager(HttpSecurity http, CachingAuthenticationProvider cachingAuthenticationProvider) throws Exception {
         AuthenticationManagerBuilder authenticationManagerBuilder = http.getSharedObject(AuthenticationManagerBuilder.class);
-        authenticationManagerBuilder.userDetailsService(userDetailsService).passwordEncoder(passwordEncoder());
+        authenticationManagerBuilder.authenticationProvider(cachingAuthenticationProvider);
         return authenticationManagerBuilder.build();
     }
 
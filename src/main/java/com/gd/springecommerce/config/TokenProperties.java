@@ -0,0 +1,20 @@
+package com.gd.springecommerce.config;
+
+import lombok.AccessLevel;
+import lombok.Data;
+import lombok.experimental.FieldDefaults;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Data
+@Component
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@ConfigurationProperties(prefix = "ecommerce.auth.token")
+public class TokenProperties {
+    boolean enabled = false;
+    // base64 encoded, at least 32 bytes and shared by every node; required when enabled
+    String secret;
+    Duration timeToLive = Duration.ofHours(1);
+}
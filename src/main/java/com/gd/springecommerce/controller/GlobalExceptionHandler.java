@@ -1,9 +1,18 @@
 package com.gd.springecommerce.controller;
 
+import com.gd.springecommerce.exception.CatalogVersionExpiredException;
+import com.gd.springecommerce.exception.CheckoutQueueFullException;
 import com.gd.springecommerce.exception.InsufficientQuantityException;
+import com.gd.springecommerce.exception.InvalidCartBatchException;
+import com.gd.springecommerce.exception.InvalidCursorException;
+import com.gd.springecommerce.exception.OrderNotFoundException;
 import com.gd.springecommerce.exception.ProductNotFoundException;
+import com.gd.springecommerce.exception.StockConflictException;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.CannotCreateTransactionException;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 
@@ -20,4 +29,48 @@ public class GlobalExceptionHandler {
         return ResponseEntity.status(HttpStatus.CONFLICT)
                 .body(ex.getMessage());
     }
+
+    @ExceptionHandler({CannotCreateTransactionException.class, DataAccessResourceFailureException.class})
+    public ResponseEntity<String> handleDatabaseUnavailableException(Exception ex){
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .body("Database is busy, please retry");
+    }
+
+    @ExceptionHandler(OrderNotFoundException.class)
+    public ResponseEntity<String> handleOrderNotFoundException(Exception ex){
+        return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                .body(ex.getMessage());
+    }
+
+    @ExceptionHandler(CheckoutQueueFullException.class)
+    public ResponseEntity<String> handleCheckoutQueueFullException(Exception ex){
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(ex.getMessage());
+    }
+
+    @ExceptionHandler(StockConflictException.class)
+    public ResponseEntity<String> handleStockConflictException(Exception ex){
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(ex.getMessage());
+    }
+
+    @ExceptionHandler(InvalidCartBatchException.class)
+    public ResponseEntity<String> handleInvalidCartBatchException(Exception ex){
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                .body(ex.getMessage());
+    }
+
+    @ExceptionHandler(InvalidCursorException.class)
+    public ResponseEntity<String> handleInvalidCursorException(Exception ex){
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                .body(ex.getMessage());
+    }
+
+    @ExceptionHandler(CatalogVersionExpiredException.class)
+    public ResponseEntity<String> handleCatalogVersionExpiredException(Exception ex){
+        return ResponseEntity.status(HttpStatus.GONE)
+                .body(ex.getMessage());
+    }
 }
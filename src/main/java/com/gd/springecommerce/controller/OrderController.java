@@ -0,0 +1,51 @@
+package com.gd.springecommerce.controller;
+
+import com.gd.springecommerce.model.Order;
+import com.gd.springecommerce.service.OrderService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.security.Principal;
+import java.util.List;
+
+@RestController
+@RequiredArgsConstructor
+@FieldDefaults(makeFinal = true, level = AccessLevel.PRIVATE)
+@RequestMapping("/ecommerce/v1/orders")
+@Tag(name = "Order Manager", description = "API for tracking the placed orders")
+public class OrderController {
+
+    OrderService orderService;
+
+    @Operation(summary = "Get an order", description = "Fetches an order the user placed with its items and status, a pending order is still waiting for stock allocation")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Successfully Retrieval"),
+            @ApiResponse(responseCode = "404", description = "Order is not found or was placed by another user")}
+    )
+    @GetMapping(value = "/{id}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Order> getOrder(@PathVariable("id") Long id, Principal principal) {
+        return ResponseEntity.ok(orderService.getOrderPlacedBy(id, principal == null ? null : principal.getName()));
+    }
+
+    @Operation(summary = "List the user's orders", description = "Fetches the most recent orders the user placed with their items")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Successfully Retrieval")}
+    )
+    @GetMapping(produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<List<Order>> getLatestOrders(@RequestParam(name = "limit", required = false) Integer limit,
+                                                       Principal principal) {
+        return ResponseEntity.ok(orderService.getLatestOrdersPlacedBy(principal == null ? null : principal.getName(), limit));
+    }
+}
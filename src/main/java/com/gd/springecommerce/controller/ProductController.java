@@ -1,32 +1,74 @@
 package com.gd.springecommerce.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.gd.springecommerce.cache.IdempotencyCache;
+import com.gd.springecommerce.cart.Cart;
+import com.gd.springecommerce.cart.CartIdResolver;
+import com.gd.springecommerce.cart.CartStore;
+import com.gd.springecommerce.config.CartProperties;
+import com.gd.springecommerce.config.JacksonConfig;
+import com.gd.springecommerce.dto.CartLineResult;
 import com.gd.springecommerce.dto.CartProductDTO;
+import com.gd.springecommerce.dto.CatalogDelta;
+import com.gd.springecommerce.dto.CatalogSnapshot;
 import com.gd.springecommerce.dto.ProductDTO;
+import com.gd.springecommerce.dto.ProductFilter;
+import com.gd.springecommerce.dto.ProductImportSummary;
+import com.gd.springecommerce.dto.ProductPage;
+import com.gd.springecommerce.dto.ProductSearchResult;
+import com.gd.springecommerce.dto.ProductSlice;
+import com.gd.springecommerce.enums.OrderStatus;
+import com.gd.springecommerce.enums.ProductSort;
+import com.gd.springecommerce.exception.InsufficientQuantityException;
+import com.gd.springecommerce.exception.InvalidCartBatchException;
+import com.gd.springecommerce.jdbc.ReplicaRoutingDataSource;
 import com.gd.springecommerce.mapper.ProductMapper;
+import com.gd.springecommerce.metrics.MetricsRegistry;
 import com.gd.springecommerce.model.EcommerceResponse;
 import com.gd.springecommerce.model.Order;
 import com.gd.springecommerce.model.Product;
+import com.gd.springecommerce.service.CatalogService;
+import com.gd.springecommerce.service.CheckoutService;
+import com.gd.springecommerce.service.InventoryReservationService;
+import com.gd.springecommerce.service.ProductImportService;
+import com.gd.springecommerce.service.ProductSearchService;
 import com.gd.springecommerce.service.ProductService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.servlet.http.HttpServletRequest;
-import jakarta.servlet.http.HttpSession;
+import jakarta.validation.ConstraintViolation;
 import jakarta.validation.Valid;
+import jakarta.validation.Validator;
 import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
 import org.springframework.context.support.DefaultMessageSourceResolvable;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.util.MimeTypeUtils;
 import org.springframework.validation.BindingResult;
+import org.springframework.web.HttpMediaTypeNotAcceptableException;
+import org.springframework.web.accept.ContentNegotiationManager;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -36,37 +78,163 @@ import java.util.stream.Collectors;
 @RequestMapping("/ecommerce/v1/products")
 @Tag(name = "Product Manager", description = "API for managing the products and user cart information")
 public class ProductController {
+    static String CATALOG_VERSION_HEADER = "X-Catalog-Version";
+    static String IDEMPOTENT_REPLAYED_HEADER = "Idempotent-Replayed";
+    static int MAX_IDEMPOTENCY_KEY_LENGTH = 255;
+    static String CART_CHECKED_OUT_MESSAGE = "The cart was checked out meanwhile, please check it and retry";
+    // in order of preference when the client accepts any of them
+    static List<MediaType> CATALOG_MEDIA_TYPES = List.of(MediaType.APPLICATION_JSON, MediaType.APPLICATION_CBOR, JacksonConfig.APPLICATION_SMILE);
 
     ProductService productService;
+    CatalogService catalogService;
+    ProductImportService productImportService;
+    ProductSearchService productSearchService;
+    CheckoutService checkoutService;
+    InventoryReservationService inventoryReservationService;
+    CartStore cartStore;
+    CartIdResolver cartIdResolver;
+    ObjectMapper objectMapper;
+    ContentNegotiationManager contentNegotiationManager;
+    CartProperties cartProperties;
+    Validator validator;
+    MetricsRegistry metricsRegistry;
+    IdempotencyCache idempotencyCache;
 
-    @Operation(summary = "Get all the products from the inventory", description = "Fetches all the products from the inventory")
+    @Operation(summary = "Get all the products from the inventory", description = "Fetches all the products from the inventory as JSON, CBOR or Smile. The ETag and the X-Catalog-Version header carry the catalog version, a request with a matching If-None-Match is answered with 304")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Successfully Retrieval"),
+            @ApiResponse(responseCode = "304", description = "Catalog has not changed"),
             @ApiResponse(responseCode = "500", description = "Internal server error")}
     )
-    @GetMapping(value = "/all-products", produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<List<Product>> getAllProducts() {
-        return ResponseEntity.ok(productService.getAllProducts());
+    @GetMapping(value = "/all-products", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_CBOR_VALUE, JacksonConfig.APPLICATION_SMILE_VALUE})
+    public ResponseEntity<byte[]> getAllProducts(NativeWebRequest request) throws HttpMediaTypeNotAcceptableException {
+        CatalogSnapshot snapshot = catalogService.getSnapshot(negotiateCatalogType(request));
+        if (request.checkNotModified(snapshot.eTag())) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(snapshot.eTag())
+                    .varyBy(HttpHeaders.ACCEPT)
+                    .header(CATALOG_VERSION_HEADER, String.valueOf(snapshot.version()))
+                    .build();
+        }
+        return ResponseEntity.ok()
+                .contentType(snapshot.contentType())
+                .cacheControl(CacheControl.noCache())
+                .eTag(snapshot.eTag())
+                .varyBy(HttpHeaders.ACCEPT)
+                .header(CATALOG_VERSION_HEADER, String.valueOf(snapshot.version()))
+                .body(snapshot.body());
+    }
+
+    @Operation(summary = "Get the products changed since a catalog version", description = "Fetches the products changed after the given catalog version and the ids of the removed ones, along with the current version to ask from next time")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Successfully Retrieval"),
+            @ApiResponse(responseCode = "410", description = "Version is too old, fetch all the products again")}
+    )
+    @GetMapping(value = "/all-products/changes", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_CBOR_VALUE, JacksonConfig.APPLICATION_SMILE_VALUE})
+    public ResponseEntity<CatalogDelta> getProductChanges(@RequestParam(name = "since") long since) {
+        return ResponseEntity.ok(catalogService.getChangesSince(since));
+    }
+
+    @Operation(summary = "Get a page of products from the inventory", description = "Fetches the products ordered by id, starting after the given cursor. The returned next cursor fetches the following page")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Successfully Retrieval"),
+            @ApiResponse(responseCode = "500", description = "Internal server error")}
+    )
+    @GetMapping(value = "/catalog", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<ProductPage> getProductsPage(@RequestParam(name = "cursor", required = false) Long cursor,
+                                                       @RequestParam(name = "size", required = false) Integer size) {
+        return ResponseEntity.ok(productService.getProductsAfter(cursor, size));
+    }
+
+    @Operation(summary = "Get a filtered page of products from the inventory", description = "Fetches the products matching all the given filters in the requested order (ID, PRICE_ASC, PRICE_DESC or TITLE). The title filter matches a prefix. The returned next cursor fetches the following page, no total count is computed")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Successfully Retrieval"),
+            @ApiResponse(responseCode = "400", description = "Invalid filter, order or cursor")}
+    )
+    @GetMapping(value = "/catalog/filter", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<ProductSlice> getFilteredProducts(@RequestParam(name = "inStock", required = false) Boolean inStock,
+                                                            @RequestParam(name = "minPrice", required = false) BigDecimal minPrice,
+                                                            @RequestParam(name = "maxPrice", required = false) BigDecimal maxPrice,
+                                                            @RequestParam(name = "titlePrefix", required = false) String titlePrefix,
+                                                            @RequestParam(name = "sort", required = false) ProductSort sort,
+                                                            @RequestParam(name = "cursor", required = false) String cursor,
+                                                            @RequestParam(name = "size", required = false) Integer size) {
+        ProductFilter filter = new ProductFilter(inStock, minPrice, maxPrice, titlePrefix);
+        return ResponseEntity.ok(productService.getProductsMatching(filter, sort, cursor, size));
+    }
+
+    @Operation(summary = "Stream all the products from the inventory", description = "Streams all the products as newline delimited JSON while they are read from the inventory")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Successfully Retrieval"),
+            @ApiResponse(responseCode = "500", description = "Internal server error")}
+    )
+    @GetMapping(value = "/catalog/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamAllProducts() {
+        StreamingResponseBody body = outputStream -> {
+            try (SequenceWriter writer = objectMapper.writerFor(Product.class).withRootValueSeparator("\n").writeValues(outputStream)) {
+                // streamed as it is read and not kept, so a replica within the allowed lag can serve it
+                ReplicaRoutingDataSource.readFromReplica(() -> productService.streamAllProducts(product -> writeValue(writer, product)));
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+
+    @Operation(summary = "Search products by title", description = "Matches every word of the query against the product titles, the last word also matches as a prefix. Results are ranked and paginated")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Successfully Retrieval"),
+            @ApiResponse(responseCode = "400", description = "Query is missing")}
+    )
+    @GetMapping(value = "/search", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<ProductSearchResult> searchProducts(@RequestParam(name = "q") String query,
+                                                              @RequestParam(name = "page", required = false) Integer page,
+                                                              @RequestParam(name = "size", required = false) Integer size) {
+        return ResponseEntity.ok(productSearchService.search(query, page, size));
+    }
+
+    @Operation(summary = "Import products in bulk", description = "Upserts products by sku from a CSV file with a header line or from newline delimited JSON. The response streams one line per rejected row followed by a summary line")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Import processed, rejected rows are reported in the body"),
+            @ApiResponse(responseCode = "415", description = "Unsupported content type")}
+    )
+    @PostMapping(path = "/import", consumes = {"text/csv", MediaType.APPLICATION_NDJSON_VALUE}, produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> importProducts(HttpServletRequest request) throws IOException {
+        MediaType contentType = MediaType.parseMediaType(request.getContentType());
+        InputStream inputStream = request.getInputStream();
+        StreamingResponseBody body = outputStream -> {
+            try (SequenceWriter writer = objectMapper.writer().withRootValueSeparator("\n").writeValues(outputStream)) {
+                ProductImportSummary summary = productImportService.importProducts(inputStream, contentType, error -> writeValue(writer, error));
+                writer.write(summary);
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
     }
 
     @Operation(summary = "Add items to the cart", description = "Takes id and quantity of the product, checks if the product is available in required quantity and adds it to the cart")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Successfully added to the cart"),
             @ApiResponse(responseCode = "400", description = "Error in the data to be inserted"), @ApiResponse(responseCode = "403", description = "Product is not found in the inventory"),
-            @ApiResponse(responseCode = "409", description = "product is out of stock")}
+            @ApiResponse(responseCode = "409", description = "product is out of stock, or the cart was checked out while the product was being added")}
     )
     @PostMapping(path = "/cart", consumes = MediaType.APPLICATION_JSON_VALUE)
     public ResponseEntity<EcommerceResponse> addItemsToCart(@Valid @RequestBody ProductDTO productDTO, BindingResult result, HttpServletRequest request) {
         if (!result.hasErrors()) {
-            Product product = productService.getProductIfValidToAddInCart(productDTO.getId(), productDTO.getQuantity());
-            HttpSession session = request.getSession();
-            List<CartProductDTO> products = (List<CartProductDTO>) session.getAttribute("cart");
-            if (products == null) {
-                products = new ArrayList<>();
+            String cartId = cartIdResolver.resolve(request);
+            Cart cart = cartStore.getOrCreateCart(cartId);
+            CartProductDTO cartProductDTO = cart.mergeLine(productDTO.getId(), cartLine -> {
+                int quantity = productDTO.getQuantity() + (cartLine == null ? 0 : cartLine.getQuantity());
+                Product product = productService.getProductIfValidToAddInCart(productDTO.getId(), quantity);
+                inventoryReservationService.updateReservation(cartId, product, quantity);
+                return ProductMapper.INSTANCE.toCartProductDTO(product, ProductDTO.builder().id(productDTO.getId()).quantity(quantity).build());
+            });
+            if (!cartStore.saveCart(cartId, cart)) {
+                // the checkout that removed the cart may not have taken the line, the reservation is not left behind
+                inventoryReservationService.release(cartId, productDTO.getId());
+                return new ResponseEntity<>(new EcommerceResponse<>(Set.of(CART_CHECKED_OUT_MESSAGE)), HttpStatus.CONFLICT);
             }
-            CartProductDTO cartProductDTO = ProductMapper.INSTANCE.toCartProductDTO(product, productDTO);
-            products.add(cartProductDTO);
-            session.setAttribute("cart", products);
             return new ResponseEntity<>(new EcommerceResponse<>(cartProductDTO), HttpStatus.OK);
         }
         Set<String> errorMessages = result.getAllErrors()
@@ -76,17 +244,81 @@ public class ProductController {
         return new ResponseEntity<>(new EcommerceResponse<>(errorMessages), HttpStatus.BAD_REQUEST);
     }
 
+    @Operation(summary = "Add several items to the cart", description = "Takes a list of product ids and quantities, validates all of them against the inventory with one lookup and adds them to the cart together. Either every line is added or the cart is left unchanged, the response has one result per product marked added, rejected or skipped")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Every line is added to the cart"),
+            @ApiResponse(responseCode = "400", description = "Error in the data to be inserted, the cart is unchanged"),
+            @ApiResponse(responseCode = "409", description = "A product is not found in the inventory or is out of stock, or the cart was checked out meanwhile, the cart is unchanged")}
+    )
+    @PostMapping(path = "/cart/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<List<CartLineResult>> addItemsToCartInBatch(@RequestBody List<ProductDTO> productDTOs, HttpServletRequest request) {
+        if (productDTOs.isEmpty() || productDTOs.size() > cartProperties.getMaximumBatchLines()) {
+            throw new InvalidCartBatchException("A batch takes 1 to " + cartProperties.getMaximumBatchLines() + " lines");
+        }
+        if (productDTOs.contains(null)) {
+            throw new InvalidCartBatchException("A batch line cannot be null");
+        }
+        List<CartLineResult> validatedLines = new ArrayList<>();
+        for (ProductDTO productDTO : productDTOs) {
+            List<String> errors = validator.validate(productDTO).stream().map(ConstraintViolation::getMessage).sorted().toList();
+            validatedLines.add(errors.isEmpty()
+                    ? CartLineResult.skipped(productDTO.getId(), productDTO.getQuantity())
+                    : CartLineResult.rejected(productDTO.getId(), productDTO.getQuantity(), errors));
+        }
+        if (validatedLines.stream().anyMatch(line -> line.status() == CartLineResult.Status.REJECTED)) {
+            return ResponseEntity.badRequest().body(validatedLines);
+        }
+
+        String cartId = cartIdResolver.resolve(request);
+        Cart cart = cartStore.getOrCreateCart(cartId);
+        // a product listed twice is added twice, on top of what the cart already holds, as with single adds
+        Map<Long, Integer> quantities = new LinkedHashMap<>();
+        productDTOs.forEach(productDTO -> quantities.merge(productDTO.getId(), productDTO.getQuantity(), Integer::sum));
+        List<CartLineResult> results = new ArrayList<>();
+        List<CartProductDTO> added = cart.mergeLines(quantities.keySet(), cartLines -> {
+            quantities.replaceAll((id, quantity) -> cartLines.get(id) == null ? quantity : quantity + cartLines.get(id).getQuantity());
+            Map<Long, Product> products = productService.getProductsByIds(quantities.keySet());
+            boolean rejected = false;
+            for (Map.Entry<Long, Integer> entry : quantities.entrySet()) {
+                Product product = products.get(entry.getKey());
+                if (product == null) {
+                    results.add(CartLineResult.rejected(entry.getKey(), entry.getValue(), List.of("product with id " + entry.getKey() + " does not exists")));
+                    rejected = true;
+                } else if (product.getAvailable() < entry.getValue()) {
+                    results.add(CartLineResult.rejected(entry.getKey(), entry.getValue(), List.of("Out of stock for the product " + product.getTitle())));
+                    rejected = true;
+                } else {
+                    results.add(CartLineResult.added(ProductMapper.INSTANCE.toCartProductDTO(product, ProductDTO.builder().id(entry.getKey()).quantity(entry.getValue()).build())));
+                }
+            }
+            if (!rejected) {
+                inventoryReservationService.loadStock(products.keySet());
+                rejected = !reserveAll(cartId, cartLines, products, results);
+            }
+            return rejected ? List.of() : results.stream().map(CartLineResult::cartLine).toList();
+        });
+        if (added.isEmpty()) {
+            // nothing was applied, the lines that passed are reported as skipped
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(asSkipped(results));
+        }
+        if (!cartStore.saveCart(cartId, cart)) {
+            // a checkout removed the cart meanwhile, the reservations just taken go with the dropped lines
+            quantities.keySet().forEach(productId -> inventoryReservationService.release(cartId, productId));
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(asSkipped(results));
+        }
+        return ResponseEntity.ok(results);
+    }
+
     @Operation(summary = "Display user cart", description = "Display the product name along with the id and quantity added in the cart")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "201", description = "Successfully fetched the products in the cart"),
             @ApiResponse(responseCode = "500", description = "Internal server error")}
     )
-    @GetMapping(path = "/cart/products")
-    public ResponseEntity<List<CartProductDTO>> displayCart(HttpSession session) {
-        List<CartProductDTO> products = (List<CartProductDTO>) session.getAttribute("cart");
-        if (products == null) {
-            products = Collections.emptyList();
-        }
+    @GetMapping(path = "/cart/products", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_CBOR_VALUE, JacksonConfig.APPLICATION_SMILE_VALUE})
+    public ResponseEntity<List<CartProductDTO>> displayCart(HttpServletRequest request) {
+        List<CartProductDTO> products = cartStore.findCart(cartIdResolver.resolve(request))
+                .map(Cart::getLines)
+                .orElse(Collections.emptyList());
         return ResponseEntity.ok(products);
     }
 
@@ -96,38 +328,40 @@ public class ProductController {
             @ApiResponse(responseCode = "403", description = "Product is not found in the inventory")}
     )
     @DeleteMapping(path = "/{id}")
-    public ResponseEntity<List<CartProductDTO>> removeProductFromCart(@PathVariable("id") Long id, HttpSession session) {
-        List<CartProductDTO> products = (List<CartProductDTO>) session.getAttribute("cart");
-        if (products == null) {
-            products = Collections.emptyList();
-        } else {
-            products.removeIf(cartProductDTO -> cartProductDTO.getId().equals(id));
+    public ResponseEntity<List<CartProductDTO>> removeProductFromCart(@PathVariable("id") Long id, HttpServletRequest request) {
+        String cartId = cartIdResolver.resolve(request);
+        Optional<Cart> cart = cartStore.findCart(cartId);
+        if (cart.isEmpty()) {
+            return ResponseEntity.ok(Collections.emptyList());
         }
-        return ResponseEntity.ok(products);
+        if (cart.get().removeLine(id) != null) {
+            inventoryReservationService.release(cartId, id);
+            cartStore.saveCart(cartId, cart.get());
+        }
+        return ResponseEntity.ok(cart.get().getLines());
     }
 
     @Operation(summary = "Updates quantity of the product in the cart", description = "Takes the id and updated quantity of the product and updates the quantity of the product in the cart")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Successfully Updated"), @ApiResponse(responseCode = "400", description = "Error in the data to be inserted"),
-            @ApiResponse(responseCode = "204", description = "Cart is empty")}
+            @ApiResponse(responseCode = "204", description = "Cart is empty"),
+            @ApiResponse(responseCode = "409", description = "Product is out of stock, or the cart was checked out while it was being updated")}
     )
     @PutMapping(path = "/cart/products/{id}", consumes = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<EcommerceResponse> modifyProductInCart(@Valid @RequestBody ProductDTO productDTO, BindingResult result, @PathVariable("id") Long id, HttpSession session) {
+    public ResponseEntity<EcommerceResponse> modifyProductInCart(@Valid @RequestBody ProductDTO productDTO, BindingResult result, @PathVariable("id") Long id, HttpServletRequest request) {
         if (!result.hasErrors()) {
             Product product = productService.getProductIfValidToAddInCart(productDTO.getId(), productDTO.getQuantity());
-            List<CartProductDTO> products = (List<CartProductDTO>) session.getAttribute("cart");
+            String cartId = cartIdResolver.resolve(request);
+            inventoryReservationService.updateReservation(cartId, product, productDTO.getQuantity());
+            Cart cart = cartStore.getOrCreateCart(cartId);
             CartProductDTO cartProductDTO = ProductMapper.INSTANCE.toCartProductDTO(product, productDTO);
-            if (products == null) {
-                products = new ArrayList<>();
-                products.add(cartProductDTO);
-                session.setAttribute("cart", products);
-            } else {
-                boolean isProductNotInCart = products.stream().noneMatch(cartProduct -> cartProduct.getId().equals(id));
-                if (isProductNotInCart) {
-                    products.add(cartProductDTO);
-                } else {
-                    products.replaceAll(cartProduct -> cartProduct.getId().equals(id) ? cartProductDTO : cartProduct);
-                }
+            if (!id.equals(productDTO.getId()) && cart.removeLine(id) != null) {
+                inventoryReservationService.release(cartId, id);
+            }
+            cart.putLine(cartProductDTO);
+            if (!cartStore.saveCart(cartId, cart)) {
+                inventoryReservationService.release(cartId, productDTO.getId());
+                return new ResponseEntity<>(new EcommerceResponse<>(Set.of(CART_CHECKED_OUT_MESSAGE)), HttpStatus.CONFLICT);
             }
             return ResponseEntity.ok(new EcommerceResponse<>(cartProductDTO));
         }
@@ -139,19 +373,119 @@ public class ProductController {
 
     }
 
-    @Operation(summary = "Checkout products in the cart", description = "Checks out product in the cart and generates the order details")
+    @Operation(summary = "Checkout products in the cart", description = "Checks out product in the cart and generates the order details. A request repeating the Idempotency-Key of an earlier checkout of the same cart gets the original response back, marked with Idempotent-Replayed, instead of placing another order")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "201", description = "Successfully Placed the order"),
-            @ApiResponse(responseCode = "204", description = "Cart is empty")}
+            @ApiResponse(responseCode = "202", description = "Order is accepted and pending stock allocation"),
+            @ApiResponse(responseCode = "204", description = "Cart is empty"),
+            @ApiResponse(responseCode = "400", description = "Idempotency key is blank or longer than 255 characters"),
+            @ApiResponse(responseCode = "503", description = "Too many checkouts in progress")}
     )
-    @GetMapping(path = "/cart/checkout", produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<Order> checkOutProductsInTheCart(HttpSession session) {
-        List<CartProductDTO> products = (List<CartProductDTO>) session.getAttribute("cart");
-        if (products == null) {
+    @RequestMapping(path = "/cart/checkout", method = {RequestMethod.GET, RequestMethod.POST},
+            produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_CBOR_VALUE, JacksonConfig.APPLICATION_SMILE_VALUE})
+    public ResponseEntity<Order> checkOutProductsInTheCart(HttpServletRequest request,
+                                                           @RequestHeader(name = "Idempotency-Key", required = false) String idempotencyKey) {
+        String cartId = cartIdResolver.resolve(request);
+        String owner = request.getRemoteUser();
+        if (idempotencyKey == null) {
+            return checkOut(cartId, owner);
+        }
+        if (idempotencyKey.isBlank() || idempotencyKey.length() > MAX_IDEMPOTENCY_KEY_LENGTH) {
+            return ResponseEntity.badRequest().build();
+        }
+        IdempotencyCache.Execution execution = idempotencyCache.execute(cartId, idempotencyKey, () -> checkOut(cartId, owner));
+        if (!execution.replayed()) {
+            return execution.response();
+        }
+        metricsRegistry.counter("checkout_idempotent_replays_total").increment();
+        return ResponseEntity.status(execution.response().getStatusCode())
+                .header(IDEMPOTENT_REPLAYED_HEADER, "true")
+                .body(execution.response().getBody());
+    }
+
+    private ResponseEntity<Order> checkOut(String cartId, String owner) {
+        Optional<Cart> cart = cartStore.findCart(cartId);
+        if (cart.isEmpty() || cart.get().isEmpty()) {
             return ResponseEntity.noContent().build();
         } else {
-            Order order = productService.checkOutProductsInTheCart(products);
+            List<CartProductDTO> lines = cart.get().getLines();
+            metricsRegistry.histogram("checkout_cart_lines").record(lines.size());
+            long start = System.nanoTime();
+            String outcome = "failed";
+            Order order;
+            try {
+                order = checkoutService.checkOut(owner, lines);
+                outcome = order.getOrderStatus().name().toLowerCase();
+            } finally {
+                metricsRegistry.timer("checkout_seconds", "outcome", outcome).recordSince(start);
+            }
+            if (order.getOrderStatus() == OrderStatus.PENDING) {
+                // the stock is not taken until the order is allocated, which may still reject it
+                inventoryReservationService.holdForOrder(cartId, order.getId());
+                cartStore.removeCart(cartId);
+                return ResponseEntity.accepted().body(order);
+            }
+            inventoryReservationService.commit(cartId);
+            cartStore.removeCart(cartId);
             return ResponseEntity.ok(order);
         }
     }
+
+    // reserves every line or, when one fails, puts the reservations already changed back as the cart holds them;
+    // a refusal rejects the line, any other failure is rethrown once the reservations are restored
+    private boolean reserveAll(String cartId, Map<Long, CartProductDTO> cartLines, Map<Long, Product> products, List<CartLineResult> results) {
+        for (int i = 0; i < results.size(); i++) {
+            CartLineResult result = results.get(i);
+            try {
+                inventoryReservationService.updateReservation(cartId, products.get(result.id()), result.quantity());
+            } catch (RuntimeException e) {
+                restoreReservations(cartId, cartLines, products, results.subList(0, i));
+                if (!(e instanceof InsufficientQuantityException)) {
+                    throw e;
+                }
+                results.set(i, CartLineResult.rejected(result.id(), result.quantity(), List.of(e.getMessage())));
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static List<CartLineResult> asSkipped(List<CartLineResult> results) {
+        return results.stream()
+                .map(result -> result.status() == CartLineResult.Status.ADDED ? CartLineResult.skipped(result.id(), result.quantity()) : result)
+                .toList();
+    }
+
+    private void restoreReservations(String cartId, Map<Long, CartProductDTO> cartLines, Map<Long, Product> products, List<CartLineResult> reserved) {
+        for (CartLineResult result : reserved) {
+            CartProductDTO cartLine = cartLines.get(result.id());
+            if (cartLine == null) {
+                inventoryReservationService.release(cartId, result.id());
+            } else {
+                inventoryReservationService.updateReservation(cartId, products.get(result.id()), cartLine.getQuantity());
+            }
+        }
+    }
+
+    // the snapshot is already encoded, so the format is picked here instead of by a message converter
+    private MediaType negotiateCatalogType(NativeWebRequest request) throws HttpMediaTypeNotAcceptableException {
+        List<MediaType> acceptedTypes = new ArrayList<>(contentNegotiationManager.resolveMediaTypes(request));
+        MimeTypeUtils.sortBySpecificity(acceptedTypes);
+        for (MediaType acceptedType : acceptedTypes) {
+            for (MediaType catalogType : CATALOG_MEDIA_TYPES) {
+                if (acceptedType.getQualityValue() > 0 && acceptedType.isCompatibleWith(catalogType)) {
+                    return catalogType;
+                }
+            }
+        }
+        return MediaType.APPLICATION_JSON;
+    }
+
+    private void writeValue(SequenceWriter writer, Object value) {
+        try {
+            writer.write(value);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
 }
@@ -0,0 +1,80 @@
+package com.gd.springecommerce.controller;
+
+import com.gd.springecommerce.cache.CredentialCache;
+import com.gd.springecommerce.cache.IdempotencyCache;
+import com.gd.springecommerce.cache.JsonFragmentCache;
+import com.gd.springecommerce.cache.ProductCache;
+import com.gd.springecommerce.dto.CacheStatistics;
+import com.gd.springecommerce.metrics.MetricsRegistry;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequiredArgsConstructor
+@FieldDefaults(makeFinal = true, level = AccessLevel.PRIVATE)
+@RequestMapping("/ecommerce/v1/stats")
+@Tag(name = "Stats", description = "API for the runtime statistics of the in-process caches and the request, checkout and database metrics")
+public class StatsController {
+    static final String PROMETHEUS_TEXT_VALUE = "text/plain;version=0.0.4;charset=utf-8";
+
+    ProductCache productCache;
+    CredentialCache credentialCache;
+    JsonFragmentCache jsonFragmentCache;
+    IdempotencyCache idempotencyCache;
+    MetricsRegistry metricsRegistry;
+
+    @Operation(summary = "Get product cache statistics", description = "Fetches the size, hit, miss and eviction counters of the product cache")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Successfully Retrieval")}
+    )
+    @GetMapping(value = "/product-cache", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<CacheStatistics> getProductCacheStatistics() {
+        return ResponseEntity.ok(productCache.statistics());
+    }
+
+    @Operation(summary = "Get credential cache statistics", description = "Fetches the size, hit, miss and eviction counters of the verified credential cache")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Successfully Retrieval")}
+    )
+    @GetMapping(value = "/credential-cache", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<CacheStatistics> getCredentialCacheStatistics() {
+        return ResponseEntity.ok(credentialCache.statistics());
+    }
+
+    @Operation(summary = "Get JSON fragment cache statistics", description = "Fetches the size, hit, miss and eviction counters of the cache of serialized products and cart lines")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Successfully Retrieval")}
+    )
+    @GetMapping(value = "/json-cache", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<CacheStatistics> getJsonCacheStatistics() {
+        return ResponseEntity.ok(jsonFragmentCache.statistics());
+    }
+
+    @Operation(summary = "Get idempotency cache statistics", description = "Fetches the size, hit, miss and eviction counters of the cache of checkout responses by idempotency key, a hit is a replayed or coalesced checkout")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Successfully Retrieval")}
+    )
+    @GetMapping(value = "/idempotency-cache", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<CacheStatistics> getIdempotencyCacheStatistics() {
+        return ResponseEntity.ok(idempotencyCache.statistics());
+    }
+
+    @Operation(summary = "Get the metrics for scraping", description = "Fetches the counters and the latency summaries of the endpoints, checkout, repository calls and password verifications in the Prometheus text format")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Successfully Retrieval")}
+    )
+    @GetMapping(value = "/metrics", produces = PROMETHEUS_TEXT_VALUE)
+    public ResponseEntity<String> getMetrics() {
+        return ResponseEntity.ok(metricsRegistry.scrape());
+    }
+}
@@ -1,14 +1,16 @@
 package com.gd.springecommerce.controller;
 
+import com.gd.springecommerce.config.TokenProperties;
 import com.gd.springecommerce.model.EcommerceResponse;
 import com.gd.springecommerce.model.User;
+import com.gd.springecommerce.security.TokenService;
 import com.gd.springecommerce.service.UserRegistrationServiceImpl;
 import com.gd.springecommerce.validator.PasswordValidator;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
-import jakarta.servlet.http.HttpSession;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import lombok.AccessLevel;
 import lombok.experimental.FieldDefaults;
@@ -50,6 +52,12 @@ public class UserController {
     @Autowired
     AuthenticationManager authenticationManager;
 
+    @Autowired
+    TokenProperties tokenProperties;
+
+    @Autowired
+    TokenService tokenService;
+
 
     @Operation(summary = "Register a user", description = "Takes the valid details of user like email, password,and initiate user registration process")
     @ApiResponses(value = {
@@ -83,14 +91,19 @@ public class UserController {
             @ApiResponse(responseCode = "409", description = "Bad Credentials")}
     )
     @PostMapping(path = "/login", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<Map<String,String>> loginUser(@RequestBody User user, HttpSession session) {
+    public ResponseEntity<Map<String,String>> loginUser(@RequestBody User user, HttpServletRequest request) {
         try {
             String email = user.getEmail();
             String password = user.getPassword();
             Authentication authentication = new UsernamePasswordAuthenticationToken(email, password);
             authenticationManager.authenticate(authentication);
             Map<String, String> response = new HashMap<>();
-            response.put("sessionId", session.getId());
+            if (tokenProperties.isEnabled()) {
+                response.put("token", tokenService.issue(email));
+                response.put("expiresIn", String.valueOf(tokenService.getTimeToLive().toSeconds()));
+            } else {
+                response.put("sessionId", request.getSession().getId());
+            }
             return ResponseEntity.ok(response);
         } catch (AuthenticationException e) {
             return ResponseEntity.badRequest().body(Map.of("error",e.getMessage()));
@@ -0,0 +1,28 @@
+package com.gd.springecommerce.dto;
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import lombok.AccessLevel;
+import lombok.Builder;
+import lombok.Data;
+import lombok.experimental.FieldDefaults;
+
+@Data
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@Builder
+public class CacheStatistics {
+    long size;
+    long hitCount;
+    long missCount;
+    double hitRate;
+    long evictionCount;
+
+    public static CacheStatistics of(CacheStats stats, long size) {
+        return CacheStatistics.builder()
+                .size(size)
+                .hitCount(stats.hitCount())
+                .missCount(stats.missCount())
+                .hitRate(stats.hitRate())
+                .evictionCount(stats.evictionCount())
+                .build();
+    }
+}
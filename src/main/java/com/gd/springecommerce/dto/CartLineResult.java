@@ -0,0 +1,22 @@
+package com.gd.springecommerce.dto;
+
+import java.util.List;
+
+// the outcome of one line of a batch, the cart line when it was added or the reasons it was not
+public record CartLineResult(Long id, Integer quantity, Status status, CartProductDTO cartLine, List<String> errors) {
+
+    // SKIPPED is a valid line left out because another line of the batch was rejected
+    public enum Status { ADDED, REJECTED, SKIPPED }
+
+    public static CartLineResult added(CartProductDTO cartLine) {
+        return new CartLineResult(cartLine.getId(), cartLine.getQuantity(), Status.ADDED, cartLine, List.of());
+    }
+
+    public static CartLineResult rejected(Long id, Integer quantity, List<String> errors) {
+        return new CartLineResult(id, quantity, Status.REJECTED, null, errors);
+    }
+
+    public static CartLineResult skipped(Long id, Integer quantity) {
+        return new CartLineResult(id, quantity, Status.SKIPPED, null, List.of());
+    }
+}
@@ -0,0 +1,9 @@
+package com.gd.springecommerce.dto;
+
+import com.gd.springecommerce.model.Product;
+
+import java.util.List;
+
+// products changed after the since version, in their state at version or later
+public record CatalogDelta(long since, long version, List<Product> products, List<Long> removedIds) {
+}
@@ -0,0 +1,19 @@
+package com.gd.springecommerce.dto;
+
+import org.springframework.http.MediaType;
+
+// the full catalog serialized once per version and format, the version doubles as a strong entity tag
+public record CatalogSnapshot(long version, MediaType contentType, byte[] body) {
+
+    public CatalogSnapshot(long version, byte[] body) {
+        this(version, MediaType.APPLICATION_JSON, body);
+    }
+
+    // every encoding is a representation of its own, JSON keeps the bare version
+    public String eTag() {
+        if (MediaType.APPLICATION_JSON.equalsTypeAndSubtype(contentType)) {
+            return "\"" + version + "\"";
+        }
+        return "\"" + version + "-" + contentType.getSubtype() + "\"";
+    }
+}
@@ -0,0 +1,7 @@
+package com.gd.springecommerce.dto;
+
+import java.math.BigDecimal;
+
+// every field is optional, the set ones are combined
+public record ProductFilter(Boolean inStock, BigDecimal minPrice, BigDecimal maxPrice, String titlePrefix) {
+}
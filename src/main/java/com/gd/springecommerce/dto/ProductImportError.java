@@ -0,0 +1,6 @@
+package com.gd.springecommerce.dto;
+
+import java.util.List;
+
+public record ProductImportError(long row, String sku, List<String> errors) {
+}
@@ -0,0 +1,4 @@
+package com.gd.springecommerce.dto;
+
+public record ProductImportSummary(long rows, long inserted, long updated, long rejected) {
+}
@@ -0,0 +1,17 @@
+package com.gd.springecommerce.dto;
+
+import com.gd.springecommerce.model.Product;
+import lombok.AccessLevel;
+import lombok.Builder;
+import lombok.Data;
+import lombok.experimental.FieldDefaults;
+
+import java.util.List;
+
+@Data
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@Builder
+public class ProductPage {
+    List<Product> products;
+    Long nextCursor;
+}
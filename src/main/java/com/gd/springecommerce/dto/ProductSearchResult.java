@@ -0,0 +1,9 @@
+package com.gd.springecommerce.dto;
+
+import com.gd.springecommerce.model.Product;
+
+import java.util.List;
+
+// total is null when the search ran without the index and the match count is unknown
+public record ProductSearchResult(List<Product> products, Long total, int page, int size) {
+}
@@ -0,0 +1,18 @@
+package com.gd.springecommerce.dto;
+
+import com.gd.springecommerce.model.Product;
+import lombok.AccessLevel;
+import lombok.Builder;
+import lombok.Data;
+import lombok.experimental.FieldDefaults;
+
+import java.util.List;
+
+@Data
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@Builder
+public class ProductSlice {
+    List<Product> products;
+    // opaque, null on the last page
+    String nextCursor;
+}
@@ -3,5 +3,8 @@ package com.gd.springecommerce.enums;
 public enum OrderStatus {
     CONFIRMED,
     SHIPPED,
-    DELIVERED
+    DELIVERED,
+    // statuses are stored by ordinal, new ones go last
+    PENDING,
+    REJECTED
 }
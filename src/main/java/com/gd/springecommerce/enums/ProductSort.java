@@ -0,0 +1,25 @@
+package com.gd.springecommerce.enums;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import org.springframework.data.domain.Sort;
+
+// every order ends on the id so it is total and can be resumed from the last row of a page
+@Getter
+@RequiredArgsConstructor
+@FieldDefaults(makeFinal = true, level = AccessLevel.PRIVATE)
+public enum ProductSort {
+    ID(null, Sort.Direction.ASC),
+    PRICE_ASC("price", Sort.Direction.ASC),
+    PRICE_DESC("price", Sort.Direction.DESC),
+    TITLE("title", Sort.Direction.ASC);
+
+    String attribute;
+    Sort.Direction direction;
+
+    public Sort toSort() {
+        return attribute == null ? Sort.by(direction, "id") : Sort.by(direction, attribute, "id");
+    }
+}
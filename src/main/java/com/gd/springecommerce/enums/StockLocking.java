@@ -0,0 +1,11 @@
+package com.gd.springecommerce.enums;
+
+// how a synchronous checkout takes the stock of its lines
+public enum StockLocking {
+    // one conditional UPDATE per line, a row is locked only while its statement runs
+    CONDITIONAL,
+    // reads the rows unlocked and writes them only if their version is unchanged, conflicting checkouts are retried
+    OPTIMISTIC,
+    // locks the rows with SELECT ... FOR UPDATE in id order, then writes them
+    PESSIMISTIC
+}
@@ -0,0 +1,6 @@
+package com.gd.springecommerce.event;
+
+import java.util.Collection;
+
+public record ProductsChangedEvent(Collection<Long> productIds) {
+}
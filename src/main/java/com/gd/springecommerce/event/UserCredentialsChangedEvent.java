@@ -0,0 +1,4 @@
+package com.gd.springecommerce.event;
+
+public record UserCredentialsChangedEvent(String email) {
+}
@@ -0,0 +1,7 @@
+package com.gd.springecommerce.exception;
+
+public class CatalogVersionExpiredException extends RuntimeException{
+    public CatalogVersionExpiredException(String message) {
+        super(message);
+    }
+}
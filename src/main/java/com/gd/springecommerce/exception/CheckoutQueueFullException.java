@@ -0,0 +1,7 @@
+package com.gd.springecommerce.exception;
+
+public class CheckoutQueueFullException extends RuntimeException{
+    public CheckoutQueueFullException(String message) {
+        super(message);
+    }
+}
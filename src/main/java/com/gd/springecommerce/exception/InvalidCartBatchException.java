@@ -0,0 +1,7 @@
+package com.gd.springecommerce.exception;
+
+public class InvalidCartBatchException extends RuntimeException{
+    public InvalidCartBatchException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,7 @@
+package com.gd.springecommerce.exception;
+
+public class InvalidCursorException extends RuntimeException{
+    public InvalidCursorException(String message) {
+        super(message);
+    }
+}
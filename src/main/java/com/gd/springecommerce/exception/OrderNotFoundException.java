@@ -0,0 +1,7 @@
+package com.gd.springecommerce.exception;
+
+public class OrderNotFoundException extends RuntimeException{
+    public OrderNotFoundException(String message) {
+        super(message);
+    }
+}
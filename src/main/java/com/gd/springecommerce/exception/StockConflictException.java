@@ -0,0 +1,16 @@
+package com.gd.springecommerce.exception;
+
+import java.util.List;
+
+public class StockConflictException extends RuntimeException{
+    private final List<Long> productIds;
+
+    public StockConflictException(String message, List<Long> productIds) {
+        super(message);
+        this.productIds = productIds;
+    }
+
+    public List<Long> getProductIds() {
+        return productIds;
+    }
+}
@@ -0,0 +1,53 @@
+package com.gd.springecommerce.importer;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.RuntimeJsonMappingException;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+// the first line is the header, columns are matched by name
+@FieldDefaults(makeFinal = true, level = AccessLevel.PRIVATE)
+public class CsvImportRowReader implements ImportRowReader {
+    static CsvMapper CSV_MAPPER = new CsvMapper();
+
+    MappingIterator<Map<String, String>> rows;
+    @NonFinal
+    long number;
+
+    public CsvImportRowReader(InputStream inputStream) throws IOException {
+        this.rows = CSV_MAPPER.readerForMapOf(String.class)
+                .with(CsvSchema.emptySchema().withHeader())
+                .readValues(inputStream);
+    }
+
+    @Override
+    public ImportRow next() throws IOException {
+        Map<String, String> fields = Map.of();
+        String parseError = null;
+        try {
+            if (!rows.hasNextValue()) {
+                return null;
+            }
+            fields = rows.nextValue();
+        } catch (JsonProcessingException e) {
+            parseError = e.getOriginalMessage();
+        } catch (RuntimeJsonMappingException e) {
+            parseError = e.getMessage();
+        }
+        number++;
+        return new ImportRow(number, fields, parseError);
+    }
+
+    @Override
+    public void close() throws IOException {
+        rows.close();
+    }
+}
@@ -0,0 +1,7 @@
+package com.gd.springecommerce.importer;
+
+import java.util.Map;
+
+// fields are raw text, parseError is set when the row itself could not be read
+public record ImportRow(long number, Map<String, String> fields, String parseError) {
+}
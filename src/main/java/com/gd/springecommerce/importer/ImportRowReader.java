@@ -0,0 +1,9 @@
+package com.gd.springecommerce.importer;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+public interface ImportRowReader extends Closeable {
+    // returns null when the input is exhausted
+    ImportRow next() throws IOException;
+}
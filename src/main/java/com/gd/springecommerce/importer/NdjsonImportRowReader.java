@@ -0,0 +1,61 @@
+package com.gd.springecommerce.importer;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+// each line is parsed on its own, so a malformed line only rejects that row
+@FieldDefaults(makeFinal = true, level = AccessLevel.PRIVATE)
+public class NdjsonImportRowReader implements ImportRowReader {
+
+    BufferedReader reader;
+    ObjectReader objectReader;
+    @NonFinal
+    long number;
+
+    public NdjsonImportRowReader(InputStream inputStream, ObjectMapper objectMapper) {
+        this.reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+        this.objectReader = objectMapper.reader(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS);
+    }
+
+    @Override
+    public ImportRow next() throws IOException {
+        String line;
+        do {
+            line = reader.readLine();
+            if (line == null) {
+                return null;
+            }
+        } while (line.isBlank());
+        number++;
+        try {
+            JsonNode node = objectReader.readTree(line);
+            if (!node.isObject()) {
+                return new ImportRow(number, Map.of(), "Row is not a JSON object");
+            }
+            Map<String, String> fields = new HashMap<>();
+            node.fields().forEachRemaining(field -> fields.put(field.getKey(), field.getValue().isNull() ? null : field.getValue().asText()));
+            return new ImportRow(number, fields, null);
+        } catch (JsonProcessingException e) {
+            return new ImportRow(number, Map.of(), e.getOriginalMessage());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
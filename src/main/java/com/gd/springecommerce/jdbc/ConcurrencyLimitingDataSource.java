@@ -0,0 +1,115 @@
+package com.gd.springecommerce.jdbc;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// A connection holds its permit until it is closed, which for @Transactional code is when the transaction completes,
+// so thousands of virtual threads queue here in FIFO order instead of piling up on the pool.
+// A thread that already holds a connection opens further ones without a permit: on MySQL Hibernate fetches each
+// block of a table-backed sequence on a separate connection mid-transaction, and with every permit held by such
+// transactions none of them could get one. The pool has to leave room for those connections above the permits.
+@FieldDefaults(makeFinal = true, level = AccessLevel.PRIVATE)
+public class ConcurrencyLimitingDataSource extends DelegatingDataSource {
+
+    Semaphore permits;
+    int maxConcurrency;
+    Duration acquireTimeout;
+    LongAdder timeouts;
+    ThreadLocal<AtomicInteger> heldConnections = ThreadLocal.withInitial(AtomicInteger::new);
+
+    public ConcurrencyLimitingDataSource(DataSource targetDataSource, int maxConcurrency, Duration acquireTimeout) {
+        this(targetDataSource, maxConcurrency, acquireTimeout, new LongAdder());
+    }
+
+    public ConcurrencyLimitingDataSource(DataSource targetDataSource, int maxConcurrency, Duration acquireTimeout, LongAdder timeouts) {
+        super(targetDataSource);
+        this.permits = new Semaphore(maxConcurrency, true);
+        this.maxConcurrency = maxConcurrency;
+        this.acquireTimeout = acquireTimeout;
+        this.timeouts = timeouts;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return limited(() -> super.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return limited(() -> super.getConnection(username, password));
+    }
+
+    public int getAvailablePermits() {
+        return permits.availablePermits();
+    }
+
+    private void acquire() throws SQLException {
+        try {
+            if (!permits.tryAcquire(acquireTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                timeouts.increment();
+                throw new SQLTransientConnectionException("Timed out after " + acquireTimeout.toMillis() + "ms waiting for one of " + maxConcurrency + " JDBC permits");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLTransientConnectionException("Interrupted while waiting for a JDBC permit", e);
+        }
+    }
+
+    private Connection limited(ConnectionSupplier supplier) throws SQLException {
+        // the counter is kept with the connection, so a close on another thread still updates the opening one
+        AtomicInteger held = heldConnections.get();
+        boolean nested = held.get() > 0;
+        if (!nested) {
+            acquire();
+        }
+        Connection connection;
+        try {
+            connection = supplier.get();
+        } catch (SQLException | RuntimeException e) {
+            if (!nested) {
+                permits.release();
+            }
+            throw e;
+        }
+        held.incrementAndGet();
+        AtomicBoolean released = new AtomicBoolean();
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+            if (method.getName().equals("close") && released.compareAndSet(false, true)) {
+                try {
+                    return method.invoke(connection, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getTargetException();
+                } finally {
+                    held.decrementAndGet();
+                    if (!nested) {
+                        permits.release();
+                    }
+                }
+            }
+            try {
+                return method.invoke(connection, args);
+            } catch (InvocationTargetException e) {
+                throw e.getTargetException();
+            }
+        });
+    }
+
+    @FunctionalInterface
+    private interface ConnectionSupplier {
+        Connection get() throws SQLException;
+    }
+}
@@ -0,0 +1,61 @@
+package com.gd.springecommerce.jdbc;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.LongAdder;
+
+// A replica stays out of rotation until a heartbeat check finds it caught up
+@FieldDefaults(makeFinal = true, level = AccessLevel.PRIVATE)
+public class ReadReplica {
+    @Getter
+    String name;
+    @Getter
+    DataSource dataSource;
+    LongAdder connections;
+    LongAdder unhealthyChecks;
+    @NonFinal
+    volatile boolean healthy;
+    @NonFinal
+    @Getter
+    volatile long lagMillis = -1;
+
+    public ReadReplica(String name, DataSource dataSource) {
+        this(name, dataSource, new LongAdder(), new LongAdder());
+    }
+
+    public ReadReplica(String name, DataSource dataSource, LongAdder connections, LongAdder unhealthyChecks) {
+        this.name = name;
+        this.dataSource = dataSource;
+        this.connections = connections;
+        this.unhealthyChecks = unhealthyChecks;
+    }
+
+    public boolean isHealthy() {
+        return healthy;
+    }
+
+    Connection getConnection() throws SQLException {
+        Connection connection = dataSource.getConnection();
+        connections.increment();
+        return connection;
+    }
+
+    void recordLag(long lagMillis, long maxLagMillis) {
+        this.lagMillis = lagMillis;
+        this.healthy = lagMillis <= maxLagMillis;
+        if (!healthy) {
+            unhealthyChecks.increment();
+        }
+    }
+
+    void markDown() {
+        healthy = false;
+        unhealthyChecks.increment();
+    }
+}
@@ -0,0 +1,25 @@
+package com.gd.springecommerce.jdbc;
+
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+
+@Component
+@RequiredArgsConstructor
+@FieldDefaults(makeFinal = true, level = AccessLevel.PRIVATE)
+public class ReplicaHealthCheck {
+    DataSource dataSource;
+
+    // without replicas configured the DataSource is not a routing one and there is nothing to check
+    @Scheduled(fixedDelayString = "#{@readReplicaProperties.checkInterval.toMillis()}")
+    public void checkReplicas() throws SQLException {
+        if (dataSource.isWrapperFor(ReplicaRoutingDataSource.class)) {
+            dataSource.unwrap(ReplicaRoutingDataSource.class).checkHealth();
+        }
+    }
+}
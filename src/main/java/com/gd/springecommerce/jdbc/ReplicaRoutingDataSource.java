@@ -0,0 +1,174 @@
+package com.gd.springecommerce.jdbc;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+// Read-only transactions started inside readFromReplica take their connection from a replica whose heartbeat is
+// within the allowed lag, everything else goes to the primary. The connection handed out is lazy, the pool is only
+// picked at the first statement, once the transaction has declared whether it is read-only.
+@FieldDefaults(makeFinal = true, level = AccessLevel.PRIVATE)
+public class ReplicaRoutingDataSource extends LazyConnectionDataSourceProxy implements AutoCloseable {
+    static String CREATE_HEARTBEAT = "CREATE TABLE IF NOT EXISTS replication_heartbeat (id INT PRIMARY KEY, beat_at BIGINT NOT NULL)";
+    static String UPDATE_HEARTBEAT = "UPDATE replication_heartbeat SET beat_at = ? WHERE id = 1";
+    static String INSERT_HEARTBEAT = "INSERT INTO replication_heartbeat (id, beat_at) VALUES (1, ?)";
+    static String SELECT_HEARTBEAT = "SELECT beat_at FROM replication_heartbeat WHERE id = 1";
+    static ThreadLocal<Boolean> REPLICA_READS = new ThreadLocal<>();
+
+    Router router;
+
+    public ReplicaRoutingDataSource(DataSource primary, List<ReadReplica> replicas, Duration maxLag, LongAdder fallbacks) {
+        this(new Router(primary, List.copyOf(replicas), maxLag.toMillis(), fallbacks));
+    }
+
+    private ReplicaRoutingDataSource(Router router) {
+        super(router);
+        this.router = router;
+    }
+
+    // the work may see data up to the allowed lag old, so it is only for reads that answer a request and are not
+    // kept, a read that has to see a write just made or that fills a cache stays on the primary
+    public static <T> T readFromReplica(Supplier<T> work) {
+        Boolean previous = REPLICA_READS.get();
+        REPLICA_READS.set(Boolean.TRUE);
+        try {
+            return work.get();
+        } finally {
+            if (previous == null) {
+                REPLICA_READS.remove();
+            } else {
+                REPLICA_READS.set(previous);
+            }
+        }
+    }
+
+    public static void readFromReplica(Runnable work) {
+        readFromReplica(() -> {
+            work.run();
+            return null;
+        });
+    }
+
+    public DataSource getPrimary() {
+        return router.primary;
+    }
+
+    public List<ReadReplica> getReplicas() {
+        return router.replicas;
+    }
+
+    // writes the time to the primary and reads back the copy every replica has, the difference is how far the
+    // replica is behind plus up to one check interval
+    public void checkHealth() {
+        long now = System.currentTimeMillis();
+        try (Connection connection = router.primary.getConnection()) {
+            beat(connection, now);
+        } catch (SQLException e) {
+            // the replicas are still checked, their copies age until the primary is back
+        }
+        for (ReadReplica replica : router.replicas) {
+            try (Connection connection = replica.getDataSource().getConnection();
+                 PreparedStatement statement = connection.prepareStatement(SELECT_HEARTBEAT);
+                 ResultSet resultSet = statement.executeQuery()) {
+                if (resultSet.next()) {
+                    replica.recordLag(Math.max(0, now - resultSet.getLong(1)), router.maxLagMillis);
+                } else {
+                    replica.markDown();
+                }
+            } catch (SQLException e) {
+                replica.markDown();
+            }
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        for (ReadReplica replica : router.replicas) {
+            if (replica.getDataSource() instanceof AutoCloseable closeable) {
+                closeable.close();
+            }
+        }
+        if (router.primary instanceof AutoCloseable closeable) {
+            closeable.close();
+        }
+    }
+
+    private void beat(Connection connection, long now) throws SQLException {
+        if (router.heartbeatTableCreated.compareAndSet(false, true)) {
+            try (PreparedStatement statement = connection.prepareStatement(CREATE_HEARTBEAT)) {
+                statement.execute();
+            } catch (SQLException e) {
+                router.heartbeatTableCreated.set(false);
+                throw e;
+            }
+        }
+        try (PreparedStatement update = connection.prepareStatement(UPDATE_HEARTBEAT)) {
+            update.setLong(1, now);
+            if (update.executeUpdate() == 0) {
+                try (PreparedStatement insert = connection.prepareStatement(INSERT_HEARTBEAT)) {
+                    insert.setLong(1, now);
+                    insert.executeUpdate();
+                }
+            }
+        }
+        if (!connection.getAutoCommit()) {
+            connection.commit();
+        }
+    }
+
+    @FieldDefaults(makeFinal = true, level = AccessLevel.PRIVATE)
+    private static class Router extends AbstractDataSource {
+        DataSource primary;
+        List<ReadReplica> replicas;
+        long maxLagMillis;
+        LongAdder fallbacks;
+        AtomicInteger next = new AtomicInteger();
+        AtomicBoolean heartbeatTableCreated = new AtomicBoolean();
+
+        Router(DataSource primary, List<ReadReplica> replicas, long maxLagMillis, LongAdder fallbacks) {
+            this.primary = primary;
+            this.replicas = replicas;
+            this.maxLagMillis = maxLagMillis;
+            this.fallbacks = fallbacks;
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            if (Boolean.TRUE.equals(REPLICA_READS.get()) && TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+                // round robin over the healthy replicas, one that refuses a connection is skipped until the next check
+                int start = next.getAndIncrement();
+                for (int i = 0; i < replicas.size(); i++) {
+                    ReadReplica replica = replicas.get(Math.floorMod(start + i, replicas.size()));
+                    if (replica.isHealthy()) {
+                        try {
+                            return replica.getConnection();
+                        } catch (SQLException e) {
+                            replica.markDown();
+                        }
+                    }
+                }
+                fallbacks.increment();
+            }
+            return primary.getConnection();
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            return primary.getConnection(username, password);
+        }
+    }
+}
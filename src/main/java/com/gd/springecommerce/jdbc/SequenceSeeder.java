@@ -0,0 +1,54 @@
+package com.gd.springecommerce.jdbc;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.id.enhanced.DatabaseStructure;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+// Product, Order and OrderLine take ids from pooled sequences. MySQL has no sequences, so Hibernate keeps each one in
+// a one-row table that it creates at 1, and on a schema that used IDENTITY before it would hand out ids already taken.
+// The tables are moved past the highest id once the schema is updated and before the first insert. A pooled block
+// ends at the stored value, so the value becomes the highest id plus a whole block, and it only ever moves forward.
+@Component
+public class SequenceSeeder {
+
+    // the factory is only taken so the schema exists before the seeding
+    public SequenceSeeder(DataSource dataSource, EntityManagerFactory entityManagerFactory) {
+        SessionFactoryImplementor sessionFactory = entityManagerFactory.unwrap(SessionFactoryImplementor.class);
+        if (!sessionFactory.getJdbcServices().getDialect().getSequenceSupport().supportsSequences()) {
+            seed(new JdbcTemplate(dataSource), sequencesOf(sessionFactory));
+        }
+    }
+
+    // read from the mapping, so a block is always the allocationSize the entity declares
+    static List<SeededSequence> sequencesOf(SessionFactoryImplementor sessionFactory) {
+        List<SeededSequence> sequences = new ArrayList<>();
+        sessionFactory.getMappingMetamodel().forEachEntityDescriptor(entity -> {
+            if (entity.getGenerator() instanceof SequenceStyleGenerator generator) {
+                DatabaseStructure structure = generator.getDatabaseStructure();
+                sequences.add(new SeededSequence(structure.getPhysicalName().render(),
+                        entity.getIdentifierTableDetails().getTableName(), structure.getIncrementSize()));
+            }
+        });
+        return sequences;
+    }
+
+    static void seed(JdbcTemplate jdbcTemplate, List<SeededSequence> sequences) {
+        for (SeededSequence sequence : sequences) {
+            Long maxId = jdbcTemplate.queryForObject("SELECT MAX(id) FROM " + sequence.table(), Long.class);
+            if (maxId != null) {
+                long nextValue = maxId + sequence.blockSize();
+                jdbcTemplate.update("UPDATE " + sequence.name() + " SET next_val = ? WHERE next_val < ?", nextValue, nextValue);
+            }
+        }
+    }
+
+    record SeededSequence(String name, String table, int blockSize) {
+    }
+}
@@ -0,0 +1,25 @@
+package com.gd.springecommerce.listener;
+
+import com.gd.springecommerce.cart.CartStore;
+import com.gd.springecommerce.service.InventoryReservationService;
+import jakarta.servlet.http.HttpSessionEvent;
+import jakarta.servlet.http.HttpSessionListener;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import org.springframework.stereotype.Component;
+
+@Component
+@RequiredArgsConstructor
+@FieldDefaults(makeFinal = true, level = AccessLevel.PRIVATE)
+public class CartSessionListener implements HttpSessionListener {
+
+    InventoryReservationService inventoryReservationService;
+    CartStore cartStore;
+
+    @Override
+    public void sessionDestroyed(HttpSessionEvent event) {
+        inventoryReservationService.releaseAll(event.getSession().getId());
+        cartStore.removeCart(event.getSession().getId());
+    }
+}
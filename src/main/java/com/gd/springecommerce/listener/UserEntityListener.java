@@ -0,0 +1,25 @@
+package com.gd.springecommerce.listener;
+
+import com.gd.springecommerce.event.UserCredentialsChangedEvent;
+import com.gd.springecommerce.model.User;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+@Component
+@RequiredArgsConstructor
+@FieldDefaults(makeFinal = true, level = AccessLevel.PRIVATE)
+public class UserEntityListener {
+
+    ApplicationEventPublisher eventPublisher;
+
+    @PostUpdate
+    @PostRemove
+    public void onCredentialsChanged(User user) {
+        eventPublisher.publishEvent(new UserCredentialsChangedEvent(user.getEmail()));
+    }
+}
@@ -2,6 +2,7 @@ package com.gd.springecommerce.mapper;
 
 import com.gd.springecommerce.dto.CartProductDTO;
 import com.gd.springecommerce.dto.ProductDTO;
+import com.gd.springecommerce.model.OrderLine;
 import com.gd.springecommerce.model.Product;
 import org.mapstruct.Mapper;
 import org.mapstruct.Mapping;
@@ -15,5 +16,13 @@ public interface ProductMapper {
     @Mapping(source = "productDTO.quantity", target = "quantity")
     @Mapping(target = "subTotal", expression = "java(product.getPrice().multiply(java.math.BigDecimal.valueOf(productDTO.getQuantity())))")
     CartProductDTO toCartProductDTO(Product product, ProductDTO productDTO);
+    @Mapping(target = "sku", ignore = true)
+    @Mapping(target = "available", ignore = true)
+    @Mapping(target = "price", ignore = true)
+    @Mapping(target = "version", ignore = true)
     Product cartProductDTOToProduct(CartProductDTO cartProductDTO);
+    @Mapping(source = "id", target = "productId")
+    @Mapping(target = "id", ignore = true)
+    @Mapping(target = "order", ignore = true)
+    OrderLine toOrderLine(CartProductDTO cartProductDTO);
 }
@@ -0,0 +1,110 @@
+package com.gd.springecommerce.metrics;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Counters and histograms keyed by name and labels, rendered in the Prometheus text format.
+// A lookup costs a map probe, hot paths keep the returned meter instead of looking it up per event.
+@Component
+@FieldDefaults(makeFinal = true, level = AccessLevel.PRIVATE)
+public class MetricsRegistry {
+    static double[] QUANTILES = {0.5, 0.99, 0.999};
+
+    ConcurrentMap<String, Family> families = new ConcurrentHashMap<>();
+
+    // durations recorded in nanoseconds and exposed in seconds
+    public Histogram timer(String name, String... labels) {
+        return (Histogram) family(name, Type.TIMER).meters.computeIfAbsent(labelsOf(labels), key -> new Histogram());
+    }
+
+    public Histogram histogram(String name, String... labels) {
+        return (Histogram) family(name, Type.HISTOGRAM).meters.computeIfAbsent(labelsOf(labels), key -> new Histogram());
+    }
+
+    public LongAdder counter(String name, String... labels) {
+        return (LongAdder) family(name, Type.COUNTER).meters.computeIfAbsent(labelsOf(labels), key -> new LongAdder());
+    }
+
+    // histograms are exposed as summaries, their quantiles cover everything recorded since startup
+    public String scrape() {
+        StringBuilder out = new StringBuilder();
+        for (Family family : new TreeMap<>(families).values()) {
+            out.append("# TYPE ").append(family.name).append(family.type == Type.COUNTER ? " counter" : " summary").append('\n');
+            for (Map.Entry<String, Object> meter : new TreeMap<>(family.meters).entrySet()) {
+                String labels = meter.getKey();
+                if (meter.getValue() instanceof LongAdder counter) {
+                    sample(out, family.name, labels, null, counter.sum());
+                    continue;
+                }
+                Histogram.Snapshot snapshot = ((Histogram) meter.getValue()).snapshot();
+                double scale = family.type == Type.TIMER ? TimeUnit.SECONDS.toNanos(1) : 1;
+                for (double quantile : QUANTILES) {
+                    sample(out, family.name, labels, "quantile=\"" + quantile + "\"", snapshot.valueAtQuantile(quantile) / scale);
+                }
+                sample(out, family.name + "_count", labels, null, snapshot.count());
+                sample(out, family.name + "_sum", labels, null, snapshot.sum() / scale);
+            }
+        }
+        return out.toString();
+    }
+
+    private Family family(String name, Type type) {
+        Family family = families.computeIfAbsent(name, key -> new Family(name, type, new ConcurrentHashMap<>()));
+        if (family.type != type) {
+            throw new IllegalArgumentException("Metric " + name + " is already registered as a " + family.type);
+        }
+        return family;
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, String extraLabel, Number value) {
+        out.append(name);
+        if (!labels.isEmpty() || extraLabel != null) {
+            out.append('{').append(labels);
+            if (extraLabel != null) {
+                out.append(labels.isEmpty() ? "" : ",").append(extraLabel);
+            }
+            out.append('}');
+        }
+        out.append(' ').append(value).append('\n');
+    }
+
+    static String labelsOf(String... labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels come in name and value pairs");
+        }
+        StringBuilder rendered = new StringBuilder();
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) {
+                rendered.append(',');
+            }
+            rendered.append(labels[i]).append("=\"");
+            String value = labels[i + 1] == null ? "" : labels[i + 1];
+            for (int j = 0; j < value.length(); j++) {
+                char c = value.charAt(j);
+                switch (c) {
+                    case '\\' -> rendered.append("\\\\");
+                    case '"' -> rendered.append("\\\"");
+                    case '\n' -> rendered.append("\\n");
+                    default -> rendered.append(c);
+                }
+            }
+            rendered.append('"');
+        }
+        return rendered.toString();
+    }
+
+    private enum Type {
+        COUNTER, TIMER, HISTOGRAM
+    }
+
+    private record Family(String name, Type type, ConcurrentMap<String, Object> meters) {
+    }
+}
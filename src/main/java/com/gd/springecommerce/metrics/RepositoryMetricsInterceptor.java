@@ -0,0 +1,35 @@
+package com.gd.springecommerce.metrics;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+// Advice added to the repository proxies, a timer per repository method resolved once
+@FieldDefaults(makeFinal = true, level = AccessLevel.PRIVATE)
+public class RepositoryMetricsInterceptor implements MethodInterceptor {
+    MetricsRegistry metricsRegistry;
+    String repository;
+    ConcurrentMap<Method, Histogram> timers = new ConcurrentHashMap<>();
+
+    public RepositoryMetricsInterceptor(MetricsRegistry metricsRegistry, Class<?> repositoryInterface) {
+        this.metricsRegistry = metricsRegistry;
+        this.repository = repositoryInterface.getSimpleName();
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        Histogram timer = timers.computeIfAbsent(invocation.getMethod(),
+                method -> metricsRegistry.timer("repository_calls_seconds", "repository", repository, "method", method.getName()));
+        long start = System.nanoTime();
+        try {
+            return invocation.proceed();
+        } finally {
+            timer.recordSince(start);
+        }
+    }
+}
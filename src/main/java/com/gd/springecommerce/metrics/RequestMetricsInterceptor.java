@@ -0,0 +1,45 @@
+package com.gd.springecommerce.metrics;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+// Times every handled request by its mapping pattern, so path variables do not create a series per id
+@RequiredArgsConstructor
+@FieldDefaults(makeFinal = true, level = AccessLevel.PRIVATE)
+public class RequestMetricsInterceptor implements HandlerInterceptor {
+    static String START_ATTRIBUTE = RequestMetricsInterceptor.class.getName() + ".start";
+
+    MetricsRegistry metricsRegistry;
+    // skips rendering the labels on every request
+    ConcurrentMap<Series, Histogram> timers = new ConcurrentHashMap<>();
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        // an async dispatch runs the interceptors again, the first dispatch keeps the start time
+        if (request.getAttribute(START_ATTRIBUTE) == null) {
+            request.setAttribute(START_ATTRIBUTE, System.nanoTime());
+        }
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        if (request.getAttribute(START_ATTRIBUTE) instanceof Long start) {
+            Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+            Series series = new Series(request.getMethod(), pattern == null ? "UNKNOWN" : pattern.toString(), response.getStatus());
+            timers.computeIfAbsent(series, key -> metricsRegistry.timer("http_server_requests_seconds",
+                    "method", key.method(), "uri", key.uri(), "status", String.valueOf(key.status()))).recordSince(start);
+        }
+    }
+
+    private record Series(String method, String uri, int status) {
+    }
+}
@@ -1,28 +1,54 @@
 package com.gd.springecommerce.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.gd.springecommerce.enums.OrderStatus;
 import jakarta.persistence.*;
 import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
 import lombok.experimental.FieldDefaults;
+import org.hibernate.annotations.BatchSize;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
 
 @Entity
 @FieldDefaults(level = AccessLevel.PRIVATE)
 @Data
 @Builder
-@Table(name = "orders")
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "orders", indexes = @Index(name = "idx_orders_owner", columnList = "owner, id"))
 public class Order {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    // pooled sequence ids let Hibernate batch inserts, IDENTITY needs one round trip per row
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "orders_seq")
+    @SequenceGenerator(name = "orders_seq", sequenceName = "orders_seq", allocationSize = 50)
     Long id;
     @Builder.Default
     LocalDate orderDate = LocalDate.now();
     BigDecimal total;
     @Builder.Default
     OrderStatus orderStatus = OrderStatus.CONFIRMED;
+    // the email of the user who placed the order, only they can look it up
+    @JsonIgnore
+    String owner;
+    @Builder.Default
+    @OneToMany(mappedBy = "order", cascade = CascadeType.ALL, orphanRemoval = true)
+    @BatchSize(size = 256)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    List<OrderLine> lines = new ArrayList<>();
+
+    public void addLine(OrderLine line) {
+        line.setOrder(this);
+        lines.add(line);
+    }
 
 }
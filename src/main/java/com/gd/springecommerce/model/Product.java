@@ -1,23 +1,38 @@
 package com.gd.springecommerce.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import jakarta.persistence.*;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
+import lombok.NoArgsConstructor;
 
 import java.io.Serializable;
 import java.math.BigDecimal;
 
 @Entity
+@Table(indexes = {
+        @Index(name = "idx_product_price", columnList = "price, id"),
+        @Index(name = "idx_product_price_desc", columnList = "price DESC, id DESC"),
+        @Index(name = "idx_product_title", columnList = "title, id"),
+        @Index(name = "idx_product_available", columnList = "available")
+})
 @Data
 @JsonInclude
 @Builder
+@NoArgsConstructor
+@AllArgsConstructor
 public class Product implements Serializable {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "product_seq")
+    @SequenceGenerator(name = "product_seq", sequenceName = "product_seq", allocationSize = 50)
     private Long id;
+    // natural key of supplier catalogs, bulk imports upsert by it
+    @Column(unique = true, length = 64)
+    private String sku;
     @NotBlank(message = "Title is mandatory")
     @Column(nullable = false, length = 50)
     private String title;
@@ -27,4 +42,9 @@ public class Product implements Serializable {
     @NotNull(message = "Price is mandatory")
     @Column(nullable = false, length = 15)
     private BigDecimal price;
+    // bumped by every write, including the JDBC ones, so a checkout can tell its read is stale
+    @Version
+    @JsonIgnore
+    @Column(nullable = false)
+    private long version;
 }
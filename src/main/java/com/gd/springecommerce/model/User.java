@@ -1,7 +1,9 @@
 package com.gd.springecommerce.model;
 
+import com.gd.springecommerce.listener.UserEntityListener;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
+import jakarta.persistence.EntityListeners;
 import jakarta.persistence.Id;
 import jakarta.validation.constraints.Email;
 import jakarta.validation.constraints.NotBlank;
@@ -11,6 +13,7 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 @Entity
+@EntityListeners(UserEntityListener.class)
 @Data
 @NoArgsConstructor
 @Builder
@@ -0,0 +1,48 @@
+package com.gd.springecommerce.order;
+
+import com.gd.springecommerce.enums.OrderStatus;
+import com.gd.springecommerce.model.Order;
+import com.gd.springecommerce.repository.OrderRepository;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+import java.util.Optional;
+
+@Component
+@RequiredArgsConstructor
+@FieldDefaults(makeFinal = true, level = AccessLevel.PRIVATE)
+@ConditionalOnProperty(prefix = "ecommerce.orders", name = "store", havingValue = "jpa", matchIfMissing = true)
+public class JpaOrderStore implements OrderStore {
+    OrderRepository orderRepository;
+
+    @Override
+    public Order save(Order order) {
+        return orderRepository.save(order);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Optional<Order> findWithLinesById(Long id) {
+        return orderRepository.findWithLinesById(id);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<Long> findIdsByOrderStatus(OrderStatus status) {
+        return orderRepository.findIdsByOrderStatus(status);
+    }
+
+    // the limit is applied to the ids, a fetch join with a limit would page in memory
+    @Override
+    @Transactional(readOnly = true)
+    public List<Order> findLatestByOwner(String owner, int limit) {
+        List<Long> ids = orderRepository.findLatestIdsByOwner(owner, Limit.of(limit));
+        return ids.isEmpty() ? List.of() : orderRepository.findWithLinesByIdIn(ids);
+    }
+}
@@ -0,0 +1,227 @@
+package com.gd.springecommerce.order;
+
+import com.gd.springecommerce.enums.OrderStatus;
+import com.gd.springecommerce.model.Order;
+import com.gd.springecommerce.model.OrderLine;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+// One order database. Orders and their lines take ids from the shard's own sequence with the shard index in the low
+// bits, reserved a block at a time like a pooled sequence, so an id alone says which shard holds the order.
+@FieldDefaults(makeFinal = true, level = AccessLevel.PRIVATE)
+public class OrderShard implements AutoCloseable {
+    public static final int SHARD_BITS = 8;
+    public static final int MAX_SHARDS = 1 << SHARD_BITS;
+    static List<String> SCHEMA = List.of(
+            "CREATE TABLE IF NOT EXISTS orders (id BIGINT PRIMARY KEY, order_date DATE, total DECIMAL(38,2), order_status TINYINT NOT NULL, "
+                    + "owner VARCHAR(255), created_at BIGINT NOT NULL, INDEX orders_status_created_at (order_status, created_at), "
+                    + "INDEX orders_owner_created_at (owner, created_at))",
+            "CREATE TABLE IF NOT EXISTS order_line (id BIGINT PRIMARY KEY, order_id BIGINT NOT NULL, product_id BIGINT, title VARCHAR(255), "
+                    + "quantity INT, sub_total DECIMAL(38,2), INDEX order_line_order_id (order_id))",
+            "CREATE TABLE IF NOT EXISTS order_id_block (id INT PRIMARY KEY, next_val BIGINT NOT NULL)");
+    static String ADVANCE_BLOCK = "UPDATE order_id_block SET next_val = next_val + ? WHERE id = 1";
+    static String INSERT_BLOCK = "INSERT INTO order_id_block (id, next_val) VALUES (1, ?)";
+    static String SELECT_BLOCK = "SELECT next_val FROM order_id_block WHERE id = 1";
+    static String INSERT_ORDER = "INSERT INTO orders (id, order_date, total, order_status, owner, created_at) VALUES (?, ?, ?, ?, ?, ?)";
+    static String INSERT_LINE = "INSERT INTO order_line (id, order_id, product_id, title, quantity, sub_total) VALUES (?, ?, ?, ?, ?, ?)";
+    static String SELECT_ORDERS = "SELECT id, order_date, total, order_status, owner, created_at FROM orders";
+    static String SELECT_LINES = "SELECT id, order_id, product_id, title, quantity, sub_total FROM order_line WHERE order_id IN (:ids) ORDER BY id";
+
+    @Getter
+    int index;
+    @Getter
+    DataSource dataSource;
+    int idBlockSize;
+    JdbcTemplate jdbcTemplate;
+    NamedParameterJdbcTemplate namedJdbcTemplate;
+    // shard work is never part of the caller's transaction, which belongs to the primary, and it also runs from
+    // transaction completion callbacks, where only a new transaction is safe
+    TransactionTemplate writeTransaction;
+    TransactionTemplate readTransaction;
+    AtomicBoolean schemaCreated = new AtomicBoolean();
+    ReentrantLock idLock = new ReentrantLock();
+    @NonFinal
+    long nextSequence;
+    @NonFinal
+    long blockEnd;
+
+    public OrderShard(int index, DataSource dataSource, int idBlockSize) {
+        if (index < 0 || index >= MAX_SHARDS) {
+            throw new IllegalArgumentException("Shard index out of range " + index);
+        }
+        this.index = index;
+        this.dataSource = dataSource;
+        this.idBlockSize = idBlockSize;
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.namedJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        this.writeTransaction = new TransactionTemplate(transactionManager);
+        writeTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.readTransaction = new TransactionTemplate(transactionManager);
+        readTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        readTransaction.setReadOnly(true);
+    }
+
+    public static int shardOf(long id) {
+        return (int) (id & (MAX_SHARDS - 1));
+    }
+
+    // the tables are created on first use, a shard that is down at startup is skipped for writes until it is back
+    public void createSchema() {
+        if (schemaCreated.compareAndSet(false, true)) {
+            try {
+                SCHEMA.forEach(jdbcTemplate::execute);
+            } catch (RuntimeException e) {
+                schemaCreated.set(false);
+                throw e;
+            }
+        }
+    }
+
+    // a lock rather than synchronized, a virtual thread waiting on the block fetch would pin its carrier
+    public long nextId() {
+        idLock.lock();
+        try {
+            if (nextSequence == blockEnd) {
+                createSchema();
+                long end = writeTransaction.execute(status -> {
+                    // a lost race on the first insert fails this write, the order goes to another shard
+                    if (jdbcTemplate.update(ADVANCE_BLOCK, idBlockSize) == 0) {
+                        jdbcTemplate.update(INSERT_BLOCK, 1 + idBlockSize);
+                    }
+                    return jdbcTemplate.queryForObject(SELECT_BLOCK, Long.class);
+                });
+                nextSequence = end - idBlockSize;
+                blockEnd = end;
+            }
+            return (nextSequence++ << SHARD_BITS) | index;
+        } finally {
+            idLock.unlock();
+        }
+    }
+
+    // the order and its lines get ids of this shard, whatever ids they had before
+    public void insert(Order order, long createdAt) {
+        order.setId(nextId());
+        for (OrderLine line : order.getLines()) {
+            line.setId(nextId());
+        }
+        writeTransaction.executeWithoutResult(status -> {
+            jdbcTemplate.update(INSERT_ORDER, order.getId(), Date.valueOf(order.getOrderDate()), order.getTotal(),
+                    order.getOrderStatus().ordinal(), order.getOwner(), createdAt);
+            jdbcTemplate.batchUpdate(INSERT_LINE, order.getLines(), order.getLines().size(), (statement, line) -> {
+                statement.setLong(1, line.getId());
+                statement.setLong(2, order.getId());
+                statement.setObject(3, line.getProductId());
+                statement.setString(4, line.getTitle());
+                statement.setObject(5, line.getQuantity());
+                statement.setBigDecimal(6, line.getSubTotal());
+            });
+        });
+    }
+
+    public int updateStatus(Collection<Long> ids, OrderStatus from, OrderStatus to) {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        return writeTransaction.execute(status -> namedJdbcTemplate.update(
+                "UPDATE orders SET order_status = :to WHERE id IN (:ids) AND order_status = :from",
+                Map.of("to", to.ordinal(), "ids", ids, "from", from.ordinal())));
+    }
+
+    public void delete(long id) {
+        writeTransaction.executeWithoutResult(status -> {
+            jdbcTemplate.update("DELETE FROM order_line WHERE order_id = ?", id);
+            jdbcTemplate.update("DELETE FROM orders WHERE id = ?", id);
+        });
+    }
+
+    public Optional<Order> find(long id) {
+        createSchema();
+        return readTransaction.execute(status -> withLines(jdbcTemplate.query(SELECT_ORDERS + " WHERE id = ?", this::mapOrder, id)))
+                .stream()
+                .findFirst()
+                .map(PlacedOrder::order);
+    }
+
+    public List<Long> findIdsByOrderStatus(OrderStatus status) {
+        createSchema();
+        return readTransaction.execute(transaction -> jdbcTemplate.queryForList(
+                "SELECT id FROM orders WHERE order_status = ? ORDER BY id", Long.class, status.ordinal()));
+    }
+
+    public List<Long> findIdsPlacedBefore(OrderStatus status, long createdBefore, int limit) {
+        createSchema();
+        return readTransaction.execute(transaction -> jdbcTemplate.queryForList(
+                "SELECT id FROM orders WHERE order_status = ? AND created_at < ? ORDER BY created_at LIMIT ?",
+                Long.class, status.ordinal(), createdBefore, limit));
+    }
+
+    public List<PlacedOrder> findLatestByOwner(String owner, int limit) {
+        createSchema();
+        return readTransaction.execute(transaction -> withLines(jdbcTemplate.query(
+                SELECT_ORDERS + " WHERE owner = ? ORDER BY created_at DESC, id DESC LIMIT ?", this::mapOrder, owner, limit)));
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (dataSource instanceof AutoCloseable closeable) {
+            closeable.close();
+        }
+    }
+
+    // one query for the lines of all the orders, in the order the orders were read
+    private List<PlacedOrder> withLines(List<PlacedOrder> placedOrders) {
+        if (placedOrders.isEmpty()) {
+            return placedOrders;
+        }
+        Map<Long, Order> orders = new LinkedHashMap<>();
+        placedOrders.forEach(placedOrder -> orders.put(placedOrder.order().getId(), placedOrder.order()));
+        namedJdbcTemplate.query(SELECT_LINES, Map.of("ids", new ArrayList<>(orders.keySet())), (RowCallbackHandler) resultSet ->
+                orders.get(resultSet.getLong("order_id")).addLine(OrderLine.builder()
+                        .id(resultSet.getLong("id"))
+                        .productId(resultSet.getObject("product_id", Long.class))
+                        .title(resultSet.getString("title"))
+                        .quantity(resultSet.getObject("quantity", Integer.class))
+                        .subTotal(resultSet.getBigDecimal("sub_total"))
+                        .build()));
+        return placedOrders;
+    }
+
+    private PlacedOrder mapOrder(ResultSet resultSet, int row) throws SQLException {
+        Date orderDate = resultSet.getDate("order_date");
+        Order order = Order.builder()
+                .id(resultSet.getLong("id"))
+                .orderDate(orderDate == null ? null : orderDate.toLocalDate())
+                .total(resultSet.getBigDecimal("total"))
+                .orderStatus(OrderStatus.values()[resultSet.getInt("order_status")])
+                .owner(resultSet.getString("owner"))
+                .build();
+        return new PlacedOrder(resultSet.getLong("created_at"), order);
+    }
+
+    // the time the order was placed orders the listings merged across shards, ids only increase within a shard
+    public record PlacedOrder(long createdAt, Order order) {
+    }
+}
@@ -0,0 +1,16 @@
+package com.gd.springecommerce.order;
+
+import com.gd.springecommerce.enums.OrderStatus;
+import com.gd.springecommerce.model.Order;
+
+import java.util.List;
+import java.util.Optional;
+
+public interface OrderStore {
+    // called inside the checkout transaction, the order is only kept if that transaction commits
+    Order save(Order order);
+    Optional<Order> findWithLinesById(Long id);
+    List<Long> findIdsByOrderStatus(OrderStatus status);
+    // newest first
+    List<Order> findLatestByOwner(String owner, int limit);
+}
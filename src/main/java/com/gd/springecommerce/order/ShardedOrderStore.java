@@ -0,0 +1,263 @@
+package com.gd.springecommerce.order;
+
+import com.gd.springecommerce.config.CheckoutProperties;
+import com.gd.springecommerce.config.JdbcConcurrencyConfig;
+import com.gd.springecommerce.config.JdbcConcurrencyProperties;
+import com.gd.springecommerce.config.OrderStoreProperties;
+import com.gd.springecommerce.enums.OrderStatus;
+import com.gd.springecommerce.event.OrdersSettledEvent;
+import com.gd.springecommerce.metrics.MetricsRegistry;
+import com.gd.springecommerce.model.Order;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+// Orders live on one of several databases, picked round robin rather than by owner: a shard that is down only moves new
+// orders to the next one instead of failing the checkouts of every user placed on it. The id says which shard holds an
+// order, and an owner's listing is gathered from every shard. The stock stays on the primary, and the two cannot share
+// a transaction: the order is written to its shard as pending, a marker is written to the primary in the checkout
+// transaction, and the order is confirmed once that commits or deleted once it rolls back. An order left pending by a
+// crash in between is settled by the marker after the pending timeout.
+@Component
+@FieldDefaults(makeFinal = true, level = AccessLevel.PRIVATE)
+@ConditionalOnProperty(prefix = "ecommerce.orders", name = "store", havingValue = "sharded")
+public class ShardedOrderStore implements OrderStore, AutoCloseable {
+    static String CREATE_ALLOCATION = "CREATE TABLE IF NOT EXISTS order_allocation (order_id BIGINT PRIMARY KEY, allocated_at BIGINT NOT NULL)";
+    static String INSERT_ALLOCATION = "INSERT INTO order_allocation (order_id, allocated_at) VALUES (?, ?)";
+    static int RECONCILE_BATCH_SIZE = 1000;
+
+    @Getter
+    List<OrderShard> shards;
+    JdbcTemplate primary;
+    NamedParameterJdbcTemplate namedPrimary;
+    ExecutorService scatterExecutor;
+    AtomicInteger next = new AtomicInteger();
+    Duration pendingTimeout;
+    MetricsRegistry metricsRegistry;
+    ApplicationEventPublisher eventPublisher;
+    LongAdder deferredConfirmations;
+
+    public ShardedOrderStore(OrderStoreProperties properties, CheckoutProperties checkoutProperties, DataSource dataSource,
+                             DataSourceProperties dataSourceProperties, JdbcConcurrencyProperties jdbcConcurrencyProperties,
+                             MetricsRegistry metricsRegistry, ApplicationEventPublisher eventPublisher) {
+        // the async allocator locks the orders and their products in one transaction, which needs them in one database
+        if (!"sync".equals(checkoutProperties.getMode())) {
+            throw new IllegalStateException("Sharded orders need ecommerce.checkout.mode=sync");
+        }
+        if (properties.getShardUrls().isEmpty() || properties.getShardUrls().size() > OrderShard.MAX_SHARDS) {
+            throw new IllegalStateException("Sharded orders need between 1 and " + OrderShard.MAX_SHARDS + " ecommerce.orders.shard-urls");
+        }
+        List<OrderShard> shards = new ArrayList<>();
+        for (int i = 0; i < properties.getShardUrls().size(); i++) {
+            HikariConfig config = new HikariConfig();
+            config.setPoolName("order-shard-" + i);
+            config.setJdbcUrl(properties.getShardUrls().get(i));
+            config.setUsername(properties.getUsername() == null ? dataSourceProperties.determineUsername() : properties.getUsername());
+            config.setPassword(properties.getPassword() == null ? dataSourceProperties.determinePassword() : properties.getPassword());
+            config.setMaximumPoolSize(properties.getMaximumPoolSize());
+            config.setConnectionTimeout(properties.getConnectionTimeout().toMillis());
+            config.setInitializationFailTimeout(-1);
+            shards.add(new OrderShard(i, JdbcConcurrencyConfig.limit(new HikariDataSource(config), jdbcConcurrencyProperties, metricsRegistry),
+                    properties.getIdBlockSize()));
+        }
+        this.shards = List.copyOf(shards);
+        this.primary = new JdbcTemplate(dataSource);
+        this.namedPrimary = new NamedParameterJdbcTemplate(primary);
+        primary.execute(CREATE_ALLOCATION);
+        AtomicInteger threads = new AtomicInteger();
+        this.scatterExecutor = Executors.newFixedThreadPool(shards.size(), runnable -> {
+            Thread thread = new Thread(runnable, "order-shard-query-" + threads.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.pendingTimeout = properties.getPendingTimeout();
+        this.metricsRegistry = metricsRegistry;
+        this.eventPublisher = eventPublisher;
+        this.deferredConfirmations = metricsRegistry.counter("order_shard_deferred_confirmations_total");
+        for (OrderShard shard : this.shards) {
+            try {
+                shard.createSchema();
+            } catch (DataAccessException e) {
+                shardFailed(shard);
+            }
+        }
+    }
+
+    @Override
+    public Order save(Order order) {
+        long placedAt = System.currentTimeMillis();
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            insert(order, placedAt);
+            return order;
+        }
+        OrderStatus status = order.getOrderStatus();
+        order.setOrderStatus(OrderStatus.PENDING);
+        OrderShard shard = insert(order, placedAt);
+        primary.update(INSERT_ALLOCATION, order.getId(), placedAt);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int completion) {
+                try {
+                    if (completion == STATUS_COMMITTED) {
+                        if (shard.updateStatus(List.of(order.getId()), OrderStatus.PENDING, status) == 1) {
+                            order.setOrderStatus(status);
+                        }
+                    } else if (completion == STATUS_ROLLED_BACK) {
+                        shard.delete(order.getId());
+                    }
+                } catch (DataAccessException | TransactionException e) {
+                    // the order stays pending, the reconciler settles it by the marker
+                    deferredConfirmations.increment();
+                    shardFailed(shard);
+                }
+            }
+        });
+        return order;
+    }
+
+    @Override
+    public Optional<Order> findWithLinesById(Long id) {
+        int index = OrderShard.shardOf(id);
+        if (id <= 0 || index >= shards.size()) {
+            return Optional.empty();
+        }
+        return shards.get(index).find(id);
+    }
+
+    @Override
+    public List<Long> findIdsByOrderStatus(OrderStatus status) {
+        return gather(scatter(shard -> shard.findIdsByOrderStatus(status)))
+                .stream()
+                .flatMap(List::stream)
+                .sorted()
+                .toList();
+    }
+
+    // every shard returns the owner's newest orders, the newest of those across shards are the answer
+    @Override
+    public List<Order> findLatestByOwner(String owner, int limit) {
+        return gather(scatter(shard -> shard.findLatestByOwner(owner, limit)))
+                .stream()
+                .flatMap(List::stream)
+                .sorted(Comparator.comparingLong(OrderShard.PlacedOrder::createdAt)
+                        .thenComparingLong(placedOrder -> placedOrder.order().getId())
+                        .reversed())
+                .limit(limit)
+                .map(OrderShard.PlacedOrder::order)
+                .toList();
+    }
+
+    // Orders pending past the timeout lost their confirmation to a crash or an unreachable shard: those with a marker
+    // were paid for in stock and are confirmed, the rest were rolled back and are rejected. Markers are only dropped
+    // once every shard has been settled up to the cutoff.
+    @Scheduled(fixedDelayString = "#{@orderStoreProperties.reconcileInterval.toMillis()}")
+    public void reconcile() {
+        long cutoff = System.currentTimeMillis() - pendingTimeout.toMillis();
+        List<CompletableFuture<List<Long>>> stale = scatter(shard -> shard.findIdsPlacedBefore(OrderStatus.PENDING, cutoff, RECONCILE_BATCH_SIZE));
+        boolean settled = true;
+        for (int i = 0; i < shards.size(); i++) {
+            OrderShard shard = shards.get(i);
+            try {
+                List<Long> ids = stale.get(i).join();
+                if (ids.isEmpty()) {
+                    continue;
+                }
+                Set<Long> allocated = new HashSet<>(namedPrimary.queryForList(
+                        "SELECT order_id FROM order_allocation WHERE order_id IN (:ids)", Map.of("ids", ids), Long.class));
+                List<Long> rolledBack = ids.stream().filter(id -> !allocated.contains(id)).toList();
+                int confirmed = shard.updateStatus(allocated, OrderStatus.PENDING, OrderStatus.CONFIRMED);
+                int rejected = shard.updateStatus(rolledBack, OrderStatus.PENDING, OrderStatus.REJECTED);
+                metricsRegistry.counter("order_shard_reconciled_total", "status", "confirmed").add(confirmed);
+                metricsRegistry.counter("order_shard_reconciled_total", "status", "rejected").add(rejected);
+                // an order whose confirmation was deferred at checkout still holds its cart's reservation
+                eventPublisher.publishEvent(new OrdersSettledEvent(allocated, rolledBack));
+                settled &= ids.size() < RECONCILE_BATCH_SIZE;
+            } catch (CompletionException | DataAccessException | TransactionException e) {
+                settled = false;
+                shardFailed(shard);
+            }
+        }
+        if (settled) {
+            primary.update("DELETE FROM order_allocation WHERE allocated_at < ?", cutoff);
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        scatterExecutor.shutdownNow();
+        for (OrderShard shard : shards) {
+            shard.close();
+        }
+    }
+
+    // a new order goes to the next shard that takes the write, so one shard being down does not stop checkouts
+    private OrderShard insert(Order order, long placedAt) {
+        int start = next.getAndIncrement();
+        RuntimeException failure = null;
+        for (int i = 0; i < shards.size(); i++) {
+            OrderShard shard = shards.get(Math.floorMod(start + i, shards.size()));
+            try {
+                shard.insert(order, placedAt);
+                return shard;
+            } catch (DataAccessException | TransactionException e) {
+                shardFailed(shard);
+                failure = e;
+            }
+        }
+        throw failure;
+    }
+
+    private <T> List<CompletableFuture<T>> scatter(Function<OrderShard, T> query) {
+        return shards.stream()
+                .map(shard -> CompletableFuture.supplyAsync(() -> query.apply(shard), scatterExecutor))
+                .toList();
+    }
+
+    // a listing missing a shard would be silently wrong, so one failed shard fails it
+    private <T> List<T> gather(List<CompletableFuture<T>> futures) {
+        List<T> results = new ArrayList<>(futures.size());
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                results.add(futures.get(i).join());
+            } catch (CompletionException e) {
+                shardFailed(shards.get(i));
+                throw e.getCause() instanceof RuntimeException cause ? cause : e;
+            }
+        }
+        return results;
+    }
+
+    private void shardFailed(OrderShard shard) {
+        metricsRegistry.counter("order_shard_failures_total", "shard", String.valueOf(shard.getIndex())).increment();
+    }
+}
@@ -1,7 +1,33 @@
 package com.gd.springecommerce.repository;
 
+import com.gd.springecommerce.enums.OrderStatus;
 import com.gd.springecommerce.model.Order;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
 
 public interface OrderRepository extends JpaRepository<Order,Long> {
+
+    @Query("SELECT o FROM Order o LEFT JOIN FETCH o.lines WHERE o.id = :id")
+    Optional<Order> findWithLinesById(@Param("id") Long id);
+
+    @Query("SELECT o.id FROM Order o WHERE o.orderStatus = :status ORDER BY o.id")
+    List<Long> findIdsByOrderStatus(@Param("status") OrderStatus status);
+
+    @Query("SELECT o.id FROM Order o WHERE o.owner = :owner ORDER BY o.id DESC")
+    List<Long> findLatestIdsByOwner(@Param("owner") String owner, Limit limit);
+
+    @Query("SELECT o FROM Order o LEFT JOIN FETCH o.lines WHERE o.id IN :ids ORDER BY o.id DESC")
+    List<Order> findWithLinesByIdIn(@Param("ids") Collection<Long> ids);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT o FROM Order o WHERE o.id IN :ids AND o.orderStatus = :status ORDER BY o.id")
+    List<Order> lockByIdsAndOrderStatus(@Param("ids") Collection<Long> ids, @Param("status") OrderStatus status);
 }
@@ -1,22 +1,53 @@
 package com.gd.springecommerce.repository;
 
 import com.gd.springecommerce.model.Product;
-import jakarta.transaction.Transactional;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Stream;
+
 @Repository
-public interface ProductRepository extends JpaRepository<Product,Long> {
+public interface ProductRepository extends JpaRepository<Product,Long>, JpaSpecificationExecutor<Product>, ProductRepositoryCustom {
+    // the quantity replaces the stored one, so it only applies to the version it was read from
     @Modifying
     @Transactional
-    @Query("UPDATE Product p SET p.available = :quantity WHERE p.id = :id")
-    void updateProductAvailability(Integer quantity, Long id);
+    @Query("UPDATE Product p SET p.available = :quantity, p.version = p.version + 1 WHERE p.id = :id AND p.version = :version")
+    int updateProductAvailability(Integer quantity, Long id, long version);
 
     @Query("SELECT p FROM Product p WHERE p.id IN :ids")
     List<Product> findQuantityByIds(@Param("ids") List<Long> ids);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT p FROM Product p WHERE p.id IN :ids ORDER BY p.id")
+    List<Product> lockByIds(@Param("ids") Collection<Long> ids);
+
+    // read-only so a caller inside readFromReplica can be sent to a replica, derived queries get no transaction by default
+    @Transactional(readOnly = true)
+    List<Product> findByIdGreaterThanOrderByIdAsc(Long id, Limit limit);
+
+    @Transactional(readOnly = true)
+    Slice<Product> findByTitleContainingIgnoreCaseOrderByIdAsc(String title, Pageable pageable);
+
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT p FROM Product p ORDER BY p.id")
+    Stream<Product> streamAllOrderedById();
 }
@@ -0,0 +1,21 @@
+package com.gd.springecommerce.repository;
+
+import com.gd.springecommerce.model.Product;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+public interface ProductRepositoryCustom {
+    List<Long> decrementAvailable(Map<Long, Integer> quantities);
+    // writes only the rows still at the version read, throws StockConflictException for the others
+    List<Long> decrementAvailableIfUnchanged(Map<Long, Integer> quantities);
+    List<Long> decrementAvailableLocked(Map<Long, Integer> quantities);
+    // returns the ids of the products that already existed and were updated
+    List<Long> upsertBySku(Collection<Product> products);
+    // a bounded read without the count query of a Page
+    List<Product> findAll(Specification<Product> specification, Sort sort, Limit limit);
+}
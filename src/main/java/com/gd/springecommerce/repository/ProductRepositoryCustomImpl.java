@@ -0,0 +1,205 @@
+package com.gd.springecommerce.repository;
+
+import com.gd.springecommerce.exception.StockConflictException;
+import com.gd.springecommerce.model.Product;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import org.hibernate.Session;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+@RequiredArgsConstructor
+@FieldDefaults(makeFinal = true, level = AccessLevel.PRIVATE)
+public class ProductRepositoryCustomImpl implements ProductRepositoryCustom {
+    static String DECREMENT_AVAILABLE = "UPDATE product SET available = available - ?, version = version + 1 WHERE id = ? AND available >= ?";
+    static String DECREMENT_IF_UNCHANGED = "UPDATE product SET available = ?, version = version + 1 WHERE id = ? AND version = ?";
+    static String UPDATE_BY_ID = "UPDATE product SET title = ?, available = ?, price = ?, version = version + 1 WHERE id = ?";
+
+    JdbcTemplate jdbcTemplate;
+    EntityManager entityManager;
+
+    @Override
+    public List<Long> decrementAvailable(Map<Long, Integer> quantities) {
+        if (quantities.isEmpty()) {
+            return List.of();
+        }
+        // rows are updated in id order so concurrent checkouts lock them in the same order
+        List<Map.Entry<Long, Integer>> lines = quantities.entrySet()
+                .stream()
+                .sorted(Map.Entry.comparingByKey())
+                .toList();
+        int[] updatedRows = guardedBatchUpdate(DECREMENT_AVAILABLE, lines, (preparedStatement, line) -> {
+            preparedStatement.setInt(1, line.getValue());
+            preparedStatement.setLong(2, line.getKey());
+            preparedStatement.setInt(3, line.getValue());
+        });
+        List<Long> insufficient = new ArrayList<>();
+        for (int i = 0; i < updatedRows.length; i++) {
+            if (updatedRows[i] != 1) {
+                insufficient.add(lines.get(i).getKey());
+            }
+        }
+        return insufficient;
+    }
+
+    // The stock is checked against an unlocked read and written back only where the version is still the one read.
+    // Conflicts are found per row from the batch update counts, so the caller learns which products are contended.
+    @Override
+    public List<Long> decrementAvailableIfUnchanged(Map<Long, Integer> quantities) {
+        if (quantities.isEmpty()) {
+            return List.of();
+        }
+        Map<Long, Object[]> rows = entityManager.createQuery("SELECT p.id, p.available, p.version FROM Product p WHERE p.id IN :ids ORDER BY p.id", Object[].class)
+                .setParameter("ids", quantities.keySet())
+                .getResultStream()
+                .collect(Collectors.toMap(row -> (Long) row[0], row -> row, (left, right) -> left, LinkedHashMap::new));
+        List<Long> insufficient = quantities.entrySet()
+                .stream()
+                .filter(line -> !rows.containsKey(line.getKey()) || (Integer) rows.get(line.getKey())[1] < line.getValue())
+                .map(Map.Entry::getKey)
+                .toList();
+        if (!insufficient.isEmpty()) {
+            return insufficient;
+        }
+        List<Object[]> lines = new ArrayList<>(rows.values());
+        int[] updatedRows = guardedBatchUpdate(DECREMENT_IF_UNCHANGED, lines, (preparedStatement, row) -> {
+            preparedStatement.setInt(1, (Integer) row[1] - quantities.get((Long) row[0]));
+            preparedStatement.setLong(2, (Long) row[0]);
+            preparedStatement.setLong(3, (Long) row[2]);
+        });
+        List<Long> conflicts = new ArrayList<>();
+        for (int i = 0; i < updatedRows.length; i++) {
+            if (updatedRows[i] != 1) {
+                conflicts.add((Long) lines.get(i)[0]);
+            }
+        }
+        if (!conflicts.isEmpty()) {
+            throw new StockConflictException("Stock of the products " + conflicts + " changed during checkout", conflicts);
+        }
+        return List.of();
+    }
+
+    // The rows are locked in id order, as the conditional update does, and written back by Hibernate with their version bumped
+    @Override
+    public List<Long> decrementAvailableLocked(Map<Long, Integer> quantities) {
+        if (quantities.isEmpty()) {
+            return List.of();
+        }
+        Map<Long, Product> products = entityManager.createQuery("SELECT p FROM Product p WHERE p.id IN :ids ORDER BY p.id", Product.class)
+                .setParameter("ids", quantities.keySet())
+                .setLockMode(LockModeType.PESSIMISTIC_WRITE)
+                .getResultStream()
+                .collect(Collectors.toMap(Product::getId, product -> product));
+        List<Long> insufficient = quantities.entrySet()
+                .stream()
+                .filter(line -> !products.containsKey(line.getKey()) || products.get(line.getKey()).getAvailable() < line.getValue())
+                .map(Map.Entry::getKey)
+                .toList();
+        if (insufficient.isEmpty()) {
+            quantities.forEach((id, quantity) -> products.get(id).setAvailable(products.get(id).getAvailable() - quantity));
+        }
+        return insufficient;
+    }
+
+    // Existing skus are updated with one JDBC batch, new ones are persisted and flushed as one Hibernate batch.
+    // The persistence context is cleared afterwards so a long import keeps constant memory.
+    @Override
+    @Transactional
+    public List<Long> upsertBySku(Collection<Product> products) {
+        if (products.isEmpty()) {
+            return List.of();
+        }
+        Map<String, Long> existingIds = entityManager.createQuery("SELECT p.sku, p.id FROM Product p WHERE p.sku IN :skus", Object[].class)
+                .setParameter("skus", products.stream().map(Product::getSku).toList())
+                .getResultStream()
+                .collect(Collectors.toMap(row -> (String) row[0], row -> (Long) row[1]));
+        List<Product> updates = new ArrayList<>();
+        List<Product> inserts = new ArrayList<>();
+        for (Product product : products) {
+            Long id = existingIds.get(product.getSku());
+            if (id == null) {
+                inserts.add(product);
+            } else {
+                product.setId(id);
+                updates.add(product);
+            }
+        }
+        updates.sort((left, right) -> Long.compare(left.getId(), right.getId()));
+        jdbcTemplate.batchUpdate(UPDATE_BY_ID, updates, updates.size(), (preparedStatement, product) -> {
+            preparedStatement.setString(1, product.getTitle());
+            preparedStatement.setInt(2, product.getAvailable());
+            preparedStatement.setBigDecimal(3, product.getPrice());
+            preparedStatement.setLong(4, product.getId());
+        });
+        if (!inserts.isEmpty()) {
+            Session session = entityManager.unwrap(Session.class);
+            session.setJdbcBatchSize(inserts.size());
+            inserts.forEach(entityManager::persist);
+            entityManager.flush();
+            entityManager.clear();
+        }
+        return updates.stream().map(Product::getId).toList();
+    }
+
+    // fragment methods get no transaction from the repository, read-only lets a caller inside readFromReplica reach a replica
+    @Override
+    @Transactional(readOnly = true)
+    public List<Product> findAll(Specification<Product> specification, Sort sort, Limit limit) {
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Product> query = builder.createQuery(Product.class);
+        Root<Product> root = query.from(Product.class);
+        Predicate predicate = specification.toPredicate(root, query, builder);
+        if (predicate != null) {
+            query.where(predicate);
+        }
+        query.orderBy(QueryUtils.toOrders(sort, root, builder));
+        return entityManager.createQuery(query)
+                .setMaxResults(limit.max())
+                .getResultList();
+    }
+
+    // Only an update count of 1 proves a guarded row was written. A driver that rewrites the batch may answer
+    // SUCCESS_NO_INFO instead, then the batch is undone to a savepoint and the rows are run one statement each.
+    private <T> int[] guardedBatchUpdate(String sql, List<T> rows, ParameterizedPreparedStatementSetter<T> setter) {
+        return jdbcTemplate.execute((ConnectionCallback<int[]>) connection -> {
+            if (connection.getAutoCommit()) {
+                throw new IllegalStateException("Guarded stock updates need a transaction");
+            }
+            Savepoint savepoint = connection.setSavepoint();
+            int[] updatedRows = jdbcTemplate.batchUpdate(sql, rows, rows.size(), setter)[0];
+            if (Arrays.stream(updatedRows).allMatch(count -> count == 0 || count == 1)) {
+                connection.releaseSavepoint(savepoint);
+                return updatedRows;
+            }
+            connection.rollback(savepoint);
+            int[] exactRows = new int[rows.size()];
+            for (int i = 0; i < rows.size(); i++) {
+                T row = rows.get(i);
+                exactRows[i] = jdbcTemplate.update(sql, preparedStatement -> setter.setValues(preparedStatement, row));
+            }
+            return exactRows;
+        });
+    }
+}
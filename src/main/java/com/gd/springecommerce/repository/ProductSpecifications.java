@@ -0,0 +1,51 @@
+package com.gd.springecommerce.repository;
+
+import com.gd.springecommerce.enums.ProductSort;
+import com.gd.springecommerce.model.Product;
+import jakarta.persistence.criteria.Path;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.math.BigDecimal;
+
+// Every predicate is a range over an indexed column, so the filters can be combined freely without a table scan
+public final class ProductSpecifications {
+
+    private ProductSpecifications() {
+    }
+
+    public static Specification<Product> inStock() {
+        return (root, query, builder) -> builder.greaterThan(root.get("available"), 0);
+    }
+
+    public static Specification<Product> priceAtLeast(BigDecimal minPrice) {
+        return (root, query, builder) -> builder.greaterThanOrEqualTo(root.get("price"), minPrice);
+    }
+
+    public static Specification<Product> priceAtMost(BigDecimal maxPrice) {
+        return (root, query, builder) -> builder.lessThanOrEqualTo(root.get("price"), maxPrice);
+    }
+
+    // a leading wildcard could not use the title index, so only prefixes are supported
+    public static Specification<Product> titleStartsWith(String prefix) {
+        String pattern = prefix.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+        return (root, query, builder) -> builder.like(root.get("title"), pattern, '\\');
+    }
+
+    // Rows after (value, id) in the given order. The redundant bound on the sort column alone is what lets
+    // the database seek the index instead of evaluating the OR on every row.
+    public static <T extends Comparable<? super T>> Specification<Product> after(ProductSort sort, T value, long id) {
+        if (sort.getAttribute() == null) {
+            return (root, query, builder) -> builder.greaterThan(root.get("id"), id);
+        }
+        return (root, query, builder) -> {
+            Path<T> column = root.get(sort.getAttribute());
+            Path<Long> idColumn = root.get("id");
+            if (sort.getDirection().isDescending()) {
+                return builder.and(builder.lessThanOrEqualTo(column, value),
+                        builder.or(builder.lessThan(column, value), builder.lessThan(idColumn, id)));
+            }
+            return builder.and(builder.greaterThanOrEqualTo(column, value),
+                    builder.or(builder.greaterThan(column, value), builder.greaterThan(idColumn, id)));
+        };
+    }
+}
@@ -0,0 +1,84 @@
+package com.gd.springecommerce.search;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+// Ascending document numbers of one token, each shifted left by one with the low bit set when the token
+// opens the title. Documents are numbered in insertion order, so adding is usually an append.
+final class Postings {
+
+    private int[] entries = new int[2];
+    private int size;
+
+    void add(int document, boolean leading) {
+        int entry = document << 1 | (leading ? 1 : 0);
+        if (size == 0 || entries[size - 1] >>> 1 < document) {
+            ensureCapacity();
+            entries[size++] = entry;
+            return;
+        }
+        int index = indexOf(document);
+        if (index >= 0) {
+            entries[index] = entry;
+            return;
+        }
+        int insertAt = -index - 1;
+        ensureCapacity();
+        System.arraycopy(entries, insertAt, entries, insertAt + 1, size - insertAt);
+        entries[insertAt] = entry;
+        size++;
+    }
+
+    void remove(int document) {
+        int index = indexOf(document);
+        if (index >= 0) {
+            System.arraycopy(entries, index + 1, entries, index, size - index - 1);
+            size--;
+        }
+    }
+
+    void addTo(BitSet documents) {
+        for (int i = 0; i < size; i++) {
+            documents.set(entries[i] >>> 1);
+        }
+    }
+
+    void addLeadingTo(BitSet documents) {
+        for (int i = 0; i < size; i++) {
+            if ((entries[i] & 1) != 0) {
+                documents.set(entries[i] >>> 1);
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    private int indexOf(int document) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int candidate = entries[middle] >>> 1;
+            if (candidate < document) {
+                low = middle + 1;
+            } else if (candidate > document) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private void ensureCapacity() {
+        if (size == entries.length) {
+            entries = Arrays.copyOf(entries, size + (size >> 1) + 1);
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.gd.springecommerce.search;
+
+import com.gd.springecommerce.model.Product;
+import com.gd.springecommerce.util.LongObjectHashMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Inverted index over product titles. The sorted term dictionary answers exact tokens with a lookup
+// and prefixes with a range scan, the same walk a prefix trie does but without a node per character.
+// Every query token but the last must match a title token exactly, the last one matches as a prefix
+// so results follow the user while typing.
+//
+// Products get dense document numbers in insertion order, so matching is done on bit sets and flat
+// arrays and only the products of the requested page are touched.
+public class ProductSearchIndex {
+
+    private static final int MAX_TITLE_LENGTH = 0xFFFF;
+
+    private final NavigableMap<String, Postings> terms = new TreeMap<>();
+    private final LongObjectHashMap<Document> documents = new LongObjectHashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // indexed by document number, numbers of removed products are not reused until the index is rebuilt
+    private Product[] products = new Product[16];
+    private int[] titleLengths = new int[16];
+    private int documentCount;
+
+    public void put(Product product) {
+        String[] tokens = tokenize(product.getTitle());
+        lock.writeLock().lock();
+        try {
+            Document previous = documents.get(product.getId());
+            int number;
+            if (previous == null) {
+                number = documentCount++;
+                ensureCapacity();
+            } else {
+                number = previous.number();
+                removePostings(previous);
+            }
+            documents.put(product.getId(), new Document(number, tokens));
+            products[number] = product;
+            titleLengths[number] = Math.min(product.getTitle().length(), MAX_TITLE_LENGTH);
+            for (int i = 0; i < tokens.length; i++) {
+                terms.computeIfAbsent(tokens[i], ignored -> new Postings()).add(number, i == 0);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(long productId) {
+        lock.writeLock().lock();
+        try {
+            Document previous = documents.remove(productId);
+            if (previous != null) {
+                removePostings(previous);
+                products[previous.number()] = null;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            terms.clear();
+            documents.clear();
+            products = new Product[16];
+            titleLengths = new int[16];
+            documentCount = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return documents.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public SearchHits search(String query, long offset, int limit) {
+        String[] queryTokens = tokenize(query);
+        if (queryTokens.length == 0 || limit <= 0) {
+            return SearchHits.EMPTY;
+        }
+        String prefix = queryTokens[queryTokens.length - 1];
+        Set<String> exactTokens = new LinkedHashSet<>(Arrays.asList(queryTokens).subList(0, queryTokens.length - 1));
+        lock.readLock().lock();
+        try {
+            Collection<Postings> prefixed = terms.subMap(prefix, true, prefix + Character.MAX_VALUE, false).values();
+            if (prefixed.isEmpty()) {
+                return SearchHits.EMPTY;
+            }
+            BitSet matches = union(prefixed);
+            for (String token : exactTokens) {
+                Postings postings = terms.get(token);
+                if (postings == null) {
+                    return SearchHits.EMPTY;
+                }
+                BitSet tokenMatches = new BitSet(documentCount);
+                postings.addTo(tokenMatches);
+                matches.and(tokenMatches);
+            }
+            // the typed prefix as a whole word beats longer words, a title opening with the query gets a bonus
+            BitSet exact = new BitSet(documentCount);
+            Postings exactPrefix = terms.get(prefix);
+            if (exactPrefix != null) {
+                exactPrefix.addTo(exact);
+            }
+            BitSet leading = new BitSet(documentCount);
+            if (exactTokens.isEmpty()) {
+                prefixed.forEach(postings -> postings.addLeadingTo(leading));
+            } else {
+                terms.get(queryTokens[0]).addLeadingTo(leading);
+            }
+            // a page past the last document only needs the count, and no page keeps more than every document
+            if (offset >= documentCount) {
+                return new SearchHits(List.of(), matches.cardinality());
+            }
+            return collect(matches, exact, leading, (int) offset, (int) Math.min(offset + limit, documentCount));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // lower cased letter and digit runs, duplicates dropped, title order kept
+    static String[] tokenize(String text) {
+        if (text == null) {
+            return new String[0];
+        }
+        String lowerCase = text.toLowerCase(Locale.ROOT);
+        Set<String> tokens = new LinkedHashSet<>();
+        int start = -1;
+        for (int i = 0; i <= lowerCase.length(); i++) {
+            boolean tokenChar = i < lowerCase.length() && Character.isLetterOrDigit(lowerCase.charAt(i));
+            if (tokenChar && start < 0) {
+                start = i;
+            } else if (!tokenChar && start >= 0) {
+                tokens.add(lowerCase.substring(start, i));
+                start = -1;
+            }
+        }
+        return tokens.toArray(String[]::new);
+    }
+
+    private BitSet union(Collection<Postings> postings) {
+        BitSet documents = new BitSet(documentCount);
+        postings.forEach(list -> list.addTo(documents));
+        return documents;
+    }
+
+    // Keeps the best offset + limit matches in a min heap of packed rank keys: score, then shorter title,
+    // then lower document number. Everything else is only counted.
+    private SearchHits collect(BitSet matches, BitSet exact, BitSet leading, int offset, int keep) {
+        PriorityQueue<Long> top = new PriorityQueue<>(Math.min(keep, 1024) + 1);
+        long total = 0;
+        for (int number = matches.nextSetBit(0); number >= 0; number = matches.nextSetBit(number + 1)) {
+            total++;
+            long score = (exact.get(number) ? 3 : 1) + (leading.get(number) ? 1 : 0);
+            long key = score << 47 | (long) (MAX_TITLE_LENGTH - titleLengths[number]) << 31 | (Integer.MAX_VALUE - number);
+            if (top.size() < keep) {
+                top.add(key);
+            } else if (key > top.peek()) {
+                top.poll();
+                top.add(key);
+            }
+        }
+        List<Long> ranked = new ArrayList<>(top);
+        ranked.sort(Comparator.reverseOrder());
+        List<Product> page = ranked.subList(Math.min(offset, ranked.size()), ranked.size()).stream()
+                .map(key -> products[Integer.MAX_VALUE - (int) (key & Integer.MAX_VALUE)])
+                .toList();
+        return new SearchHits(page, total);
+    }
+
+    private void removePostings(Document document) {
+        for (String token : document.tokens()) {
+            Postings postings = terms.get(token);
+            postings.remove(document.number());
+            if (postings.isEmpty()) {
+                terms.remove(token);
+            }
+        }
+    }
+
+    private void ensureCapacity() {
+        if (documentCount > products.length) {
+            int capacity = products.length << 1;
+            products = Arrays.copyOf(products, capacity);
+            titleLengths = Arrays.copyOf(titleLengths, capacity);
+        }
+    }
+
+    private record Document(int number, String[] tokens) {
+    }
+}
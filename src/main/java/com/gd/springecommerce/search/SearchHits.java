@@ -0,0 +1,10 @@
+package com.gd.springecommerce.search;
+
+import com.gd.springecommerce.model.Product;
+
+import java.util.List;
+
+public record SearchHits(List<Product> products, long total) {
+
+    public static final SearchHits EMPTY = new SearchHits(List.of(), 0);
+}
@@ -0,0 +1,47 @@
+package com.gd.springecommerce.security;
+
+import com.gd.springecommerce.cache.CredentialCache;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.core.userdetails.UserDetails;
+
+@RequiredArgsConstructor
+@FieldDefaults(makeFinal = true, level = AccessLevel.PRIVATE)
+public class CachingAuthenticationProvider implements AuthenticationProvider {
+
+    AuthenticationProvider delegate;
+    CredentialCache credentialCache;
+
+    @Override
+    public Authentication authenticate(Authentication authentication) throws AuthenticationException {
+        String username = authentication.getName();
+        Object credentials = authentication.getCredentials();
+        if (username == null || credentials == null) {
+            return delegate.authenticate(authentication);
+        }
+        String password = credentials.toString();
+        UserDetails cached = credentialCache.get(username, password);
+        if (cached != null) {
+            UsernamePasswordAuthenticationToken result = UsernamePasswordAuthenticationToken.authenticated(cached, password, cached.getAuthorities());
+            result.setDetails(authentication.getDetails());
+            return result;
+        }
+        // only successful verifications are cached, failures always reach the user store and BCrypt
+        long generation = credentialCache.generation(username);
+        Authentication result = delegate.authenticate(authentication);
+        if (result != null && result.getPrincipal() instanceof UserDetails userDetails) {
+            credentialCache.putIfCurrent(username, password, userDetails, generation);
+        }
+        return result;
+    }
+
+    @Override
+    public boolean supports(Class<?> authentication) {
+        return delegate.supports(authentication);
+    }
+}
@@ -0,0 +1,46 @@
+package com.gd.springecommerce.security;
+
+import com.gd.springecommerce.metrics.Histogram;
+import com.gd.springecommerce.metrics.MetricsRegistry;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+// Times the hashing and the verifications of the wrapped encoder, a BCrypt check is the costliest step of a login
+@FieldDefaults(makeFinal = true, level = AccessLevel.PRIVATE)
+public class MeasuredPasswordEncoder implements PasswordEncoder {
+    PasswordEncoder delegate;
+    Histogram encodings;
+    Histogram matches;
+    Histogram mismatches;
+
+    public MeasuredPasswordEncoder(PasswordEncoder delegate, MetricsRegistry metricsRegistry) {
+        this.delegate = delegate;
+        this.encodings = metricsRegistry.timer("password_encodings_seconds");
+        this.matches = metricsRegistry.timer("password_verifications_seconds", "outcome", "match");
+        this.mismatches = metricsRegistry.timer("password_verifications_seconds", "outcome", "mismatch");
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        long start = System.nanoTime();
+        try {
+            return delegate.encode(rawPassword);
+        } finally {
+            encodings.recordSince(start);
+        }
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        long start = System.nanoTime();
+        boolean matched = delegate.matches(rawPassword, encodedPassword);
+        (matched ? matches : mismatches).recordSince(start);
+        return matched;
+    }
+
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        return delegate.upgradeEncoding(encodedPassword);
+    }
+}
@@ -0,0 +1,113 @@
+package com.gd.springecommerce.security;
+
+import com.gd.springecommerce.config.TokenProperties;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Optional;
+
+// token layout: base64url(subject) "." expiry epoch seconds "." base64url(HMAC-SHA256 of the first two parts)
+@Component
+@FieldDefaults(makeFinal = true, level = AccessLevel.PRIVATE)
+public class TokenService {
+    static String ALGORITHM = "HmacSHA256";
+    static int MIN_SECRET_LENGTH = 32;
+    static Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    static Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    ThreadLocal<Mac> macs;
+    Duration timeToLive;
+    Clock clock;
+
+    @Autowired
+    public TokenService(TokenProperties tokenProperties) {
+        this(tokenProperties, Clock.systemUTC());
+    }
+
+    TokenService(TokenProperties tokenProperties, Clock clock) {
+        SecretKeySpec secretKey = secretKey(tokenProperties);
+        this.macs = ThreadLocal.withInitial(() -> newMac(secretKey));
+        this.timeToLive = tokenProperties.getTimeToLive();
+        this.clock = clock;
+    }
+
+    public String issue(String subject) {
+        long expiresAt = clock.instant().plus(timeToLive).getEpochSecond();
+        String payload = ENCODER.encodeToString(subject.getBytes(StandardCharsets.UTF_8)) + "." + expiresAt;
+        return payload + "." + ENCODER.encodeToString(sign(payload));
+    }
+
+    public Optional<String> verify(String token) {
+        int signatureStart = token.lastIndexOf('.');
+        int expiryStart = token.lastIndexOf('.', signatureStart - 1);
+        if (expiryStart <= 0) {
+            return Optional.empty();
+        }
+        try {
+            String payload = token.substring(0, signatureStart);
+            byte[] signature = DECODER.decode(token.substring(signatureStart + 1));
+            if (!MessageDigest.isEqual(signature, sign(payload))) {
+                return Optional.empty();
+            }
+            long expiresAt = Long.parseLong(token, expiryStart + 1, signatureStart, 10);
+            if (clock.instant().getEpochSecond() >= expiresAt) {
+                return Optional.empty();
+            }
+            return Optional.of(new String(DECODER.decode(token.substring(0, expiryStart)), StandardCharsets.UTF_8));
+        } catch (IllegalArgumentException e) {
+            return Optional.empty();
+        }
+    }
+
+    public Duration getTimeToLive() {
+        return timeToLive;
+    }
+
+    private byte[] sign(String payload) {
+        return macs.get().doFinal(payload.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    // a missing or short secret fails startup, a key made up per process would reject the tokens of every other node
+    private static SecretKeySpec secretKey(TokenProperties tokenProperties) {
+        if (StringUtils.isBlank(tokenProperties.getSecret())) {
+            if (tokenProperties.isEnabled()) {
+                throw new IllegalStateException("ecommerce.auth.token.secret must be set when tokens are enabled");
+            }
+            return null;
+        }
+        byte[] key;
+        try {
+            key = Base64.getDecoder().decode(tokenProperties.getSecret().trim());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalStateException("ecommerce.auth.token.secret is not base64 encoded", e);
+        }
+        if (key.length < MIN_SECRET_LENGTH) {
+            throw new IllegalStateException("ecommerce.auth.token.secret must decode to at least " + MIN_SECRET_LENGTH + " bytes");
+        }
+        return new SecretKeySpec(key, ALGORITHM);
+    }
+
+    private static Mac newMac(SecretKeySpec secretKey) {
+        if (secretKey == null) {
+            throw new IllegalStateException("Tokens are disabled");
+        }
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(secretKey);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
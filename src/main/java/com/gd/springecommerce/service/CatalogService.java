@@ -0,0 +1,10 @@
+package com.gd.springecommerce.service;
+
+import com.gd.springecommerce.dto.CatalogDelta;
+import com.gd.springecommerce.dto.CatalogSnapshot;
+import org.springframework.http.MediaType;
+
+public interface CatalogService {
+    CatalogSnapshot getSnapshot(MediaType contentType);
+    CatalogDelta getChangesSince(long version);
+}
@@ -0,0 +1,92 @@
+package com.gd.springecommerce.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gd.springecommerce.catalog.CatalogVersion;
+import com.gd.springecommerce.dto.CatalogDelta;
+import com.gd.springecommerce.dto.CatalogSnapshot;
+import com.gd.springecommerce.exception.CatalogVersionExpiredException;
+import com.gd.springecommerce.model.Product;
+import com.gd.springecommerce.repository.ProductRepository;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.AbstractJackson2HttpMessageConverter;
+import org.springframework.stereotype.Service;
+
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+@Service
+@RequiredArgsConstructor
+@FieldDefaults(makeFinal = true, level = AccessLevel.PRIVATE)
+public class CatalogServiceImpl implements CatalogService {
+    ProductService productService;
+    ProductRepository productRepository;
+    CatalogVersion catalogVersion;
+    // the JSON, CBOR and Smile converters, a snapshot is encoded by the mapper its response would have used
+    List<AbstractJackson2HttpMessageConverter> messageConverters;
+    ConcurrentMap<MediaType, CatalogSnapshot> snapshots = new ConcurrentHashMap<>();
+    ReentrantLock snapshotLock = new ReentrantLock();
+
+    @Override
+    public CatalogSnapshot getSnapshot(MediaType contentType) {
+        CatalogSnapshot current = snapshots.get(contentType);
+        if (current != null && current.version() == catalogVersion.current()) {
+            return current;
+        }
+        ObjectMapper objectMapper = objectMapperFor(contentType);
+        // a lock rather than synchronized, the rebuild reads every product and would pin a virtual thread's carrier
+        snapshotLock.lock();
+        try {
+            // the version is read before the products, a change committed in between only makes the tag older
+            // than the content and the next request rebuilds it
+            long version = catalogVersion.current();
+            CatalogSnapshot snapshot = snapshots.get(contentType);
+            if (snapshot == null || snapshot.version() != version) {
+                snapshot = new CatalogSnapshot(version, contentType, serialize(objectMapper, productService.getAllProducts()));
+                snapshots.put(contentType, snapshot);
+            }
+            return snapshot;
+        } finally {
+            snapshotLock.unlock();
+        }
+    }
+
+    @Override
+    public CatalogDelta getChangesSince(long since) {
+        long version = catalogVersion.current();
+        Set<Long> changedIds = catalogVersion.changedSince(since)
+                .orElseThrow(() -> new CatalogVersionExpiredException("Catalog version " + since + " has expired, fetch all the products again"));
+        if (changedIds.isEmpty()) {
+            return new CatalogDelta(since, version, List.of(), List.of());
+        }
+        List<Product> products = productRepository.findQuantityByIds(new ArrayList<>(changedIds));
+        Set<Long> removedIds = new HashSet<>(changedIds);
+        products.forEach(product -> removedIds.remove(product.getId()));
+        return new CatalogDelta(since, version, products, List.copyOf(removedIds));
+    }
+
+    private ObjectMapper objectMapperFor(MediaType contentType) {
+        return messageConverters.stream()
+                .filter(converter -> converter.getSupportedMediaTypes().stream().anyMatch(contentType::equalsTypeAndSubtype))
+                .findFirst()
+                .map(AbstractJackson2HttpMessageConverter::getObjectMapper)
+                .orElseThrow(() -> new IllegalArgumentException("No encoding for " + contentType));
+    }
+
+    private byte[] serialize(ObjectMapper objectMapper, List<Product> products) {
+        try {
+            return objectMapper.writeValueAsBytes(products);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
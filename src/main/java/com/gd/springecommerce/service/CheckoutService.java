@@ -0,0 +1,10 @@
+package com.gd.springecommerce.service;
+
+import com.gd.springecommerce.dto.CartProductDTO;
+import com.gd.springecommerce.model.Order;
+
+import java.util.List;
+
+public interface CheckoutService {
+    Order checkOut(String owner, List<CartProductDTO> cart);
+}
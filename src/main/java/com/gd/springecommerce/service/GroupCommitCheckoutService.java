@@ -0,0 +1,251 @@
+package com.gd.springecommerce.service;
+
+import com.gd.springecommerce.config.CheckoutProperties;
+import com.gd.springecommerce.dto.CartProductDTO;
+import com.gd.springecommerce.exception.CheckoutQueueFullException;
+import com.gd.springecommerce.model.Order;
+import com.gd.springecommerce.mapper.ProductMapper;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// A single writer thread drains the queue and writes each batch in two transactions: the first makes the
+// orders durable as PENDING and answers the waiting requests, the second allocates stock to the whole batch.
+// Orders left PENDING by a failed allocation or a crash are allocated again when the writer starts. A batch that
+// fails is allocated again one order at a time, and an order that keeps failing on its own is rejected, so one bad
+// order cannot hold back the orders behind it. A failure of the writer itself is logged and retried after a pause,
+// and a request waits for its order to be accepted only so long, so neither can hang the request threads.
+@Slf4j
+@Service
+@FieldDefaults(makeFinal = true, level = AccessLevel.PRIVATE)
+@ConditionalOnProperty(prefix = "ecommerce.checkout", name = "mode", havingValue = "async")
+public class GroupCommitCheckoutService implements CheckoutService, SmartLifecycle {
+
+    OrderService orderService;
+    CheckoutProperties checkoutProperties;
+    BlockingQueue<PendingCheckout> queue;
+    List<Long> unallocatedOrderIds = new ArrayList<>();
+    Map<Long, Integer> failedAllocations = new HashMap<>();
+    @NonFinal
+    volatile boolean running;
+    @NonFinal
+    Thread writer;
+
+    public GroupCommitCheckoutService(OrderService orderService, CheckoutProperties checkoutProperties) {
+        this.orderService = orderService;
+        this.checkoutProperties = checkoutProperties;
+        this.queue = new ArrayBlockingQueue<>(checkoutProperties.getQueueCapacity());
+    }
+
+    @Override
+    public Order checkOut(String owner, List<CartProductDTO> cart) {
+        PendingCheckout pendingCheckout = enqueue(toOrder(owner, cart));
+        try {
+            try {
+                return pendingCheckout.accepted().get(checkoutProperties.getAcceptTimeout().toMillis(), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                // a checkout given up on before the writer claims it is never saved, one claimed meanwhile is answered
+                if (pendingCheckout.claimed().compareAndSet(false, true)) {
+                    throw new CheckoutQueueFullException("The order was not accepted in time, please retry");
+                }
+                return pendingCheckout.accepted().get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            pendingCheckout.claimed().compareAndSet(false, true);
+            throw new CheckoutQueueFullException("Interrupted while waiting for the order to be accepted");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    PendingCheckout enqueue(Order order) {
+        // nothing would ever take the checkout off the queue
+        if (writer == null || !writer.isAlive()) {
+            throw new CheckoutQueueFullException("Checkout is not running, please retry");
+        }
+        PendingCheckout pendingCheckout = new PendingCheckout(order, new CompletableFuture<>());
+        try {
+            if (!queue.offer(pendingCheckout, checkoutProperties.getEnqueueTimeout().toMillis(), TimeUnit.MILLISECONDS)) {
+                throw new CheckoutQueueFullException("Too many checkouts in progress, please retry");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CheckoutQueueFullException("Interrupted while waiting for the checkout queue");
+        }
+        return pendingCheckout;
+    }
+
+    void writeBatch(List<PendingCheckout> pendingCheckouts) {
+        List<PendingCheckout> batch = pendingCheckouts
+                .stream()
+                .filter(pendingCheckout -> pendingCheckout.claimed().compareAndSet(false, true))
+                .toList();
+        if (!batch.isEmpty()) {
+            try {
+                List<Order> saved = orderService.savePendingOrders(batch.stream().map(PendingCheckout::order).toList());
+                for (int i = 0; i < batch.size(); i++) {
+                    unallocatedOrderIds.add(saved.get(i).getId());
+                    batch.get(i).accepted().complete(saved.get(i));
+                }
+            } catch (RuntimeException e) {
+                batch.forEach(pendingCheckout -> pendingCheckout.accepted().completeExceptionally(e));
+            }
+        }
+        allocate();
+    }
+
+    void recover() {
+        unallocatedOrderIds.addAll(orderService.findPendingOrderIds());
+        allocate();
+    }
+
+    // one pass over the unallocated orders, the ones that fail are retried on the next pass
+    private void allocate() {
+        int maxBatchSize = checkoutProperties.getMaxBatchSize();
+        List<Long> orderIds = List.copyOf(unallocatedOrderIds);
+        unallocatedOrderIds.clear();
+        for (int from = 0; from < orderIds.size(); from += maxBatchSize) {
+            List<Long> batch = orderIds.subList(from, Math.min(from + maxBatchSize, orderIds.size()));
+            try {
+                orderService.allocatePendingOrders(batch);
+            } catch (RuntimeException e) {
+                if (batch.size() == 1) {
+                    allocationFailed(batch.get(0), e);
+                } else {
+                    log.warn("Allocating a batch of {} pending orders failed, allocating them one at a time", batch.size(), e);
+                    batch.forEach(this::allocateAlone);
+                }
+            }
+        }
+    }
+
+    private void allocateAlone(Long orderId) {
+        try {
+            orderService.allocatePendingOrders(List.of(orderId));
+            failedAllocations.remove(orderId);
+        } catch (RuntimeException e) {
+            allocationFailed(orderId, e);
+        }
+    }
+
+    private void allocationFailed(Long orderId, RuntimeException failure) {
+        int attempts = failedAllocations.merge(orderId, 1, Integer::sum);
+        if (attempts < checkoutProperties.getMaxAllocationAttempts()) {
+            log.warn("Allocating pending order {} failed on attempt {}, it is retried with the next batch", orderId, attempts, failure);
+            unallocatedOrderIds.add(orderId);
+            return;
+        }
+        log.error("Allocating pending order {} failed {} times, rejecting it", orderId, attempts, failure);
+        try {
+            orderService.rejectPendingOrders(List.of(orderId));
+            failedAllocations.remove(orderId);
+        } catch (RuntimeException e) {
+            // the order stays PENDING and the rejection is tried again with the next batch
+            log.error("Rejecting pending order {} failed", orderId, e);
+            unallocatedOrderIds.add(orderId);
+        }
+    }
+
+    private void run() {
+        boolean recovered = false;
+        List<PendingCheckout> batch = new ArrayList<>(checkoutProperties.getMaxBatchSize());
+        while (running) {
+            try {
+                if (!recovered) {
+                    recover();
+                    recovered = true;
+                }
+                PendingCheckout first = queue.poll(1, TimeUnit.SECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch, checkoutProperties.getMaxBatchSize() - 1);
+                }
+                writeBatch(batch);
+            } catch (InterruptedException e) {
+                // stop() ends the writer through running, a stray interrupt is dropped so the next poll waits again
+                log.warn("Order writer interrupted while running, ignoring it");
+            } catch (RuntimeException e) {
+                log.error("Order writer failed, retrying in {}", checkoutProperties.getWriterRetryBackoff(), e);
+                batch.forEach(pendingCheckout -> pendingCheckout.accepted().completeExceptionally(e));
+                pause(checkoutProperties.getWriterRetryBackoff());
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private static void pause(Duration duration) {
+        try {
+            Thread.sleep(duration.toMillis());
+        } catch (InterruptedException e) {
+            // the loop checks running right after
+        }
+    }
+
+    private static Order toOrder(String owner, List<CartProductDTO> cart) {
+        BigDecimal total = cart
+                .stream()
+                .map(CartProductDTO::getSubTotal)
+                .filter(Objects::nonNull)
+                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        Order order = Order.builder().total(total).owner(owner).build();
+        cart.forEach(cartProductDTO -> order.addLine(ProductMapper.INSTANCE.toOrderLine(cartProductDTO)));
+        return order;
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        writer = new Thread(this::run, "order-writer");
+        writer.start();
+    }
+
+    // the writer finishes its current batch instead of being interrupted in the middle of a transaction
+    @Override
+    public void stop() {
+        running = false;
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<PendingCheckout> rejected = new ArrayList<>();
+        queue.drainTo(rejected);
+        rejected.forEach(pendingCheckout -> pendingCheckout.accepted().completeExceptionally(new CheckoutQueueFullException("Checkout is shutting down, please retry")));
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    // claimed by the writer when it saves the order, or by the request when it gives up waiting, whichever is first
+    record PendingCheckout(Order order, CompletableFuture<Order> accepted, AtomicBoolean claimed) {
+        PendingCheckout(Order order, CompletableFuture<Order> accepted) {
+            this(order, accepted, new AtomicBoolean());
+        }
+    }
+}
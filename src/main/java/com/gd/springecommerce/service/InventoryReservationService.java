@@ -0,0 +1,18 @@
+package com.gd.springecommerce.service;
+
+import com.gd.springecommerce.model.Product;
+
+import java.util.Collection;
+
+public interface InventoryReservationService {
+    // reads the stock of the products not counted yet with one query, ahead of reserving several of them
+    void loadStock(Collection<Long> productIds);
+    void reserve(String holder, Product product, int quantity);
+    void updateReservation(String holder, Product product, int quantity);
+    void release(String holder, Long productId);
+    void releaseAll(String holder);
+    void commit(String holder);
+    // moves the reservations of a cart to its pending order, which commits or releases them once it is allocated
+    void holdForOrder(String holder, Long orderId);
+    int getReservedQuantity(Long productId);
+}
@@ -0,0 +1,262 @@
+package com.gd.springecommerce.service;
+
+import com.gd.springecommerce.config.ReservationProperties;
+import com.gd.springecommerce.event.OrdersSettledEvent;
+import com.gd.springecommerce.exception.InsufficientQuantityException;
+import com.gd.springecommerce.model.Product;
+import com.gd.springecommerce.repository.ProductRepository;
+import com.gd.springecommerce.util.SessionTimeouts;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.web.ServerProperties;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+@Service
+@FieldDefaults(makeFinal = true, level = AccessLevel.PRIVATE)
+public class InventoryReservationServiceImpl implements InventoryReservationService {
+    // Stock counters and holders are only mutated inside ConcurrentHashMap.compute, so two carts
+    // contend only when their keys share a hash bin and there is no global lock on the add-to-cart path.
+    ConcurrentHashMap<Long, StockCounter> counters = new ConcurrentHashMap<>();
+    ConcurrentHashMap<String, Holder> holders = new ConcurrentHashMap<>();
+    ProductRepository productRepository;
+    ReservationProperties reservationProperties;
+    Duration timeToLive;
+    Clock clock;
+
+    @Autowired
+    public InventoryReservationServiceImpl(ProductRepository productRepository, ReservationProperties reservationProperties, ServerProperties serverProperties) {
+        this(productRepository, reservationProperties, serverProperties.getServlet().getSession().getTimeout(), Clock.systemUTC());
+    }
+
+    InventoryReservationServiceImpl(ProductRepository productRepository, ReservationProperties reservationProperties, Duration sessionTimeout, Clock clock) {
+        this.productRepository = productRepository;
+        this.reservationProperties = reservationProperties;
+        this.timeToLive = SessionTimeouts.of(sessionTimeout);
+        this.clock = clock;
+    }
+
+    @Override
+    public void loadStock(Collection<Long> productIds) {
+        List<Long> uncounted = productIds.stream().filter(productId -> !counters.containsKey(productId)).toList();
+        if (uncounted.isEmpty()) {
+            return;
+        }
+        productRepository.findQuantityByIds(uncounted)
+                .forEach(product -> counters.computeIfAbsent(product.getId(), productId -> new StockCounter(product.getAvailable())));
+    }
+
+    @Override
+    public void reserve(String holder, Product product, int quantity) {
+        changeReservation(holder, product, reserved -> reserved + quantity);
+    }
+
+    @Override
+    public void updateReservation(String holder, Product product, int quantity) {
+        changeReservation(holder, product, reserved -> quantity);
+    }
+
+    @Override
+    public void release(String holder, Long productId) {
+        holders.computeIfPresent(holder, (key, reservations) -> {
+            Integer reserved = reservations.lines.remove(productId);
+            if (reserved != null) {
+                adjustCounter(productId, -reserved, 0);
+            }
+            reservations.touch(expiry());
+            return reservations;
+        });
+    }
+
+    @Override
+    public void releaseAll(String holder) {
+        holders.computeIfPresent(holder, (key, reservations) -> {
+            reservations.lines.forEach((productId, reserved) -> adjustCounter(productId, -reserved, 0));
+            return null;
+        });
+    }
+
+    @Override
+    public void commit(String holder) {
+        holders.computeIfPresent(holder, (key, reservations) -> {
+            // the checkout already took this stock out of the database
+            reservations.lines.forEach((productId, reserved) -> adjustCounter(productId, -reserved, -reserved));
+            return null;
+        });
+    }
+
+    // the allocator may settle the order before its reservations arrive, it then leaves how it settled for them
+    @Override
+    public void holdForOrder(String holder, Long orderId) {
+        Holder reservations = holders.remove(holder);
+        holders.compute(orderHolder(orderId), (key, current) -> {
+            if (current == null) {
+                if (reservations != null) {
+                    reservations.touch(expiry());
+                }
+                return reservations;
+            }
+            if (reservations != null) {
+                settle(reservations, current.confirmed);
+            }
+            return null;
+        });
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onOrdersSettled(OrdersSettledEvent event) {
+        event.confirmedOrderIds().forEach(orderId -> settleOrder(orderId, true));
+        event.rejectedOrderIds().forEach(orderId -> settleOrder(orderId, false));
+    }
+
+    @Override
+    public int getReservedQuantity(Long productId) {
+        StockCounter counter = counters.get(productId);
+        return counter == null ? 0 : counter.reserved;
+    }
+
+    @Scheduled(fixedDelayString = "#{@reservationProperties.sweepInterval.toMillis()}")
+    public void expireReservations() {
+        long now = clock.millis();
+        holders.forEach((holder, ignored) -> holders.computeIfPresent(holder, (key, reservations) -> {
+            if (reservations.expiresAt > now) {
+                return reservations;
+            }
+            reservations.lines.forEach((productId, reserved) -> adjustCounter(productId, -reserved, 0));
+            return null;
+        }));
+    }
+
+    @Scheduled(fixedDelayString = "#{@reservationProperties.reconcileInterval.toMillis()}")
+    public void reconcileWithInventory() {
+        List<Long> productIds = new ArrayList<>(counters.keySet());
+        int batchSize = reservationProperties.getReconcileBatchSize();
+        for (int from = 0; from < productIds.size(); from += batchSize) {
+            List<Long> batch = productIds.subList(from, Math.min(from + batchSize, productIds.size()));
+            Map<Long, Integer> available = productRepository.findQuantityByIds(batch)
+                    .stream()
+                    .collect(Collectors.toMap(Product::getId, Product::getAvailable));
+            batch.forEach(productId -> counters.computeIfPresent(productId, (key, counter) -> {
+                if (counter.reserved == 0) {
+                    return null;
+                }
+                counter.onHand = available.getOrDefault(productId, 0);
+                return counter;
+            }));
+        }
+    }
+
+    // A new counter starts from the database, the product passed in usually comes from the cache and may be stale. The
+    // stock is read only once the compute finds no counter, as the reconciler may drop an idle counter at any moment.
+    private void changeReservation(String holder, Product product, Function<Integer, Integer> newQuantity) {
+        Integer onHand = null;
+        while (!tryChangeReservation(holder, product, newQuantity, onHand)) {
+            onHand = availableInInventory(product.getId());
+        }
+    }
+
+    // false and nothing changed when there is no counter and no stock read to start one from
+    private boolean tryChangeReservation(String holder, Product product, Function<Integer, Integer> newQuantity, Integer onHand) {
+        AtomicBoolean counted = new AtomicBoolean(true);
+        holders.compute(holder, (key, reservations) -> {
+            Holder current = reservations == null ? new Holder() : reservations;
+            int reserved = current.lines.getOrDefault(product.getId(), 0);
+            int requested = newQuantity.apply(reserved);
+            StockCounter changed = counters.compute(product.getId(), (productId, counter) -> {
+                if (counter == null && onHand == null) {
+                    return null;
+                }
+                StockCounter stock = counter == null ? new StockCounter(onHand) : counter;
+                int delta = requested - reserved;
+                if (delta > 0 && stock.reserved + delta > stock.onHand) {
+                    throw new InsufficientQuantityException("Out of stock for the product " + product.getTitle());
+                }
+                stock.reserved += delta;
+                return stock;
+            });
+            if (changed == null) {
+                counted.set(false);
+                return reservations;
+            }
+            current.lines.put(product.getId(), requested);
+            current.touch(expiry());
+            return current;
+        });
+        return counted.get();
+    }
+
+    private void settleOrder(Long orderId, boolean confirmed) {
+        holders.compute(orderHolder(orderId), (key, reservations) -> {
+            if (reservations == null) {
+                Holder settled = new Holder();
+                settled.confirmed = confirmed;
+                settled.touch(expiry());
+                return settled;
+            }
+            settle(reservations, confirmed);
+            return null;
+        });
+    }
+
+    // a confirmed order took its stock out of the database, a rejected one gives it back to the other carts
+    private void settle(Holder reservations, boolean confirmed) {
+        reservations.lines.forEach((productId, reserved) -> adjustCounter(productId, -reserved, confirmed ? -reserved : 0));
+    }
+
+    private static String orderHolder(Long orderId) {
+        return "order:" + orderId;
+    }
+
+    private int availableInInventory(Long productId) {
+        return productRepository.findQuantityByIds(List.of(productId))
+                .stream()
+                .findFirst()
+                .map(Product::getAvailable)
+                .orElse(0);
+    }
+
+    private void adjustCounter(Long productId, int reservedDelta, int onHandDelta) {
+        counters.computeIfPresent(productId, (key, counter) -> {
+            counter.reserved = Math.max(0, counter.reserved + reservedDelta);
+            counter.onHand = Math.max(0, counter.onHand + onHandDelta);
+            return counter;
+        });
+    }
+
+    private long expiry() {
+        return clock.millis() + timeToLive.toMillis();
+    }
+
+    private static final class StockCounter {
+        int onHand;
+        int reserved;
+
+        StockCounter(int onHand) {
+            this.onHand = onHand;
+        }
+    }
+
+    private static final class Holder {
+        final Map<Long, Integer> lines = new HashMap<>();
+        long expiresAt;
+        boolean confirmed;
+
+        void touch(long expiresAt) {
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.gd.springecommerce.service;
+
+import com.gd.springecommerce.model.Order;
+
+import java.util.List;
+
+public interface OrderService {
+    Order getOrderPlacedBy(Long id, String owner);
+    List<Order> getLatestOrdersPlacedBy(String owner, Integer limit);
+    List<Order> savePendingOrders(List<Order> orders);
+    List<Long> findPendingOrderIds();
+    void allocatePendingOrders(List<Long> orderIds);
+    void rejectPendingOrders(List<Long> orderIds);
+}
@@ -0,0 +1,133 @@
+package com.gd.springecommerce.service;
+
+import com.gd.springecommerce.config.OrderStoreProperties;
+import com.gd.springecommerce.enums.OrderStatus;
+import com.gd.springecommerce.event.OrdersSettledEvent;
+import com.gd.springecommerce.event.ProductsChangedEvent;
+import com.gd.springecommerce.exception.OrderNotFoundException;
+import com.gd.springecommerce.model.Order;
+import com.gd.springecommerce.model.OrderLine;
+import com.gd.springecommerce.model.Product;
+import com.gd.springecommerce.order.OrderStore;
+import com.gd.springecommerce.repository.OrderRepository;
+import com.gd.springecommerce.repository.ProductRepository;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+@Service
+@RequiredArgsConstructor
+@FieldDefaults(makeFinal = true, level = AccessLevel.PRIVATE)
+public class OrderServiceImpl implements OrderService {
+
+    OrderRepository orderRepository;
+    OrderStore orderStore;
+    ProductRepository productRepository;
+    OrderStoreProperties orderStoreProperties;
+    ApplicationEventPublisher eventPublisher;
+
+    // another user's order is not found either, so ids cannot be probed for orders that exist
+    @Override
+    public Order getOrderPlacedBy(Long id, String owner) {
+        return orderStore.findWithLinesById(id)
+                .filter(order -> owner != null && owner.equals(order.getOwner()))
+                .orElseThrow(() -> new OrderNotFoundException("Order is not found " + id));
+    }
+
+    @Override
+    public List<Order> getLatestOrdersPlacedBy(String owner, Integer limit) {
+        if (owner == null) {
+            return List.of();
+        }
+        int size = limit == null || limit < 1
+                ? orderStoreProperties.getDefaultListSize()
+                : Math.min(limit, orderStoreProperties.getMaxListSize());
+        return orderStore.findLatestByOwner(owner, size);
+    }
+
+    // the pending and allocate steps of async checkout stay on the repository, async mode keeps orders in the primary
+    @Override
+    @Transactional
+    public List<Order> savePendingOrders(List<Order> orders) {
+        orders.forEach(order -> order.setOrderStatus(OrderStatus.PENDING));
+        return orderRepository.saveAll(orders);
+    }
+
+    @Override
+    public List<Long> findPendingOrderIds() {
+        return orderStore.findIdsByOrderStatus(OrderStatus.PENDING);
+    }
+
+    // Allocates stock to the orders in id order under row locks, so the whole batch costs one stock update per product
+    @Override
+    @Transactional
+    public void allocatePendingOrders(List<Long> orderIds) {
+        List<Order> orders = orderRepository.lockByIdsAndOrderStatus(orderIds, OrderStatus.PENDING);
+        if (orders.isEmpty()) {
+            return;
+        }
+        Set<Long> productIds = orders
+                .stream()
+                .flatMap(order -> order.getLines().stream())
+                .map(OrderLine::getProductId)
+                .collect(Collectors.toSet());
+        Map<Long, Integer> available = productRepository.lockByIds(productIds)
+                .stream()
+                .collect(Collectors.toMap(Product::getId, Product::getAvailable));
+        Map<Long, Integer> decrements = new HashMap<>();
+        for (Order order : orders) {
+            Map<Long, Integer> quantities = order.getLines()
+                    .stream()
+                    .collect(Collectors.toMap(OrderLine::getProductId, OrderLine::getQuantity, Integer::sum));
+            boolean inStock = quantities.entrySet()
+                    .stream()
+                    .allMatch(line -> available.getOrDefault(line.getKey(), 0) >= line.getValue());
+            if (inStock) {
+                quantities.forEach((productId, quantity) -> {
+                    available.merge(productId, -quantity, Integer::sum);
+                    decrements.merge(productId, quantity, Integer::sum);
+                });
+                order.setOrderStatus(OrderStatus.CONFIRMED);
+            } else {
+                order.setOrderStatus(OrderStatus.REJECTED);
+            }
+        }
+        List<Long> insufficientIds = productRepository.decrementAvailable(decrements);
+        if (!insufficientIds.isEmpty()) {
+            throw new IllegalStateException("Stock changed while locked for the products " + insufficientIds);
+        }
+        if (!decrements.isEmpty()) {
+            eventPublisher.publishEvent(new ProductsChangedEvent(List.copyOf(decrements.keySet())));
+        }
+        publishSettled(orders);
+    }
+
+    // for orders whose allocation keeps failing, no stock is taken
+    @Override
+    @Transactional
+    public void rejectPendingOrders(List<Long> orderIds) {
+        List<Order> orders = orderRepository.lockByIdsAndOrderStatus(orderIds, OrderStatus.PENDING);
+        orders.forEach(order -> order.setOrderStatus(OrderStatus.REJECTED));
+        publishSettled(orders);
+    }
+
+    private void publishSettled(List<Order> orders) {
+        if (orders.isEmpty()) {
+            return;
+        }
+        Map<Boolean, List<Long>> confirmed = orders
+                .stream()
+                .collect(Collectors.partitioningBy(order -> order.getOrderStatus() == OrderStatus.CONFIRMED,
+                        Collectors.mapping(Order::getId, Collectors.toList())));
+        eventPublisher.publishEvent(new OrdersSettledEvent(confirmed.get(true), confirmed.get(false)));
+    }
+}
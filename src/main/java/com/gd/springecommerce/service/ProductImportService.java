@@ -0,0 +1,15 @@
+package com.gd.springecommerce.service;
+
+import com.gd.springecommerce.dto.ProductImportError;
+import com.gd.springecommerce.dto.ProductImportSummary;
+import org.springframework.http.MediaType;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.Consumer;
+
+public interface ProductImportService {
+    MediaType TEXT_CSV = MediaType.parseMediaType("text/csv");
+
+    ProductImportSummary importProducts(InputStream inputStream, MediaType contentType, Consumer<ProductImportError> errorConsumer) throws IOException;
+}
@@ -0,0 +1,167 @@
+package com.gd.springecommerce.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gd.springecommerce.config.CatalogProperties;
+import com.gd.springecommerce.dto.ProductImportError;
+import com.gd.springecommerce.dto.ProductImportSummary;
+import com.gd.springecommerce.event.ProductsChangedEvent;
+import com.gd.springecommerce.importer.CsvImportRowReader;
+import com.gd.springecommerce.importer.ImportRow;
+import com.gd.springecommerce.importer.ImportRowReader;
+import com.gd.springecommerce.importer.NdjsonImportRowReader;
+import com.gd.springecommerce.model.Product;
+import com.gd.springecommerce.repository.ProductRepository;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessException;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+@Service
+@RequiredArgsConstructor
+@FieldDefaults(makeFinal = true, level = AccessLevel.PRIVATE)
+public class ProductImportServiceImpl implements ProductImportService {
+    static int MAX_SKU_LENGTH = 64;
+    static int MAX_TITLE_LENGTH = 50;
+
+    ProductRepository productRepository;
+    Validator validator;
+    CatalogProperties catalogProperties;
+    ObjectMapper objectMapper;
+    ApplicationEventPublisher eventPublisher;
+
+    // Only one chunk of rows is held at a time, each chunk is committed on its own
+    @Override
+    public ProductImportSummary importProducts(InputStream inputStream, MediaType contentType, Consumer<ProductImportError> errorConsumer) throws IOException {
+        Counters counters = new Counters();
+        Map<String, RowProduct> chunk = new LinkedHashMap<>();
+        try (ImportRowReader reader = open(inputStream, contentType)) {
+            ImportRow row;
+            while ((row = reader.next()) != null) {
+                counters.rows++;
+                List<String> errors = new ArrayList<>();
+                Product product = toProduct(row, errors);
+                if (!errors.isEmpty()) {
+                    counters.rejected++;
+                    errorConsumer.accept(new ProductImportError(row.number(), row.fields().get("sku"), errors));
+                    continue;
+                }
+                // a sku repeated within a chunk keeps its last row and is counted once, as its first row would have been
+                chunk.put(product.getSku(), new RowProduct(row.number(), product));
+                if (chunk.size() >= catalogProperties.getImportBatchSize()) {
+                    write(chunk, counters, errorConsumer);
+                }
+            }
+        }
+        write(chunk, counters, errorConsumer);
+        return new ProductImportSummary(counters.rows, counters.inserted, counters.updated, counters.rejected);
+    }
+
+    private void write(Map<String, RowProduct> chunk, Counters counters, Consumer<ProductImportError> errorConsumer) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        try {
+            List<Long> updatedIds = productRepository.upsertBySku(chunk.values().stream().map(RowProduct::product).toList());
+            counters.inserted += chunk.size() - updatedIds.size();
+            counters.updated += updatedIds.size();
+            // inserted products carry their generated ids by now
+            eventPublisher.publishEvent(new ProductsChangedEvent(chunk.values().stream().map(rowProduct -> rowProduct.product().getId()).toList()));
+        } catch (DataAccessException e) {
+            String error = "Row could not be written: " + e.getMostSpecificCause().getMessage();
+            chunk.values().forEach(rowProduct -> errorConsumer.accept(new ProductImportError(rowProduct.row(), rowProduct.product().getSku(), List.of(error))));
+            counters.rejected += chunk.size();
+        }
+        chunk.clear();
+    }
+
+    private Product toProduct(ImportRow row, List<String> errors) {
+        if (row.parseError() != null) {
+            errors.add(row.parseError());
+            return null;
+        }
+        Map<String, String> fields = row.fields();
+        String sku = StringUtils.trimToNull(fields.get("sku"));
+        if (sku == null) {
+            errors.add("SKU is mandatory");
+        } else if (sku.length() > MAX_SKU_LENGTH) {
+            errors.add("SKU must be at most " + MAX_SKU_LENGTH + " characters");
+        }
+        Product product = Product.builder()
+                .sku(sku)
+                .title(StringUtils.trimToNull(fields.get("title")))
+                .available(parseAvailable(fields.get("available"), errors))
+                .price(parsePrice(fields.get("price"), errors))
+                .build();
+        for (ConstraintViolation<Product> violation : validator.validate(product)) {
+            errors.add(violation.getMessage());
+        }
+        if (product.getTitle() != null && product.getTitle().length() > MAX_TITLE_LENGTH) {
+            errors.add("Title must be at most " + MAX_TITLE_LENGTH + " characters");
+        }
+        return product;
+    }
+
+    private static Integer parseAvailable(String value, List<String> errors) {
+        if (StringUtils.isBlank(value)) {
+            return null;
+        }
+        try {
+            int available = Integer.parseInt(value.trim());
+            if (available < 0) {
+                errors.add("Available quantity must not be negative");
+            }
+            return available;
+        } catch (NumberFormatException e) {
+            errors.add("Available quantity must be a whole number");
+            return 0;
+        }
+    }
+
+    private static BigDecimal parsePrice(String value, List<String> errors) {
+        if (StringUtils.isBlank(value)) {
+            return null;
+        }
+        try {
+            BigDecimal price = new BigDecimal(value.trim());
+            if (price.signum() < 0) {
+                errors.add("Price must not be negative");
+            }
+            return price;
+        } catch (NumberFormatException e) {
+            errors.add("Price must be a number");
+            return BigDecimal.ZERO;
+        }
+    }
+
+    private ImportRowReader open(InputStream inputStream, MediaType contentType) throws IOException {
+        if (TEXT_CSV.includes(contentType)) {
+            return new CsvImportRowReader(inputStream);
+        }
+        return new NdjsonImportRowReader(inputStream, objectMapper);
+    }
+
+    private record RowProduct(long row, Product product) {
+    }
+
+    private static class Counters {
+        long rows;
+        long inserted;
+        long updated;
+        long rejected;
+    }
+}
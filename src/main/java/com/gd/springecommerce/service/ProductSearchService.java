@@ -0,0 +1,10 @@
+package com.gd.springecommerce.service;
+
+import com.gd.springecommerce.dto.ProductSearchResult;
+
+public interface ProductSearchService {
+    ProductSearchResult search(String query, Integer page, Integer pageSize);
+    void rebuildIndex();
+    void refreshIndex();
+    boolean isIndexReady();
+}
@@ -0,0 +1,136 @@
+package com.gd.springecommerce.service;
+
+import com.gd.springecommerce.config.SearchProperties;
+import com.gd.springecommerce.dto.ProductSearchResult;
+import com.gd.springecommerce.event.ProductsChangedEvent;
+import com.gd.springecommerce.jdbc.ReplicaRoutingDataSource;
+import com.gd.springecommerce.model.Product;
+import com.gd.springecommerce.repository.ProductRepository;
+import com.gd.springecommerce.search.ProductSearchIndex;
+import com.gd.springecommerce.search.SearchHits;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+@Service
+@RequiredArgsConstructor
+@FieldDefaults(makeFinal = true, level = AccessLevel.PRIVATE)
+public class ProductSearchServiceImpl implements ProductSearchService {
+    ProductService productService;
+    ProductRepository productRepository;
+    SearchProperties searchProperties;
+    ProductSearchIndex index = new ProductSearchIndex();
+    // ids changed since the last refresh, collected from startup so changes racing the initial build are replayed
+    Set<Long> changedIds = ConcurrentHashMap.newKeySet();
+    // The rebuild and the scheduled refresh each read products and put them in the index, so one of them
+    // could put a row read before the other's newer one. A lock rather than synchronized, since a virtual
+    // thread waiting on the database would pin its carrier.
+    ReentrantLock indexLock = new ReentrantLock();
+    @NonFinal
+    volatile boolean indexReady;
+
+    @Override
+    public ProductSearchResult search(String query, Integer page, Integer pageSize) {
+        int pageNumber = page == null ? 0 : Math.max(page, 0);
+        int size = resolvePageSize(pageSize);
+        if (query.isBlank()) {
+            return new ProductSearchResult(List.of(), 0L, pageNumber, size);
+        }
+        if (!indexReady) {
+            // substring match in the database until the index is built
+            Slice<Product> slice = ReplicaRoutingDataSource.readFromReplica(
+                    () -> productRepository.findByTitleContainingIgnoreCaseOrderByIdAsc(query.trim(), PageRequest.of(pageNumber, size)));
+            return new ProductSearchResult(slice.getContent(), null, pageNumber, size);
+        }
+        SearchHits hits = index.search(query, (long) pageNumber * size, size);
+        return new ProductSearchResult(hits.products(), hits.total(), pageNumber, size);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildIndexInBackground() {
+        if (searchProperties.isIndexEnabled()) {
+            Thread indexer = new Thread(this::rebuildIndex, "product-search-indexer");
+            indexer.setDaemon(true);
+            indexer.start();
+        }
+    }
+
+    @Override
+    public void rebuildIndex() {
+        indexLock.lock();
+        try {
+            indexReady = false;
+            index.clear();
+            productService.streamAllProducts(index::put);
+            indexReady = true;
+            refreshIndex();
+        } finally {
+            indexLock.unlock();
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductsChanged(ProductsChangedEvent event) {
+        changedIds.addAll(event.productIds());
+    }
+
+    @Override
+    @Scheduled(fixedDelayString = "#{@searchProperties.refreshInterval.toMillis()}")
+    public void refreshIndex() {
+        if (!indexReady || changedIds.isEmpty()) {
+            return;
+        }
+        indexLock.lock();
+        try {
+            List<Long> batch = new ArrayList<>(searchProperties.getRefreshBatchSize());
+            Iterator<Long> iterator = changedIds.iterator();
+            while (iterator.hasNext()) {
+                batch.add(iterator.next());
+                iterator.remove();
+                if (batch.size() == searchProperties.getRefreshBatchSize() || !iterator.hasNext()) {
+                    reindex(batch);
+                    batch.clear();
+                }
+            }
+        } finally {
+            indexLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean isIndexReady() {
+        return indexReady;
+    }
+
+    private void reindex(List<Long> ids) {
+        Set<Long> missing = new HashSet<>(ids);
+        for (Product product : productRepository.findQuantityByIds(ids)) {
+            index.put(product);
+            missing.remove(product.getId());
+        }
+        missing.forEach(index::remove);
+    }
+
+    private int resolvePageSize(Integer pageSize) {
+        if (pageSize == null || pageSize <= 0) {
+            return searchProperties.getDefaultPageSize();
+        }
+        return Math.min(pageSize, searchProperties.getMaxPageSize());
+    }
+}
@@ -1,14 +1,26 @@
 package com.gd.springecommerce.service;
 
 import com.gd.springecommerce.dto.CartProductDTO;
+import com.gd.springecommerce.dto.ProductFilter;
+import com.gd.springecommerce.dto.ProductPage;
+import com.gd.springecommerce.dto.ProductSlice;
+import com.gd.springecommerce.enums.ProductSort;
 import com.gd.springecommerce.model.Order;
 import com.gd.springecommerce.model.Product;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 public interface ProductService {
     List<Product> getAllProducts();
+    ProductPage getProductsAfter(Long cursor, Integer pageSize);
+    ProductSlice getProductsMatching(ProductFilter filter, ProductSort sort, String cursor, Integer pageSize);
+    void streamAllProducts(Consumer<Product> consumer);
     Product getProductById(Long id);
+    Map<Long, Product> getProductsByIds(Collection<Long> ids);
+    void updateProductAvailability(Long id, Integer quantity, long version);
     Product getProductIfValidToAddInCart(Long id, Integer quantity);
-    Order checkOutProductsInTheCart(List<CartProductDTO> cart);
+    Order checkOutProductsInTheCart(String owner, List<CartProductDTO> cart);
 }
@@ -1,39 +1,150 @@
 package com.gd.springecommerce.service;
 
+import com.gd.springecommerce.cache.ProductCache;
+import com.gd.springecommerce.config.CatalogProperties;
+import com.gd.springecommerce.config.CheckoutProperties;
 import com.gd.springecommerce.dto.CartProductDTO;
+import com.gd.springecommerce.dto.ProductFilter;
+import com.gd.springecommerce.dto.ProductPage;
+import com.gd.springecommerce.dto.ProductSlice;
+import com.gd.springecommerce.enums.ProductSort;
+import com.gd.springecommerce.event.ProductsChangedEvent;
 import com.gd.springecommerce.exception.InsufficientQuantityException;
+import com.gd.springecommerce.exception.InvalidCursorException;
 import com.gd.springecommerce.exception.ProductNotFoundException;
+import com.gd.springecommerce.exception.StockConflictException;
+import com.gd.springecommerce.jdbc.ReplicaRoutingDataSource;
+import com.gd.springecommerce.mapper.ProductMapper;
 import com.gd.springecommerce.model.Order;
 import com.gd.springecommerce.model.Product;
-import com.gd.springecommerce.repository.OrderRepository;
+import com.gd.springecommerce.order.OrderStore;
 import com.gd.springecommerce.repository.ProductRepository;
+import com.gd.springecommerce.repository.ProductSpecifications;
+import jakarta.persistence.EntityManager;
 import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
 @FieldDefaults(makeFinal = true, level = AccessLevel.PRIVATE)
 public class ProductServiceImpl implements ProductService {
     ProductRepository productRepository;
-    OrderRepository orderRepository;
+    OrderStore orderStore;
+    EntityManager entityManager;
+    CatalogProperties catalogProperties;
+    CheckoutProperties checkoutProperties;
+    ProductCache productCache;
+    ApplicationEventPublisher eventPublisher;
 
     @Override
     public List<Product> getAllProducts() {
         return productRepository.findAll();
     }
 
+    @Override
+    public ProductPage getProductsAfter(Long cursor, Integer pageSize) {
+        int size = resolvePageSize(pageSize);
+        // a page is answered and not kept, so a replica within the allowed lag can serve it
+        List<Product> products = ReplicaRoutingDataSource.readFromReplica(
+                () -> productRepository.findByIdGreaterThanOrderByIdAsc(cursor == null ? 0L : cursor, Limit.of(size + 1)));
+        if (products.size() > size) {
+            List<Product> page = products.subList(0, size);
+            return ProductPage.builder()
+                    .products(page)
+                    .nextCursor(page.get(size - 1).getId())
+                    .build();
+        }
+        return ProductPage.builder().products(products).build();
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public ProductSlice getProductsMatching(ProductFilter filter, ProductSort sort, String cursor, Integer pageSize) {
+        int size = resolvePageSize(pageSize);
+        ProductSort order = sort == null ? ProductSort.ID : sort;
+        List<Specification<Product>> specifications = new ArrayList<>();
+        if (Boolean.TRUE.equals(filter.inStock())) {
+            specifications.add(ProductSpecifications.inStock());
+        }
+        if (filter.minPrice() != null) {
+            specifications.add(ProductSpecifications.priceAtLeast(filter.minPrice()));
+        }
+        if (filter.maxPrice() != null) {
+            specifications.add(ProductSpecifications.priceAtMost(filter.maxPrice()));
+        }
+        if (filter.titlePrefix() != null && !filter.titlePrefix().isEmpty()) {
+            specifications.add(ProductSpecifications.titleStartsWith(filter.titlePrefix()));
+        }
+        if (cursor != null) {
+            specifications.add(decodeCursor(order, cursor));
+        }
+        // one row past the page tells whether another page follows, so no count query is needed
+        List<Product> products = ReplicaRoutingDataSource.readFromReplica(
+                () -> productRepository.findAll(Specification.allOf(specifications), order.toSort(), Limit.of(size + 1)));
+        if (products.size() > size) {
+            List<Product> page = products.subList(0, size);
+            return ProductSlice.builder()
+                    .products(page)
+                    .nextCursor(encodeCursor(order, page.get(size - 1)))
+                    .build();
+        }
+        return ProductSlice.builder().products(products).build();
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void streamAllProducts(Consumer<Product> consumer) {
+        try (Stream<Product> products = productRepository.streamAllOrderedById()) {
+            products.forEach(product -> {
+                consumer.accept(product);
+                // keep the persistence context empty so memory stays flat for any catalog size
+                entityManager.detach(product);
+            });
+        }
+    }
+
 
     @Override
     public Product getProductById(Long id) {
-        return productRepository.findById(id).orElseThrow(() -> new ProductNotFoundException("product with id " + id + " does not exists"));
+        Product product = productCache.get(id, key -> productRepository.findById(key).orElse(null));
+        if (product == null) {
+            throw new ProductNotFoundException("product with id " + id + " does not exists");
+        }
+        return product;
+    }
+
+    @Override
+    public Map<Long, Product> getProductsByIds(Collection<Long> ids) {
+        return productCache.getAll(ids, productRepository::findQuantityByIds);
+    }
+
+    @Override
+    @Transactional
+    public void updateProductAvailability(Long id, Integer quantity, long version) {
+        if (productRepository.updateProductAvailability(quantity, id, version) != 1) {
+            if (!productRepository.existsById(id)) {
+                throw new ProductNotFoundException("product with id " + id + " does not exists");
+            }
+            throw new StockConflictException("Stock of the product " + id + " changed since version " + version, List.of(id));
+        }
+        eventPublisher.publishEvent(new ProductsChangedEvent(List.of(id)));
     }
 
     @Override
@@ -47,22 +158,65 @@ public class ProductServiceImpl implements ProductService {
 
     @Override
     @Transactional
-    public Order checkOutProductsInTheCart(List<CartProductDTO> cart) {
+    public Order checkOutProductsInTheCart(String owner, List<CartProductDTO> cart) {
         BigDecimal totalAmount = calculateTotalAmount(cart.stream().map(CartProductDTO::getSubTotal).toList());
-        List<Product> productQuantities = productRepository.findQuantityByIds(cart.stream().map(CartProductDTO::getId).toList());
-        Map<Long, Integer> idWithQuantity = productQuantities
+        Map<Long, Integer> quantities = cart
                 .stream()
-                .collect(Collectors.toMap(Product::getId,Product::getAvailable));
-        cart
-                .forEach(cartProductDTO -> {
-                    Long id = cartProductDTO.getId();
-                    Integer updatedQuantity = idWithQuantity.get(id) - cartProductDTO.getQuantity();
-                    productRepository.updateProductAvailability(updatedQuantity, id);
-                });
-        return orderRepository.save(Order.builder().total(totalAmount).build());
+                .collect(Collectors.toMap(CartProductDTO::getId, CartProductDTO::getQuantity, Integer::sum));
+        List<Long> insufficientIds = switch (checkoutProperties.getStockLocking()) {
+            case CONDITIONAL -> productRepository.decrementAvailable(quantities);
+            case OPTIMISTIC -> productRepository.decrementAvailableIfUnchanged(quantities);
+            case PESSIMISTIC -> productRepository.decrementAvailableLocked(quantities);
+        };
+        if (!insufficientIds.isEmpty()) {
+            String titles = cart
+                    .stream()
+                    .filter(cartProductDTO -> insufficientIds.contains(cartProductDTO.getId()))
+                    .map(CartProductDTO::getTitle)
+                    .distinct()
+                    .collect(Collectors.joining(", "));
+            throw new InsufficientQuantityException("Out of stock for the product " + titles);
+        }
+        eventPublisher.publishEvent(new ProductsChangedEvent(List.copyOf(quantities.keySet())));
+        Order order = Order.builder().total(totalAmount).owner(owner).build();
+        cart.forEach(cartProductDTO -> order.addLine(ProductMapper.INSTANCE.toOrderLine(cartProductDTO)));
+        return orderStore.save(order);
+    }
+
+    private int resolvePageSize(Integer pageSize) {
+        if (pageSize == null || pageSize < 1) {
+            return catalogProperties.getDefaultPageSize();
+        }
+        return Math.min(pageSize, catalogProperties.getMaxPageSize());
     }
 
+    // sort:id:value of the last row, the sort is kept so a cursor cannot be replayed against another order
+    private String encodeCursor(ProductSort sort, Product last) {
+        String value = switch (sort) {
+            case ID -> "";
+            case PRICE_ASC, PRICE_DESC -> last.getPrice().toPlainString();
+            case TITLE -> last.getTitle();
+        };
+        String cursor = sort.name() + ":" + last.getId() + ":" + value;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(cursor.getBytes(StandardCharsets.UTF_8));
+    }
 
+    private Specification<Product> decodeCursor(ProductSort sort, String cursor) {
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(":", 3);
+            if (parts.length != 3 || !parts[0].equals(sort.name())) {
+                throw new InvalidCursorException("Cursor does not belong to the " + sort + " order");
+            }
+            long id = Long.parseLong(parts[1]);
+            return switch (sort) {
+                case ID -> ProductSpecifications.after(sort, id, id);
+                case PRICE_ASC, PRICE_DESC -> ProductSpecifications.after(sort, new BigDecimal(parts[2]), id);
+                case TITLE -> ProductSpecifications.after(sort, parts[2], id);
+            };
+        } catch (IllegalArgumentException e) {
+            throw new InvalidCursorException("Invalid cursor " + cursor);
+        }
+    }
 
     private BigDecimal calculateTotalAmount(List<BigDecimal> subTotals) {
         return subTotals
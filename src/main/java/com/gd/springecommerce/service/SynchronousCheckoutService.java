@@ -0,0 +1,60 @@
+package com.gd.springecommerce.service;
+
+import com.gd.springecommerce.config.CheckoutProperties;
+import com.gd.springecommerce.dto.CartProductDTO;
+import com.gd.springecommerce.exception.StockConflictException;
+import com.gd.springecommerce.metrics.MetricsRegistry;
+import com.gd.springecommerce.model.Order;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+@Service
+@RequiredArgsConstructor
+@FieldDefaults(makeFinal = true, level = AccessLevel.PRIVATE)
+@ConditionalOnProperty(prefix = "ecommerce.checkout", name = "mode", havingValue = "sync", matchIfMissing = true)
+public class SynchronousCheckoutService implements CheckoutService {
+
+    ProductService productService;
+    CheckoutProperties checkoutProperties;
+    MetricsRegistry metricsRegistry;
+
+    // Every attempt is its own transaction. A conflict is counted against each contended product, so hot products
+    // stand out in the metrics, and retried after a random pause so the losers do not collide again in lockstep.
+    @Override
+    public Order checkOut(String owner, List<CartProductDTO> cart) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return productService.checkOutProductsInTheCart(owner, cart);
+            } catch (StockConflictException e) {
+                boolean retried = attempt < checkoutProperties.getMaxAttempts();
+                for (Long productId : e.getProductIds()) {
+                    String product = String.valueOf(productId);
+                    metricsRegistry.counter("checkout_stock_conflicts_total", "product", product).increment();
+                    metricsRegistry.counter(retried ? "checkout_stock_retries_total" : "checkout_stock_retries_exhausted_total", "product", product).increment();
+                }
+                if (!retried) {
+                    throw e;
+                }
+                pause(attempt);
+            }
+        }
+    }
+
+    private void pause(int attempt) {
+        long ceiling = Math.min(checkoutProperties.getMaxRetryBackoff().toNanos(),
+                checkoutProperties.getRetryBackoff().toNanos() << Math.min(attempt - 1, 30));
+        try {
+            TimeUnit.NANOSECONDS.sleep(ThreadLocalRandom.current().nextLong(ceiling + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while retrying a checkout", e);
+        }
+    }
+}
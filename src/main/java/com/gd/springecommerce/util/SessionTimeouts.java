@@ -0,0 +1,21 @@
+package com.gd.springecommerce.util;
+
+import org.springframework.boot.autoconfigure.web.ServerProperties;
+
+import java.time.Duration;
+
+public final class SessionTimeouts {
+    private static final Duration MINIMUM = Duration.ofMinutes(1);
+
+    private SessionTimeouts() {
+    }
+
+    // tomcat expires sessions with minute granularity, so anything shorter lives for a minute
+    public static Duration of(Duration sessionTimeout) {
+        return sessionTimeout.compareTo(MINIMUM) < 0 ? MINIMUM : sessionTimeout;
+    }
+
+    public static Duration of(ServerProperties serverProperties) {
+        return of(serverProperties.getServlet().getSession().getTimeout());
+    }
+}
@@ -1,13 +1,27 @@
 package com.gd.springecommerce;
 
+import com.gd.springecommerce.jdbc.ConcurrencyLimitingDataSource;
 import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 
+import javax.sql.DataSource;
+
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+
 @SpringBootTest
 class SpringEcommerceApplicationTests {
 
+	@Autowired
+	private DataSource dataSource;
+
 	@Test
 	void contextLoads() {
 	}
 
+	@Test
+	void dataSourceIsConcurrencyLimited() {
+		assertInstanceOf(ConcurrencyLimitingDataSource.class, dataSource);
+	}
+
 }
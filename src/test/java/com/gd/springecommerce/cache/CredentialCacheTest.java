@@ -0,0 +1,79 @@
+package com.gd.springecommerce.cache;
+
+import com.gd.springecommerce.config.CredentialCacheProperties;
+import com.gd.springecommerce.dto.CacheStatistics;
+import com.gd.springecommerce.event.UserCredentialsChangedEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CredentialCacheTest {
+
+    private CredentialCacheProperties properties;
+    private UserDetails userDetails;
+
+    @BeforeEach
+    void setUp() {
+        properties = new CredentialCacheProperties();
+        userDetails = User.withUsername("test@example.com").password("hash").build();
+    }
+
+    @Test
+    void get_ReturnsOnlyForTheSamePassword() {
+        CredentialCache credentialCache = new CredentialCache(properties);
+        credentialCache.putIfCurrent("test@example.com", "Password1!", userDetails, credentialCache.generation("test@example.com"));
+        assertSame(userDetails, credentialCache.get("test@example.com", "Password1!"));
+        assertNull(credentialCache.get("test@example.com", "Password2!"));
+        assertNull(credentialCache.get("other@example.com", "Password1!"));
+        CacheStatistics statistics = credentialCache.statistics();
+        assertEquals(1, statistics.getHitCount());
+        assertEquals(2, statistics.getMissCount());
+    }
+
+    @Test
+    void get_DoesNotConfuseUsernameAndPasswordBoundaries() {
+        CredentialCache credentialCache = new CredentialCache(properties);
+        credentialCache.putIfCurrent("ab", "c", userDetails, credentialCache.generation("ab"));
+        assertNull(credentialCache.get("a", "bc"));
+    }
+
+    @Test
+    void onUserCredentialsChanged_InvalidatesEveryEntryOfTheUser() {
+        CredentialCache credentialCache = new CredentialCache(properties);
+        UserDetails other = User.withUsername("other@example.com").password("hash").build();
+        credentialCache.putIfCurrent("test@example.com", "Password1!", userDetails, credentialCache.generation("test@example.com"));
+        credentialCache.putIfCurrent("test@example.com", "Password2!", userDetails, credentialCache.generation("test@example.com"));
+        credentialCache.putIfCurrent("other@example.com", "Password1!", other, credentialCache.generation("other@example.com"));
+        credentialCache.onUserCredentialsChanged(new UserCredentialsChangedEvent("test@example.com"));
+        assertNull(credentialCache.get("test@example.com", "Password1!"));
+        assertNull(credentialCache.get("test@example.com", "Password2!"));
+        assertSame(other, credentialCache.get("other@example.com", "Password1!"));
+    }
+
+    @Test
+    void putIfCurrent_DropsAVerificationThatRacedWithACredentialChange() {
+        CredentialCache credentialCache = new CredentialCache(properties);
+        long generation = credentialCache.generation("test@example.com");
+        credentialCache.onUserCredentialsChanged(new UserCredentialsChangedEvent("test@example.com"));
+        credentialCache.putIfCurrent("test@example.com", "Password1!", userDetails, generation);
+        assertNull(credentialCache.get("test@example.com", "Password1!"));
+        // a verification that starts after the change is cached again
+        credentialCache.putIfCurrent("test@example.com", "Password2!", userDetails, credentialCache.generation("test@example.com"));
+        assertSame(userDetails, credentialCache.get("test@example.com", "Password2!"));
+    }
+
+    @Test
+    void putIfCurrent_EvictsBeyondMaximumSize() {
+        properties.setMaximumSize(10);
+        CredentialCache credentialCache = new CredentialCache(properties);
+        for (int i = 0; i < 100; i++) {
+            credentialCache.putIfCurrent("test@example.com", "Password" + i, userDetails, credentialCache.generation("test@example.com"));
+        }
+        CacheStatistics statistics = credentialCache.statistics();
+        assertTrue(statistics.getSize() <= 10);
+        assertTrue(statistics.getEvictionCount() >= 90);
+    }
+}
@@ -0,0 +1,124 @@
+package com.gd.springecommerce.cache;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.json.JsonWriteFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.gd.springecommerce.config.JacksonConfig;
+import com.gd.springecommerce.config.JsonCacheProperties;
+import com.gd.springecommerce.dto.CartProductDTO;
+import com.gd.springecommerce.dto.ProductPage;
+import com.gd.springecommerce.event.ProductsChangedEvent;
+import com.gd.springecommerce.model.EcommerceResponse;
+import com.gd.springecommerce.model.Product;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FragmentCachingSerializerTest {
+
+    private final ObjectMapper plainMapper = Jackson2ObjectMapperBuilder.json().build();
+
+    private JsonFragmentCache jsonFragmentCache;
+
+    private ObjectMapper fragmentMapper;
+
+    private final Product pen = product(1L, 5);
+
+    @BeforeEach
+    void setUp() {
+        jsonFragmentCache = new JsonFragmentCache(new JsonCacheProperties());
+        fragmentMapper = Jackson2ObjectMapperBuilder.json()
+                .modulesToInstall(new JacksonConfig().jsonFragmentModule(jsonFragmentCache))
+                .build();
+    }
+
+    @Test
+    void writeValue_MatchesTheBeanSerializer() throws Exception {
+        ProductPage page = ProductPage.builder().products(List.of(pen, product(2L, 0))).nextCursor(2L).build();
+        assertEquals(plainMapper.writeValueAsString(page), fragmentMapper.writeValueAsString(page));
+        assertEquals(plainMapper.writeValueAsString(page), fragmentMapper.writeValueAsString(page));
+        EcommerceResponse<CartProductDTO> response = new EcommerceResponse<>(cartLine(1L, 3));
+        assertEquals(plainMapper.writeValueAsString(response), fragmentMapper.writeValueAsString(response));
+    }
+
+    @Test
+    void writeValue_ReusesTheFragmentOfAnUnchangedValue() throws Exception {
+        fragmentMapper.writeValueAsBytes(List.of(pen, cartLine(1L, 3)));
+        fragmentMapper.writeValueAsBytes(List.of(product(1L, 5), cartLine(1L, 3)));
+        assertEquals(2, jsonFragmentCache.statistics().getHitCount());
+        assertEquals(2, jsonFragmentCache.statistics().getSize());
+    }
+
+    @Test
+    void writeValue_RendersAChangedValueAgain() throws Exception {
+        fragmentMapper.writeValueAsString(pen);
+        pen.setAvailable(4);
+        assertEquals(plainMapper.writeValueAsString(pen), fragmentMapper.writeValueAsString(pen));
+        assertEquals(plainMapper.writeValueAsString(cartLine(1L, 2)), fragmentMapper.writeValueAsString(cartLine(1L, 2)));
+    }
+
+    @Test
+    void onProductsChanged_EvictsTheProductFragments() throws Exception {
+        fragmentMapper.writeValueAsString(List.of(pen, product(2L, 1)));
+        jsonFragmentCache.onProductsChanged(new ProductsChangedEvent(List.of(1L)));
+        assertEquals(1, jsonFragmentCache.statistics().getSize());
+    }
+
+    @Test
+    void writeValue_WithoutIdIsNotCached() throws Exception {
+        Product unsaved = Product.builder().title("new").available(1).price(BigDecimal.ONE).build();
+        assertEquals(plainMapper.writeValueAsString(unsaved), fragmentMapper.writeValueAsString(unsaved));
+        assertEquals(0, jsonFragmentCache.statistics().getSize());
+    }
+
+    @Test
+    void writeValue_InABinaryFormatIsNotCached() throws Exception {
+        ObjectMapper cborMapper = Jackson2ObjectMapperBuilder.cbor()
+                .modulesToInstall(new JacksonConfig().jsonFragmentModule(jsonFragmentCache))
+                .build();
+        byte[] cbor = cborMapper.writeValueAsBytes(List.of(pen));
+        assertArrayEquals(Jackson2ObjectMapperBuilder.cbor().build().writeValueAsBytes(List.of(pen)), cbor);
+        assertEquals(pen, cborMapper.readValue(cbor, Product[].class)[0]);
+        assertEquals(0, jsonFragmentCache.statistics().getSize());
+    }
+
+    @Test
+    void writeValue_KeepsTheAnnotationsOfTheProperty() throws Exception {
+        ProductHolder holder = new ProductHolder(pen, pen);
+        fragmentMapper.writeValueAsString(pen);
+        assertEquals(plainMapper.writeValueAsString(holder), fragmentMapper.writeValueAsString(holder));
+        assertEquals(plainMapper.writeValueAsString(pen), fragmentMapper.writeValueAsString(pen));
+    }
+
+    @Test
+    void writeValue_WithTheFeaturesOfTheMapper() throws Exception {
+        JsonFactory escapingFactory = JsonFactory.builder().enable(JsonWriteFeature.ESCAPE_NON_ASCII).build();
+        ObjectMapper escapingMapper = JsonMapper.builder(escapingFactory)
+                .addModule(new JacksonConfig().jsonFragmentModule(jsonFragmentCache))
+                .build();
+        Product crayon = Product.builder().id(3L).title("crayon \u00e9t\u00e9").available(1).price(BigDecimal.ONE).build();
+        String json = escapingMapper.writeValueAsString(List.of(crayon));
+        assertEquals(JsonMapper.builder(escapingFactory).build().writeValueAsString(List.of(crayon)), json);
+        assertTrue(json.contains("\\u00E9"));
+    }
+
+    private record ProductHolder(@JsonFormat(shape = JsonFormat.Shape.ARRAY) Product asArray,
+                                 @JsonIgnoreProperties({"sku", "price"}) Product summary) {
+    }
+
+    private static Product product(Long id, int available) {
+        return Product.builder().id(id).sku("SKU-" + id).title("product \"" + id + "\"").available(available).price(new BigDecimal("9.99")).build();
+    }
+
+    private static CartProductDTO cartLine(Long id, int quantity) {
+        return CartProductDTO.builder().id(id).title("product " + id).quantity(quantity).subTotal(new BigDecimal("9.99").multiply(BigDecimal.valueOf(quantity))).build();
+    }
+}
@@ -0,0 +1,112 @@
+package com.gd.springecommerce.cache;
+
+import com.gd.springecommerce.config.IdempotencyCacheProperties;
+import com.gd.springecommerce.dto.CacheStatistics;
+import com.gd.springecommerce.exception.InsufficientQuantityException;
+import com.gd.springecommerce.model.Order;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.ResponseEntity;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IdempotencyCacheTest {
+
+    private IdempotencyCache idempotencyCache;
+    private AtomicInteger checkouts;
+
+    @BeforeEach
+    void setUp() {
+        idempotencyCache = new IdempotencyCache(new IdempotencyCacheProperties());
+        checkouts = new AtomicInteger();
+    }
+
+    @Test
+    void execute_ReplaysTheFirstResponse() {
+        IdempotencyCache.Execution first = idempotencyCache.execute("cart", "key", this::checkOut);
+        IdempotencyCache.Execution second = idempotencyCache.execute("cart", "key", this::checkOut);
+        assertFalse(first.replayed());
+        assertTrue(second.replayed());
+        assertSame(first.response(), second.response());
+        assertEquals(1, checkouts.get());
+        CacheStatistics statistics = idempotencyCache.statistics();
+        assertEquals(1, statistics.getHitCount());
+        assertEquals(1, statistics.getMissCount());
+    }
+
+    @Test
+    void execute_ScopesTheKeyToTheCart() {
+        IdempotencyCache.Execution mine = idempotencyCache.execute("cart", "key", this::checkOut);
+        IdempotencyCache.Execution theirs = idempotencyCache.execute("other-cart", "key", this::checkOut);
+        assertFalse(theirs.replayed());
+        assertNotEquals(mine.response().getBody().getId(), theirs.response().getBody().getId());
+        assertEquals(2, checkouts.get());
+    }
+
+    @Test
+    void execute_ForgetsAFailedCheckout() {
+        InsufficientQuantityException failure = new InsufficientQuantityException("Insufficient quantity");
+        assertSame(failure, assertThrows(InsufficientQuantityException.class,
+                () -> idempotencyCache.execute("cart", "key", () -> {
+                    throw failure;
+                })));
+        IdempotencyCache.Execution retried = idempotencyCache.execute("cart", "key", this::checkOut);
+        assertFalse(retried.replayed());
+        assertEquals(1, checkouts.get());
+    }
+
+    @Test
+    void execute_CoalescesACheckoutInProgress() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<IdempotencyCache.Execution> first = CompletableFuture.supplyAsync(() -> idempotencyCache.execute("cart", "key", () -> {
+            started.countDown();
+            await(release);
+            return checkOut();
+        }));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        CompletableFuture<IdempotencyCache.Execution> second = CompletableFuture.supplyAsync(() -> idempotencyCache.execute("cart", "key", this::checkOut));
+        Thread.sleep(50);
+        assertFalse(second.isDone());
+        release.countDown();
+        assertFalse(first.get(5, TimeUnit.SECONDS).replayed());
+        assertTrue(second.get(5, TimeUnit.SECONDS).replayed());
+        assertSame(first.get().response(), second.get().response());
+        assertEquals(1, checkouts.get());
+    }
+
+    @Test
+    void execute_PassesTheFailureToTheCoalescedRequest() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<IdempotencyCache.Execution> first = CompletableFuture.supplyAsync(() -> idempotencyCache.execute("cart", "key", () -> {
+            started.countDown();
+            await(release);
+            throw new InsufficientQuantityException("Insufficient quantity");
+        }));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        CompletableFuture<IdempotencyCache.Execution> second = CompletableFuture.supplyAsync(() -> idempotencyCache.execute("cart", "key", this::checkOut));
+        Thread.sleep(50);
+        release.countDown();
+        assertInstanceOf(InsufficientQuantityException.class, assertThrows(Exception.class, () -> first.get(5, TimeUnit.SECONDS)).getCause());
+        assertInstanceOf(InsufficientQuantityException.class, assertThrows(Exception.class, () -> second.get(5, TimeUnit.SECONDS)).getCause());
+        assertEquals(0, checkouts.get());
+    }
+
+    private ResponseEntity<Order> checkOut() {
+        return ResponseEntity.ok(Order.builder().id((long) checkouts.incrementAndGet()).build());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.gd.springecommerce.cache;
+
+import com.gd.springecommerce.config.ProductCacheProperties;
+import com.gd.springecommerce.dto.CacheStatistics;
+import com.gd.springecommerce.event.ProductsChangedEvent;
+import com.gd.springecommerce.model.Product;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.AdditionalAnswers.delegatesTo;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class ProductCacheTest {
+
+    private ProductCacheProperties properties;
+    private AtomicInteger loads;
+    private Function<Long, Product> loader;
+
+    @BeforeEach
+    void setUp() {
+        properties = new ProductCacheProperties();
+        loads = new AtomicInteger();
+        loader = id -> {
+            loads.incrementAndGet();
+            return Product.builder().id(id).build();
+        };
+    }
+
+    @Test
+    void get_LoadsOnceAndCountsHitsAndMisses() {
+        ProductCache productCache = new ProductCache(properties);
+        productCache.get(1L, loader);
+        productCache.get(1L, loader);
+        productCache.get(1L, loader);
+        CacheStatistics statistics = productCache.statistics();
+        assertEquals(1, loads.get());
+        assertEquals(1, statistics.getMissCount());
+        assertEquals(2, statistics.getHitCount());
+    }
+
+    @Test
+    void getAll_LoadsOnlyTheMissesInOneCall() {
+        ProductCache productCache = new ProductCache(properties);
+        productCache.get(1L, loader);
+        List<List<Long>> batches = new ArrayList<>();
+        Map<Long, Product> products = productCache.getAll(List.of(1L, 2L, 3L), ids -> {
+            batches.add(ids);
+            return List.of(Product.builder().id(2L).build());
+        });
+        assertEquals(List.of(List.of(2L, 3L)), batches);
+        assertEquals(Set.of(1L, 2L), products.keySet());
+        assertEquals(2, productCache.statistics().getSize());
+        productCache.getAll(List.of(1L, 2L), ids -> fail("every id is cached"));
+    }
+
+    @Test
+    void get_WithNullIdBypassesTheCache() {
+        ProductCache productCache = new ProductCache(properties);
+        assertNull(productCache.get(null, id -> null));
+        assertEquals(0, productCache.statistics().getSize());
+    }
+
+    @Test
+    void onProductsChanged_InvalidatesChangedProducts() {
+        ProductCache productCache = new ProductCache(properties);
+        productCache.get(1L, loader);
+        productCache.get(2L, loader);
+        productCache.onProductsChanged(new ProductsChangedEvent(List.of(1L)));
+        productCache.get(1L, loader);
+        productCache.get(2L, loader);
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    void get_EvictsBeyondMaximumSize() {
+        properties.setMaximumSize(10);
+        ProductCache productCache = new ProductCache(properties);
+        for (long id = 1; id <= 100; id++) {
+            productCache.get(id, loader);
+        }
+        CacheStatistics statistics = productCache.statistics();
+        assertTrue(statistics.getSize() <= 10);
+        assertTrue(statistics.getEvictionCount() >= 90);
+    }
+
+    @Test
+    void get_DoesNotCacheALoadThatRacedWithAnInvalidation() {
+        ProductCache productCache = new ProductCache(properties);
+        productCache.get(1L, id -> {
+            productCache.onProductsChanged(new ProductsChangedEvent(List.of(id)));
+            return Product.builder().id(id).available(10).build();
+        });
+        productCache.get(1L, loader);
+        assertEquals(1, loads.get());
+    }
+
+    // a checkout of another product during the load does not keep this one out of the cache
+    @Test
+    void get_CachesALoadThatRacedWithAnInvalidationOfAnotherProduct() {
+        ProductCache productCache = new ProductCache(properties);
+        productCache.get(1L, id -> {
+            productCache.onProductsChanged(new ProductsChangedEvent(List.of(2L)));
+            loads.incrementAndGet();
+            return Product.builder().id(id).available(10).build();
+        });
+        productCache.get(1L, loader);
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void getAll_CachesOnlyTheLoadsOfProductsThatWereNotChanged() {
+        ProductCache productCache = new ProductCache(properties);
+        productCache.getAll(List.of(1L, 2L), ids -> {
+            productCache.onProductsChanged(new ProductsChangedEvent(List.of(2L)));
+            return ids.stream().map(id -> Product.builder().id(id).available(10).build()).toList();
+        });
+        productCache.get(1L, loader);
+        assertEquals(0, loads.get());
+        productCache.get(2L, loader);
+        assertEquals(1, loads.get());
+    }
+
+    // the invalidation lands after the generation check but before the put, when there is nothing to remove yet
+    @Test
+    void get_DoesNotKeepALoadThatWasInvalidatedAsItWasPut() {
+        ProductCache productCache = invalidatingBeforePut(2L);
+        productCache.get(1L, loader);
+        productCache.get(2L, loader);
+        productCache.get(1L, loader);
+        productCache.get(2L, loader);
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    void getAll_DoesNotKeepALoadThatWasInvalidatedAsItWasPut() {
+        ProductCache productCache = invalidatingBeforePut(2L);
+        productCache.getAll(List.of(1L, 2L), ids -> ids.stream().map(loader).toList());
+        productCache.get(1L, loader);
+        productCache.get(2L, loader);
+        assertEquals(3, loads.get());
+    }
+
+    @SuppressWarnings("unchecked")
+    private ProductCache invalidatingBeforePut(Long changedId) {
+        Cache<Long, Product> cache = spy(Caffeine.newBuilder().<Long, Product>build());
+        ConcurrentMap<Long, Product> map = cache.asMap();
+        ConcurrentMap<Long, Product> racingMap = mock(ConcurrentMap.class, delegatesTo(map));
+        doReturn(racingMap).when(cache).asMap();
+        ProductCache productCache = new ProductCache(cache);
+        doAnswer(invocation -> {
+            Long id = invocation.getArgument(0);
+            if (id.equals(changedId)) {
+                productCache.onProductsChanged(new ProductsChangedEvent(List.of(id)));
+            }
+            return map.putIfAbsent(id, invocation.getArgument(1));
+        }).when(racingMap).putIfAbsent(any(), any());
+        return productCache;
+    }
+}
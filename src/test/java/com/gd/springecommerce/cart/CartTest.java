@@ -0,0 +1,84 @@
+package com.gd.springecommerce.cart;
+
+import com.gd.springecommerce.dto.CartProductDTO;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CartTest {
+
+    @Test
+    void putLine_ReplacesTheLineAndKeepsTheRunningTotal() {
+        Cart cart = new Cart();
+        cart.putLine(CartProductDTO.builder().id(1L).quantity(1).subTotal(BigDecimal.TEN).build());
+        cart.putLine(CartProductDTO.builder().id(2L).quantity(1).subTotal(BigDecimal.ONE).build());
+        cart.putLine(CartProductDTO.builder().id(1L).quantity(3).subTotal(BigDecimal.valueOf(30)).build());
+        assertEquals(2, cart.size());
+        assertEquals(3, cart.getLine(1L).getQuantity());
+        assertEquals(BigDecimal.valueOf(31), cart.getTotal());
+    }
+
+    @Test
+    void removeLine_SubtractsFromTheRunningTotal() {
+        Cart cart = new Cart();
+        cart.putLine(CartProductDTO.builder().id(1L).quantity(1).subTotal(BigDecimal.TEN).build());
+        cart.putLine(CartProductDTO.builder().id(2L).quantity(1).subTotal(BigDecimal.ONE).build());
+        assertNotNull(cart.removeLine(1L));
+        assertNull(cart.removeLine(1L));
+        assertEquals(1, cart.getLines().size());
+        assertEquals(BigDecimal.ONE, cart.getTotal());
+    }
+
+    @Test
+    void mergeLine_ConcurrentAddsToOneLineAreAllKept() throws Exception {
+        Cart cart = new Cart();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> adds = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                adds.add(executor.submit(() -> {
+                    for (int j = 0; j < 500; j++) {
+                        cart.mergeLine(1L, line -> {
+                            int quantity = line == null ? 1 : line.getQuantity() + 1;
+                            return CartProductDTO.builder().id(1L).quantity(quantity).subTotal(BigDecimal.valueOf(quantity)).build();
+                        });
+                    }
+                }));
+            }
+            for (Future<?> add : adds) {
+                add.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(4000, cart.getLine(1L).getQuantity());
+        assertEquals(BigDecimal.valueOf(4000), cart.getTotal());
+    }
+
+    @Test
+    void mergeLines_PutsOnlyTheReturnedLines() {
+        Cart cart = new Cart();
+        cart.putLine(CartProductDTO.builder().id(1L).quantity(1).subTotal(BigDecimal.ONE).build());
+        List<CartProductDTO> merged = cart.mergeLines(List.of(1L, 2L), lines -> {
+            assertEquals(1, lines.get(1L).getQuantity());
+            assertTrue(lines.containsKey(2L));
+            assertNull(lines.get(2L));
+            return List.of();
+        });
+        assertTrue(merged.isEmpty());
+        assertEquals(1, cart.size());
+
+        cart.mergeLines(List.of(1L, 2L), lines -> List.of(
+                CartProductDTO.builder().id(1L).quantity(2).subTotal(BigDecimal.valueOf(2)).build(),
+                CartProductDTO.builder().id(2L).quantity(1).subTotal(BigDecimal.TEN).build()));
+        assertEquals(2, cart.getLine(1L).getQuantity());
+        assertEquals(BigDecimal.valueOf(12), cart.getTotal());
+    }
+}
@@ -0,0 +1,99 @@
+package com.gd.springecommerce.cart;
+
+import com.gd.springecommerce.config.CartProperties;
+import com.gd.springecommerce.dto.CartProductDTO;
+import com.gd.springecommerce.service.InventoryReservationService;
+import com.github.benmanes.caffeine.cache.Scheduler;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.web.ServerProperties;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class InMemoryCartStoreTest {
+
+    private final InventoryReservationService inventoryReservationService = mock(InventoryReservationService.class);
+
+    @Test
+    void getOrCreateCart_ReturnsTheSameCartForTheSameId() {
+        InMemoryCartStore cartStore = new InMemoryCartStore(new CartProperties(), new ServerProperties(), inventoryReservationService);
+        Cart cart = cartStore.getOrCreateCart("cart-1");
+        assertSame(cart, cartStore.getOrCreateCart("cart-1"));
+        assertTrue(cartStore.findCart("cart-2").isEmpty());
+        cartStore.removeCart("cart-1");
+        assertTrue(cartStore.findCart("cart-1").isEmpty());
+    }
+
+    // a checkout removes the cart while an add to it is still running, the add's save must not bring it back
+    @Test
+    void saveCart_DoesNotBringBackARemovedCart() {
+        InMemoryCartStore cartStore = new InMemoryCartStore(new CartProperties(), new ServerProperties(), inventoryReservationService);
+        Cart cart = cartStore.getOrCreateCart("cart-1");
+        cartStore.removeCart("cart-1");
+        cart.putLine(CartProductDTO.builder().id(1L).quantity(1).build());
+        assertFalse(cartStore.saveCart("cart-1", cart));
+        assertTrue(cartStore.findCart("cart-1").isEmpty());
+
+        Cart newCart = cartStore.getOrCreateCart("cart-1");
+        assertFalse(cartStore.saveCart("cart-1", cart));
+        assertSame(newCart, cartStore.findCart("cart-1").orElseThrow());
+        assertTrue(cartStore.saveCart("cart-1", newCart));
+        verify(inventoryReservationService, never()).releaseAll(anyString());
+    }
+
+    @Test
+    void saveCart_BoundsTheStoreByTotalLines() {
+        CartProperties cartProperties = new CartProperties();
+        cartProperties.setMaximumLines(100);
+        InMemoryCartStore cartStore = new InMemoryCartStore(cartProperties, new ServerProperties(), inventoryReservationService);
+        for (int i = 0; i < 50; i++) {
+            Cart cart = new Cart();
+            for (long id = 1; id <= 9; id++) {
+                cart.putLine(CartProductDTO.builder().id(id).quantity(1).build());
+            }
+            cartStore.saveCart("cart-" + i, cart);
+        }
+        long storedCarts = 0;
+        for (int i = 0; i < 50; i++) {
+            storedCarts += cartStore.findCart("cart-" + i).isPresent() ? 1 : 0;
+        }
+        assertTrue(storedCarts <= 10);
+    }
+
+    @Test
+    void expiredCart_ReleasesItsReservations() {
+        AtomicLong nanos = new AtomicLong();
+        InMemoryCartStore cartStore = new InMemoryCartStore(new CartProperties(), new ServerProperties(), inventoryReservationService,
+                nanos::get, Scheduler.disabledScheduler());
+        cartStore.getOrCreateCart("cart-1");
+        cartStore.getOrCreateCart("cart-2");
+        cartStore.removeCart("cart-2");
+        nanos.addAndGet(Duration.ofMinutes(29).toNanos());
+        assertTrue(cartStore.findCart("cart-1").isPresent());
+        verifyNoInteractions(inventoryReservationService);
+
+        nanos.addAndGet(Duration.ofMinutes(31).toNanos());
+        assertTrue(cartStore.findCart("cart-1").isEmpty());
+        verify(inventoryReservationService).releaseAll("cart-1");
+        verify(inventoryReservationService, never()).releaseAll("cart-2");
+    }
+
+    @Test
+    void evictedCart_ReleasesItsReservations() {
+        CartProperties cartProperties = new CartProperties();
+        cartProperties.setMaximumLines(10);
+        InMemoryCartStore cartStore = new InMemoryCartStore(cartProperties, new ServerProperties(), inventoryReservationService);
+        for (int i = 0; i < 20; i++) {
+            cartStore.saveCart("cart-" + i, new Cart());
+        }
+        long storedCarts = 0;
+        for (int i = 0; i < 20; i++) {
+            storedCarts += cartStore.findCart("cart-" + i).isPresent() ? 1 : 0;
+        }
+        verify(inventoryReservationService, times((int) (20 - storedCarts))).releaseAll(anyString());
+    }
+}
@@ -0,0 +1,58 @@
+package com.gd.springecommerce.catalog;
+
+import com.gd.springecommerce.config.CatalogProperties;
+import com.gd.springecommerce.event.ProductsChangedEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CatalogVersionTest {
+
+    private CatalogVersion catalogVersion;
+
+    @BeforeEach
+    void setUp() {
+        CatalogProperties properties = new CatalogProperties();
+        properties.setChangeLogSize(3);
+        catalogVersion = new CatalogVersion(properties);
+    }
+
+    @Test
+    void onProductsChanged_BumpsTheVersion() {
+        long start = catalogVersion.current();
+        catalogVersion.onProductsChanged(new ProductsChangedEvent(List.of(1L)));
+        catalogVersion.onProductsChanged(new ProductsChangedEvent(List.of(2L)));
+        assertEquals(start + 2, catalogVersion.current());
+    }
+
+    @Test
+    void changedSince_CollectsTheIdsOfLaterVersions() {
+        long start = catalogVersion.current();
+        catalogVersion.onProductsChanged(new ProductsChangedEvent(List.of(1L, 2L)));
+        catalogVersion.onProductsChanged(new ProductsChangedEvent(List.of(2L, 3L)));
+        assertEquals(Optional.of(Set.of(1L, 2L, 3L)), catalogVersion.changedSince(start));
+        assertEquals(Optional.of(Set.of(2L, 3L)), catalogVersion.changedSince(start + 1));
+        assertEquals(Optional.of(Set.of()), catalogVersion.changedSince(catalogVersion.current()));
+    }
+
+    @Test
+    void changedSince_ExpiresVersionsDroppedFromTheLog() {
+        long start = catalogVersion.current();
+        for (long id = 1; id <= 5; id++) {
+            catalogVersion.onProductsChanged(new ProductsChangedEvent(List.of(id)));
+        }
+        assertTrue(catalogVersion.changedSince(start + 1).isEmpty());
+        assertEquals(Optional.of(Set.of(3L, 4L, 5L)), catalogVersion.changedSince(start + 2));
+    }
+
+    @Test
+    void changedSince_ExpiresVersionsOfAnotherRun() {
+        assertTrue(catalogVersion.changedSince(catalogVersion.current() - 1).isEmpty());
+        assertTrue(catalogVersion.changedSince(catalogVersion.current() + 1).isEmpty());
+    }
+}
@@ -0,0 +1,293 @@
+package com.gd.springecommerce.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gd.springecommerce.catalog.CatalogVersion;
+import com.gd.springecommerce.dto.ProductDTO;
+import com.gd.springecommerce.event.ProductsChangedEvent;
+import com.gd.springecommerce.jdbc.StatementCounter;
+import com.gd.springecommerce.jdbc.StatementCounter.SqlCounts;
+import com.gd.springecommerce.jdbc.StatementCountingConfig;
+import com.gd.springecommerce.model.Product;
+import com.gd.springecommerce.model.User;
+import com.gd.springecommerce.repository.OrderRepository;
+import com.gd.springecommerce.repository.ProductRepository;
+import com.gd.springecommerce.repository.UserRepository;
+import com.gd.springecommerce.service.ProductSearchService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpSession;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// Runs every product and user endpoint against the embedded database and bounds the SQL each one sends.
+// A bound that fails lists the statements, a new query on one of these paths has to be a deliberate change here.
+@SpringBootTest
+@AutoConfigureMockMvc(addFilters = false)
+@Import(StatementCountingConfig.class)
+@TestPropertySource(properties = {
+        "ecommerce.search.refresh-interval=1h",
+        "ecommerce.inventory.reservation.sweep-interval=1h",
+        "ecommerce.inventory.reservation.reconcile-interval=1h"})
+class EndpointStatementCountTest {
+
+    private static final int PRODUCTS = 120;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private StatementCounter statementCounter;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ProductSearchService productSearchService;
+
+    @Autowired
+    private CatalogVersion catalogVersion;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    private MockHttpSession session;
+
+    private List<Product> products;
+
+    @BeforeEach
+    void setUp() {
+        products = productRepository.saveAll(IntStream.range(0, PRODUCTS)
+                .mapToObj(i -> Product.builder().sku("SKU-" + i).title("pen " + i).available(1000).price(BigDecimal.TEN).build())
+                .toList());
+        // the product caches, the catalog snapshots and the search index forget what earlier tests left behind
+        eventPublisher.publishEvent(new ProductsChangedEvent(products.stream().map(Product::getId).toList()));
+        productSearchService.rebuildIndex();
+        session = new MockHttpSession();
+    }
+
+    @AfterEach
+    void tearDown() {
+        orderRepository.deleteAll();
+        productRepository.deleteAll();
+        userRepository.deleteAll();
+        eventPublisher.publishEvent(new ProductsChangedEvent(products.stream().map(Product::getId).toList()));
+    }
+
+    @Test
+    void getAllProducts_ReadsTheCatalogOnceThenServesTheSnapshot() throws Exception {
+        statementCounter.measure(() -> get("/ecommerce/v1/products/all-products"))
+                .assertStatementsAtMost(1)
+                .assertRowsReadAtMost(PRODUCTS);
+        statementCounter.measure(() -> get("/ecommerce/v1/products/all-products"))
+                .assertNoStatements();
+    }
+
+    @Test
+    void getProductChanges_FetchesTheChangedProductsWithOneQuery() throws Exception {
+        long since = catalogVersion.current();
+        eventPublisher.publishEvent(new ProductsChangedEvent(products.subList(0, 50).stream().map(Product::getId).toList()));
+
+        statementCounter.measure(() -> get("/ecommerce/v1/products/all-products/changes?since=" + since))
+                .assertStatementsAtMost(1)
+                .assertRowsReadAtMost(50);
+    }
+
+    @Test
+    void getProductsPage_ReadsOnePageWithOneQuery() throws Exception {
+        statementCounter.measure(() -> get("/ecommerce/v1/products/catalog?size=20"))
+                .assertStatementsAtMost(1)
+                .assertRowsReadAtMost(21);
+    }
+
+    @Test
+    void getFilteredProducts_ReadsOnePageWithOneQuery() throws Exception {
+        statementCounter.measure(() -> get("/ecommerce/v1/products/catalog/filter?inStock=true&maxPrice=20&sort=PRICE_ASC&size=20"))
+                .assertStatementsAtMost(1)
+                .assertRowsReadAtMost(21);
+    }
+
+    @Test
+    void streamAllProducts_StreamsTheCatalogWithOneQuery() throws Exception {
+        statementCounter.measure(() -> {
+            MvcResult result = mockMvc.perform(MockMvcRequestBuilders.get("/ecommerce/v1/products/catalog/stream"))
+                    .andExpect(request().asyncStarted())
+                    .andReturn();
+            mockMvc.perform(asyncDispatch(result)).andExpect(status().isOk());
+        }).assertStatementsAtMost(1).assertRowsReadAtMost(PRODUCTS);
+    }
+
+    @Test
+    void searchProducts_IsAnsweredFromTheIndex() throws Exception {
+        statementCounter.measure(() -> get("/ecommerce/v1/products/search?q=pen"))
+                .assertNoStatements();
+    }
+
+    @Test
+    void importProducts_UpdatesExistingSkusInOneBatch() throws Exception {
+        StringBuilder csv = new StringBuilder("sku,title,available,price\n");
+        IntStream.range(0, 100).forEach(i -> csv.append("SKU-").append(i).append(",pen ").append(i).append(",5,9.99\n"));
+
+        SqlCounts counts = statementCounter.measure(() -> {
+            MvcResult result = mockMvc.perform(MockMvcRequestBuilders.post("/ecommerce/v1/products/import")
+                            .contentType("text/csv")
+                            .content(csv.toString()))
+                    .andExpect(request().asyncStarted())
+                    .andReturn();
+            mockMvc.perform(asyncDispatch(result)).andExpect(status().isOk());
+        });
+
+        // one lookup of the skus and one batched update, whatever the number of rows
+        counts.assertRoundTripsAtMost(2).assertRowsWrittenAtMost(100);
+    }
+
+    // the first reservation of a product also reads its stock, the cached product may be stale
+    @Test
+    void addItemsToCart_ReadsTheProductOnce() throws Exception {
+        statementCounter.measure(() -> addToCart(products.get(0), 1))
+                .assertStatementsAtMost(2)
+                .assertRowsReadAtMost(2);
+        statementCounter.measure(() -> addToCart(products.get(0), 1))
+                .assertNoStatements();
+    }
+
+    @Test
+    void addItemsToCartInBatch_LooksUpEveryLineAndItsStockWithOneQueryEach() throws Exception {
+        statementCounter.measure(() -> addToCartInBatch(products.subList(0, 100)))
+                .assertStatementsAtMost(2)
+                .assertRowsReadAtMost(200);
+    }
+
+    @Test
+    void displayCart_DoesNotQuery() throws Exception {
+        addToCartInBatch(products.subList(0, 10));
+
+        statementCounter.measure(() -> get("/ecommerce/v1/products/cart/products"))
+                .assertNoStatements();
+    }
+
+    @Test
+    void removeProductFromCart_DoesNotQuery() throws Exception {
+        addToCartInBatch(products.subList(0, 10));
+
+        statementCounter.measure(() -> mockMvc.perform(MockMvcRequestBuilders.delete("/ecommerce/v1/products/" + products.get(0).getId())
+                        .session(session))
+                .andExpect(status().isOk()))
+                .assertNoStatements();
+    }
+
+    @Test
+    void modifyProductInCart_UsesTheCachedProduct() throws Exception {
+        addToCartInBatch(products.subList(0, 10));
+        Product product = products.get(0);
+
+        statementCounter.measure(() -> mockMvc.perform(MockMvcRequestBuilders.put("/ecommerce/v1/products/cart/products/" + product.getId())
+                        .session(session)
+                        .contentType(MediaType.APPLICATION_JSON_VALUE)
+                        .content(objectMapper.writeValueAsString(ProductDTO.builder().id(product.getId()).quantity(3).build())))
+                .andExpect(status().isOk()))
+                .assertNoStatements();
+    }
+
+    @Test
+    void checkOutProductsInTheCart_TakesRoundTripsPerBatchNotPerLine() throws Exception {
+        SqlCounts fewLines = checkOut(products.subList(0, 5));
+        SqlCounts manyLines = checkOut(products.subList(5, 105));
+
+        // one batched stock update, one order insert, a line insert batch and an id block per 50 lines
+        fewLines.assertRoundTripsAtMost(6);
+        manyLines.assertRoundTripsAtMost(3 + 2 * (100 / 50))
+                .assertStatementsAtMost(2 * 100 + 4)
+                .assertRowsWrittenAtMost(2 * 100 + 1);
+    }
+
+    @Test
+    void registerUser_ChecksTheEmailAndInsertsTheUser() throws Exception {
+        statementCounter.measure(() -> register("abc@gmail.com"))
+                .assertStatementsAtMost(4)
+                .assertRowsWrittenAtMost(2);
+    }
+
+    @Test
+    void loginUser_ReadsTheUserOnceThenUsesTheCachedCredentials() throws Exception {
+        register("abc@gmail.com");
+
+        statementCounter.measure(() -> login("abc@gmail.com"))
+                .assertStatementsAtMost(1)
+                .assertRowsReadAtMost(1);
+        statementCounter.measure(() -> login("abc@gmail.com"))
+                .assertNoStatements();
+    }
+
+    private SqlCounts checkOut(List<Product> lines) throws Exception {
+        session = new MockHttpSession();
+        addToCartInBatch(lines);
+        return statementCounter.measure(() -> get("/ecommerce/v1/products/cart/checkout"));
+    }
+
+    private void get(String path) throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.get(path).session(session))
+                .andExpect(status().isOk());
+    }
+
+    private void addToCart(Product product, int quantity) throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.post("/ecommerce/v1/products/cart")
+                        .session(session)
+                        .contentType(MediaType.APPLICATION_JSON_VALUE)
+                        .content(objectMapper.writeValueAsString(ProductDTO.builder().id(product.getId()).quantity(quantity).build())))
+                .andExpect(status().isOk());
+    }
+
+    private void addToCartInBatch(List<Product> lines) throws Exception {
+        List<ProductDTO> productDTOs = lines.stream().map(product -> ProductDTO.builder().id(product.getId()).quantity(1).build()).toList();
+        mockMvc.perform(MockMvcRequestBuilders.post("/ecommerce/v1/products/cart/batch")
+                        .session(session)
+                        .contentType(MediaType.APPLICATION_JSON_VALUE)
+                        .content(objectMapper.writeValueAsString(productDTOs)))
+                .andExpect(status().isOk());
+    }
+
+    private void register(String email) throws Exception {
+        User user = User.builder().email(email).password("AaBbCc@&123").build();
+        mockMvc.perform(MockMvcRequestBuilders.post("/ecommerce/v1/users/register-user")
+                        .contentType(MediaType.APPLICATION_JSON_VALUE)
+                        .content(objectMapper.writeValueAsString(user)))
+                .andExpect(status().isCreated());
+    }
+
+    private void login(String email) throws Exception {
+        User user = User.builder().email(email).password("AaBbCc@&123").build();
+        MvcResult result = mockMvc.perform(MockMvcRequestBuilders.post("/ecommerce/v1/users/login")
+                        .contentType(MediaType.APPLICATION_JSON_VALUE)
+                        .content(objectMapper.writeValueAsString(user)))
+                .andExpect(status().isOk())
+                .andReturn();
+        assertTrue(result.getResponse().getContentAsString().contains("sessionId"));
+    }
+}
@@ -0,0 +1,90 @@
+package com.gd.springecommerce.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gd.springecommerce.enums.OrderStatus;
+import com.gd.springecommerce.exception.OrderNotFoundException;
+import com.gd.springecommerce.model.Order;
+import com.gd.springecommerce.model.OrderLine;
+import com.gd.springecommerce.service.OrderService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@ExtendWith(SpringExtension.class)
+@SpringBootTest
+@AutoConfigureMockMvc(addFilters = false)
+class OrderControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @MockBean
+    private OrderService orderService;
+
+    @Test
+    void getOrder_WhenOrderExists() throws Exception {
+        Order order = Order.builder()
+                .id(1L)
+                .total(BigDecimal.TEN)
+                .orderStatus(OrderStatus.PENDING)
+                .build();
+        order.addLine(OrderLine.builder().id(3L).productId(2L).quantity(1).subTotal(BigDecimal.TEN).build());
+        when(orderService.getOrderPlacedBy(1L, "test@example.com")).thenReturn(order);
+        String json = mockMvc.perform(MockMvcRequestBuilders.get("/ecommerce/v1/orders/1").principal(() -> "test@example.com"))
+                .andExpect(status().isOk())
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+        Order retrieved = objectMapper.readValue(json, Order.class);
+        assertEquals(OrderStatus.PENDING, retrieved.getOrderStatus());
+        assertEquals(2L, retrieved.getLines().get(0).getProductId());
+    }
+
+    @Test
+    void getOrder_WhenOrderDoesNotExist() throws Exception {
+        when(orderService.getOrderPlacedBy(1L, "test@example.com")).thenThrow(new OrderNotFoundException("Order is not found 1"));
+        mockMvc.perform(MockMvcRequestBuilders.get("/ecommerce/v1/orders/1").principal(() -> "test@example.com"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void getLatestOrders_ListsTheUsersOrders() throws Exception {
+        Order order = Order.builder().id(1L).total(BigDecimal.TEN).build();
+        when(orderService.getLatestOrdersPlacedBy("test@example.com", 20)).thenReturn(List.of(order));
+        String json = mockMvc.perform(MockMvcRequestBuilders.get("/ecommerce/v1/orders")
+                        .param("limit", "20")
+                        .principal(() -> "test@example.com"))
+                .andExpect(status().isOk())
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+        Order[] retrieved = objectMapper.readValue(json, Order[].class);
+        assertEquals(1, retrieved.length);
+        assertEquals(1L, retrieved[0].getId());
+    }
+
+    @Test
+    void getLatestOrders_WithoutAUserListsNothing() throws Exception {
+        when(orderService.getLatestOrdersPlacedBy(null, null)).thenReturn(List.of());
+        mockMvc.perform(MockMvcRequestBuilders.get("/ecommerce/v1/orders"))
+                .andExpect(status().isOk());
+        verify(orderService).getLatestOrdersPlacedBy(null, null);
+    }
+}
@@ -2,10 +2,30 @@ package com.gd.springecommerce.controller;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gd.springecommerce.cart.Cart;
+import com.gd.springecommerce.cart.CartStore;
+import com.gd.springecommerce.config.JacksonConfig;
+import com.gd.springecommerce.dto.CartLineResult;
 import com.gd.springecommerce.dto.CartProductDTO;
+import com.gd.springecommerce.dto.CatalogSnapshot;
 import com.gd.springecommerce.dto.ProductDTO;
+import com.gd.springecommerce.dto.ProductFilter;
+import com.gd.springecommerce.dto.ProductImportError;
+import com.gd.springecommerce.dto.ProductImportSummary;
+import com.gd.springecommerce.dto.ProductPage;
+import com.gd.springecommerce.dto.ProductSearchResult;
+import com.gd.springecommerce.dto.ProductSlice;
+import com.gd.springecommerce.enums.OrderStatus;
+import com.gd.springecommerce.enums.ProductSort;
+import com.gd.springecommerce.exception.CatalogVersionExpiredException;
+import com.gd.springecommerce.exception.InsufficientQuantityException;
+import com.gd.springecommerce.exception.InvalidCursorException;
 import com.gd.springecommerce.model.Order;
 import com.gd.springecommerce.model.Product;
+import com.gd.springecommerce.service.CatalogService;
+import com.gd.springecommerce.service.InventoryReservationService;
+import com.gd.springecommerce.service.ProductImportService;
+import com.gd.springecommerce.service.ProductSearchService;
 import com.gd.springecommerce.service.ProductServiceImpl;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -17,23 +37,36 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
 import org.springframework.mock.web.MockHttpSession;
 import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.transaction.CannotCreateTransactionException;
 
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @ExtendWith(SpringExtension.class)
@@ -50,6 +83,21 @@ class ProductControllerTest {
 
     @MockBean
     private ProductServiceImpl productService;
+
+    @MockBean
+    private InventoryReservationService inventoryReservationService;
+
+    @MockBean
+    private ProductImportService productImportService;
+
+    @MockBean
+    private ProductSearchService productSearchService;
+
+    @MockBean
+    private CatalogService catalogService;
+
+    @Autowired
+    private CartStore cartStore;
     private MockHttpSession mockHttpSession;
 
     @BeforeEach
@@ -59,20 +107,200 @@ class ProductControllerTest {
 
     @Test
     void getAllProducts_WhenInventoryIsEmpty() throws Exception {
-        when(productService.getAllProducts()).thenReturn(Collections.emptyList());
+        when(catalogService.getSnapshot(MediaType.APPLICATION_JSON)).thenReturn(new CatalogSnapshot(5L, "[]".getBytes(StandardCharsets.UTF_8)));
         mockMvc.perform(MockMvcRequestBuilders.get("/ecommerce/v1/products/all-products")
                         .content(MediaType.APPLICATION_JSON_VALUE))
-                .andExpect(status().isOk());
-        verify(productService, times(1)).getAllProducts();
+                .andExpect(status().isOk())
+                .andExpect(content().json("[]"));
+        verify(catalogService, times(1)).getSnapshot(MediaType.APPLICATION_JSON);
     }
 
     @Test
     void getAllProducts_WhenInventoryIsNotEmpty() throws Exception {
-        when(productService.getAllProducts()).thenReturn(Collections.singletonList(Product.builder().build()));
+        byte[] body = objectMapper.writeValueAsBytes(Collections.singletonList(Product.builder().id(1L).build()));
+        when(catalogService.getSnapshot(MediaType.APPLICATION_JSON)).thenReturn(new CatalogSnapshot(5L, body));
         mockMvc.perform(MockMvcRequestBuilders.get("/ecommerce/v1/products/all-products")
                         .content(MediaType.APPLICATION_JSON_VALUE))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"5\""))
+                .andExpect(header().string("X-Catalog-Version", "5"))
+                .andExpect(content().bytes(body));
+        verify(catalogService, times(1)).getSnapshot(MediaType.APPLICATION_JSON);
+    }
+
+    @Test
+    void getAllProducts_WhenCatalogHasNotChanged() throws Exception {
+        when(catalogService.getSnapshot(MediaType.APPLICATION_JSON)).thenReturn(new CatalogSnapshot(5L, "[]".getBytes(StandardCharsets.UTF_8)));
+        mockMvc.perform(MockMvcRequestBuilders.get("/ecommerce/v1/products/all-products")
+                        .header(HttpHeaders.IF_NONE_MATCH, "\"5\""))
+                .andExpect(status().isNotModified())
+                .andExpect(content().bytes(new byte[0]));
+        mockMvc.perform(MockMvcRequestBuilders.get("/ecommerce/v1/products/all-products")
+                        .header(HttpHeaders.IF_NONE_MATCH, "\"4\""))
                 .andExpect(status().isOk());
-        verify(productService, times(1)).getAllProducts();
+    }
+
+    @Test
+    void getAllProducts_WhenCborIsAccepted() throws Exception {
+        byte[] body = Jackson2ObjectMapperBuilder.cbor().build().writeValueAsBytes(Collections.singletonList(Product.builder().id(1L).build()));
+        when(catalogService.getSnapshot(MediaType.APPLICATION_CBOR)).thenReturn(new CatalogSnapshot(5L, MediaType.APPLICATION_CBOR, body));
+        mockMvc.perform(MockMvcRequestBuilders.get("/ecommerce/v1/products/all-products")
+                        .accept("application/json;q=0.5", MediaType.APPLICATION_CBOR_VALUE))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_CBOR))
+                .andExpect(header().string(HttpHeaders.ETAG, "\"5-cbor\""))
+                .andExpect(header().string(HttpHeaders.VARY, HttpHeaders.ACCEPT))
+                .andExpect(content().bytes(body));
+        verify(catalogService, never()).getSnapshot(MediaType.APPLICATION_JSON);
+    }
+
+    @Test
+    void getAllProducts_WhenNoJdbcPermitIsAvailable() throws Exception {
+        when(catalogService.getSnapshot(MediaType.APPLICATION_JSON)).thenThrow(new CannotCreateTransactionException("Timed out waiting for a JDBC permit"));
+        mockMvc.perform(MockMvcRequestBuilders.get("/ecommerce/v1/products/all-products")
+                        .content(MediaType.APPLICATION_JSON_VALUE))
+                .andExpect(status().isServiceUnavailable());
+    }
+
+    @Test
+    void getProductChanges_WhenVersionHasExpired() throws Exception {
+        when(catalogService.getChangesSince(3L)).thenThrow(new CatalogVersionExpiredException("Catalog version 3 has expired"));
+        mockMvc.perform(MockMvcRequestBuilders.get("/ecommerce/v1/products/all-products/changes")
+                        .param("since", "3"))
+                .andExpect(status().isGone());
+    }
+
+    @Test
+    void getProductsPage_WithCursor() throws Exception {
+        ProductPage page = ProductPage.builder()
+                .products(Collections.singletonList(Product.builder().id(11L).build()))
+                .nextCursor(11L)
+                .build();
+        when(productService.getProductsAfter(10L, 1)).thenReturn(page);
+        String json = mockMvc.perform(MockMvcRequestBuilders.get("/ecommerce/v1/products/catalog")
+                        .param("cursor", "10")
+                        .param("size", "1"))
+                .andExpect(status().isOk())
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+        ProductPage retrievedPage = objectMapper.readValue(json, ProductPage.class);
+        assertEquals(11L, retrievedPage.getNextCursor());
+        assertEquals(1, retrievedPage.getProducts().size());
+        verify(productService, times(1)).getProductsAfter(10L, 1);
+    }
+
+    @Test
+    void searchProducts_ReturnsTheRankedPage() throws Exception {
+        Product product = Product.builder().id(7L).title("Blue pen").available(3).price(BigDecimal.ONE).build();
+        when(productSearchService.search("blue p", 1, 5)).thenReturn(new ProductSearchResult(List.of(product), 6L, 1, 5));
+        String json = mockMvc.perform(MockMvcRequestBuilders.get("/ecommerce/v1/products/search")
+                        .param("q", "blue p")
+                        .param("page", "1")
+                        .param("size", "5"))
+                .andExpect(status().isOk())
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+        ProductSearchResult result = objectMapper.readValue(json, ProductSearchResult.class);
+        assertEquals(6L, result.total());
+        assertEquals(List.of(product), result.products());
+    }
+
+    @Test
+    void searchProducts_WithoutQuery() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.get("/ecommerce/v1/products/search"))
+                .andExpect(status().isBadRequest());
+        verifyNoInteractions(productSearchService);
+    }
+
+    @Test
+    void getFilteredProducts_PassesTheFiltersAndSort() throws Exception {
+        ProductFilter filter = new ProductFilter(true, new BigDecimal("5"), new BigDecimal("20"), "pen");
+        ProductSlice slice = ProductSlice.builder()
+                .products(List.of(Product.builder().id(3L).title("pen").available(2).price(BigDecimal.TEN).build()))
+                .nextCursor("next")
+                .build();
+        when(productService.getProductsMatching(filter, ProductSort.PRICE_DESC, "abc", 1)).thenReturn(slice);
+        String json = mockMvc.perform(MockMvcRequestBuilders.get("/ecommerce/v1/products/catalog/filter")
+                        .param("inStock", "true")
+                        .param("minPrice", "5")
+                        .param("maxPrice", "20")
+                        .param("titlePrefix", "pen")
+                        .param("sort", "PRICE_DESC")
+                        .param("cursor", "abc")
+                        .param("size", "1"))
+                .andExpect(status().isOk())
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+        ProductSlice retrievedSlice = objectMapper.readValue(json, ProductSlice.class);
+        assertEquals("next", retrievedSlice.getNextCursor());
+        assertEquals(1, retrievedSlice.getProducts().size());
+    }
+
+    @Test
+    void getFilteredProducts_WithInvalidCursor() throws Exception {
+        when(productService.getProductsMatching(any(), any(), eq("bad"), any())).thenThrow(new InvalidCursorException("Invalid cursor bad"));
+        mockMvc.perform(MockMvcRequestBuilders.get("/ecommerce/v1/products/catalog/filter")
+                        .param("cursor", "bad"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void streamAllProducts_WritesOneProductPerLine() throws Exception {
+        doAnswer(invocation -> {
+            Consumer<Product> consumer = invocation.getArgument(0);
+            consumer.accept(Product.builder().id(1L).title("product 1").build());
+            consumer.accept(Product.builder().id(2L).title("product 2").build());
+            return null;
+        }).when(productService).streamAllProducts(any());
+        MvcResult result = mockMvc.perform(MockMvcRequestBuilders.get("/ecommerce/v1/products/catalog/stream"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        String body = mockMvc.perform(MockMvcRequestBuilders.asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON))
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+        String[] lines = body.split("\n");
+        assertEquals(2, lines.length);
+        assertEquals(2L, objectMapper.readValue(lines[1], Product.class).getId());
+    }
+
+    @Test
+    void importProducts_StreamsRejectedRowsAndSummary() throws Exception {
+        String csv = "sku,title,available,price\nA-1,pen,10,1.50\nA-2,,5,2\n";
+        doAnswer(invocation -> {
+            Consumer<ProductImportError> errorConsumer = invocation.getArgument(2);
+            errorConsumer.accept(new ProductImportError(2, "A-2", List.of("Title is mandatory")));
+            return new ProductImportSummary(2, 1, 0, 1);
+        }).when(productImportService).importProducts(any(), eq(ProductImportService.TEXT_CSV), any());
+        MvcResult result = mockMvc.perform(MockMvcRequestBuilders.post("/ecommerce/v1/products/import")
+                        .contentType(ProductImportService.TEXT_CSV)
+                        .content(csv))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        String body = mockMvc.perform(MockMvcRequestBuilders.asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON))
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+        String[] lines = body.split("\n");
+        assertEquals(2, lines.length);
+        assertEquals("A-2", objectMapper.readValue(lines[0], ProductImportError.class).sku());
+        assertEquals(1, objectMapper.readValue(lines[1], ProductImportSummary.class).rejected());
+    }
+
+    @Test
+    void importProducts_WithUnsupportedContentType() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.post("/ecommerce/v1/products/import")
+                        .contentType(MediaType.APPLICATION_XML)
+                        .content("<products/>"))
+                .andExpect(status().isUnsupportedMediaType());
+        verifyNoInteractions(productImportService);
     }
 
     @ParameterizedTest
@@ -89,13 +317,209 @@ class ProductControllerTest {
     @Test
     void addItemsToCart_WithValidProduct() throws Exception {
         ProductDTO productDTO = ProductDTO.builder().id(1L).quantity(1).build();
-        Product product = Product.builder().price(BigDecimal.TEN).build();
+        Product product = Product.builder().id(1L).price(BigDecimal.TEN).build();
         when(productService.getProductIfValidToAddInCart(anyLong(), anyInt())).thenReturn(product);
         mockMvc.perform(MockMvcRequestBuilders.post("/ecommerce/v1/products/cart")
                         .contentType(MediaType.APPLICATION_JSON_VALUE)
                         .content(objectMapper.writeValueAsString(productDTO)))
                 .andExpect(status().isOk());
         verify(productService, times(1)).getProductIfValidToAddInCart(anyLong(), anyInt());
+        verify(inventoryReservationService, times(1)).updateReservation(any(), eq(product), eq(1));
+    }
+
+    @Test
+    void addItemsToCart_MergesRepeatedProductIntoOneLine() throws Exception {
+        ProductDTO productDTO = ProductDTO.builder().id(1L).quantity(2).build();
+        Product product = Product.builder().id(1L).price(BigDecimal.TEN).build();
+        when(productService.getProductIfValidToAddInCart(anyLong(), anyInt())).thenReturn(product);
+        for (int i = 0; i < 2; i++) {
+            mockMvc.perform(MockMvcRequestBuilders.post("/ecommerce/v1/products/cart")
+                            .session(mockHttpSession)
+                            .contentType(MediaType.APPLICATION_JSON_VALUE)
+                            .content(objectMapper.writeValueAsString(productDTO)))
+                    .andExpect(status().isOk());
+        }
+        Cart cart = storedCart();
+        assertEquals(1, cart.size());
+        assertEquals(4, cart.getLine(1L).getQuantity());
+        assertEquals(BigDecimal.valueOf(40), cart.getTotal());
+        verify(productService, times(1)).getProductIfValidToAddInCart(1L, 4);
+        verify(inventoryReservationService, times(1)).updateReservation(mockHttpSession.getId(), product, 4);
+    }
+
+    @Test
+    void addItemsToCart_WhenTheCartIsCheckedOutMeanwhile() throws Exception {
+        ProductDTO productDTO = ProductDTO.builder().id(1L).quantity(1).build();
+        Product product = Product.builder().id(1L).price(BigDecimal.TEN).build();
+        when(productService.getProductIfValidToAddInCart(anyLong(), anyInt())).thenAnswer(invocation -> {
+            cartStore.removeCart(mockHttpSession.getId());
+            return product;
+        });
+        mockMvc.perform(MockMvcRequestBuilders.post("/ecommerce/v1/products/cart")
+                        .session(mockHttpSession)
+                        .contentType(MediaType.APPLICATION_JSON_VALUE)
+                        .content(objectMapper.writeValueAsString(productDTO)))
+                .andExpect(status().isConflict());
+        assertNull(storedCart());
+        verify(inventoryReservationService, times(1)).updateReservation(mockHttpSession.getId(), product, 1);
+        verify(inventoryReservationService, times(1)).release(mockHttpSession.getId(), 1L);
+    }
+
+    @Test
+    void addItemsToCartInBatch_AddsEveryLineWithOneLookup() throws Exception {
+        seedCart(List.of(CartProductDTO.builder().id(1L).title("pen").quantity(1).subTotal(BigDecimal.TEN).build()));
+        Product pen = Product.builder().id(1L).title("pen").available(10).price(BigDecimal.TEN).build();
+        Product ink = Product.builder().id(2L).title("ink").available(10).price(BigDecimal.ONE).build();
+        when(productService.getProductsByIds(any())).thenReturn(Map.of(1L, pen, 2L, ink));
+        List<ProductDTO> batch = List.of(ProductDTO.builder().id(1L).quantity(2).build(),
+                ProductDTO.builder().id(2L).quantity(3).build(),
+                ProductDTO.builder().id(1L).quantity(1).build());
+        String json = mockMvc.perform(MockMvcRequestBuilders.post("/ecommerce/v1/products/cart/batch")
+                        .session(mockHttpSession)
+                        .contentType(MediaType.APPLICATION_JSON_VALUE)
+                        .content(objectMapper.writeValueAsString(batch)))
+                .andExpect(status().isOk())
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+        List<CartLineResult> results = objectMapper.readValue(json, new TypeReference<>(){});
+        assertEquals(List.of(1L, 2L), results.stream().map(CartLineResult::id).toList());
+        assertTrue(results.stream().allMatch(result -> result.status() == CartLineResult.Status.ADDED));
+        assertEquals(List.of(4, 3), results.stream().map(CartLineResult::quantity).toList());
+        Cart cart = storedCart();
+        assertEquals(4, cart.getLine(1L).getQuantity());
+        assertEquals(BigDecimal.valueOf(43), cart.getTotal());
+        verify(productService, times(1)).getProductsByIds(Set.of(1L, 2L));
+        verify(productService, never()).getProductIfValidToAddInCart(anyLong(), anyInt());
+        verify(inventoryReservationService, times(1)).updateReservation(mockHttpSession.getId(), pen, 4);
+        verify(inventoryReservationService, times(1)).updateReservation(mockHttpSession.getId(), ink, 3);
+    }
+
+    @Test
+    void addItemsToCartInBatch_WhenALineIsOutOfStockLeavesTheCartUnchanged() throws Exception {
+        Product pen = Product.builder().id(1L).title("pen").available(10).price(BigDecimal.TEN).build();
+        Product ink = Product.builder().id(2L).title("ink").available(1).price(BigDecimal.ONE).build();
+        when(productService.getProductsByIds(any())).thenReturn(Map.of(1L, pen, 2L, ink));
+        List<ProductDTO> batch = List.of(ProductDTO.builder().id(1L).quantity(2).build(),
+                ProductDTO.builder().id(2L).quantity(3).build(),
+                ProductDTO.builder().id(3L).quantity(1).build());
+        String json = mockMvc.perform(MockMvcRequestBuilders.post("/ecommerce/v1/products/cart/batch")
+                        .session(mockHttpSession)
+                        .contentType(MediaType.APPLICATION_JSON_VALUE)
+                        .content(objectMapper.writeValueAsString(batch)))
+                .andExpect(status().isConflict())
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+        List<CartLineResult> results = objectMapper.readValue(json, new TypeReference<>(){});
+        assertEquals(List.of(CartLineResult.Status.SKIPPED, CartLineResult.Status.REJECTED, CartLineResult.Status.REJECTED),
+                results.stream().map(CartLineResult::status).toList());
+        assertEquals(List.of(), results.get(0).errors());
+        assertEquals(List.of("Out of stock for the product ink"), results.get(1).errors());
+        assertEquals(List.of("product with id 3 does not exists"), results.get(2).errors());
+        assertTrue(results.stream().allMatch(result -> result.cartLine() == null));
+        assertTrue(storedCart().isEmpty());
+        verifyNoInteractions(inventoryReservationService);
+    }
+
+    @Test
+    void addItemsToCartInBatch_WhenAReservationIsRefusedRestoresTheOthers() throws Exception {
+        seedCart(List.of(CartProductDTO.builder().id(1L).title("pen").quantity(1).subTotal(BigDecimal.TEN).build()));
+        Product pen = Product.builder().id(1L).title("pen").available(10).price(BigDecimal.TEN).build();
+        Product ink = Product.builder().id(2L).title("ink").available(10).price(BigDecimal.ONE).build();
+        Product nib = Product.builder().id(3L).title("nib").available(10).price(BigDecimal.ONE).build();
+        when(productService.getProductsByIds(any())).thenReturn(Map.of(1L, pen, 2L, ink, 3L, nib));
+        doThrow(new InsufficientQuantityException("Out of stock for the product nib"))
+                .when(inventoryReservationService).updateReservation(mockHttpSession.getId(), nib, 1);
+        List<ProductDTO> batch = List.of(ProductDTO.builder().id(1L).quantity(2).build(),
+                ProductDTO.builder().id(2L).quantity(3).build(),
+                ProductDTO.builder().id(3L).quantity(1).build());
+        String json = mockMvc.perform(MockMvcRequestBuilders.post("/ecommerce/v1/products/cart/batch")
+                        .session(mockHttpSession)
+                        .contentType(MediaType.APPLICATION_JSON_VALUE)
+                        .content(objectMapper.writeValueAsString(batch)))
+                .andExpect(status().isConflict())
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+        List<CartLineResult> results = objectMapper.readValue(json, new TypeReference<>(){});
+        assertEquals(List.of(CartLineResult.Status.SKIPPED, CartLineResult.Status.SKIPPED, CartLineResult.Status.REJECTED),
+                results.stream().map(CartLineResult::status).toList());
+        assertEquals(List.of("Out of stock for the product nib"), results.get(2).errors());
+        assertEquals(1, storedCart().getLine(1L).getQuantity());
+        assertNull(storedCart().getLine(2L));
+        verify(inventoryReservationService, times(1)).updateReservation(mockHttpSession.getId(), pen, 1);
+        verify(inventoryReservationService, times(1)).release(mockHttpSession.getId(), 2L);
+    }
+
+    @Test
+    void addItemsToCartInBatch_WhenAReservationFailsRestoresTheOthersAndFails() throws Exception {
+        Product pen = Product.builder().id(1L).title("pen").available(10).price(BigDecimal.TEN).build();
+        Product ink = Product.builder().id(2L).title("ink").available(10).price(BigDecimal.ONE).build();
+        when(productService.getProductsByIds(any())).thenReturn(Map.of(1L, pen, 2L, ink));
+        doThrow(new DataAccessResourceFailureException("Connection refused"))
+                .when(inventoryReservationService).updateReservation(mockHttpSession.getId(), ink, 3);
+        List<ProductDTO> batch = List.of(ProductDTO.builder().id(1L).quantity(2).build(),
+                ProductDTO.builder().id(2L).quantity(3).build());
+        mockMvc.perform(MockMvcRequestBuilders.post("/ecommerce/v1/products/cart/batch")
+                        .session(mockHttpSession)
+                        .contentType(MediaType.APPLICATION_JSON_VALUE)
+                        .content(objectMapper.writeValueAsString(batch)))
+                .andExpect(status().isServiceUnavailable());
+        verify(inventoryReservationService, times(1)).release(mockHttpSession.getId(), 1L);
+        assertTrue(storedCart().isEmpty());
+    }
+
+    @Test
+    void addItemsToCartInBatch_WhenTheCartIsCheckedOutMeanwhile() throws Exception {
+        Product pen = Product.builder().id(1L).title("pen").available(10).price(BigDecimal.TEN).build();
+        Product ink = Product.builder().id(2L).title("ink").available(10).price(BigDecimal.ONE).build();
+        when(productService.getProductsByIds(any())).thenAnswer(invocation -> {
+            cartStore.removeCart(mockHttpSession.getId());
+            return Map.of(1L, pen, 2L, ink);
+        });
+        List<ProductDTO> batch = List.of(ProductDTO.builder().id(1L).quantity(2).build(),
+                ProductDTO.builder().id(2L).quantity(3).build());
+        String json = mockMvc.perform(MockMvcRequestBuilders.post("/ecommerce/v1/products/cart/batch")
+                        .session(mockHttpSession)
+                        .contentType(MediaType.APPLICATION_JSON_VALUE)
+                        .content(objectMapper.writeValueAsString(batch)))
+                .andExpect(status().isConflict())
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+        List<CartLineResult> results = objectMapper.readValue(json, new TypeReference<>(){});
+        assertTrue(results.stream().allMatch(result -> result.status() == CartLineResult.Status.SKIPPED));
+        assertNull(storedCart());
+        verify(inventoryReservationService, times(1)).release(mockHttpSession.getId(), 1L);
+        verify(inventoryReservationService, times(1)).release(mockHttpSession.getId(), 2L);
+    }
+
+    @Test
+    void addItemsToCartInBatch_WithInvalidLines() throws Exception {
+        List<ProductDTO> batch = List.of(ProductDTO.builder().id(1L).quantity(2).build(),
+                ProductDTO.builder().id(2L).quantity(0).build());
+        String json = mockMvc.perform(MockMvcRequestBuilders.post("/ecommerce/v1/products/cart/batch")
+                        .contentType(MediaType.APPLICATION_JSON_VALUE)
+                        .content(objectMapper.writeValueAsString(batch)))
+                .andExpect(status().isBadRequest())
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+        List<CartLineResult> results = objectMapper.readValue(json, new TypeReference<>(){});
+        assertEquals(CartLineResult.Status.SKIPPED, results.get(0).status());
+        assertEquals(List.of(), results.get(0).errors());
+        assertEquals(CartLineResult.Status.REJECTED, results.get(1).status());
+        assertEquals(List.of("Add at least 1no"), results.get(1).errors());
+        mockMvc.perform(MockMvcRequestBuilders.post("/ecommerce/v1/products/cart/batch")
+                        .contentType(MediaType.APPLICATION_JSON_VALUE)
+                        .content("[]"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(MockMvcRequestBuilders.post("/ecommerce/v1/products/cart/batch")
+                        .contentType(MediaType.APPLICATION_JSON_VALUE)
+                        .content("[{\"id\": 1, \"quantity\": 2}, null]"))
+                .andExpect(status().isBadRequest());
+        verifyNoInteractions(productService);
     }
 
     @Test
@@ -112,10 +536,10 @@ class ProductControllerTest {
 
     @Test
     void displayCart_WhenCartIsNotEmpty() throws Exception {
-        CartProductDTO cartProductDTO1 = CartProductDTO.builder().build();
-        CartProductDTO cartProductDTO2 = CartProductDTO.builder().build();
+        CartProductDTO cartProductDTO1 = CartProductDTO.builder().id(1L).build();
+        CartProductDTO cartProductDTO2 = CartProductDTO.builder().id(2L).build();
         List<CartProductDTO> cartProductDTOS = Arrays.asList(cartProductDTO1, cartProductDTO2);
-        mockHttpSession.setAttribute("cart", cartProductDTOS);
+        seedCart(cartProductDTOS);
         String json = mockMvc.perform(MockMvcRequestBuilders.get("/ecommerce/v1/products/cart/products")
                         .session(mockHttpSession)
                         .contentType(MediaType.APPLICATION_JSON_VALUE))
@@ -128,6 +552,23 @@ class ProductControllerTest {
         assertEquals(cartProductDTOS.size(), retrievedCart.size());
     }
 
+    @Test
+    void displayCart_WhenSmileIsAccepted() throws Exception {
+        seedCart(List.of(CartProductDTO.builder().id(1L).title("pen").quantity(2).subTotal(BigDecimal.TEN).build()));
+        byte[] smile = mockMvc.perform(MockMvcRequestBuilders.get("/ecommerce/v1/products/cart/products")
+                        .session(mockHttpSession)
+                        .accept(JacksonConfig.APPLICATION_SMILE))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(JacksonConfig.APPLICATION_SMILE))
+                .andReturn()
+                .getResponse()
+                .getContentAsByteArray();
+        List<CartProductDTO> retrievedCart = Jackson2ObjectMapperBuilder.smile().build().readValue(smile, new TypeReference<>(){});
+        assertEquals(1, retrievedCart.size());
+        assertEquals("pen", retrievedCart.get(0).getTitle());
+        assertEquals(BigDecimal.TEN, retrievedCart.get(0).getSubTotal());
+    }
+
     @Test
     void removeProductFromCart_WhenCartIsEmpty() throws Exception {
         String json = mockMvc.perform(MockMvcRequestBuilders.delete("/ecommerce/v1/products/1")
@@ -148,7 +589,7 @@ class ProductControllerTest {
         cartProductDTOS.add(cartProductDTO1);
         cartProductDTOS.add(cartProductDTO2);
         int originalCartSize = cartProductDTOS.size();;
-        mockHttpSession.setAttribute("cart", cartProductDTOS);
+        seedCart(cartProductDTOS);
         String json = mockMvc.perform(MockMvcRequestBuilders.delete("/ecommerce/v1/products/1")
                         .session(mockHttpSession)
                         .contentType(MediaType.APPLICATION_JSON_VALUE))
@@ -159,6 +600,7 @@ class ProductControllerTest {
         List<CartProductDTO> retrievedCart = objectMapper.readValue(json, new TypeReference<>(){});
         assertFalse(retrievedCart.isEmpty());
         assertEquals(originalCartSize - 1, retrievedCart.size());
+        verify(inventoryReservationService, times(1)).release(mockHttpSession.getId(), 1L);
     }
 
     @Test
@@ -169,7 +611,7 @@ class ProductControllerTest {
         cartProductDTOS.add(cartProductDTO1);
         cartProductDTOS.add(cartProductDTO2);
         int originalCartSize = cartProductDTOS.size();;
-        mockHttpSession.setAttribute("cart", cartProductDTOS);
+        seedCart(cartProductDTOS);
         String json = mockMvc.perform(MockMvcRequestBuilders.delete("/ecommerce/v1/products/3")
                         .session(mockHttpSession)
                         .contentType(MediaType.APPLICATION_JSON_VALUE))
@@ -204,9 +646,9 @@ class ProductControllerTest {
                         .contentType(MediaType.APPLICATION_JSON_VALUE)
                         .content(objectMapper.writeValueAsString(productDTO)))
                 .andExpect(status().isOk());
-        List<CartProductDTO> cartProductDTOS = (List<CartProductDTO>) mockHttpSession.getAttribute("cart");
-        assertNotNull(cartProductDTOS);
-        assertFalse(cartProductDTOS.isEmpty());
+        Cart cart = storedCart();
+        assertNotNull(cart);
+        assertFalse(cart.isEmpty());
         verify(productService, times(1)).getProductIfValidToAddInCart(anyLong(), anyInt());
     }
 
@@ -218,7 +660,7 @@ class ProductControllerTest {
         cartProductDTOS.add(cartProductDTO1);
         cartProductDTOS.add(cartProductDTO2);
         int originalSize = cartProductDTOS.size();
-        mockHttpSession.setAttribute("cart", cartProductDTOS);
+        seedCart(cartProductDTOS);
         ProductDTO productDTO = ProductDTO.builder().id(3L).quantity(2).build();
         Product product = Product.builder().id(3L).available(5).price(BigDecimal.TEN).build();
         when(productService.getProductIfValidToAddInCart(anyLong(), anyInt())).thenReturn(product);
@@ -227,9 +669,9 @@ class ProductControllerTest {
                         .contentType(MediaType.APPLICATION_JSON_VALUE)
                         .content(objectMapper.writeValueAsString(productDTO)))
                 .andExpect(status().isOk());
-        List<CartProductDTO> fetchedCartProductDTOS = (List<CartProductDTO>) mockHttpSession.getAttribute("cart");
-        assertNotNull(fetchedCartProductDTOS);
-        assertEquals(fetchedCartProductDTOS.size(), originalSize + 1);
+        Cart cart = storedCart();
+        assertNotNull(cart);
+        assertEquals(cart.size(), originalSize + 1);
         verify(productService, times(1)).getProductIfValidToAddInCart(anyLong(), anyInt());
     }
 
@@ -241,7 +683,7 @@ class ProductControllerTest {
         cartProductDTOS.add(cartProductDTO1);
         cartProductDTOS.add(cartProductDTO2);
         int originalSize = cartProductDTOS.size();
-        mockHttpSession.setAttribute("cart", cartProductDTOS);
+        seedCart(cartProductDTOS);
         ProductDTO productDTO = ProductDTO.builder().id(1L).quantity(2).build();
         Product product = Product.builder().id(1L).available(5).price(BigDecimal.TEN).build();
         when(productService.getProductIfValidToAddInCart(anyLong(), anyInt())).thenReturn(product);
@@ -250,9 +692,10 @@ class ProductControllerTest {
                         .contentType(MediaType.APPLICATION_JSON_VALUE)
                         .content(objectMapper.writeValueAsString(productDTO)))
                 .andExpect(status().isOk());
-        List<CartProductDTO> fetchedCartProductDTOS = (List<CartProductDTO>) mockHttpSession.getAttribute("cart");
-        assertNotNull(fetchedCartProductDTOS);
-        assertEquals(fetchedCartProductDTOS.size(), originalSize);
+        Cart cart = storedCart();
+        assertNotNull(cart);
+        assertEquals(cart.size(), originalSize);
+        assertEquals(2, cart.getLine(1L).getQuantity());
         verify(productService, times(1)).getProductIfValidToAddInCart(anyLong(), anyInt());
     }
 
@@ -267,17 +710,129 @@ class ProductControllerTest {
 
     @Test
     void checkOutProductsInTheCart_WhenCartIsNotEmpty() throws Exception {
-        CartProductDTO cartProductDTO1 = CartProductDTO.builder().build();
-        CartProductDTO cartProductDTO2 = CartProductDTO.builder().build();
+        CartProductDTO cartProductDTO1 = CartProductDTO.builder().id(1L).build();
+        CartProductDTO cartProductDTO2 = CartProductDTO.builder().id(2L).build();
         List<CartProductDTO> cartProductDTOS = Arrays.asList(cartProductDTO1, cartProductDTO2);
         Order order = Order.builder().build();
-        mockHttpSession.setAttribute("cart", cartProductDTOS);
-        when(productService.checkOutProductsInTheCart(any())).thenReturn(order);
+        seedCart(cartProductDTOS);
+        when(productService.checkOutProductsInTheCart(any(), any())).thenReturn(order);
         mockMvc.perform(MockMvcRequestBuilders.get("/ecommerce/v1/products/cart/checkout")
                         .session(mockHttpSession)
                         .contentType(MediaType.APPLICATION_JSON_VALUE))
                 .andExpect(status().isOk());
-        verify(productService, times(1)).checkOutProductsInTheCart(any());
+        verify(productService, times(1)).checkOutProductsInTheCart(any(), any());
+        verify(inventoryReservationService, times(1)).commit(mockHttpSession.getId());
+        assertNull(storedCart());
+    }
+
+    @Test
+    void checkOutProductsInTheCart_WhenOrderIsPending() throws Exception {
+        seedCart(List.of(CartProductDTO.builder().id(1L).build()));
+        when(productService.checkOutProductsInTheCart(any(), any())).thenReturn(Order.builder().id(1L).orderStatus(OrderStatus.PENDING).build());
+        mockMvc.perform(MockMvcRequestBuilders.get("/ecommerce/v1/products/cart/checkout")
+                        .session(mockHttpSession)
+                        .contentType(MediaType.APPLICATION_JSON_VALUE))
+                .andExpect(status().isAccepted());
+        verify(inventoryReservationService, times(1)).holdForOrder(mockHttpSession.getId(), 1L);
+        verify(inventoryReservationService, never()).commit(any());
+        assertNull(storedCart());
+    }
+
+    @Test
+    void checkOutProductsInTheCart_WhenCborIsAccepted() throws Exception {
+        seedCart(List.of(CartProductDTO.builder().id(1L).build()));
+        when(productService.checkOutProductsInTheCart(any(), any())).thenReturn(Order.builder().id(7L).orderStatus(OrderStatus.CONFIRMED).build());
+        byte[] cbor = mockMvc.perform(MockMvcRequestBuilders.get("/ecommerce/v1/products/cart/checkout")
+                        .session(mockHttpSession)
+                        .accept(MediaType.APPLICATION_CBOR))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_CBOR))
+                .andReturn()
+                .getResponse()
+                .getContentAsByteArray();
+        Order order = Jackson2ObjectMapperBuilder.cbor().build().readValue(cbor, Order.class);
+        assertEquals(7L, order.getId());
+        assertEquals(OrderStatus.CONFIRMED, order.getOrderStatus());
+    }
+
+    @Test
+    void checkOutProductsInTheCart_WhenIdempotencyKeyIsRepeated() throws Exception {
+        seedCart(List.of(CartProductDTO.builder().id(1L).build()));
+        when(productService.checkOutProductsInTheCart(any(), any())).thenReturn(Order.builder().id(9L).orderStatus(OrderStatus.CONFIRMED).build());
+        mockMvc.perform(MockMvcRequestBuilders.post("/ecommerce/v1/products/cart/checkout")
+                        .session(mockHttpSession)
+                        .header("Idempotency-Key", "order-1"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("Idempotent-Replayed"));
+        // the cart is gone by now, the retry still gets the order it placed
+        seedCart(List.of(CartProductDTO.builder().id(2L).build()));
+        String json = mockMvc.perform(MockMvcRequestBuilders.post("/ecommerce/v1/products/cart/checkout")
+                        .session(mockHttpSession)
+                        .header("Idempotency-Key", "order-1"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Idempotent-Replayed", "true"))
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+        assertEquals(9L, objectMapper.readValue(json, Order.class).getId());
+        verify(productService, times(1)).checkOutProductsInTheCart(any(), any());
+        verify(inventoryReservationService, times(1)).commit(mockHttpSession.getId());
+        assertNotNull(storedCart());
+    }
+
+    @Test
+    void checkOutProductsInTheCart_WhenIdempotencyKeyIsNew() throws Exception {
+        seedCart(List.of(CartProductDTO.builder().id(1L).build()));
+        when(productService.checkOutProductsInTheCart(any(), any())).thenReturn(Order.builder().id(9L).orderStatus(OrderStatus.CONFIRMED).build());
+        mockMvc.perform(MockMvcRequestBuilders.post("/ecommerce/v1/products/cart/checkout")
+                        .session(mockHttpSession)
+                        .header("Idempotency-Key", "order-1"))
+                .andExpect(status().isOk());
+        seedCart(List.of(CartProductDTO.builder().id(2L).build()));
+        mockMvc.perform(MockMvcRequestBuilders.post("/ecommerce/v1/products/cart/checkout")
+                        .session(mockHttpSession)
+                        .header("Idempotency-Key", "order-2"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("Idempotent-Replayed"));
+        verify(productService, times(2)).checkOutProductsInTheCart(any(), any());
+    }
+
+    @Test
+    void checkOutProductsInTheCart_WhenCheckoutWithTheKeyFailed() throws Exception {
+        seedCart(List.of(CartProductDTO.builder().id(1L).build()));
+        when(productService.checkOutProductsInTheCart(any(), any()))
+                .thenThrow(new InsufficientQuantityException("Insufficient quantity"))
+                .thenReturn(Order.builder().id(9L).orderStatus(OrderStatus.CONFIRMED).build());
+        mockMvc.perform(MockMvcRequestBuilders.post("/ecommerce/v1/products/cart/checkout")
+                        .session(mockHttpSession)
+                        .header("Idempotency-Key", "order-1"))
+                .andExpect(status().isConflict());
+        mockMvc.perform(MockMvcRequestBuilders.post("/ecommerce/v1/products/cart/checkout")
+                        .session(mockHttpSession)
+                        .header("Idempotency-Key", "order-1"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("Idempotent-Replayed"));
+        verify(productService, times(2)).checkOutProductsInTheCart(any(), any());
+    }
+
+    @Test
+    void checkOutProductsInTheCart_WhenIdempotencyKeyIsTooLong() throws Exception {
+        seedCart(List.of(CartProductDTO.builder().id(1L).build()));
+        mockMvc.perform(MockMvcRequestBuilders.post("/ecommerce/v1/products/cart/checkout")
+                        .session(mockHttpSession)
+                        .header("Idempotency-Key", "k".repeat(256)))
+                .andExpect(status().isBadRequest());
+        verifyNoInteractions(productService);
+    }
+
+    private void seedCart(List<CartProductDTO> cartProductDTOS) {
+        Cart cart = new Cart();
+        cartProductDTOS.forEach(cart::putLine);
+        cartStore.saveCart(mockHttpSession.getId(), cart);
+    }
+
+    private Cart storedCart() {
+        return cartStore.findCart(mockHttpSession.getId()).orElse(null);
     }
 
     static Stream<Arguments> idQuantityArgumentProvider() {
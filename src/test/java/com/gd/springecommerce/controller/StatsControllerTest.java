@@ -0,0 +1,119 @@
+package com.gd.springecommerce.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gd.springecommerce.cache.CredentialCache;
+import com.gd.springecommerce.cache.IdempotencyCache;
+import com.gd.springecommerce.cache.JsonFragmentCache;
+import com.gd.springecommerce.cache.ProductCache;
+import com.gd.springecommerce.dto.CacheStatistics;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@ExtendWith(SpringExtension.class)
+@SpringBootTest
+@AutoConfigureMockMvc(addFilters = false)
+class StatsControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @MockBean
+    private ProductCache productCache;
+
+    @MockBean
+    private CredentialCache credentialCache;
+
+    @MockBean
+    private JsonFragmentCache jsonFragmentCache;
+
+    @MockBean
+    private IdempotencyCache idempotencyCache;
+
+    @Test
+    void getProductCacheStatistics() throws Exception {
+        CacheStatistics statistics = CacheStatistics.builder().size(3).hitCount(10).missCount(3).evictionCount(1).build();
+        when(productCache.statistics()).thenReturn(statistics);
+        String json = mockMvc.perform(MockMvcRequestBuilders.get("/ecommerce/v1/stats/product-cache"))
+                .andExpect(status().isOk())
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+        CacheStatistics retrieved = objectMapper.readValue(json, CacheStatistics.class);
+        assertEquals(10, retrieved.getHitCount());
+        assertEquals(1, retrieved.getEvictionCount());
+    }
+
+    @Test
+    void getCredentialCacheStatistics() throws Exception {
+        CacheStatistics statistics = CacheStatistics.builder().size(2).hitCount(40).missCount(2).hitRate(40 / 42.0).build();
+        when(credentialCache.statistics()).thenReturn(statistics);
+        String json = mockMvc.perform(MockMvcRequestBuilders.get("/ecommerce/v1/stats/credential-cache"))
+                .andExpect(status().isOk())
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+        CacheStatistics retrieved = objectMapper.readValue(json, CacheStatistics.class);
+        assertEquals(40, retrieved.getHitCount());
+        assertEquals(2, retrieved.getSize());
+    }
+
+    @Test
+    void getJsonCacheStatistics() throws Exception {
+        CacheStatistics statistics = CacheStatistics.builder().size(5).hitCount(95).missCount(5).hitRate(0.95).build();
+        when(jsonFragmentCache.statistics()).thenReturn(statistics);
+        String json = mockMvc.perform(MockMvcRequestBuilders.get("/ecommerce/v1/stats/json-cache"))
+                .andExpect(status().isOk())
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+        CacheStatistics retrieved = objectMapper.readValue(json, CacheStatistics.class);
+        assertEquals(95, retrieved.getHitCount());
+        assertEquals(5, retrieved.getSize());
+    }
+
+    @Test
+    void getIdempotencyCacheStatistics() throws Exception {
+        CacheStatistics statistics = CacheStatistics.builder().size(8).hitCount(2).missCount(8).hitRate(0.2).build();
+        when(idempotencyCache.statistics()).thenReturn(statistics);
+        String json = mockMvc.perform(MockMvcRequestBuilders.get("/ecommerce/v1/stats/idempotency-cache"))
+                .andExpect(status().isOk())
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+        CacheStatistics retrieved = objectMapper.readValue(json, CacheStatistics.class);
+        assertEquals(2, retrieved.getHitCount());
+        assertEquals(8, retrieved.getSize());
+    }
+
+    @Test
+    void getMetrics_CoversTheHandledRequests() throws Exception {
+        when(productCache.statistics()).thenReturn(CacheStatistics.builder().build());
+        mockMvc.perform(MockMvcRequestBuilders.get("/ecommerce/v1/stats/product-cache"))
+                .andExpect(status().isOk());
+        String metrics = mockMvc.perform(MockMvcRequestBuilders.get("/ecommerce/v1/stats/metrics"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith("text/plain"))
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+        assertTrue(metrics.contains("# TYPE http_server_requests_seconds summary\n"));
+        assertTrue(metrics.contains("http_server_requests_seconds_count{method=\"GET\",uri=\"/ecommerce/v1/stats/product-cache\",status=\"200\"} "));
+        assertTrue(metrics.contains("http_server_requests_seconds{method=\"GET\",uri=\"/ecommerce/v1/stats/product-cache\",status=\"200\",quantile=\"0.99\"} "));
+    }
+}
@@ -0,0 +1,103 @@
+package com.gd.springecommerce.jdbc;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ConcurrencyLimitingDataSourceTest {
+
+    @Mock
+    private DataSource targetDataSource;
+
+    @Mock
+    private Connection connection;
+
+    private ConcurrencyLimitingDataSource dataSource;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new ConcurrencyLimitingDataSource(targetDataSource, 2, Duration.ofMillis(50));
+    }
+
+    @Test
+    void getConnection_HoldsPermitUntilClosed() throws Exception {
+        when(targetDataSource.getConnection()).thenReturn(connection);
+        Connection first = openOnAnotherThread();
+        Connection second = openOnAnotherThread();
+        assertEquals(0, dataSource.getAvailablePermits());
+        assertThrows(SQLTransientConnectionException.class, () -> dataSource.getConnection());
+        first.close();
+        assertEquals(1, dataSource.getAvailablePermits());
+        second.close();
+        assertEquals(2, dataSource.getAvailablePermits());
+        verify(connection, times(2)).close();
+    }
+
+    // Hibernate fetching a sequence block on its own connection while the transaction holds another
+    @Test
+    void getConnection_OpensANestedConnectionWithoutAPermit() throws Exception {
+        when(targetDataSource.getConnection()).thenReturn(connection);
+        Connection outer = dataSource.getConnection();
+        Connection other = openOnAnotherThread();
+        assertEquals(0, dataSource.getAvailablePermits());
+        Connection nested = dataSource.getConnection();
+        nested.close();
+        assertEquals(0, dataSource.getAvailablePermits());
+        outer.close();
+        assertEquals(1, dataSource.getAvailablePermits());
+        Connection next = dataSource.getConnection();
+        assertEquals(0, dataSource.getAvailablePermits());
+        next.close();
+        other.close();
+        assertEquals(2, dataSource.getAvailablePermits());
+    }
+
+    @Test
+    void close_ReleasesThePermitOnlyOnce() throws SQLException {
+        when(targetDataSource.getConnection()).thenReturn(connection);
+        Connection limited = dataSource.getConnection();
+        limited.close();
+        limited.close();
+        assertEquals(2, dataSource.getAvailablePermits());
+    }
+
+    @Test
+    void getConnection_ReleasesPermitWhenTargetFails() throws SQLException {
+        when(targetDataSource.getConnection()).thenThrow(new SQLException("pool exhausted"));
+        assertThrows(SQLException.class, () -> dataSource.getConnection());
+        assertEquals(2, dataSource.getAvailablePermits());
+    }
+
+    @Test
+    void getConnection_DelegatesCallsToTheTargetConnection() throws SQLException {
+        when(targetDataSource.getConnection()).thenReturn(connection);
+        when(connection.getAutoCommit()).thenReturn(false);
+        Connection limited = dataSource.getConnection();
+        assertFalse(limited.getAutoCommit());
+        doThrow(new SQLException("rolled back")).when(connection).commit();
+        assertThrows(SQLException.class, limited::commit);
+    }
+
+    private Connection openOnAnotherThread() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            return executor.submit(() -> dataSource.getConnection()).get();
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
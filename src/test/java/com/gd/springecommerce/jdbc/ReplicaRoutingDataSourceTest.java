@@ -0,0 +1,129 @@
+package com.gd.springecommerce.jdbc;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ReplicaRoutingDataSourceTest {
+
+    private JdbcTemplate primary;
+    private JdbcTemplate replica;
+    private ReadReplica readReplica;
+    private LongAdder fallbacks;
+    private ReplicaRoutingDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate readOnly;
+    private TransactionTemplate readWrite;
+
+    @BeforeEach
+    void setUp() {
+        primary = new JdbcTemplate(database());
+        replica = new JdbcTemplate(database());
+        primary.execute("CREATE TABLE node (name VARCHAR(10))");
+        primary.update("INSERT INTO node VALUES ('primary')");
+        replica.execute("CREATE TABLE node (name VARCHAR(10))");
+        replica.update("INSERT INTO node VALUES ('replica')");
+        readReplica = new ReadReplica("replica-0", replica.getDataSource());
+        fallbacks = new LongAdder();
+        dataSource = new ReplicaRoutingDataSource(primary.getDataSource(), List.of(readReplica), Duration.ofSeconds(2), fallbacks);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        readWrite = new TransactionTemplate(transactionManager);
+    }
+
+    @Test
+    void checkHealth_WritesTheHeartbeatOnThePrimary() {
+        long before = System.currentTimeMillis();
+        dataSource.checkHealth();
+        assertTrue(primary.queryForObject("SELECT beat_at FROM replication_heartbeat WHERE id = 1", Long.class) >= before);
+        // the replica has no copy of the heartbeat table yet
+        assertFalse(readReplica.isHealthy());
+        dataSource.checkHealth();
+        assertEquals(1, primary.queryForObject("SELECT COUNT(*) FROM replication_heartbeat", Integer.class));
+    }
+
+    @Test
+    void getConnection_SendsReadOnlyTransactionsThatOptedInToTheReplica() {
+        replicateHeartbeat();
+        dataSource.checkHealth();
+        assertTrue(readReplica.isHealthy());
+        assertEquals("replica", ReplicaRoutingDataSource.readFromReplica(() -> readOnly.execute(status -> node())));
+        assertEquals(0, fallbacks.sum());
+    }
+
+    @Test
+    void getConnection_KeepsEverythingElseOnThePrimary() {
+        replicateHeartbeat();
+        dataSource.checkHealth();
+        assertEquals("primary", ReplicaRoutingDataSource.readFromReplica(() -> readWrite.execute(status -> node())));
+        assertEquals("primary", ReplicaRoutingDataSource.readFromReplica(this::node));
+        assertEquals("primary", readOnly.execute(status -> node()));
+    }
+
+    @Test
+    void getConnection_FallsBackWhenTheReplicaLagsBehind() {
+        replicateHeartbeat();
+        replica.update("UPDATE replication_heartbeat SET beat_at = ?", System.currentTimeMillis() - Duration.ofMinutes(1).toMillis());
+        dataSource.checkHealth();
+        assertFalse(readReplica.isHealthy());
+        assertTrue(readReplica.getLagMillis() >= Duration.ofMinutes(1).toMillis());
+        assertEquals("primary", ReplicaRoutingDataSource.readFromReplica(() -> readOnly.execute(status -> node())));
+        assertEquals(1, fallbacks.sum());
+
+        replicateHeartbeat();
+        dataSource.checkHealth();
+        assertEquals("replica", ReplicaRoutingDataSource.readFromReplica(() -> readOnly.execute(status -> node())));
+    }
+
+    @Test
+    void getConnection_FallsBackWhenTheReplicaRefusesConnections() throws SQLException {
+        DataSource unreachable = mock(DataSource.class);
+        when(unreachable.getConnection()).thenThrow(new SQLException("Connection refused"));
+        ReadReplica down = new ReadReplica("replica-1", unreachable);
+        down.recordLag(0, 1);
+        ReplicaRoutingDataSource routing = new ReplicaRoutingDataSource(primary.getDataSource(), List.of(down), Duration.ofSeconds(2), fallbacks);
+        TransactionTemplate transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(routing));
+        transactionTemplate.setReadOnly(true);
+
+        String node = ReplicaRoutingDataSource.readFromReplica(
+                () -> transactionTemplate.execute(status -> new JdbcTemplate(routing).queryForObject("SELECT name FROM node", String.class)));
+        assertEquals("primary", node);
+        assertFalse(down.isHealthy());
+        assertEquals(1, fallbacks.sum());
+    }
+
+    private String node() {
+        return jdbcTemplate.queryForObject("SELECT name FROM node", String.class);
+    }
+
+    // stands in for replication, the replica catches up with the heartbeat the primary wrote last
+    private void replicateHeartbeat() {
+        dataSource.checkHealth();
+        Long beatAt = primary.queryForObject("SELECT beat_at FROM replication_heartbeat WHERE id = 1", Long.class);
+        replica.execute("CREATE TABLE IF NOT EXISTS replication_heartbeat (id INT PRIMARY KEY, beat_at BIGINT NOT NULL)");
+        replica.update("DELETE FROM replication_heartbeat");
+        replica.update("INSERT INTO replication_heartbeat VALUES (1, ?)", beatAt);
+    }
+
+    private static DataSource database() {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        dataSource.setUser("sa");
+        return dataSource;
+    }
+}
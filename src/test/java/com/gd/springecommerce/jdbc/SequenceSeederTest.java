@@ -0,0 +1,77 @@
+package com.gd.springecommerce.jdbc;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+class SequenceSeederTest {
+
+    private static final List<SequenceSeeder.SeededSequence> SEQUENCES = List.of(
+            new SequenceSeeder.SeededSequence("product_seq", "product", 50),
+            new SequenceSeeder.SeededSequence("orders_seq", "orders", 50),
+            new SequenceSeeder.SeededSequence("order_line_seq", "order_line", 50));
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private SingleConnectionDataSource dataSource;
+
+    private JdbcTemplate jdbcTemplate;
+
+    // the tables Hibernate creates on MySQL for the sequences, next to a schema that had IDENTITY ids
+    @BeforeEach
+    void setUp() {
+        dataSource = new SingleConnectionDataSource("jdbc:h2:mem:sequence-seeder;MODE=MySQL", "sa", "", true);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        for (SequenceSeeder.SeededSequence sequence : SEQUENCES) {
+            jdbcTemplate.execute("CREATE TABLE " + sequence.table() + " (id BIGINT PRIMARY KEY)");
+            jdbcTemplate.execute("CREATE TABLE " + sequence.name() + " (next_val BIGINT)");
+            jdbcTemplate.update("INSERT INTO " + sequence.name() + " VALUES (1)");
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        dataSource.destroy();
+    }
+
+    @Test
+    void sequencesOf_TakesTheBlockSizeFromTheEntityMapping() {
+        List<SequenceSeeder.SeededSequence> sequences = SequenceSeeder.sequencesOf(entityManagerFactory.unwrap(SessionFactoryImplementor.class));
+        assertEquals(Set.copyOf(SEQUENCES), Set.copyOf(sequences));
+    }
+
+    @Test
+    void seed_MovesTheSequencesPastTheHighestIds() {
+        jdbcTemplate.update("INSERT INTO product VALUES (7), (120)");
+        jdbcTemplate.update("INSERT INTO orders VALUES (3)");
+        SequenceSeeder.seed(jdbcTemplate, SEQUENCES);
+        assertEquals(170L, nextValue("product_seq"));
+        assertEquals(53L, nextValue("orders_seq"));
+        assertEquals(1L, nextValue("order_line_seq"));
+    }
+
+    @Test
+    void seed_NeverMovesASequenceBack() {
+        jdbcTemplate.update("INSERT INTO product VALUES (120)");
+        jdbcTemplate.update("UPDATE product_seq SET next_val = 500");
+        SequenceSeeder.seed(jdbcTemplate, SEQUENCES);
+        assertEquals(500L, nextValue("product_seq"));
+    }
+
+    private Long nextValue(String sequence) {
+        return jdbcTemplate.queryForObject("SELECT next_val FROM " + sequence, Long.class);
+    }
+}
@@ -0,0 +1,116 @@
+package com.gd.springecommerce.jdbc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Shared by every connection of the counting DataSource rather than kept per thread, because streamed
+// responses and the checkout batcher reach the database from other threads than the one serving the request
+public class StatementCounter {
+
+    private final List<String> statements = new CopyOnWriteArrayList<>();
+    private final AtomicLong roundTrips = new AtomicLong();
+    private final AtomicLong rowsRead = new AtomicLong();
+    private final AtomicLong rowsWritten = new AtomicLong();
+    private final AtomicLong commits = new AtomicLong();
+
+    void onStatement(String sql) {
+        statements.add(sql);
+    }
+
+    void onRoundTrip() {
+        roundTrips.incrementAndGet();
+    }
+
+    void onRowRead() {
+        rowsRead.incrementAndGet();
+    }
+
+    void onRowsWritten(long rows) {
+        rowsWritten.addAndGet(rows);
+    }
+
+    void onCommit() {
+        commits.incrementAndGet();
+    }
+
+    public void reset() {
+        statements.clear();
+        roundTrips.set(0);
+        rowsRead.set(0);
+        rowsWritten.set(0);
+        commits.set(0);
+    }
+
+    public SqlCounts snapshot() {
+        return new SqlCounts(new ArrayList<>(statements), roundTrips.get(), rowsRead.get(), rowsWritten.get(), commits.get());
+    }
+
+    // counts only what the action does, whatever ran before it
+    public SqlCounts measure(Action action) throws Exception {
+        reset();
+        action.run();
+        return snapshot();
+    }
+
+    @FunctionalInterface
+    public interface Action {
+        void run() throws Exception;
+    }
+
+    // statements counts every statement sent, including each one added to a batch, round trips counts each
+    // execute call and batch flush, so a batched write of N rows is N statements in one round trip
+    public record SqlCounts(List<String> sql, long roundTrips, long rowsRead, long rowsWritten, long commits) {
+
+        public int statements() {
+            return sql.size();
+        }
+
+        public SqlCounts assertStatementsAtMost(int expected) {
+            assertTrue(statements() <= expected, () -> "expected at most " + expected + " statements but " + this);
+            return this;
+        }
+
+        public SqlCounts assertRoundTripsAtMost(int expected) {
+            assertTrue(roundTrips <= expected, () -> "expected at most " + expected + " round trips but " + this);
+            return this;
+        }
+
+        public SqlCounts assertRowsReadAtMost(int expected) {
+            assertTrue(rowsRead <= expected, () -> "expected at most " + expected + " rows read but " + this);
+            return this;
+        }
+
+        public SqlCounts assertRowsWrittenAtMost(int expected) {
+            assertTrue(rowsWritten <= expected, () -> "expected at most " + expected + " rows written but " + this);
+            return this;
+        }
+
+        public SqlCounts assertNoStatements() {
+            return assertStatementsAtMost(0);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder out = new StringBuilder()
+                    .append(statements()).append(" statements, ")
+                    .append(roundTrips).append(" round trips, ")
+                    .append(rowsRead).append(" rows read, ")
+                    .append(rowsWritten).append(" rows written, ")
+                    .append(commits).append(" commits:");
+            // consecutive repeats of a statement, as in a batch or an N+1 loop, are folded in one line
+            for (int i = 0; i < sql.size(); ) {
+                int repeats = 1;
+                while (i + repeats < sql.size() && sql.get(i + repeats).equals(sql.get(i))) {
+                    repeats++;
+                }
+                out.append("\n  ").append(repeats > 1 ? repeats + " x " : "").append(sql.get(i));
+                i += repeats;
+            }
+            return out.toString();
+        }
+    }
+}
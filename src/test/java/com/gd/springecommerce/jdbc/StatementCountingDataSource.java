@@ -0,0 +1,105 @@
+package com.gd.springecommerce.jdbc;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+// Counts what reaches the driver: every statement executed or added to a batch, every round trip
+// (an execute call, a batch flush or a commit) and the rows read from result sets or written by updates
+public class StatementCountingDataSource extends DelegatingDataSource {
+
+    private final StatementCounter counter;
+
+    public StatementCountingDataSource(DataSource targetDataSource, StatementCounter counter) {
+        super(targetDataSource);
+        this.counter = counter;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return counting(super.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return counting(super.getConnection(username, password));
+    }
+
+    private Connection counting(Connection connection) {
+        return proxy(Connection.class, connection, (method, args, result) -> {
+            switch (method.getName()) {
+                case "prepareStatement", "prepareCall" -> {
+                    return proxy(method.getReturnType(), result, statementHandler((String) args[0]));
+                }
+                case "createStatement" -> {
+                    return proxy(method.getReturnType(), result, statementHandler(null));
+                }
+                case "commit" -> counter.onCommit();
+                default -> {
+                }
+            }
+            return result;
+        });
+    }
+
+    private ResultHandler statementHandler(String preparedSql) {
+        return (method, args, result) -> {
+            switch (method.getName()) {
+                case "addBatch" -> counter.onStatement(args == null || args.length == 0 ? preparedSql : (String) args[0]);
+                case "executeBatch" -> {
+                    counter.onRoundTrip();
+                    counter.onRowsWritten(Arrays.stream((int[]) result).filter(count -> count > 0).sum());
+                }
+                case "execute", "executeQuery", "executeUpdate", "executeLargeUpdate" -> {
+                    counter.onStatement(args == null || args.length == 0 ? preparedSql : (String) args[0]);
+                    counter.onRoundTrip();
+                    if (result instanceof Integer updated && updated > 0) {
+                        counter.onRowsWritten(updated);
+                    } else if (result instanceof Long updated && updated > 0) {
+                        counter.onRowsWritten(updated);
+                    }
+                }
+                case "getResultSet", "getGeneratedKeys" -> {
+                    return result == null ? null : countingRows((ResultSet) result);
+                }
+                default -> {
+                }
+            }
+            return method.getName().equals("executeQuery") ? countingRows((ResultSet) result) : result;
+        };
+    }
+
+    private ResultSet countingRows(ResultSet resultSet) {
+        return proxy(ResultSet.class, resultSet, (method, args, result) -> {
+            if (method.getName().equals("next") && Boolean.TRUE.equals(result)) {
+                counter.onRowRead();
+            }
+            return result;
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, Object target, ResultHandler handler) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            Object result;
+            try {
+                result = method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getTargetException();
+            }
+            return handler.handle(method, args, result);
+        });
+    }
+
+    @FunctionalInterface
+    private interface ResultHandler {
+        Object handle(Method method, Object[] args, Object result) throws Throwable;
+    }
+}
@@ -0,0 +1,50 @@
+package com.gd.springecommerce.listener;
+
+import com.gd.springecommerce.cache.CredentialCache;
+import com.gd.springecommerce.model.User;
+import com.gd.springecommerce.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+@SpringBootTest
+class UserEntityListenerTest {
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private CredentialCache credentialCache;
+
+    @AfterEach
+    void tearDown() {
+        userRepository.deleteAll();
+    }
+
+    @Test
+    void passwordChange_InvalidatesCachedCredentials() {
+        userRepository.save(User.builder().email("listener@example.com").password("hash1").build());
+        cache("listener@example.com", "Password1!");
+        userRepository.save(User.builder().email("listener@example.com").password("hash2").build());
+        assertNull(credentialCache.get("listener@example.com", "Password1!"));
+    }
+
+    @Test
+    void userRemoval_InvalidatesCachedCredentials() {
+        userRepository.save(User.builder().email("listener@example.com").password("hash1").build());
+        cache("listener@example.com", "Password1!");
+        userRepository.deleteById("listener@example.com");
+        assertNull(credentialCache.get("listener@example.com", "Password1!"));
+    }
+
+    private void cache(String username, String password) {
+        UserDetails userDetails = org.springframework.security.core.userdetails.User.withUsername(username).password("hash1").build();
+        credentialCache.putIfCurrent(username, password, userDetails, credentialCache.generation(username));
+        assertNotNull(credentialCache.get(username, password));
+    }
+}
@@ -0,0 +1,59 @@
+package com.gd.springecommerce.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HistogramTest {
+
+    @Test
+    void valueAtQuantile_IsExactForSmallValues() {
+        Histogram histogram = new Histogram();
+        for (int value = 1; value <= 100; value++) {
+            histogram.record(value);
+        }
+        Histogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(100, snapshot.count());
+        assertEquals(5050, snapshot.sum());
+        assertEquals(50, snapshot.valueAtQuantile(0.5));
+        assertEquals(99, snapshot.valueAtQuantile(0.99));
+        assertEquals(100, snapshot.valueAtQuantile(0.999));
+    }
+
+    @Test
+    void valueAtQuantile_StaysWithinTheBucketPrecision() {
+        Histogram histogram = new Histogram();
+        long[] values = new Random(7).longs(100_000, 1_000, 5_000_000_000L).sorted().toArray();
+        for (long value : values) {
+            histogram.record(value);
+        }
+        Histogram.Snapshot snapshot = histogram.snapshot();
+        for (double quantile : new double[]{0.5, 0.99, 0.999}) {
+            long expected = values[(int) Math.ceil(quantile * values.length) - 1];
+            long reported = snapshot.valueAtQuantile(quantile);
+            assertTrue(reported >= expected, quantile + ": " + reported + " < " + expected);
+            assertTrue(reported <= expected * 1.016, quantile + ": " + reported + " > " + expected);
+        }
+    }
+
+    @Test
+    void record_ClampsOutOfRangeValues() {
+        Histogram histogram = new Histogram();
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+        Histogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(0, snapshot.valueAtQuantile(0.5));
+        assertEquals(Histogram.MAX_VALUE, snapshot.valueAtQuantile(1));
+        assertEquals(0, new Histogram().snapshot().valueAtQuantile(0.99));
+    }
+
+    @Test
+    void indexOf_CoversEveryBucketOnce() {
+        for (int index = 0; index < Histogram.indexOf(Histogram.MAX_VALUE); index++) {
+            assertEquals(index, Histogram.indexOf(Histogram.highestValueOf(index)));
+            assertEquals(index + 1, Histogram.indexOf(Histogram.highestValueOf(index) + 1));
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.gd.springecommerce.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetricsRegistryTest {
+
+    private final MetricsRegistry metricsRegistry = new MetricsRegistry();
+
+    @Test
+    void scrape_RendersCountersAndSummaries() {
+        metricsRegistry.counter("jdbc_permit_timeouts_total").add(3);
+        Histogram timer = metricsRegistry.timer("checkout_seconds", "outcome", "confirmed");
+        timer.record(2_000_000);
+        timer.record(4_000_000);
+        metricsRegistry.histogram("checkout_cart_lines").record(7);
+
+        String scraped = metricsRegistry.scrape();
+
+        assertEquals("""
+                # TYPE checkout_cart_lines summary
+                checkout_cart_lines{quantile="0.5"} 7.0
+                checkout_cart_lines{quantile="0.99"} 7.0
+                checkout_cart_lines{quantile="0.999"} 7.0
+                checkout_cart_lines_count 1
+                checkout_cart_lines_sum 7.0
+                # TYPE checkout_seconds summary
+                checkout_seconds{outcome="confirmed",quantile="0.5"} 0.002015231
+                checkout_seconds{outcome="confirmed",quantile="0.99"} 0.004030463
+                checkout_seconds{outcome="confirmed",quantile="0.999"} 0.004030463
+                checkout_seconds_count{outcome="confirmed"} 2
+                checkout_seconds_sum{outcome="confirmed"} 0.006
+                # TYPE jdbc_permit_timeouts_total counter
+                jdbc_permit_timeouts_total 3
+                """, scraped);
+    }
+
+    @Test
+    void timer_ReturnsTheSameMeterForTheSameLabels() {
+        assertSame(metricsRegistry.timer("repository_calls_seconds", "method", "findById"),
+                metricsRegistry.timer("repository_calls_seconds", "method", "findById"));
+        assertNotSame(metricsRegistry.timer("repository_calls_seconds", "method", "findById"),
+                metricsRegistry.timer("repository_calls_seconds", "method", "findAll"));
+    }
+
+    @Test
+    void labelsOf_EscapesTheValues() {
+        assertEquals("uri=\"/a\\\"b\\\\c\\n\"", MetricsRegistry.labelsOf("uri", "/a\"b\\c\n"));
+        assertThrows(IllegalArgumentException.class, () -> MetricsRegistry.labelsOf("uri"));
+    }
+
+    @Test
+    void counter_RejectsANameRegisteredAsAnotherType() {
+        metricsRegistry.timer("checkout_seconds");
+        assertThrows(IllegalArgumentException.class, () -> metricsRegistry.counter("checkout_seconds"));
+    }
+}
@@ -0,0 +1,121 @@
+package com.gd.springecommerce.order;
+
+import com.gd.springecommerce.enums.OrderStatus;
+import com.gd.springecommerce.model.Order;
+import com.gd.springecommerce.model.OrderLine;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OrderShardTest {
+
+    private DataSource dataSource;
+    private OrderShard shard;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = database();
+        shard = new OrderShard(3, dataSource, 2);
+    }
+
+    @Test
+    void nextId_EncodesTheShardAcrossBlocks() {
+        long previous = 0;
+        for (int i = 0; i < 5; i++) {
+            long id = shard.nextId();
+            assertEquals(3, OrderShard.shardOf(id));
+            assertTrue(id > previous);
+            previous = id;
+        }
+    }
+
+    // two nodes writing to the same shard reserve separate blocks of its sequence
+    @Test
+    void nextId_NeverRepeatsAcrossNodes() {
+        OrderShard otherNode = new OrderShard(3, dataSource, 2);
+        Set<Long> ids = new HashSet<>();
+        for (int i = 0; i < 10; i++) {
+            assertTrue(ids.add(shard.nextId()));
+            assertTrue(ids.add(otherNode.nextId()));
+        }
+    }
+
+    @Test
+    void insert_KeepsTheOrderWithItsLines() {
+        Order order = order(OrderStatus.CONFIRMED);
+        shard.insert(order, 1_000);
+        Order found = shard.find(order.getId()).orElseThrow();
+        assertEquals(OrderStatus.CONFIRMED, found.getOrderStatus());
+        assertEquals(0, found.getTotal().compareTo(BigDecimal.TEN));
+        assertEquals(order.getOrderDate(), found.getOrderDate());
+        assertEquals(List.of(7L, 8L), found.getLines().stream().map(OrderLine::getProductId).toList());
+        assertTrue(found.getLines().stream().allMatch(line -> OrderShard.shardOf(line.getId()) == 3));
+        assertSame(found, found.getLines().get(0).getOrder());
+        assertTrue(shard.find(order.getId() + (1 << OrderShard.SHARD_BITS) * 100).isEmpty());
+    }
+
+    @Test
+    void findLatestByOwner_ReturnsTheOwnersNewestOrdersFirst() {
+        Order oldest = order(OrderStatus.CONFIRMED, "owner@example.com");
+        Order other = order(OrderStatus.CONFIRMED, "other@example.com");
+        Order newest = order(OrderStatus.PENDING, "owner@example.com");
+        shard.insert(oldest, 1_000);
+        shard.insert(other, 2_000);
+        shard.insert(newest, 3_000);
+
+        assertEquals(List.of(newest.getId(), oldest.getId()), ids(shard.findLatestByOwner("owner@example.com", 10)));
+        assertEquals(List.of(newest.getId()), ids(shard.findLatestByOwner("owner@example.com", 1)));
+        assertEquals(3_000, shard.findLatestByOwner("owner@example.com", 10).get(0).createdAt());
+        assertEquals(2, shard.findLatestByOwner("other@example.com", 10).get(0).order().getLines().size());
+        assertTrue(shard.findLatestByOwner("nobody@example.com", 10).isEmpty());
+    }
+
+    @Test
+    void updateStatus_OnlyMovesOrdersInTheExpectedStatus() {
+        Order pending = order(OrderStatus.PENDING);
+        Order confirmed = order(OrderStatus.CONFIRMED);
+        shard.insert(pending, 1_000);
+        shard.insert(confirmed, 2_000);
+
+        assertEquals(List.of(pending.getId()), shard.findIdsPlacedBefore(OrderStatus.PENDING, 1_500, 10));
+        assertTrue(shard.findIdsPlacedBefore(OrderStatus.PENDING, 1_000, 10).isEmpty());
+        assertEquals(1, shard.updateStatus(List.of(pending.getId(), confirmed.getId()), OrderStatus.PENDING, OrderStatus.REJECTED));
+        assertEquals(OrderStatus.REJECTED, shard.find(pending.getId()).orElseThrow().getOrderStatus());
+        assertEquals(OrderStatus.CONFIRMED, shard.find(confirmed.getId()).orElseThrow().getOrderStatus());
+
+        shard.delete(pending.getId());
+        assertTrue(shard.find(pending.getId()).isEmpty());
+        assertEquals(List.of(confirmed.getId()), shard.findIdsByOrderStatus(OrderStatus.CONFIRMED));
+    }
+
+    private static Order order(OrderStatus status) {
+        return order(status, null);
+    }
+
+    private static Order order(OrderStatus status, String owner) {
+        Order order = Order.builder().total(BigDecimal.TEN).orderStatus(status).owner(owner).build();
+        order.addLine(OrderLine.builder().productId(7L).title("seven").quantity(1).subTotal(BigDecimal.ONE).build());
+        order.addLine(OrderLine.builder().productId(8L).title("eight").quantity(3).subTotal(BigDecimal.valueOf(9)).build());
+        return order;
+    }
+
+    private static List<Long> ids(List<OrderShard.PlacedOrder> placedOrders) {
+        return placedOrders.stream().map(placedOrder -> placedOrder.order().getId()).toList();
+    }
+
+    private static DataSource database() {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=MySQL;DB_CLOSE_DELAY=-1");
+        dataSource.setUser("sa");
+        return dataSource;
+    }
+}
@@ -0,0 +1,169 @@
+package com.gd.springecommerce.order;
+
+import com.gd.springecommerce.dto.CartProductDTO;
+import com.gd.springecommerce.enums.OrderStatus;
+import com.gd.springecommerce.exception.OrderNotFoundException;
+import com.gd.springecommerce.model.Order;
+import com.gd.springecommerce.model.OrderLine;
+import com.gd.springecommerce.model.Product;
+import com.gd.springecommerce.repository.ProductRepository;
+import com.gd.springecommerce.service.CheckoutService;
+import com.gd.springecommerce.service.OrderService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Three embedded databases hold the orders, the products stay on the primary
+@SpringBootTest
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:sharding-primary;MODE=MySQL;DB_CLOSE_DELAY=-1;NON_KEYWORDS=USER",
+        "ecommerce.orders.store=sharded",
+        "ecommerce.orders.shard-urls=jdbc:h2:mem:orders-0;MODE=MySQL;DB_CLOSE_DELAY=-1,"
+                + "jdbc:h2:mem:orders-1;MODE=MySQL;DB_CLOSE_DELAY=-1,"
+                + "jdbc:h2:mem:orders-2;MODE=MySQL;DB_CLOSE_DELAY=-1",
+        "ecommerce.orders.reconcile-interval=1h"
+})
+class ShardedOrderStoreTest {
+    private static final String OWNER = "test@example.com";
+
+    @Autowired
+    private ShardedOrderStore orderStore;
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private CheckoutService checkoutService;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private DataSource dataSource;
+
+    private JdbcTemplate primary;
+    private Product product;
+
+    @BeforeEach
+    void setUp() {
+        primary = new JdbcTemplate(dataSource);
+        product = productRepository.save(Product.builder().title("sharded").available(100).price(BigDecimal.ONE).build());
+    }
+
+    @AfterEach
+    void tearDown() {
+        for (OrderShard shard : orderStore.getShards()) {
+            JdbcTemplate jdbcTemplate = new JdbcTemplate(shard.getDataSource());
+            jdbcTemplate.update("DELETE FROM order_line");
+            jdbcTemplate.update("DELETE FROM orders");
+        }
+        primary.update("DELETE FROM order_allocation");
+        productRepository.deleteAll();
+    }
+
+    @Test
+    void checkOut_KeepsEveryOrderOnTheShardItsIdNames() {
+        List<Order> orders = IntStream.range(0, 3).mapToObj(i -> checkoutService.checkOut(OWNER, cart(1))).toList();
+
+        assertEquals(Set.of(0, 1, 2), orders.stream().map(order -> OrderShard.shardOf(order.getId())).collect(Collectors.toSet()));
+        for (Order order : orders) {
+            assertEquals(OrderStatus.CONFIRMED, order.getOrderStatus());
+            for (OrderShard shard : orderStore.getShards()) {
+                assertEquals(shard.getIndex() == OrderShard.shardOf(order.getId()) ? 1 : 0, count(shard, order.getId()));
+            }
+            Order found = orderService.getOrderPlacedBy(order.getId(), OWNER);
+            assertEquals(OrderStatus.CONFIRMED, found.getOrderStatus());
+            assertThrows(OrderNotFoundException.class, () -> orderService.getOrderPlacedBy(order.getId(), "other@example.com"));
+            assertEquals(List.of(product.getId()), found.getLines().stream().map(OrderLine::getProductId).toList());
+        }
+        assertEquals(0, primary.queryForObject("SELECT COUNT(*) FROM orders", Integer.class));
+        assertEquals(3, primary.queryForObject("SELECT COUNT(*) FROM order_allocation", Integer.class));
+        assertEquals(97, productRepository.findById(product.getId()).orElseThrow().getAvailable());
+    }
+
+    @Test
+    void getLatestOrdersPlacedBy_GathersTheOwnersNewestOrdersFromEveryShard() throws InterruptedException {
+        List<Long> newestFirst = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            newestFirst.add(0, checkoutService.checkOut(OWNER, cart(1)).getId());
+            checkoutService.checkOut("other@example.com", cart(1));
+            Thread.sleep(2);
+        }
+
+        List<Long> listed = orderService.getLatestOrdersPlacedBy(OWNER, null).stream().map(Order::getId).toList();
+        assertEquals(newestFirst, listed);
+        assertEquals(Set.of(0, 1, 2), listed.stream().map(OrderShard::shardOf).collect(Collectors.toSet()));
+        assertEquals(newestFirst.subList(0, 2), orderService.getLatestOrdersPlacedBy(OWNER, 2).stream().map(Order::getId).toList());
+        assertTrue(orderService.getLatestOrdersPlacedBy("nobody@example.com", 10).isEmpty());
+    }
+
+    @Test
+    void save_DeletesTheOrderWhenTheCheckoutRollsBack() {
+        Order order = new TransactionTemplate(transactionManager).execute(status -> {
+            status.setRollbackOnly();
+            return orderStore.save(order());
+        });
+
+        assertEquals(OrderStatus.PENDING, order.getOrderStatus());
+        assertEquals(0, count(orderStore.getShards().get(OrderShard.shardOf(order.getId())), order.getId()));
+        assertEquals(0, primary.queryForObject("SELECT COUNT(*) FROM order_allocation", Integer.class));
+    }
+
+    // stands in for a crash between the checkout commit and the confirmation, and for one before the commit
+    @Test
+    void reconcile_ConfirmsAllocatedOrdersAndRejectsTheRest() {
+        long placedAt = System.currentTimeMillis() - Duration.ofMinutes(5).toMillis();
+        Order allocated = order();
+        allocated.setOrderStatus(OrderStatus.PENDING);
+        orderStore.getShards().get(0).insert(allocated, placedAt);
+        primary.update("INSERT INTO order_allocation (order_id, allocated_at) VALUES (?, ?)", allocated.getId(), placedAt);
+        Order abandoned = order();
+        abandoned.setOrderStatus(OrderStatus.PENDING);
+        orderStore.getShards().get(1).insert(abandoned, placedAt);
+        Order recent = order();
+        recent.setOrderStatus(OrderStatus.PENDING);
+        orderStore.getShards().get(2).insert(recent, System.currentTimeMillis());
+
+        assertEquals(List.of(allocated.getId(), abandoned.getId(), recent.getId()).stream().sorted().toList(), orderService.findPendingOrderIds());
+        orderStore.reconcile();
+
+        assertEquals(OrderStatus.CONFIRMED, orderService.getOrderPlacedBy(allocated.getId(), OWNER).getOrderStatus());
+        assertEquals(OrderStatus.REJECTED, orderService.getOrderPlacedBy(abandoned.getId(), OWNER).getOrderStatus());
+        assertEquals(OrderStatus.PENDING, orderService.getOrderPlacedBy(recent.getId(), OWNER).getOrderStatus());
+        assertEquals(0, primary.queryForObject("SELECT COUNT(*) FROM order_allocation", Integer.class));
+    }
+
+    private int count(OrderShard shard, long id) {
+        return new JdbcTemplate(shard.getDataSource()).queryForObject("SELECT COUNT(*) FROM orders WHERE id = ?", Integer.class, id);
+    }
+
+    private List<CartProductDTO> cart(int quantity) {
+        return List.of(CartProductDTO.builder().id(product.getId()).title("sharded").quantity(quantity).subTotal(BigDecimal.ONE).build());
+    }
+
+    private Order order() {
+        Order order = Order.builder().total(BigDecimal.ONE).owner(OWNER).build();
+        order.addLine(OrderLine.builder().productId(product.getId()).title("sharded").quantity(1).subTotal(BigDecimal.ONE).build());
+        return order;
+    }
+}
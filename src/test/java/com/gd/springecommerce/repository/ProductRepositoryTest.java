@@ -0,0 +1,155 @@
+package com.gd.springecommerce.repository;
+
+import com.gd.springecommerce.model.Product;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.spy;
+
+@DataJpaTest
+class ProductRepositoryTest {
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private TestEntityManager testEntityManager;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private List<Product> products;
+
+    @BeforeEach
+    void setUp() {
+        products = productRepository.saveAllAndFlush(IntStream.rangeClosed(1, 5)
+                .mapToObj(i -> Product.builder().title("product " + i).available(i).price(BigDecimal.TEN).build())
+                .toList());
+    }
+
+    @Test
+    void findByIdGreaterThanOrderByIdAsc_ReturnsNextPage() {
+        Long cursor = products.get(1).getId();
+        List<Product> page = productRepository.findByIdGreaterThanOrderByIdAsc(cursor, Limit.of(2));
+        assertEquals(2, page.size());
+        assertEquals(products.get(2).getId(), page.get(0).getId());
+        assertEquals(products.get(3).getId(), page.get(1).getId());
+    }
+
+    @Test
+    void streamAllOrderedById_ReturnsAllProductsInIdOrder() {
+        try (Stream<Product> stream = productRepository.streamAllOrderedById()) {
+            List<Long> ids = stream.map(Product::getId).toList();
+            assertEquals(products.stream().map(Product::getId).toList(), ids);
+        }
+    }
+
+    @Test
+    void decrementAvailable_WithSufficientQuantity() {
+        Product product1 = products.get(0);
+        Product product5 = products.get(4);
+        List<Long> insufficient = productRepository.decrementAvailable(Map.of(product1.getId(), 1, product5.getId(), 3));
+        testEntityManager.clear();
+        assertTrue(insufficient.isEmpty());
+        assertEquals(0, productRepository.findById(product1.getId()).orElseThrow().getAvailable());
+        assertEquals(2, productRepository.findById(product5.getId()).orElseThrow().getAvailable());
+    }
+
+    @Test
+    void decrementAvailable_WithInsufficientQuantityLeavesThatRowUntouched() {
+        Product product2 = products.get(1);
+        Product product3 = products.get(2);
+        List<Long> insufficient = productRepository.decrementAvailable(Map.of(product2.getId(), 5, product3.getId(), 1));
+        testEntityManager.clear();
+        assertEquals(List.of(product2.getId()), insufficient);
+        assertEquals(2, productRepository.findById(product2.getId()).orElseThrow().getAvailable());
+    }
+
+    // a rewritten batch may report SUCCESS_NO_INFO for every row, which must not pass for a decremented row
+    @Test
+    void decrementAvailable_WhenTheDriverReportsNoRowCounts() {
+        JdbcTemplate noRowCounts = spy(jdbcTemplate);
+        doAnswer(invocation -> {
+            int[][] updatedRows = (int[][]) invocation.callRealMethod();
+            Arrays.fill(updatedRows[0], Statement.SUCCESS_NO_INFO);
+            return updatedRows;
+        }).when(noRowCounts).batchUpdate(anyString(), anyList(), anyInt(), any());
+        ProductRepositoryCustomImpl repository = new ProductRepositoryCustomImpl(noRowCounts, testEntityManager.getEntityManager());
+        Product product2 = products.get(1);
+        Product product3 = products.get(2);
+        List<Long> insufficient = repository.decrementAvailable(Map.of(product2.getId(), 5, product3.getId(), 1));
+        testEntityManager.clear();
+        assertEquals(List.of(product2.getId()), insufficient);
+        assertEquals(2, productRepository.findById(product2.getId()).orElseThrow().getAvailable());
+        // the batch was undone before the rows were run one by one, so the decrement is applied once
+        assertEquals(2, productRepository.findById(product3.getId()).orElseThrow().getAvailable());
+    }
+
+    @Test
+    void decrementAvailableIfUnchanged_BumpsTheVersion() {
+        Product product4 = products.get(3);
+        List<Long> insufficient = productRepository.decrementAvailableIfUnchanged(Map.of(product4.getId(), 3));
+        testEntityManager.clear();
+        assertTrue(insufficient.isEmpty());
+        Product updated = productRepository.findById(product4.getId()).orElseThrow();
+        assertEquals(1, updated.getAvailable());
+        assertEquals(product4.getVersion() + 1, updated.getVersion());
+    }
+
+    @Test
+    void decrementAvailableIfUnchanged_WithInsufficientQuantityWritesNothing() {
+        Product product2 = products.get(1);
+        Product product3 = products.get(2);
+        List<Long> insufficient = productRepository.decrementAvailableIfUnchanged(Map.of(product2.getId(), 5, product3.getId(), 1));
+        testEntityManager.clear();
+        assertEquals(List.of(product2.getId()), insufficient);
+        assertEquals(3, productRepository.findById(product3.getId()).orElseThrow().getAvailable());
+    }
+
+    @Test
+    void decrementAvailableLocked_WithSufficientQuantity() {
+        Product product5 = products.get(4);
+        long version = product5.getVersion();
+        List<Long> insufficient = productRepository.decrementAvailableLocked(Map.of(product5.getId(), 2));
+        testEntityManager.flush();
+        testEntityManager.clear();
+        assertTrue(insufficient.isEmpty());
+        Product updated = productRepository.findById(product5.getId()).orElseThrow();
+        assertEquals(3, updated.getAvailable());
+        assertEquals(version + 1, updated.getVersion());
+    }
+
+    @Test
+    void updateProductAvailability_BumpsTheVersion() {
+        Product product1 = products.get(0);
+        assertEquals(1, productRepository.updateProductAvailability(7, product1.getId(), product1.getVersion()));
+        testEntityManager.clear();
+        assertEquals(product1.getVersion() + 1, productRepository.findById(product1.getId()).orElseThrow().getVersion());
+    }
+
+    @Test
+    void updateProductAvailability_LeavesAChangedProductAlone() {
+        Product product1 = products.get(0);
+        assertEquals(0, productRepository.updateProductAvailability(7, product1.getId(), product1.getVersion() + 1));
+        testEntityManager.clear();
+        Product unchanged = productRepository.findById(product1.getId()).orElseThrow();
+        assertEquals(product1.getAvailable(), unchanged.getAvailable());
+        assertEquals(product1.getVersion(), unchanged.getVersion());
+    }
+}
@@ -0,0 +1,101 @@
+package com.gd.springecommerce.search;
+
+import com.gd.springecommerce.model.Product;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProductSearchIndexTest {
+
+    private ProductSearchIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new ProductSearchIndex();
+        index.put(product(1L, "Red running shoe"));
+        index.put(product(2L, "Blue shoe"));
+        index.put(product(3L, "Shoelace, red"));
+        index.put(product(4L, "Red shirt"));
+    }
+
+    @Test
+    void tokenize_LowerCasesAndSplitsOnPunctuation() {
+        assertArrayEquals(new String[]{"usb", "c", "cable", "2m"}, ProductSearchIndex.tokenize("USB-C cable (2m), usb"));
+        assertArrayEquals(new String[0], ProductSearchIndex.tokenize(" ,- "));
+    }
+
+    @Test
+    void search_MatchesTheLastTokenAsPrefix() {
+        SearchHits hits = index.search("sho", 0, 10);
+        assertEquals(3, hits.total());
+        assertEquals(List.of(3L, 2L, 1L), ids(hits));
+    }
+
+    @Test
+    void search_RanksExactTokenAboveLongerTokens() {
+        // "shoe" is a whole word in 1 and 2, only a prefix of "shoelace" in 3
+        assertEquals(List.of(2L, 1L, 3L), ids(index.search("shoe", 0, 10)));
+    }
+
+    @Test
+    void search_RequiresEveryLeadingTokenExactly() {
+        SearchHits hits = index.search("red sh", 0, 10);
+        assertEquals(List.of(4L, 1L, 3L), ids(hits));
+        assertEquals(0, index.search("re shoe", 0, 10).total());
+    }
+
+    @Test
+    void search_PaginatesAndCountsAllMatches() {
+        SearchHits secondPage = index.search("s", 3, 3);
+        assertEquals(4, secondPage.total());
+        assertEquals(index.search("s", 0, 4).products().subList(3, 4), secondPage.products());
+    }
+
+    @Test
+    void search_PastTheLastPageOnlyCountsTheMatches() {
+        SearchHits hits = index.search("s", (long) Integer.MAX_VALUE * 100, 100);
+        assertEquals(4, hits.total());
+        assertTrue(hits.products().isEmpty());
+    }
+
+    @Test
+    void search_CountsATitleOnceWhenSeveralTokensMatchThePrefix() {
+        index.put(product(5L, "Pen pencil penholder"));
+        SearchHits hits = index.search("pen", 0, 10);
+        assertEquals(1, hits.total());
+        assertEquals(List.of(5L), ids(hits));
+    }
+
+    @Test
+    void put_ReplacesTheTokensOfAnUpdatedProduct() {
+        index.put(product(2L, "Green hat"));
+        assertEquals(List.of(1L, 3L), ids(index.search("shoe", 0, 10)));
+        assertEquals(List.of(2L), ids(index.search("gre", 0, 10)));
+        assertEquals("Green hat", index.search("hat", 0, 10).products().get(0).getTitle());
+    }
+
+    @Test
+    void remove_DropsTheProductFromAllTokens() {
+        index.remove(4L);
+        assertEquals(3, index.size());
+        assertEquals(0, index.search("shirt", 0, 10).total());
+        assertEquals(List.of(1L, 3L), ids(index.search("red", 0, 10)));
+    }
+
+    @Test
+    void search_ReturnsNothingForBlankQueries() {
+        assertSame(SearchHits.EMPTY, index.search("  ", 0, 10));
+    }
+
+    private static List<Long> ids(SearchHits hits) {
+        return hits.products().stream().map(Product::getId).toList();
+    }
+
+    private static Product product(Long id, String title) {
+        return Product.builder().id(id).title(title).available(1).price(BigDecimal.ONE).build();
+    }
+}
@@ -0,0 +1,83 @@
+package com.gd.springecommerce.security;
+
+import com.gd.springecommerce.cache.CredentialCache;
+import com.gd.springecommerce.config.CredentialCacheProperties;
+import com.gd.springecommerce.event.UserCredentialsChangedEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CachingAuthenticationProviderTest {
+
+    @Mock
+    private AuthenticationProvider delegate;
+
+    private CredentialCache credentialCache;
+    private CachingAuthenticationProvider cachingAuthenticationProvider;
+    private UserDetails userDetails;
+
+    @BeforeEach
+    void setUp() {
+        credentialCache = new CredentialCache(new CredentialCacheProperties());
+        cachingAuthenticationProvider = new CachingAuthenticationProvider(delegate, credentialCache);
+        userDetails = User.withUsername("test@example.com").password("hash").build();
+    }
+
+    @Test
+    void authenticate_VerifiesOnceThenServesFromCache() {
+        when(delegate.authenticate(any())).thenReturn(UsernamePasswordAuthenticationToken.authenticated(userDetails, "Password1!", List.of()));
+        Authentication first = cachingAuthenticationProvider.authenticate(UsernamePasswordAuthenticationToken.unauthenticated("test@example.com", "Password1!"));
+        Authentication second = cachingAuthenticationProvider.authenticate(UsernamePasswordAuthenticationToken.unauthenticated("test@example.com", "Password1!"));
+        assertTrue(first.isAuthenticated());
+        assertTrue(second.isAuthenticated());
+        assertSame(userDetails, second.getPrincipal());
+        verify(delegate, times(1)).authenticate(any());
+    }
+
+    @Test
+    void authenticate_DifferentPasswordIsVerifiedAgain() {
+        when(delegate.authenticate(any()))
+                .thenReturn(UsernamePasswordAuthenticationToken.authenticated(userDetails, "Password1!", List.of()))
+                .thenThrow(new BadCredentialsException("Bad credentials"));
+        cachingAuthenticationProvider.authenticate(UsernamePasswordAuthenticationToken.unauthenticated("test@example.com", "Password1!"));
+        assertThrows(BadCredentialsException.class, () -> cachingAuthenticationProvider.authenticate(UsernamePasswordAuthenticationToken.unauthenticated("test@example.com", "Wrong1!")));
+        verify(delegate, times(2)).authenticate(any());
+    }
+
+    @Test
+    void authenticate_DoesNotCacheTheOldPasswordWhenItChangesDuringVerification() {
+        when(delegate.authenticate(any())).thenAnswer(invocation -> {
+            // the password is changed after the old hash was loaded and matched
+            credentialCache.onUserCredentialsChanged(new UserCredentialsChangedEvent("test@example.com"));
+            return UsernamePasswordAuthenticationToken.authenticated(userDetails, "Password1!", List.of());
+        });
+        assertTrue(cachingAuthenticationProvider.authenticate(UsernamePasswordAuthenticationToken.unauthenticated("test@example.com", "Password1!")).isAuthenticated());
+        assertNull(credentialCache.get("test@example.com", "Password1!"));
+        cachingAuthenticationProvider.authenticate(UsernamePasswordAuthenticationToken.unauthenticated("test@example.com", "Password1!"));
+        verify(delegate, times(2)).authenticate(any());
+    }
+
+    @Test
+    void authenticate_FailuresAreNotCached() {
+        when(delegate.authenticate(any())).thenThrow(new BadCredentialsException("Bad credentials"));
+        assertThrows(BadCredentialsException.class, () -> cachingAuthenticationProvider.authenticate(UsernamePasswordAuthenticationToken.unauthenticated("test@example.com", "Wrong1!")));
+        assertThrows(BadCredentialsException.class, () -> cachingAuthenticationProvider.authenticate(UsernamePasswordAuthenticationToken.unauthenticated("test@example.com", "Wrong1!")));
+        verify(delegate, times(2)).authenticate(any());
+        assertEquals(0, credentialCache.statistics().getSize());
+    }
+}
@@ -0,0 +1,114 @@
+package com.gd.springecommerce.security;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gd.springecommerce.cart.CartStore;
+import com.gd.springecommerce.dto.ProductDTO;
+import com.gd.springecommerce.model.Product;
+import com.gd.springecommerce.model.User;
+import com.gd.springecommerce.repository.ProductRepository;
+import com.gd.springecommerce.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@TestPropertySource(properties = {"ecommerce.auth.token.enabled=true"})
+class TokenAuthenticationTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    @Autowired
+    private CartStore cartStore;
+
+    private Product product;
+
+    @BeforeEach
+    void setUp() {
+        userRepository.save(User.builder().email("token@example.com").password(passwordEncoder.encode("Password1!")).build());
+        product = productRepository.save(Product.builder().title("Pen").available(10).price(BigDecimal.TEN).build());
+    }
+
+    @AfterEach
+    void tearDown() {
+        cartStore.removeCart("token@example.com");
+        userRepository.deleteAll();
+        productRepository.deleteAll();
+    }
+
+    @Test
+    void login_IssuesTokenThatAuthenticatesWithoutSession() throws Exception {
+        String token = login();
+        MvcResult result = mockMvc.perform(MockMvcRequestBuilders.get("/ecommerce/v1/products/cart/products")
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer " + token))
+                .andExpect(status().isOk())
+                .andReturn();
+        assertNull(result.getRequest().getSession(false));
+    }
+
+    @Test
+    void cart_IsKeyedByTokenSubject() throws Exception {
+        String token = login();
+        ProductDTO productDTO = ProductDTO.builder().id(product.getId()).quantity(2).build();
+        mockMvc.perform(MockMvcRequestBuilders.post("/ecommerce/v1/products/cart")
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer " + token)
+                        .contentType(MediaType.APPLICATION_JSON_VALUE)
+                        .content(objectMapper.writeValueAsString(productDTO)))
+                .andExpect(status().isOk());
+        assertEquals(2, cartStore.findCart("token@example.com").orElseThrow().getLine(product.getId()).getQuantity());
+    }
+
+    @Test
+    void invalidToken_IsUnauthorized() throws Exception {
+        String token = login();
+        int signatureStart = token.lastIndexOf('.') + 1;
+        char tampered = token.charAt(signatureStart) == 'A' ? 'B' : 'A';
+        String forged = token.substring(0, signatureStart) + tampered + token.substring(signatureStart + 1);
+        mockMvc.perform(MockMvcRequestBuilders.get("/ecommerce/v1/products/cart/products")
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer " + forged))
+                .andExpect(status().isUnauthorized());
+    }
+
+    private String login() throws Exception {
+        User user = User.builder().email("token@example.com").password("Password1!").build();
+        String json = mockMvc.perform(MockMvcRequestBuilders.post("/ecommerce/v1/users/login")
+                        .contentType(MediaType.APPLICATION_JSON_VALUE)
+                        .content(objectMapper.writeValueAsString(user)))
+                .andExpect(status().isOk())
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+        JsonNode response = objectMapper.readTree(json);
+        assertFalse(response.has("sessionId"));
+        return response.get("token").asText();
+    }
+}
@@ -0,0 +1,104 @@
+package com.gd.springecommerce.security;
+
+import com.gd.springecommerce.config.TokenProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Base64;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenServiceTest {
+
+    private TokenProperties tokenProperties;
+    private Instant now;
+
+    @BeforeEach
+    void setUp() {
+        tokenProperties = new TokenProperties();
+        tokenProperties.setSecret(Base64.getEncoder().encodeToString("0123456789abcdef0123456789abcdef".getBytes()));
+        tokenProperties.setTimeToLive(Duration.ofMinutes(10));
+        now = Instant.parse("2024-01-01T00:00:00Z");
+    }
+
+    @Test
+    void verify_ReturnsSubjectOfIssuedToken() {
+        TokenService tokenService = new TokenService(tokenProperties, Clock.fixed(now, ZoneOffset.UTC));
+        String token = tokenService.issue("test@example.com");
+        assertEquals(Optional.of("test@example.com"), tokenService.verify(token));
+    }
+
+    @Test
+    void verify_AcceptsTokensOfAnotherNodeWithTheSameSecret() {
+        String token = new TokenService(tokenProperties, Clock.fixed(now, ZoneOffset.UTC)).issue("test@example.com");
+        TokenService otherNode = new TokenService(tokenProperties, Clock.fixed(now, ZoneOffset.UTC));
+        assertEquals(Optional.of("test@example.com"), otherNode.verify(token));
+    }
+
+    @Test
+    void verify_RejectsExpiredToken() {
+        String token = new TokenService(tokenProperties, Clock.fixed(now, ZoneOffset.UTC)).issue("test@example.com");
+        TokenService later = new TokenService(tokenProperties, Clock.fixed(now.plus(Duration.ofMinutes(10)), ZoneOffset.UTC));
+        assertTrue(later.verify(token).isEmpty());
+    }
+
+    @Test
+    void verify_RejectsTamperedToken() {
+        TokenService tokenService = new TokenService(tokenProperties, Clock.fixed(now, ZoneOffset.UTC));
+        String token = tokenService.issue("test@example.com");
+        String subject = Base64.getUrlEncoder().withoutPadding().encodeToString("admin@example.com".getBytes());
+        assertTrue(tokenService.verify(subject + token.substring(token.indexOf('.'))).isEmpty());
+        String extended = token.replaceFirst("\\.\\d+\\.", "." + now.plus(Duration.ofDays(365)).getEpochSecond() + ".");
+        assertTrue(tokenService.verify(extended).isEmpty());
+    }
+
+    @Test
+    void verify_RejectsTokenSignedWithAnotherSecret() {
+        TokenProperties otherSecret = new TokenProperties();
+        otherSecret.setSecret(Base64.getEncoder().encodeToString("fedcba9876543210fedcba9876543210".getBytes()));
+        String token = new TokenService(otherSecret, Clock.fixed(now, ZoneOffset.UTC)).issue("test@example.com");
+        TokenService tokenService = new TokenService(tokenProperties, Clock.fixed(now, ZoneOffset.UTC));
+        assertTrue(tokenService.verify(token).isEmpty());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"", " "})
+    void constructor_FailsWhenEnabledWithoutASecret(String secret) {
+        tokenProperties.setEnabled(true);
+        tokenProperties.setSecret(secret);
+        assertThrows(IllegalStateException.class, () -> new TokenService(tokenProperties, Clock.fixed(now, ZoneOffset.UTC)));
+    }
+
+    @Test
+    void constructor_FailsOnASecretShorterThan32Bytes() {
+        tokenProperties.setSecret(Base64.getEncoder().encodeToString("0123456789abcdef".getBytes()));
+        assertThrows(IllegalStateException.class, () -> new TokenService(tokenProperties, Clock.fixed(now, ZoneOffset.UTC)));
+    }
+
+    @Test
+    void constructor_FailsOnASecretThatIsNotBase64() {
+        tokenProperties.setSecret("not base64!");
+        assertThrows(IllegalStateException.class, () -> new TokenService(tokenProperties, Clock.fixed(now, ZoneOffset.UTC)));
+    }
+
+    @Test
+    void issue_FailsWhenDisabledWithoutASecret() {
+        tokenProperties.setSecret(null);
+        TokenService tokenService = new TokenService(tokenProperties, Clock.fixed(now, ZoneOffset.UTC));
+        assertThrows(IllegalStateException.class, () -> tokenService.issue("test@example.com"));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"", ".", "..", "abc", "a.b.c", "a.1.!!", ".1.abc"})
+    void verify_RejectsMalformedToken(String token) {
+        TokenService tokenService = new TokenService(tokenProperties, Clock.fixed(now, ZoneOffset.UTC));
+        assertTrue(tokenService.verify(token).isEmpty());
+    }
+}
@@ -0,0 +1,114 @@
+package com.gd.springecommerce.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gd.springecommerce.dto.CatalogDelta;
+import com.gd.springecommerce.dto.CatalogSnapshot;
+import com.gd.springecommerce.event.ProductsChangedEvent;
+import com.gd.springecommerce.exception.CatalogVersionExpiredException;
+import com.gd.springecommerce.metrics.MetricsRegistry;
+import com.gd.springecommerce.model.Product;
+import com.gd.springecommerce.repository.ProductRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+class CatalogServiceImplTest {
+
+    @Autowired
+    private CatalogService catalogService;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private MetricsRegistry metricsRegistry;
+
+    private Product pen;
+    private Product ink;
+
+    @BeforeEach
+    void setUp() {
+        pen = productRepository.save(Product.builder().title("pen").available(5).price(BigDecimal.ONE).build());
+        ink = productRepository.save(Product.builder().title("ink").available(5).price(BigDecimal.TEN).build());
+    }
+
+    @AfterEach
+    void tearDown() {
+        productRepository.deleteAll();
+    }
+
+    @Test
+    void getSnapshot_IsReusedUntilTheCatalogChanges() throws IOException {
+        CatalogSnapshot first = catalogService.getSnapshot(MediaType.APPLICATION_JSON);
+        assertSame(first, catalogService.getSnapshot(MediaType.APPLICATION_JSON));
+
+        productService.updateProductAvailability(pen.getId(), 2, pen.getVersion());
+
+        CatalogSnapshot second = catalogService.getSnapshot(MediaType.APPLICATION_JSON);
+        assertTrue(second.version() > first.version());
+        assertNotEquals(first.eTag(), second.eTag());
+        List<Product> products = objectMapper.readValue(second.body(), new TypeReference<>() {});
+        assertEquals(2, products.stream().filter(product -> product.getId().equals(pen.getId())).findFirst().orElseThrow().getAvailable());
+    }
+
+    @Test
+    void getSnapshot_IsEncodedPerContentType() throws IOException {
+        productService.updateProductAvailability(ink.getId(), 4, ink.getVersion());
+        CatalogSnapshot json = catalogService.getSnapshot(MediaType.APPLICATION_JSON);
+        CatalogSnapshot cbor = catalogService.getSnapshot(MediaType.APPLICATION_CBOR);
+
+        assertSame(cbor, catalogService.getSnapshot(MediaType.APPLICATION_CBOR));
+        assertEquals(json.version(), cbor.version());
+        assertNotEquals(json.eTag(), cbor.eTag());
+        assertEquals(MediaType.APPLICATION_CBOR, cbor.contentType());
+        List<Product> products = Jackson2ObjectMapperBuilder.cbor().build().readValue(cbor.body(), new TypeReference<>() {});
+        assertEquals(objectMapper.readValue(json.body(), new TypeReference<List<Product>>() {}), products);
+    }
+
+    @Test
+    void getChangesSince_ReturnsTheChangedAndRemovedProducts() {
+        long since = catalogService.getSnapshot(MediaType.APPLICATION_JSON).version();
+        productService.updateProductAvailability(pen.getId(), 1, pen.getVersion());
+        // a product deleted since
+        eventPublisher.publishEvent(new ProductsChangedEvent(List.of(-1L)));
+
+        CatalogDelta delta = catalogService.getChangesSince(since);
+
+        assertEquals(since, delta.since());
+        assertEquals(since + 2, delta.version());
+        assertEquals(List.of(pen.getId()), delta.products().stream().map(Product::getId).toList());
+        assertEquals(1, delta.products().get(0).getAvailable());
+        assertEquals(List.of(-1L), delta.removedIds());
+        assertTrue(catalogService.getChangesSince(delta.version()).products().isEmpty());
+        assertTrue(metricsRegistry.scrape().contains("repository_calls_seconds_count{repository=\"ProductRepository\",method=\"findQuantityByIds\"} "));
+    }
+
+    @Test
+    void getChangesSince_RejectsAnExpiredVersion() {
+        long version = catalogService.getSnapshot(MediaType.APPLICATION_JSON).version();
+        assertThrows(CatalogVersionExpiredException.class, () -> catalogService.getChangesSince(version + 1));
+        assertThrows(CatalogVersionExpiredException.class, () -> catalogService.getChangesSince(0));
+    }
+}
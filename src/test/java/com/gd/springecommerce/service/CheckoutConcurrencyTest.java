@@ -0,0 +1,116 @@
+package com.gd.springecommerce.service;
+
+import com.gd.springecommerce.config.CheckoutProperties;
+import com.gd.springecommerce.dto.CartProductDTO;
+import com.gd.springecommerce.enums.StockLocking;
+import com.gd.springecommerce.exception.InsufficientQuantityException;
+import com.gd.springecommerce.model.Order;
+import com.gd.springecommerce.model.Product;
+import com.gd.springecommerce.repository.OrderRepository;
+import com.gd.springecommerce.repository.ProductRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+class CheckoutConcurrencyTest {
+
+    private static final int STOCK = 10;
+    private static final int CHECKOUTS = 40;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private CheckoutService checkoutService;
+
+    @Autowired
+    private CheckoutProperties checkoutProperties;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @AfterEach
+    void tearDown() {
+        checkoutProperties.setStockLocking(StockLocking.CONDITIONAL);
+        checkoutProperties.setMaxAttempts(5);
+        orderRepository.deleteAll();
+        productRepository.deleteAll();
+    }
+
+    @Test
+    void checkOutProductsInTheCart_ParallelCheckoutsNeverOversell() throws Exception {
+        assertParallelCheckoutsNeverOversell(cart -> productService.checkOutProductsInTheCart("owner@example.com", cart));
+    }
+
+    // optimistic conflicts are retried by the checkout service, with enough attempts that every loser sees the stock run out
+    @ParameterizedTest
+    @EnumSource(StockLocking.class)
+    void checkOut_ParallelCheckoutsNeverOversellWithAnyStockLocking(StockLocking stockLocking) throws Exception {
+        checkoutProperties.setStockLocking(stockLocking);
+        checkoutProperties.setMaxAttempts(CHECKOUTS);
+        assertParallelCheckoutsNeverOversell(cart -> checkoutService.checkOut("owner@example.com", cart));
+    }
+
+    private void assertParallelCheckoutsNeverOversell(Function<List<CartProductDTO>, Order> checkOut) throws Exception {
+        Product hot = productRepository.save(Product.builder().title("hot").available(STOCK).price(BigDecimal.ONE).build());
+        Product plenty = productRepository.save(Product.builder().title("plenty").available(1000).price(BigDecimal.ONE).build());
+        List<CartProductDTO> cart = List.of(
+                CartProductDTO.builder().id(plenty.getId()).title("plenty").quantity(1).subTotal(BigDecimal.ONE).build(),
+                CartProductDTO.builder().id(hot.getId()).title("hot").quantity(1).subTotal(BigDecimal.ONE).build());
+
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Boolean>> results = new ArrayList<>();
+        Callable<Boolean> checkout = () -> {
+            start.await();
+            try {
+                checkOut.apply(cart);
+                return true;
+            } catch (InsufficientQuantityException e) {
+                return false;
+            }
+        };
+        try {
+            for (int i = 0; i < CHECKOUTS; i++) {
+                results.add(executor.submit(checkout));
+            }
+            start.countDown();
+            int placed = 0;
+            for (Future<Boolean> result : results) {
+                if (result.get()) {
+                    placed++;
+                }
+            }
+            assertEquals(STOCK, placed);
+        } catch (ExecutionException e) {
+            fail(e.getCause());
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(0, productRepository.findById(hot.getId()).orElseThrow().getAvailable());
+        // lines of rejected orders must be rolled back together with the short line
+        assertEquals(1000 - STOCK, productRepository.findById(plenty.getId()).orElseThrow().getAvailable());
+        assertEquals(STOCK, orderRepository.count());
+    }
+}
@@ -0,0 +1,73 @@
+package com.gd.springecommerce.service;
+
+import com.gd.springecommerce.dto.CartProductDTO;
+import com.gd.springecommerce.model.Order;
+import com.gd.springecommerce.model.Product;
+import com.gd.springecommerce.repository.OrderRepository;
+import com.gd.springecommerce.repository.ProductRepository;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.TestPropertySource;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@TestPropertySource(properties = {"spring.jpa.properties.hibernate.generate_statistics=true"})
+class CheckoutStatementCountTest {
+
+    private static final int LINES = 50;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    void setUp() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    @AfterEach
+    void tearDown() {
+        orderRepository.deleteAll();
+        productRepository.deleteAll();
+    }
+
+    @Test
+    void checkOutProductsInTheCart_WritesTheOrderLinesInBatches() {
+        List<Product> products = productRepository.saveAll(IntStream.range(0, LINES)
+                .mapToObj(i -> Product.builder().title("product " + i).available(10).price(BigDecimal.ONE).build())
+                .toList());
+        List<CartProductDTO> cart = products
+                .stream()
+                .map(product -> CartProductDTO.builder().id(product.getId()).title(product.getTitle()).quantity(1).subTotal(BigDecimal.ONE).build())
+                .toList();
+
+        statistics.clear();
+        Order order = productService.checkOutProductsInTheCart("test@example.com", cart);
+
+        assertEquals(LINES + 1, statistics.getEntityInsertCount());
+        // one order insert, one batched line insert and at most two calls per id sequence
+        assertTrue(statistics.getPrepareStatementCount() <= 6, "prepared " + statistics.getPrepareStatementCount() + " statements");
+        assertEquals(LINES, orderRepository.findWithLinesById(order.getId()).orElseThrow().getLines().size());
+    }
+}
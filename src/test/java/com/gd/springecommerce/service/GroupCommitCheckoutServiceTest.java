@@ -0,0 +1,196 @@
+package com.gd.springecommerce.service;
+
+import com.gd.springecommerce.config.CheckoutProperties;
+import com.gd.springecommerce.dto.CartProductDTO;
+import com.gd.springecommerce.exception.CheckoutQueueFullException;
+import com.gd.springecommerce.model.Order;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class GroupCommitCheckoutServiceTest {
+
+    @Mock
+    private OrderService orderService;
+
+    private CheckoutProperties checkoutProperties;
+
+    @BeforeEach
+    void setUp() {
+        checkoutProperties = new CheckoutProperties();
+        checkoutProperties.setMode("async");
+        checkoutProperties.setQueueCapacity(2);
+        checkoutProperties.setMaxBatchSize(2);
+        checkoutProperties.setEnqueueTimeout(Duration.ofMillis(10));
+        checkoutProperties.setMaxAllocationAttempts(3);
+        checkoutProperties.setAcceptTimeout(Duration.ofSeconds(5));
+        checkoutProperties.setWriterRetryBackoff(Duration.ofMillis(10));
+    }
+
+    @Test
+    void enqueue_RejectsWhenTheQueueIsFull() throws Exception {
+        GroupCommitCheckoutService checkoutService = new GroupCommitCheckoutService(orderService, checkoutProperties);
+        CountDownLatch recovering = blockRecovery();
+        checkoutService.start();
+        try {
+            checkoutService.enqueue(Order.builder().build());
+            checkoutService.enqueue(Order.builder().build());
+            assertThrows(CheckoutQueueFullException.class, () -> checkoutService.enqueue(Order.builder().build()));
+        } finally {
+            recovering.countDown();
+            checkoutService.stop();
+        }
+    }
+
+    @Test
+    void enqueue_RejectsWhenTheWriterIsNotRunning() {
+        GroupCommitCheckoutService checkoutService = new GroupCommitCheckoutService(orderService, checkoutProperties);
+        assertThrows(CheckoutQueueFullException.class, () -> checkoutService.enqueue(Order.builder().build()));
+    }
+
+    @Test
+    void checkOut_GivesUpOnAnOrderNotAcceptedInTimeAndNeverSavesIt() throws Exception {
+        checkoutProperties.setAcceptTimeout(Duration.ofMillis(50));
+        GroupCommitCheckoutService checkoutService = new GroupCommitCheckoutService(orderService, checkoutProperties);
+        CountDownLatch recovering = blockRecovery();
+        checkoutService.start();
+        try {
+            assertThrows(CheckoutQueueFullException.class, () -> checkoutService.checkOut("test@example.com", List.of(
+                    CartProductDTO.builder().id(1L).title("pen").quantity(1).subTotal(BigDecimal.ONE).build())));
+        } finally {
+            recovering.countDown();
+            checkoutService.stop();
+        }
+        verify(orderService, never()).savePendingOrders(anyList());
+    }
+
+    @Test
+    void start_RetriesARecoveryThatFailed() {
+        GroupCommitCheckoutService checkoutService = new GroupCommitCheckoutService(orderService, checkoutProperties);
+        when(orderService.findPendingOrderIds()).thenThrow(new IllegalStateException("database is down")).thenReturn(List.of(7L));
+        when(orderService.savePendingOrders(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+        checkoutService.start();
+        try {
+            Order order = checkoutService.checkOut("test@example.com", List.of(
+                    CartProductDTO.builder().id(1L).title("pen").quantity(1).subTotal(BigDecimal.ONE).build()));
+            assertEquals(BigDecimal.ONE, order.getTotal());
+            verify(orderService, times(1)).allocatePendingOrders(List.of(7L));
+        } finally {
+            checkoutService.stop();
+        }
+    }
+
+    @Test
+    void writeBatch_SavesTheBatchOnceAndAnswersEveryCheckout() {
+        GroupCommitCheckoutService checkoutService = new GroupCommitCheckoutService(orderService, checkoutProperties);
+        AtomicLong ids = new AtomicLong();
+        when(orderService.savePendingOrders(anyList())).thenAnswer(invocation -> {
+            List<Order> orders = invocation.getArgument(0);
+            orders.forEach(order -> order.setId(ids.incrementAndGet()));
+            return orders;
+        });
+        List<GroupCommitCheckoutService.PendingCheckout> batch = List.of(
+                new GroupCommitCheckoutService.PendingCheckout(Order.builder().total(BigDecimal.ONE).build(), new CompletableFuture<>()),
+                new GroupCommitCheckoutService.PendingCheckout(Order.builder().total(BigDecimal.TEN).build(), new CompletableFuture<>()));
+        checkoutService.writeBatch(batch);
+        assertEquals(1L, batch.get(0).accepted().join().getId());
+        assertEquals(2L, batch.get(1).accepted().join().getId());
+        verify(orderService, times(1)).savePendingOrders(anyList());
+        verify(orderService, times(1)).allocatePendingOrders(List.of(1L, 2L));
+    }
+
+    @Test
+    void writeBatch_FailsTheCheckoutsWhenTheOrdersCannotBeSaved() {
+        GroupCommitCheckoutService checkoutService = new GroupCommitCheckoutService(orderService, checkoutProperties);
+        when(orderService.savePendingOrders(anyList())).thenThrow(new IllegalStateException("database is down"));
+        CompletableFuture<Order> accepted = new CompletableFuture<>();
+        checkoutService.writeBatch(List.of(new GroupCommitCheckoutService.PendingCheckout(Order.builder().build(), accepted)));
+        assertTrue(accepted.isCompletedExceptionally());
+        verify(orderService, never()).allocatePendingOrders(any());
+    }
+
+    @Test
+    void writeBatch_RetriesAFailedAllocation() {
+        GroupCommitCheckoutService checkoutService = new GroupCommitCheckoutService(orderService, checkoutProperties);
+        when(orderService.findPendingOrderIds()).thenReturn(List.of(7L));
+        doThrow(new IllegalStateException("deadlock")).doNothing().when(orderService).allocatePendingOrders(List.of(7L));
+        checkoutService.recover();
+        checkoutService.writeBatch(List.of());
+        checkoutService.writeBatch(List.of());
+        verify(orderService, times(2)).allocatePendingOrders(List.of(7L));
+    }
+
+    @Test
+    void writeBatch_RejectsAnOrderThatNeverAllocatesAndAllocatesTheOthers() {
+        GroupCommitCheckoutService checkoutService = new GroupCommitCheckoutService(orderService, checkoutProperties);
+        when(orderService.findPendingOrderIds()).thenReturn(List.of(1L, 2L, 3L));
+        doAnswer(invocation -> {
+            List<Long> orderIds = invocation.getArgument(0);
+            if (orderIds.contains(2L)) {
+                throw new IllegalStateException("Stock changed while locked for the products [5]");
+            }
+            return null;
+        }).when(orderService).allocatePendingOrders(anyList());
+
+        checkoutService.recover();
+        verify(orderService, times(1)).allocatePendingOrders(List.of(1L));
+        verify(orderService, times(1)).allocatePendingOrders(List.of(3L));
+
+        checkoutService.writeBatch(List.of());
+        checkoutService.writeBatch(List.of());
+        checkoutService.writeBatch(List.of());
+        verify(orderService, times(3)).allocatePendingOrders(List.of(2L));
+        verify(orderService, times(1)).rejectPendingOrders(List.of(2L));
+        verify(orderService, times(1)).allocatePendingOrders(List.of(1L));
+    }
+
+    @Test
+    void recover_AllocatesPendingOrdersInBatches() {
+        GroupCommitCheckoutService checkoutService = new GroupCommitCheckoutService(orderService, checkoutProperties);
+        when(orderService.findPendingOrderIds()).thenReturn(List.of(1L, 2L, 3L));
+        checkoutService.recover();
+        verify(orderService, times(1)).allocatePendingOrders(List.of(1L, 2L));
+        verify(orderService, times(1)).allocatePendingOrders(List.of(3L));
+    }
+
+    private CountDownLatch blockRecovery() {
+        CountDownLatch recovering = new CountDownLatch(1);
+        when(orderService.findPendingOrderIds()).thenAnswer(invocation -> {
+            recovering.await();
+            return List.of();
+        });
+        return recovering;
+    }
+
+    @Test
+    void checkOut_ReturnsThePendingOrder() {
+        GroupCommitCheckoutService checkoutService = new GroupCommitCheckoutService(orderService, checkoutProperties);
+        when(orderService.savePendingOrders(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+        checkoutService.start();
+        try {
+            Order order = checkoutService.checkOut("test@example.com", List.of(
+                    CartProductDTO.builder().id(1L).title("pen").quantity(2).subTotal(BigDecimal.TEN).build(),
+                    CartProductDTO.builder().id(2L).title("ink").quantity(1).subTotal(BigDecimal.ONE).build()));
+            assertEquals(BigDecimal.valueOf(11), order.getTotal());
+            assertEquals(2, order.getLines().size());
+            assertEquals(1L, order.getLines().get(0).getProductId());
+        } finally {
+            checkoutService.stop();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.gd.springecommerce.service;
+
+import com.gd.springecommerce.dto.CartProductDTO;
+import com.gd.springecommerce.enums.OrderStatus;
+import com.gd.springecommerce.model.Order;
+import com.gd.springecommerce.model.OrderLine;
+import com.gd.springecommerce.model.Product;
+import com.gd.springecommerce.repository.OrderRepository;
+import com.gd.springecommerce.repository.ProductRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.TestPropertySource;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@TestPropertySource(properties = {"ecommerce.checkout.mode=async"})
+class GroupCommitCheckoutTest {
+
+    private static final int STOCK = 10;
+    private static final int CHECKOUTS = 30;
+
+    @Autowired
+    private GroupCommitCheckoutService checkoutService;
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @AfterEach
+    void tearDown() {
+        orderRepository.deleteAll();
+        productRepository.deleteAll();
+    }
+
+    @Test
+    void checkOut_AcceptsEveryOrderAndConfirmsOnlyWhatIsInStock() throws Exception {
+        Product hot = productRepository.save(Product.builder().title("hot").available(STOCK).price(BigDecimal.ONE).build());
+        List<CartProductDTO> cart = List.of(CartProductDTO.builder().id(hot.getId()).title("hot").quantity(1).subTotal(BigDecimal.ONE).build());
+
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        List<Future<Order>> results = new ArrayList<>();
+        Callable<Order> checkout = () -> checkoutService.checkOut("test@example.com", cart);
+        try {
+            for (int i = 0; i < CHECKOUTS; i++) {
+                results.add(executor.submit(checkout));
+            }
+            for (Future<Order> result : results) {
+                Order order = result.get();
+                assertNotNull(order.getId());
+                assertEquals(OrderStatus.PENDING, order.getOrderStatus());
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        awaitNoPendingOrders();
+        assertEquals(STOCK, countOrders(OrderStatus.CONFIRMED));
+        assertEquals(CHECKOUTS - STOCK, countOrders(OrderStatus.REJECTED));
+        assertEquals(0, productRepository.findById(hot.getId()).orElseThrow().getAvailable());
+    }
+
+    @Test
+    void start_AllocatesOrdersLeftPendingByAPreviousRun() throws Exception {
+        Product product = productRepository.save(Product.builder().title("pen").available(5).price(BigDecimal.ONE).build());
+        checkoutService.stop();
+        Order order = Order.builder().total(BigDecimal.valueOf(3)).owner("test@example.com").build();
+        order.addLine(OrderLine.builder().productId(product.getId()).title("pen").quantity(3).subTotal(BigDecimal.valueOf(3)).build());
+        Order pending = orderService.savePendingOrders(List.of(order)).get(0);
+        checkoutService.start();
+
+        awaitNoPendingOrders();
+        Order allocated = orderService.getOrderPlacedBy(pending.getId(), "test@example.com");
+        assertEquals(OrderStatus.CONFIRMED, allocated.getOrderStatus());
+        assertEquals(1, allocated.getLines().size());
+        assertEquals(2, productRepository.findById(product.getId()).orElseThrow().getAvailable());
+    }
+
+    private void awaitNoPendingOrders() throws InterruptedException {
+        for (int i = 0; i < 100 && !orderService.findPendingOrderIds().isEmpty(); i++) {
+            Thread.sleep(50);
+        }
+        assertTrue(orderService.findPendingOrderIds().isEmpty());
+    }
+
+    private long countOrders(OrderStatus status) {
+        return orderRepository.findAll().stream().filter(order -> order.getOrderStatus() == status).count();
+    }
+}
@@ -0,0 +1,202 @@
+package com.gd.springecommerce.service;
+
+import com.gd.springecommerce.config.ReservationProperties;
+import com.gd.springecommerce.event.OrdersSettledEvent;
+import com.gd.springecommerce.exception.InsufficientQuantityException;
+import com.gd.springecommerce.model.Product;
+import com.gd.springecommerce.repository.ProductRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class InventoryReservationServiceImplTest {
+
+    @Mock
+    private ProductRepository productRepository;
+
+    @Mock
+    private Clock clock;
+
+    private InventoryReservationServiceImpl inventoryReservationService;
+
+    private final Product product = Product.builder().id(1L).title("product 1").available(5).build();
+
+    private final Map<Long, Integer> inventory = new HashMap<>(Map.of(1L, 5, 2L, 10));
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(productRepository.findQuantityByIds(anyList())).thenAnswer(invocation -> invocation.<List<Long>>getArgument(0)
+                .stream()
+                .filter(inventory::containsKey)
+                .map(id -> Product.builder().id(id).available(inventory.get(id)).build())
+                .toList());
+        inventoryReservationService = new InventoryReservationServiceImpl(productRepository, new ReservationProperties(), Duration.ofMinutes(30), clock);
+    }
+
+    @Test
+    void reserve_WithinAvailableQuantity() {
+        inventoryReservationService.reserve("cart-1", product, 2);
+        inventoryReservationService.reserve("cart-1", product, 1);
+        assertEquals(3, inventoryReservationService.getReservedQuantity(1L));
+    }
+
+    // the cached product still shows 5, the database has 2 left
+    @Test
+    void reserve_CountsAgainstTheStockInTheDatabase() {
+        inventory.put(1L, 2);
+        assertThrows(InsufficientQuantityException.class, () -> inventoryReservationService.reserve("cart-1", product, 3));
+        inventoryReservationService.reserve("cart-1", product, 2);
+        assertEquals(2, inventoryReservationService.getReservedQuantity(1L));
+    }
+
+    @Test
+    void loadStock_ReadsOnlyTheProductsNotCountedYet() {
+        inventoryReservationService.reserve("cart-1", product, 1);
+        inventoryReservationService.loadStock(List.of(1L, 2L));
+        verify(productRepository).findQuantityByIds(List.of(2L));
+        inventory.put(2L, 0);
+        inventoryReservationService.reserve("cart-1", Product.builder().id(2L).title("product 2").build(), 10);
+        assertEquals(10, inventoryReservationService.getReservedQuantity(2L));
+    }
+
+    @Test
+    void reserve_BeyondQuantityHeldByOtherCarts() {
+        inventoryReservationService.reserve("cart-1", product, 4);
+        assertThrows(InsufficientQuantityException.class, () -> inventoryReservationService.reserve("cart-2", product, 2));
+        assertEquals(4, inventoryReservationService.getReservedQuantity(1L));
+    }
+
+    @Test
+    void updateReservation_ReplacesTheHeldQuantity() {
+        inventoryReservationService.reserve("cart-1", product, 4);
+        inventoryReservationService.updateReservation("cart-1", product, 1);
+        assertEquals(1, inventoryReservationService.getReservedQuantity(1L));
+    }
+
+    @Test
+    void release_ReturnsStockToOtherCarts() {
+        inventoryReservationService.reserve("cart-1", product, 5);
+        inventoryReservationService.release("cart-1", 1L);
+        inventoryReservationService.reserve("cart-2", product, 5);
+        assertEquals(5, inventoryReservationService.getReservedQuantity(1L));
+    }
+
+    @Test
+    void commit_ConsumesReservedStock() {
+        inventoryReservationService.reserve("cart-1", product, 3);
+        inventoryReservationService.commit("cart-1");
+        assertEquals(0, inventoryReservationService.getReservedQuantity(1L));
+        assertThrows(InsufficientQuantityException.class, () -> inventoryReservationService.reserve("cart-2", product, 3));
+    }
+
+    @Test
+    void holdForOrder_KeepsTheStockUntilTheOrderIsRejected() {
+        inventoryReservationService.reserve("cart-1", product, 5);
+        inventoryReservationService.holdForOrder("cart-1", 7L);
+        assertEquals(5, inventoryReservationService.getReservedQuantity(1L));
+        inventoryReservationService.onOrdersSettled(new OrdersSettledEvent(List.of(), List.of(7L)));
+        assertEquals(0, inventoryReservationService.getReservedQuantity(1L));
+        inventoryReservationService.reserve("cart-2", product, 5);
+    }
+
+    @Test
+    void holdForOrder_ConsumesTheStockOfAnOrderConfirmedBeforehand() {
+        inventoryReservationService.reserve("cart-1", product, 3);
+        inventoryReservationService.onOrdersSettled(new OrdersSettledEvent(List.of(7L), List.of()));
+        inventoryReservationService.holdForOrder("cart-1", 7L);
+        assertEquals(0, inventoryReservationService.getReservedQuantity(1L));
+        assertThrows(InsufficientQuantityException.class, () -> inventoryReservationService.reserve("cart-2", product, 3));
+    }
+
+    @Test
+    void expireReservations_ReleasesReservationsPastTheSessionTimeout() {
+        when(clock.millis()).thenReturn(0L);
+        inventoryReservationService.reserve("cart-1", product, 5);
+        when(clock.millis()).thenReturn(Duration.ofMinutes(29).toMillis());
+        inventoryReservationService.expireReservations();
+        assertEquals(5, inventoryReservationService.getReservedQuantity(1L));
+        when(clock.millis()).thenReturn(Duration.ofMinutes(31).toMillis());
+        inventoryReservationService.expireReservations();
+        assertEquals(0, inventoryReservationService.getReservedQuantity(1L));
+    }
+
+    @Test
+    void reconcileWithInventory_RefreshesAvailableQuantity() {
+        inventoryReservationService.reserve("cart-1", product, 2);
+        inventory.put(1L, 2);
+        inventoryReservationService.reconcileWithInventory();
+        assertThrows(InsufficientQuantityException.class, () -> inventoryReservationService.reserve("cart-2", product, 1));
+    }
+
+    // the reconciler drops the idle counter once the reservation has looked the product up, the stock is read again
+    @Test
+    void reserve_WhenReconcileDropsTheCounterMidway() {
+        inventoryReservationService.reserve("cart-1", product, 2);
+        inventoryReservationService.release("cart-1", 1L);
+        Product reconciling = spy(product);
+        AtomicInteger lookups = new AtomicInteger();
+        doAnswer(invocation -> {
+            if (lookups.getAndIncrement() > 0) {
+                inventoryReservationService.reconcileWithInventory();
+            }
+            return invocation.callRealMethod();
+        }).when(reconciling).getId();
+
+        inventoryReservationService.reserve("cart-2", reconciling, 3);
+        assertEquals(3, inventoryReservationService.getReservedQuantity(1L));
+    }
+
+    @Test
+    void reserve_ParallelCartsNeverReserveMoreThanAvailable() throws Exception {
+        Product hot = Product.builder().id(2L).title("hot").available(10).build();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Boolean>> results = new ArrayList<>();
+        try {
+            for (int i = 0; i < 50; i++) {
+                String holder = "cart-" + i;
+                results.add(executor.submit(() -> {
+                    start.await();
+                    try {
+                        inventoryReservationService.reserve(holder, hot, 1);
+                        return true;
+                    } catch (InsufficientQuantityException e) {
+                        return false;
+                    }
+                }));
+            }
+            start.countDown();
+            int reserved = 0;
+            for (Future<Boolean> result : results) {
+                reserved += result.get() ? 1 : 0;
+            }
+            assertEquals(10, reserved);
+            assertEquals(10, inventoryReservationService.getReservedQuantity(2L));
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.gd.springecommerce.service;
+
+import com.gd.springecommerce.dto.ProductFilter;
+import com.gd.springecommerce.dto.ProductSlice;
+import com.gd.springecommerce.enums.ProductSort;
+import com.gd.springecommerce.exception.InvalidCursorException;
+import com.gd.springecommerce.model.Product;
+import com.gd.springecommerce.repository.ProductRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Values are inlined into the SQL so the recorded statements can be explained as they are
+@SpringBootTest
+@TestPropertySource(properties = {
+        "spring.jpa.properties.hibernate.session_factory.statement_inspector=com.gd.springecommerce.service.RecordingStatementInspector",
+        "spring.jpa.properties.hibernate.criteria.value_handling_mode=inline"
+})
+class ProductCatalogQueryTest {
+
+    private static final int PRODUCTS = 2000;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private List<Product> products;
+
+    @BeforeEach
+    void setUp() {
+        products = productRepository.saveAll(IntStream.range(0, PRODUCTS)
+                .mapToObj(i -> Product.builder().title("product " + i).available(i % 3).price(BigDecimal.valueOf(i % 500, 2)).build())
+                .toList());
+        RecordingStatementInspector.STATEMENTS.clear();
+    }
+
+    @AfterEach
+    void tearDown() {
+        productRepository.deleteAllInBatch();
+    }
+
+    static Stream<Arguments> filtersAndSorts() {
+        ProductFilter[] filters = {
+                new ProductFilter(null, null, null, null),
+                new ProductFilter(true, null, null, null),
+                new ProductFilter(true, new BigDecimal("1.00"), new BigDecimal("2.50"), null),
+                new ProductFilter(null, null, new BigDecimal("0.10"), null),
+                new ProductFilter(true, null, null, "product 1")
+        };
+        return Arrays.stream(ProductSort.values())
+                .flatMap(sort -> Arrays.stream(filters).map(filter -> Arguments.of(filter, sort)));
+    }
+
+    @ParameterizedTest
+    @MethodSource("filtersAndSorts")
+    void getProductsMatching_NeverScansTheTable(ProductFilter filter, ProductSort sort) {
+        ProductSlice first = productService.getProductsMatching(filter, sort, null, 20);
+        productService.getProductsMatching(filter, sort, first.getNextCursor(), 20);
+        assertEquals(2, RecordingStatementInspector.STATEMENTS.size(), "one query per page and no count");
+        for (String sql : RecordingStatementInspector.STATEMENTS) {
+            String plan = explain(sql);
+            assertFalse(plan.contains("tableScan"), plan);
+        }
+    }
+
+    @Test
+    void getProductsMatching_SeeksThePriceIndexForAPriceRange() {
+        productService.getProductsMatching(new ProductFilter(true, BigDecimal.ONE, new BigDecimal("2.50"), null), ProductSort.PRICE_ASC, null, 20);
+        String plan = explain(RecordingStatementInspector.STATEMENTS.get(0));
+        assertTrue(plan.contains("IDX_PRODUCT_PRICE: PRICE"), plan);
+    }
+
+    @Test
+    void getProductsMatching_ReadsUnfilteredOrdersFromTheIndex() {
+        for (ProductSort sort : ProductSort.values()) {
+            RecordingStatementInspector.STATEMENTS.clear();
+            productService.getProductsMatching(new ProductFilter(null, null, null, null), sort, null, 20);
+            String plan = explain(RecordingStatementInspector.STATEMENTS.get(0));
+            assertTrue(plan.contains("index sorted"), plan);
+        }
+    }
+
+    @Test
+    void getProductsMatching_WalksEveryPageInOrder() {
+        ProductFilter filter = new ProductFilter(true, new BigDecimal("1.00"), new BigDecimal("2.50"), null);
+        List<Product> walked = new ArrayList<>();
+        String cursor = null;
+        do {
+            ProductSlice slice = productService.getProductsMatching(filter, ProductSort.PRICE_DESC, cursor, 7);
+            walked.addAll(slice.getProducts());
+            cursor = slice.getNextCursor();
+        } while (cursor != null);
+        List<Long> expected = products.stream()
+                .filter(product -> product.getAvailable() > 0)
+                .filter(product -> product.getPrice().compareTo(BigDecimal.ONE) >= 0 && product.getPrice().compareTo(new BigDecimal("2.50")) <= 0)
+                .sorted(Comparator.comparing(Product::getPrice).thenComparing(Product::getId).reversed())
+                .map(Product::getId)
+                .toList();
+        assertEquals(expected, walked.stream().map(Product::getId).toList());
+    }
+
+    @Test
+    void getProductsMatching_WithTitlePrefixTreatsWildcardsLiterally() {
+        ProductSlice slice = productService.getProductsMatching(new ProductFilter(null, null, null, "product 1_"), ProductSort.TITLE, null, 20);
+        assertTrue(slice.getProducts().isEmpty());
+    }
+
+    @Test
+    void getProductsMatching_RejectsACursorOfAnotherOrder() {
+        ProductFilter filter = new ProductFilter(null, null, null, null);
+        String cursor = productService.getProductsMatching(filter, ProductSort.TITLE, null, 5).getNextCursor();
+        assertThrows(InvalidCursorException.class, () -> productService.getProductsMatching(filter, ProductSort.PRICE_ASC, cursor, 5));
+        assertThrows(InvalidCursorException.class, () -> productService.getProductsMatching(filter, ProductSort.ID, "not a cursor", 5));
+    }
+
+    // the page limit is the only value left as a parameter
+    private String explain(String sql) {
+        return jdbcTemplate.queryForObject("EXPLAIN " + sql.replace("?", "21"), String.class);
+    }
+}
@@ -0,0 +1,158 @@
+package com.gd.springecommerce.service;
+
+import com.gd.springecommerce.dto.ProductImportError;
+import com.gd.springecommerce.dto.ProductImportSummary;
+import com.gd.springecommerce.model.Product;
+import com.gd.springecommerce.repository.ProductRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.TestPropertySource;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@TestPropertySource(properties = {"ecommerce.catalog.import-batch-size=3"})
+class ProductImportServiceImplTest {
+
+    @Autowired
+    private ProductImportService productImportService;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    private final List<ProductImportError> errors = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        productRepository.deleteAll();
+    }
+
+    @Test
+    void importProducts_FromCsvInsertsValidRowsAndReportsInvalidOnes() throws IOException {
+        String csv = """
+                sku,title,available,price
+                A-1,pen,10,1.50
+                A-2,,5,2
+                A-3,ink,many,2
+                ,paper,1,1
+                A-4,"pencil, red",-1,0.5
+                A-5,eraser,3,0.25
+                """;
+        ProductImportSummary summary = importProducts(csv, ProductImportService.TEXT_CSV);
+        assertEquals(new ProductImportSummary(6, 2, 0, 4), summary);
+        assertEquals(List.of(2L, 3L, 4L, 5L), errors.stream().map(ProductImportError::row).toList());
+        assertEquals(List.of("Title is mandatory"), errors.get(0).errors());
+        assertEquals(List.of("Available quantity must be a whole number"), errors.get(1).errors());
+        assertEquals(List.of("SKU is mandatory"), errors.get(2).errors());
+        assertEquals(List.of("Available quantity must not be negative"), errors.get(3).errors());
+        assertEquals(new BigDecimal("1.50"), findBySku("A-1").getPrice());
+        assertEquals(3, findBySku("A-5").getAvailable());
+    }
+
+    @Test
+    void importProducts_FromCsvNumbersTheRowsAfterAMalformedOne() throws IOException {
+        String csv = """
+                sku,title,available,price
+                A-1,pen,10,1.50
+                A-2,ink,5,2,extra
+                A-3,,1,1
+                A-4,eraser,3,0.25
+                """;
+        ProductImportSummary summary = importProducts(csv, ProductImportService.TEXT_CSV);
+        assertEquals(new ProductImportSummary(4, 2, 0, 2), summary);
+        assertEquals(List.of(2L, 3L), errors.stream().map(ProductImportError::row).toList());
+        assertEquals(List.of("Title is mandatory"), errors.get(1).errors());
+    }
+
+    @Test
+    void importProducts_UpsertsBySku() throws IOException {
+        productRepository.save(Product.builder().sku("A-1").title("old pen").available(1).price(BigDecimal.ONE).build());
+        String ndjson = """
+                {"sku":"A-1","title":"pen","available":7,"price":1.25}
+                {"sku":"A-2","title":"ink","available":2,"price":3}
+                """;
+        ProductImportSummary summary = importProducts(ndjson, MediaType.APPLICATION_NDJSON);
+        assertEquals(new ProductImportSummary(2, 1, 1, 0), summary);
+        Product updated = findBySku("A-1");
+        assertEquals("pen", updated.getTitle());
+        assertEquals(7, updated.getAvailable());
+        assertEquals(0, new BigDecimal("1.25").compareTo(updated.getPrice()));
+        assertEquals(2, productRepository.count());
+    }
+
+    @Test
+    void importProducts_FromNdjsonRejectsMalformedLinesOnly() throws IOException {
+        String ndjson = """
+                {"sku":"A-1","title":"pen","available":7,"price":1.25}
+                {"sku":"A-2","title":
+                [1,2]
+
+                {"sku":"A-3","title":"ink","available":2}
+                """;
+        ProductImportSummary summary = importProducts(ndjson, MediaType.APPLICATION_NDJSON);
+        assertEquals(new ProductImportSummary(4, 1, 0, 3), summary);
+        assertEquals(List.of(2L, 3L, 4L), errors.stream().map(ProductImportError::row).toList());
+        assertEquals(List.of("Price is mandatory"), errors.get(2).errors());
+    }
+
+    @Test
+    void importProducts_KeepsTheLastRowOfARepeatedSku() throws IOException {
+        String csv = """
+                sku,title,available,price
+                A-1,pen,1,1
+                A-1,pen,2,1
+                """;
+        ProductImportSummary summary = importProducts(csv, ProductImportService.TEXT_CSV);
+        assertEquals(new ProductImportSummary(2, 1, 0, 0), summary);
+        assertEquals(2, findBySku("A-1").getAvailable());
+        assertEquals(1, productRepository.count());
+    }
+
+    @Test
+    void importProducts_CountsARepeatedExistingSkuAsOneUpdate() throws IOException {
+        productRepository.save(Product.builder().sku("A-1").title("old pen").available(1).price(BigDecimal.ONE).build());
+        String csv = """
+                sku,title,available,price
+                A-1,pen,2,1
+                A-1,pen,3,1
+                """;
+        ProductImportSummary summary = importProducts(csv, ProductImportService.TEXT_CSV);
+        assertEquals(new ProductImportSummary(2, 0, 1, 0), summary);
+        assertEquals(3, findBySku("A-1").getAvailable());
+    }
+
+    @Test
+    void importProducts_StreamsManyChunks() throws IOException {
+        int rows = 1_000;
+        InputStream header = new ByteArrayInputStream("sku,title,available,price\n".getBytes(StandardCharsets.UTF_8));
+        InputStream body = new SequenceInputStream(Collections.enumeration(IntStream.range(0, rows)
+                .mapToObj(i -> (InputStream) new ByteArrayInputStream(("SKU-" + i + ",product " + i + "," + i + ",9.99\n").getBytes(StandardCharsets.UTF_8)))
+                .toList()));
+        ProductImportSummary summary = productImportService.importProducts(new SequenceInputStream(header, body), ProductImportService.TEXT_CSV, errors::add);
+        assertEquals(new ProductImportSummary(rows, rows, 0, 0), summary);
+        assertTrue(errors.isEmpty());
+        assertEquals(rows, productRepository.count());
+    }
+
+    private ProductImportSummary importProducts(String content, MediaType contentType) throws IOException {
+        return productImportService.importProducts(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)), contentType, errors::add);
+    }
+
+    private Product findBySku(String sku) {
+        return productRepository.findAll().stream().filter(product -> sku.equals(product.getSku())).findFirst().orElseThrow();
+    }
+}
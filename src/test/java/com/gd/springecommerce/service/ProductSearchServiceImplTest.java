@@ -0,0 +1,136 @@
+package com.gd.springecommerce.service;
+
+import com.gd.springecommerce.config.SearchProperties;
+import com.gd.springecommerce.dto.ProductSearchResult;
+import com.gd.springecommerce.event.ProductsChangedEvent;
+import com.gd.springecommerce.model.Product;
+import com.gd.springecommerce.repository.ProductRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.SliceImpl;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ProductSearchServiceImplTest {
+
+    @Mock
+    private ProductService productService;
+
+    @Mock
+    private ProductRepository productRepository;
+
+    private ProductSearchServiceImpl productSearchService;
+
+    private final Product pen = product(1L, "Blue pen");
+    private final Product pencil = product(2L, "Pencil");
+
+    @BeforeEach
+    void setUp() {
+        productSearchService = new ProductSearchServiceImpl(productService, productRepository, new SearchProperties());
+    }
+
+    @Test
+    void search_FallsBackToTitleLikeQueryUntilTheIndexIsBuilt() {
+        when(productRepository.findByTitleContainingIgnoreCaseOrderByIdAsc("pen", PageRequest.of(1, 5)))
+                .thenReturn(new SliceImpl<>(List.of(pen)));
+        ProductSearchResult result = productSearchService.search(" pen ", 1, 5);
+        assertEquals(List.of(pen), result.products());
+        assertNull(result.total());
+        assertFalse(productSearchService.isIndexReady());
+    }
+
+    @Test
+    void search_UsesTheIndexOnceBuilt() {
+        buildIndex(pen, pencil);
+        ProductSearchResult result = productSearchService.search("pen", null, null);
+        assertEquals(List.of(pen, pencil), result.products());
+        assertEquals(2L, result.total());
+        assertEquals(20, result.size());
+        verify(productRepository, never()).findByTitleContainingIgnoreCaseOrderByIdAsc(any(), any());
+    }
+
+    @Test
+    void search_CapsThePageSize() {
+        buildIndex(pen);
+        assertEquals(100, productSearchService.search("pen", 0, 10_000).size());
+    }
+
+    @Test
+    void search_WithAPageBeyondTheIntRangeOfOffsets() {
+        buildIndex(pen, pencil);
+        ProductSearchResult result = productSearchService.search("pen", Integer.MAX_VALUE, 100);
+        assertTrue(result.products().isEmpty());
+        assertEquals(2L, result.total());
+    }
+
+    @Test
+    void refreshIndex_ReloadsChangedProductsAndDropsDeletedOnes() {
+        buildIndex(pen, pencil);
+        Product renamed = product(1L, "Red marker");
+        when(productRepository.findQuantityByIds(any())).thenReturn(List.of(renamed));
+        productSearchService.onProductsChanged(new ProductsChangedEvent(List.of(1L, 2L)));
+        assertEquals(2L, productSearchService.search("pen", 0, 10).total());
+
+        productSearchService.refreshIndex();
+
+        assertEquals(0L, productSearchService.search("pen", 0, 10).total());
+        assertEquals(List.of(renamed), productSearchService.search("mark", 0, 10).products());
+    }
+
+    // the later refresh waits for the one in flight, its newer row cannot be overwritten by the older read
+    @Test
+    void refreshIndex_WaitsForTheRefreshInFlight() throws Exception {
+        buildIndex(pen, pencil);
+        AtomicInteger reads = new AtomicInteger();
+        CompletableFuture<Void> concurrentRefresh = new CompletableFuture<>();
+        when(productRepository.findQuantityByIds(any())).thenAnswer(invocation -> {
+            if (reads.incrementAndGet() == 1) {
+                productSearchService.onProductsChanged(new ProductsChangedEvent(List.of(2L)));
+                concurrentRefresh.completeAsync(() -> {
+                    productSearchService.refreshIndex();
+                    return null;
+                });
+                Thread.sleep(200);
+                assertEquals(1, reads.get());
+                return List.of(product(1L, "Old marker"));
+            }
+            return List.of(product(2L, "Red marker"));
+        });
+        productSearchService.onProductsChanged(new ProductsChangedEvent(List.of(1L)));
+
+        productSearchService.refreshIndex();
+        concurrentRefresh.get(5, TimeUnit.SECONDS);
+
+        assertEquals(2, reads.get());
+        assertEquals(List.of(2L), productSearchService.search("red", 0, 10).products().stream().map(Product::getId).toList());
+    }
+
+    @SuppressWarnings("unchecked")
+    private void buildIndex(Product... products) {
+        doAnswer(invocation -> {
+            Consumer<Product> consumer = invocation.getArgument(0);
+            List.of(products).forEach(consumer);
+            return null;
+        }).when(productService).streamAllProducts(any(Consumer.class));
+        productSearchService.rebuildIndex();
+        assertTrue(productSearchService.isIndexReady());
+    }
+
+    private static Product product(Long id, String title) {
+        return Product.builder().id(id).title(title).available(1).price(BigDecimal.ONE).build();
+    }
+}
@@ -1,12 +1,21 @@
 package com.gd.springecommerce.service;
 
+import com.gd.springecommerce.cache.ProductCache;
+import com.gd.springecommerce.config.CatalogProperties;
+import com.gd.springecommerce.config.CheckoutProperties;
+import com.gd.springecommerce.config.ProductCacheProperties;
 import com.gd.springecommerce.dto.CartProductDTO;
+import com.gd.springecommerce.dto.ProductPage;
+import com.gd.springecommerce.enums.StockLocking;
+import com.gd.springecommerce.event.ProductsChangedEvent;
 import com.gd.springecommerce.exception.InsufficientQuantityException;
 import com.gd.springecommerce.exception.ProductNotFoundException;
+import com.gd.springecommerce.exception.StockConflictException;
 import com.gd.springecommerce.model.Order;
 import com.gd.springecommerce.model.Product;
-import com.gd.springecommerce.repository.OrderRepository;
+import com.gd.springecommerce.order.OrderStore;
 import com.gd.springecommerce.repository.ProductRepository;
+import jakarta.persistence.EntityManager;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.params.ParameterizedTest;
@@ -15,18 +24,26 @@ import org.junit.jupiter.params.provider.ValueSource;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyList;
-import static org.mockito.Mockito.doNothing;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -36,7 +53,22 @@ class ProductServiceImplTest {
     private ProductRepository productRepository;
 
     @Mock
-    private OrderRepository orderRepository;
+    private OrderStore orderStore;
+
+    @Mock
+    private EntityManager entityManager;
+
+    @Spy
+    private CatalogProperties catalogProperties = new CatalogProperties();
+
+    @Spy
+    private CheckoutProperties checkoutProperties = new CheckoutProperties();
+
+    @Spy
+    private ProductCache productCache = new ProductCache(new ProductCacheProperties());
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
 
     @InjectMocks
     private ProductServiceImpl productService;
@@ -62,6 +94,43 @@ class ProductServiceImplTest {
         Mockito.verify(productRepository, Mockito.times(1)).findAll();
     }
 
+    @Test
+    void getProductsAfter_WhenMoreProductsAreAvailable() {
+        List<Product> productList = Arrays.asList(Product.builder().id(4L).build(), Product.builder().id(5L).build(), Product.builder().id(6L).build());
+        when(productRepository.findByIdGreaterThanOrderByIdAsc(3L, Limit.of(3))).thenReturn(productList);
+        ProductPage page = productService.getProductsAfter(3L, 2);
+        assertEquals(2, page.getProducts().size());
+        assertEquals(5L, page.getNextCursor());
+    }
+
+    @Test
+    void getProductsAfter_OnLastPage() {
+        List<Product> productList = Arrays.asList(Product.builder().id(1L).build(), Product.builder().id(2L).build());
+        when(productRepository.findByIdGreaterThanOrderByIdAsc(0L, Limit.of(51))).thenReturn(productList);
+        ProductPage page = productService.getProductsAfter(null, null);
+        assertEquals(2, page.getProducts().size());
+        assertNull(page.getNextCursor());
+    }
+
+    @Test
+    void getProductsAfter_WithPageSizeAboveMaximum() {
+        when(productRepository.findByIdGreaterThanOrderByIdAsc(eq(0L), any())).thenReturn(Collections.emptyList());
+        productService.getProductsAfter(0L, 100000);
+        Mockito.verify(productRepository, Mockito.times(1)).findByIdGreaterThanOrderByIdAsc(0L, Limit.of(catalogProperties.getMaxPageSize() + 1));
+    }
+
+    @Test
+    void streamAllProducts_DetachesEveryProduct() {
+        Product product1 = Product.builder().id(1L).build();
+        Product product2 = Product.builder().id(2L).build();
+        when(productRepository.streamAllOrderedById()).thenReturn(Stream.of(product1, product2));
+        List<Product> streamed = new ArrayList<>();
+        productService.streamAllProducts(streamed::add);
+        assertEquals(Arrays.asList(product1, product2), streamed);
+        Mockito.verify(entityManager, Mockito.times(1)).detach(product1);
+        Mockito.verify(entityManager, Mockito.times(1)).detach(product2);
+    }
+
     @ParameterizedTest
     @NullSource
     @ValueSource(longs = 897L)
@@ -80,6 +149,51 @@ class ProductServiceImplTest {
         assertEquals(productFromDb, fetchedProduct);
     }
 
+    @Test
+    void getProductById_ServedFromCacheOnRepeatedLookups() {
+        Product productFromDb = Product.builder().id(123L).build();
+        when(productRepository.findById(123L)).thenReturn(Optional.of(productFromDb));
+        productService.getProductById(123L);
+        Product fetchedProduct = productService.getProductById(123L);
+        assertEquals(productFromDb, fetchedProduct);
+        Mockito.verify(productRepository, Mockito.times(1)).findById(123L);
+        assertEquals(1, productCache.statistics().getHitCount());
+    }
+
+    @Test
+    void updateProductAvailability_PublishesTheChange() {
+        when(productRepository.updateProductAvailability(9, 4L, 2L)).thenReturn(1);
+        productService.updateProductAvailability(4L, 9, 2L);
+        Mockito.verify(eventPublisher).publishEvent(new ProductsChangedEvent(List.of(4L)));
+    }
+
+    @Test
+    void updateProductAvailability_WhenTheProductChangedSinceTheVersion() {
+        when(productRepository.updateProductAvailability(9, 4L, 2L)).thenReturn(0);
+        when(productRepository.existsById(4L)).thenReturn(true);
+        StockConflictException exception = assertThrows(StockConflictException.class, () -> productService.updateProductAvailability(4L, 9, 2L));
+        assertEquals(List.of(4L), exception.getProductIds());
+        Mockito.verifyNoInteractions(eventPublisher);
+    }
+
+    @Test
+    void updateProductAvailability_WhenTheProductDoesNotExist() {
+        assertThrows(ProductNotFoundException.class, () -> productService.updateProductAvailability(4L, 9, 2L));
+        Mockito.verifyNoInteractions(eventPublisher);
+    }
+
+    @Test
+    void getProductsByIds_LoadsTheUncachedProductsWithOneQuery() {
+        Product cached = Product.builder().id(1L).build();
+        when(productRepository.findById(1L)).thenReturn(Optional.of(cached));
+        productService.getProductById(1L);
+        when(productRepository.findQuantityByIds(List.of(2L, 3L))).thenReturn(List.of(Product.builder().id(2L).build()));
+        Map<Long, Product> products = productService.getProductsByIds(new LinkedHashSet<>(List.of(1L, 2L, 3L)));
+        assertEquals(Set.of(1L, 2L), products.keySet());
+        assertSame(cached, products.get(1L));
+        Mockito.verify(productRepository, Mockito.times(1)).findQuantityByIds(List.of(2L, 3L));
+    }
+
     @Test
     void getProductIfValidToAddInCart_WithInsufficientQuantity() {
         Product productFromDb = Product.builder().build();
@@ -120,34 +234,69 @@ class ProductServiceImplTest {
                 .build();
 
         List<CartProductDTO> cartProductDTOS = Arrays.asList(cartProductDTO1, cartProductDTO2);
-        Product product1 = Product
-                .builder()
-                .id(1L)
-                .title("product 1")
-                .available(5)
-                .price(BigDecimal.valueOf(125))
-                .build();
-
-        Product product2 = Product
-                .builder()
-                .id(2L)
-                .title("product 2")
-                .available(7)
-                .price(BigDecimal.valueOf(75))
-                .build();
-        List<Product> products = Arrays.asList(product1, product2);
-        when(productRepository.findQuantityByIds(anyList())).thenReturn(products);
-        doNothing().when(productRepository).updateProductAvailability(any(), any());
+        when(productRepository.decrementAvailable(any())).thenReturn(Collections.emptyList());
         Order order = Order
                 .builder()
                 .total(BigDecimal.valueOf(400))
                 .build();
-        when(orderRepository.save(any())).thenReturn(order);
-        Order placedOrder = productService.checkOutProductsInTheCart(cartProductDTOS);
-        product1.setAvailable(product1.getAvailable() - cartProductDTO1.getQuantity());
-        product2.setAvailable(product2.getAvailable() - cartProductDTO2.getQuantity());
+        when(orderStore.save(any())).thenReturn(order);
+        Order placedOrder = productService.checkOutProductsInTheCart("test@example.com", cartProductDTOS);
         assertEquals(BigDecimal.valueOf(400), placedOrder.getTotal());
-        assertEquals(product1.getAvailable(), 3);
-        assertEquals(product2.getAvailable(), 4);
+        Mockito.verify(productRepository, Mockito.times(1)).decrementAvailable(Map.of(1L, 2, 2L, 3));
+        Mockito.verify(eventPublisher, Mockito.times(1)).publishEvent(any(ProductsChangedEvent.class));
+    }
+
+    @Test
+    void checkOutProductsInTheCart_MergesDuplicateLines() {
+        CartProductDTO cartProductDTO1 = CartProductDTO.builder().id(1L).title("product 1").quantity(2).subTotal(BigDecimal.valueOf(250L)).build();
+        CartProductDTO cartProductDTO2 = CartProductDTO.builder().id(1L).title("product 1").quantity(1).subTotal(BigDecimal.valueOf(125L)).build();
+        when(productRepository.decrementAvailable(any())).thenReturn(Collections.emptyList());
+        when(orderStore.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+        Order placedOrder = productService.checkOutProductsInTheCart("test@example.com", Arrays.asList(cartProductDTO1, cartProductDTO2));
+        assertEquals(BigDecimal.valueOf(375L), placedOrder.getTotal());
+        assertEquals("test@example.com", placedOrder.getOwner());
+        Mockito.verify(productRepository, Mockito.times(1)).decrementAvailable(Map.of(1L, 3));
+    }
+
+    @Test
+    void checkOutProductsInTheCart_WithInsufficientQuantity() {
+        CartProductDTO cartProductDTO1 = CartProductDTO.builder().id(1L).title("product 1").quantity(2).subTotal(BigDecimal.valueOf(250L)).build();
+        CartProductDTO cartProductDTO2 = CartProductDTO.builder().id(2L).title("product 2").quantity(3).subTotal(BigDecimal.valueOf(150L)).build();
+        when(productRepository.decrementAvailable(any())).thenReturn(List.of(2L));
+        InsufficientQuantityException exception = assertThrows(InsufficientQuantityException.class,
+                () -> productService.checkOutProductsInTheCart("test@example.com", Arrays.asList(cartProductDTO1, cartProductDTO2)));
+        assertTrue(exception.getMessage().contains("product 2"));
+        Mockito.verifyNoInteractions(orderStore, eventPublisher);
+    }
+
+    @Test
+    void checkOutProductsInTheCart_WithOptimisticLockingChecksTheVersions() {
+        checkoutProperties.setStockLocking(StockLocking.OPTIMISTIC);
+        CartProductDTO cartProductDTO = CartProductDTO.builder().id(1L).title("product 1").quantity(2).subTotal(BigDecimal.valueOf(250L)).build();
+        when(productRepository.decrementAvailableIfUnchanged(any())).thenReturn(Collections.emptyList());
+        when(orderStore.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+        productService.checkOutProductsInTheCart("test@example.com", List.of(cartProductDTO));
+        Mockito.verify(productRepository, Mockito.times(1)).decrementAvailableIfUnchanged(Map.of(1L, 2));
+        Mockito.verify(productRepository, Mockito.never()).decrementAvailable(any());
+    }
+
+    @Test
+    void checkOutProductsInTheCart_WithPessimisticLockingLocksTheRows() {
+        checkoutProperties.setStockLocking(StockLocking.PESSIMISTIC);
+        CartProductDTO cartProductDTO = CartProductDTO.builder().id(1L).title("product 1").quantity(2).subTotal(BigDecimal.valueOf(250L)).build();
+        when(productRepository.decrementAvailableLocked(any())).thenReturn(Collections.emptyList());
+        when(orderStore.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+        productService.checkOutProductsInTheCart("test@example.com", List.of(cartProductDTO));
+        Mockito.verify(productRepository, Mockito.times(1)).decrementAvailableLocked(Map.of(1L, 2));
+        Mockito.verify(productRepository, Mockito.never()).decrementAvailable(any());
+    }
+
+    @Test
+    void checkOutProductsInTheCart_WithAStockConflictPlacesNoOrder() {
+        checkoutProperties.setStockLocking(StockLocking.OPTIMISTIC);
+        CartProductDTO cartProductDTO = CartProductDTO.builder().id(1L).title("product 1").quantity(2).subTotal(BigDecimal.valueOf(250L)).build();
+        when(productRepository.decrementAvailableIfUnchanged(any())).thenThrow(new StockConflictException("conflict", List.of(1L)));
+        assertThrows(StockConflictException.class, () -> productService.checkOutProductsInTheCart("test@example.com", List.of(cartProductDTO)));
+        Mockito.verifyNoInteractions(orderStore, eventPublisher);
     }
 }
@@ -0,0 +1,126 @@
+package com.gd.springecommerce.service;
+
+import com.gd.springecommerce.dto.ProductFilter;
+import com.gd.springecommerce.enums.ProductSort;
+import com.gd.springecommerce.jdbc.ConcurrencyLimitingDataSource;
+import com.gd.springecommerce.jdbc.ReadReplica;
+import com.gd.springecommerce.jdbc.ReplicaRoutingDataSource;
+import com.gd.springecommerce.model.Product;
+import com.gd.springecommerce.repository.ProductRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Two embedded databases stand in for the primary and its replica, replication is a copy of the primary's script
+@SpringBootTest
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:routing-primary;MODE=MySQL;DB_CLOSE_DELAY=-1;NON_KEYWORDS=USER",
+        "ecommerce.jdbc.replica.urls=jdbc:h2:mem:routing-replica;MODE=MySQL;DB_CLOSE_DELAY=-1;NON_KEYWORDS=USER",
+        "ecommerce.jdbc.replica.check-interval=1h",
+        "ecommerce.jdbc.replica.max-lag=1m"
+})
+class ReadReplicaRoutingTest {
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @TempDir
+    private Path tempDir;
+
+    private ReplicaRoutingDataSource routingDataSource;
+    private JdbcTemplate replica;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        routingDataSource = dataSource.unwrap(ReplicaRoutingDataSource.class);
+        replica = new JdbcTemplate(routingDataSource.getReplicas().get(0).getDataSource());
+    }
+
+    @AfterEach
+    void tearDown() {
+        productRepository.deleteAllInBatch();
+    }
+
+    @Test
+    void dataSource_LimitsThePrimaryAndEveryReplica() {
+        assertInstanceOf(ConcurrencyLimitingDataSource.class, routingDataSource.getPrimary());
+        for (ReadReplica readReplica : routingDataSource.getReplicas()) {
+            assertInstanceOf(ConcurrencyLimitingDataSource.class, readReplica.getDataSource());
+        }
+    }
+
+    @Test
+    void getProductsAfter_ReadsTheReplicaOnceItCaughtUp() {
+        Product replicated = productRepository.save(product("replicated"));
+        replicate();
+        Product notYetReplicated = productRepository.save(product("not yet replicated"));
+
+        assertEquals(List.of(replicated.getId()), ids(productService.getProductsAfter(null, 50).getProducts()));
+        // a lookup by id fills the product cache, so it is answered by the primary
+        assertEquals("not yet replicated", productService.getProductById(notYetReplicated.getId()).getTitle());
+
+        replicate();
+        assertEquals(List.of(replicated.getId(), notYetReplicated.getId()), ids(productService.getProductsAfter(null, 50).getProducts()));
+    }
+
+    @Test
+    void getProductsAfter_FallsBackToThePrimaryWhenTheReplicaLags() {
+        Product replicated = productRepository.save(product("replicated"));
+        replicate();
+        Product notYetReplicated = productRepository.save(product("not yet replicated"));
+        replica.update("UPDATE replication_heartbeat SET beat_at = ?", System.currentTimeMillis() - Duration.ofMinutes(5).toMillis());
+        routingDataSource.checkHealth();
+
+        assertFalse(routingDataSource.getReplicas().get(0).isHealthy());
+        assertEquals(List.of(replicated.getId(), notYetReplicated.getId()), ids(productService.getProductsAfter(null, 50).getProducts()));
+    }
+
+    @Test
+    void getProductsMatching_ReadsTheReplicaOnceItCaughtUp() {
+        Product replicated = productRepository.save(product("replicated"));
+        replicate();
+        productRepository.save(product("not yet replicated"));
+
+        ProductFilter inStock = new ProductFilter(true, null, null, null);
+        assertEquals(List.of(replicated.getId()), ids(productService.getProductsMatching(inStock, ProductSort.ID, null, 50).getProducts()));
+    }
+
+    // writes a fresh heartbeat, copies the primary over the replica and checks the replica again
+    private void replicate() {
+        routingDataSource.checkHealth();
+        String script = tempDir.resolve("primary.sql").toString();
+        new JdbcTemplate(routingDataSource.getPrimary()).execute("SCRIPT TO '" + script + "'");
+        replica.execute("DROP ALL OBJECTS");
+        replica.execute("RUNSCRIPT FROM '" + script + "'");
+        routingDataSource.checkHealth();
+        assertTrue(routingDataSource.getReplicas().get(0).isHealthy());
+    }
+
+    private static Product product(String title) {
+        return Product.builder().title(title).available(5).price(BigDecimal.TEN).build();
+    }
+
+    private static List<Long> ids(List<Product> products) {
+        return products.stream().map(Product::getId).toList();
+    }
+}
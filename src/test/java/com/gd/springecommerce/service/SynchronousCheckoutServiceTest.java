@@ -0,0 +1,65 @@
+package com.gd.springecommerce.service;
+
+import com.gd.springecommerce.config.CheckoutProperties;
+import com.gd.springecommerce.dto.CartProductDTO;
+import com.gd.springecommerce.exception.StockConflictException;
+import com.gd.springecommerce.metrics.MetricsRegistry;
+import com.gd.springecommerce.model.Order;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class SynchronousCheckoutServiceTest {
+
+    @Mock
+    private ProductService productService;
+
+    private MetricsRegistry metricsRegistry;
+
+    private SynchronousCheckoutService checkoutService;
+
+    private final List<CartProductDTO> cart = List.of(CartProductDTO.builder().id(7L).title("pen").quantity(1).subTotal(BigDecimal.ONE).build());
+
+    @BeforeEach
+    void setUp() {
+        CheckoutProperties checkoutProperties = new CheckoutProperties();
+        checkoutProperties.setMaxAttempts(3);
+        checkoutProperties.setRetryBackoff(Duration.ofMillis(1));
+        checkoutProperties.setMaxRetryBackoff(Duration.ofMillis(2));
+        metricsRegistry = new MetricsRegistry();
+        checkoutService = new SynchronousCheckoutService(productService, checkoutProperties, metricsRegistry);
+    }
+
+    @Test
+    void checkOut_RetriesAStockConflict() {
+        Order order = Order.builder().total(BigDecimal.ONE).build();
+        when(productService.checkOutProductsInTheCart("test@example.com", cart))
+                .thenThrow(new StockConflictException("conflict", List.of(7L)))
+                .thenReturn(order);
+
+        assertSame(order, checkoutService.checkOut("test@example.com", cart));
+        verify(productService, times(2)).checkOutProductsInTheCart("test@example.com", cart);
+        assertEquals(1, metricsRegistry.counter("checkout_stock_conflicts_total", "product", "7").sum());
+        assertEquals(1, metricsRegistry.counter("checkout_stock_retries_total", "product", "7").sum());
+    }
+
+    @Test
+    void checkOut_GivesUpAfterTheLastAttempt() {
+        when(productService.checkOutProductsInTheCart("test@example.com", cart)).thenThrow(new StockConflictException("conflict", List.of(7L)));
+
+        assertThrows(StockConflictException.class, () -> checkoutService.checkOut("test@example.com", cart));
+        verify(productService, times(3)).checkOutProductsInTheCart("test@example.com", cart);
+        assertEquals(3, metricsRegistry.counter("checkout_stock_conflicts_total", "product", "7").sum());
+        assertEquals(1, metricsRegistry.counter("checkout_stock_retries_exhausted_total", "product", "7").sum());
+    }
+}
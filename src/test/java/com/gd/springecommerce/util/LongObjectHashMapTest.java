@@ -0,0 +1,48 @@
+package com.gd.springecommerce.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LongObjectHashMapTest {
+
+    @Test
+    void putGetAndRemove() {
+        LongObjectHashMap<String> map = new LongObjectHashMap<>();
+        assertNull(map.put(1L, "one"));
+        assertEquals("one", map.put(1L, "uno"));
+        assertEquals("uno", map.get(1L));
+        assertTrue(map.containsKey(1L));
+        assertEquals("uno", map.remove(1L));
+        assertNull(map.get(1L));
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    void put_WithNullValue() {
+        LongObjectHashMap<String> map = new LongObjectHashMap<>();
+        assertThrows(IllegalArgumentException.class, () -> map.put(1L, null));
+    }
+
+    @Test
+    void behavesLikeHashMapUnderRandomOperations() {
+        LongObjectHashMap<Long> map = new LongObjectHashMap<>();
+        Map<Long, Long> expected = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 100_000; i++) {
+            long key = random.nextInt(2_000);
+            if (random.nextBoolean()) {
+                assertEquals(expected.put(key, (long) i), map.put(key, (long) i));
+            } else {
+                assertEquals(expected.remove(key), map.remove(key));
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        expected.forEach((key, value) -> assertEquals(value, map.get(key)));
+        map.forEach((key, value) -> assertEquals(expected.get(key), value));
+    }
+}